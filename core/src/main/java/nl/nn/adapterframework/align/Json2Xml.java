@@ -15,9 +15,19 @@
 */
 package nl.nn.adapterframework.align;
 
+import java.io.BufferedWriter;
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.StringReader;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -29,9 +39,13 @@ import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonException;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 import javax.json.JsonString;
 import javax.json.JsonStructure;
 import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParsingException;
 import javax.xml.validation.ValidatorHandler;
 
 import org.apache.commons.lang.StringUtils;
@@ -40,13 +54,22 @@ import org.apache.xerces.xs.XSElementDeclaration;
 import org.apache.xerces.xs.XSModel;
 import org.xml.sax.SAXException;
 
+import nl.nn.adapterframework.xml.XmlWriter;
+
 /**
  * XML Schema guided JSON to XML converter;
+ * <p>
+ * When the JSON is read via {@link #startParse(JsonParser)}, only an array at the root, or wrapped in an object with the root element
+ * as only key, is aligned item by item. Objects, including an object at the root, are read into memory completely before they are aligned.
+ * The items of a wrapped array are buffered until the end of the wrapping object, in a temporary file when they exceed the 
+ * {@link #setMaxBufferSize(int) maxBufferSize}, because the object is aligned as a whole when other keys follow the array.
  * 
  * @author Gerrit van Brakel
  */
 public class Json2Xml extends Tree2Xml<JsonValue,JsonValue> {
 
+	public static final int DEFAULT_MAX_BUFFER_SIZE=1024*1024;
+
 	public static final String MSG_FULL_INPUT_IN_STRICT_COMPACTING_MODE="straight json found while expecting compact arrays and strict syntax checking";
 	public static final String MSG_EXPECTED_SINGLE_ELEMENT="did not expect array, but single element";
 	
@@ -55,6 +78,7 @@ public class Json2Xml extends Tree2Xml<JsonValue,JsonValue> {
 	private boolean readAttributes=true;
 	private String attributePrefix="@";
 	private String mixedContentLabel="#text";
+	private int maxBufferSize=DEFAULT_MAX_BUFFER_SIZE;
 
 	public Json2Xml(ValidatorHandler validatorHandler, boolean insertElementContainerElements, String rootElement) {
 		this(validatorHandler, insertElementContainerElements, rootElement, false);
@@ -117,6 +141,121 @@ public class Json2Xml extends Tree2Xml<JsonValue,JsonValue> {
 		super.startParse(node);
 	}
 	
+	/**
+	 * Aligns the JSON read from <code>parser</code>. An array at the root of the document, or wrapped in an object with only the
+	 * root element as key, is not read into memory as a whole: its items are read and aligned one at a time.
+	 * Other objects are read completely before they are aligned, because the order of their members can differ from the order
+	 * of the elements in the schema. When other keys follow a wrapped array, the object is aligned as a whole too, like 
+	 * {@link #startParse(JsonValue)} does.
+	 */
+	public void startParse(JsonParser parser) throws SAXException {
+		try {
+			Event event = parser.next();
+			if (event==Event.START_ARRAY) {
+				StreamedJsonArray array = new StreamedJsonArray(parser);
+				startParse(array);
+				array.skipRemaining();
+				return;
+			}
+			if (event!=Event.START_OBJECT) {
+				startParse(StreamedJsonArray.readValue(parser, event));
+				return;
+			}
+			JsonObjectBuilder builder = Json.createObjectBuilder();
+			event = parser.next();
+			if (event==Event.KEY_NAME) {
+				String key = parser.getString();
+				event = parser.next();
+				if (event==Event.START_ARRAY && (StringUtils.isEmpty(getRootElement()) || getRootElement().equals(key))) {
+					// the object is just a wrapper for the array of root elements if the key is the only one, which is only known after the array
+					try (ArrayBuffer buffer = new ArrayBuffer(maxBufferSize)) {
+						while ((event=parser.next())!=Event.END_ARRAY) {
+							buffer.add(StreamedJsonArray.readValue(parser, event));
+						}
+						if ((event=parser.next())==Event.END_OBJECT) {
+							if (StringUtils.isEmpty(getRootElement())) {
+								setRootElement(key);
+							}
+							try (JsonParser bufferParser = buffer.openParser()) {
+								bufferParser.next();
+								StreamedJsonArray array = new StreamedJsonArray(bufferParser);
+								startParse(array);
+								array.skipRemaining();
+							}
+							return;
+						}
+						// other keys follow, align the object as a whole
+						try (JsonParser bufferParser = buffer.openParser()) {
+							bufferParser.next();
+							builder.add(key, StreamedJsonArray.readArray(bufferParser));
+						}
+						if (event!=Event.KEY_NAME) {
+							throw new JsonParsingException("expected key name, found ["+event+"]", parser.getLocation());
+						}
+						String nextKey = parser.getString();
+						builder.add(nextKey, StreamedJsonArray.readValue(parser, parser.next()));
+					}
+				} else {
+					builder.add(key, StreamedJsonArray.readValue(parser, event));
+				}
+				StreamedJsonArray.readMembers(parser, builder);
+			}
+			startParse(builder.build());
+		} catch (JsonException e) {
+			handleError(new SAXException(e));
+		} catch (IOException e) {
+			handleError(new SAXException("cannot buffer array", e));
+		}
+	}
+
+	/*
+	 * Keeps the JSON text of the items of an array, in memory up to maxBufferSize characters, and in a temporary file beyond that.
+	 */
+	private static class ArrayBuffer implements AutoCloseable {
+		private final int maxBufferSize;
+		private CharArrayWriter memory = new CharArrayWriter();
+		private Writer writer = memory;
+		private File file;
+
+		ArrayBuffer(int maxBufferSize) {
+			this.maxBufferSize = maxBufferSize;
+			memory.write('[');
+		}
+
+		void add(JsonValue item) throws IOException {
+			if (memory==null || memory.size()>1) {
+				writer.write(',');
+			}
+			writer.write(item.toString());
+			if (memory!=null && memory.size()>maxBufferSize) {
+				file = File.createTempFile("Json2Xml", ".tmp");
+				writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+				memory.writeTo(writer);
+				memory = null;
+			}
+		}
+
+		/**
+		 * Returns a parser positioned before the START_ARRAY event of the buffered array.
+		 */
+		JsonParser openParser() throws IOException {
+			writer.write(']');
+			if (memory!=null) {
+				return Json.createParser(new CharArrayReader(memory.toCharArray()));
+			}
+			writer.close();
+			return Json.createParser(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void close() throws IOException {
+			writer.close();
+			if (file!=null && !file.delete()) {
+				file.deleteOnExit();
+			}
+		}
+	}
+
 	@Override
 	public JsonValue getRootNode(JsonValue container) {
 		return container;
@@ -299,6 +438,19 @@ public class Json2Xml extends Tree2Xml<JsonValue,JsonValue> {
 	}
 	
 	public static String translate(JsonStructure json, URL schemaURL, boolean compactJsonArrays, String rootElement, boolean strictSyntax, boolean deepSearch, String targetNamespace, Map<String,Object> overrideValues) throws SAXException, IOException {
+		Json2Xml j2x = create(schemaURL, compactJsonArrays, rootElement, strictSyntax, deepSearch, targetNamespace, overrideValues);
+		return j2x.translate(json);
+	}
+
+	public static String translate(JsonParser parser, URL schemaURL, boolean compactJsonArrays, String rootElement, boolean strictSyntax, boolean deepSearch, String targetNamespace, Map<String,Object> overrideValues) throws SAXException, IOException {
+		Json2Xml j2x = create(schemaURL, compactJsonArrays, rootElement, strictSyntax, deepSearch, targetNamespace, overrideValues);
+		XmlWriter xmlWriter = new XmlWriter();
+		j2x.setContentHandler(xmlWriter);
+		j2x.startParse(parser);
+		return xmlWriter.toString();
+	}
+
+	private static Json2Xml create(URL schemaURL, boolean compactJsonArrays, String rootElement, boolean strictSyntax, boolean deepSearch, String targetNamespace, Map<String,Object> overrideValues) throws SAXException, IOException {
 		ValidatorHandler validatorHandler = getValidatorHandler(schemaURL);
 		List<XSModel> schemaInformation = getSchemaInformation(schemaURL);
 
@@ -312,8 +464,7 @@ public class Json2Xml extends Tree2Xml<JsonValue,JsonValue> {
 			j2x.setTargetNamespace(targetNamespace);
 		}
 		j2x.setDeepSearch(deepSearch);
-
-		return j2x.translate(json);
+		return j2x;
 	}
 
 	public boolean isReadAttributes() {
@@ -323,4 +474,14 @@ public class Json2Xml extends Tree2Xml<JsonValue,JsonValue> {
 		this.readAttributes = readAttributes;
 	}
 
+	public int getMaxBufferSize() {
+		return maxBufferSize;
+	}
+	/**
+	 * Sets the number of characters of a wrapped root array that are buffered in memory by {@link #startParse(JsonParser)}, before it is spilled to a temporary file.
+	 */
+	public void setMaxBufferSize(int maxBufferSize) {
+		this.maxBufferSize = maxBufferSize;
+	}
+
 }
@@ -0,0 +1,280 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.align;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParsingException;
+
+/**
+ * JsonArray of which the items are read from a {@link JsonParser} while they are iterated over. The items are not kept in memory,
+ * so an array can be iterated only once. When the array is accessed in any other way before the iteration has started, all of its
+ * items are read at once, and the array can be used like any other JsonArray.
+ * <p>
+ * The parser must be positioned just after the {@link Event#START_ARRAY START_ARRAY} event of the array.
+ */
+class StreamedJsonArray extends AbstractList<JsonValue> implements JsonArray {
+
+	private JsonParser parser; // null when all items have been read from the parser
+	private Event pendingEvent;
+	private boolean streamed;
+	private JsonArray items;   // set when the items have been read at once
+
+	public StreamedJsonArray(JsonParser parser) {
+		this.parser = parser;
+	}
+
+	@Override
+	public Iterator<JsonValue> iterator() {
+		if (items!=null || streamed) {
+			return getItems().iterator();
+		}
+		streamed=true;
+		return new Iterator<JsonValue>() {
+
+			@Override
+			public boolean hasNext() {
+				return peek()!=null;
+			}
+
+			@Override
+			public JsonValue next() {
+				Event event = peek();
+				if (event==null) {
+					throw new NoSuchElementException();
+				}
+				pendingEvent=null;
+				return readValue(parser, event);
+			}
+		};
+	}
+
+	private Event peek() {
+		if (pendingEvent==null && parser!=null) {
+			Event event = parser.next();
+			if (event==Event.END_ARRAY) {
+				parser=null;
+			} else {
+				pendingEvent=event;
+			}
+		}
+		return pendingEvent;
+	}
+
+	/**
+	 * Positions the parser after the end of the array, skipping the items that have not been read yet.
+	 */
+	public void skipRemaining() {
+		if (streamed) {
+			Event event;
+			while ((event=peek())!=null) {
+				pendingEvent=null;
+				skipValue(parser, event);
+			}
+		} else {
+			getItems();
+		}
+	}
+
+	private JsonArray getItems() {
+		if (items==null) {
+			if (streamed) {
+				throw new IllegalStateException("items of streamed JSON array have already been read");
+			}
+			items = readArray(parser);
+			parser=null;
+		}
+		return items;
+	}
+
+	@Override
+	public ValueType getValueType() {
+		return ValueType.ARRAY;
+	}
+
+	@Override
+	public JsonValue get(int index) {
+		return getItems().get(index);
+	}
+
+	@Override
+	public int size() {
+		return getItems().size();
+	}
+
+	@Override
+	public JsonObject getJsonObject(int index) {
+		return getItems().getJsonObject(index);
+	}
+
+	@Override
+	public JsonArray getJsonArray(int index) {
+		return getItems().getJsonArray(index);
+	}
+
+	@Override
+	public JsonNumber getJsonNumber(int index) {
+		return getItems().getJsonNumber(index);
+	}
+
+	@Override
+	public JsonString getJsonString(int index) {
+		return getItems().getJsonString(index);
+	}
+
+	@Override
+	public <T extends JsonValue> List<T> getValuesAs(Class<T> clazz) {
+		return getItems().getValuesAs(clazz);
+	}
+
+	@Override
+	public String getString(int index) {
+		return getItems().getString(index);
+	}
+
+	@Override
+	public String getString(int index, String defaultValue) {
+		return getItems().getString(index, defaultValue);
+	}
+
+	@Override
+	public int getInt(int index) {
+		return getItems().getInt(index);
+	}
+
+	@Override
+	public int getInt(int index, int defaultValue) {
+		return getItems().getInt(index, defaultValue);
+	}
+
+	@Override
+	public boolean getBoolean(int index) {
+		return getItems().getBoolean(index);
+	}
+
+	@Override
+	public boolean getBoolean(int index, boolean defaultValue) {
+		return getItems().getBoolean(index, defaultValue);
+	}
+
+	@Override
+	public boolean isNull(int index) {
+		return getItems().isNull(index);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return getItems().equals(o);
+	}
+
+	@Override
+	public int hashCode() {
+		return getItems().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return getItems().toString();
+	}
+
+
+	/**
+	 * Reads the value that starts with <code>event</code> completely from the parser.
+	 */
+	public static JsonValue readValue(JsonParser parser, Event event) {
+		switch (event) {
+		case START_OBJECT:
+			return readObject(parser);
+		case START_ARRAY:
+			return readArray(parser);
+		case VALUE_TRUE:
+			return JsonValue.TRUE;
+		case VALUE_FALSE:
+			return JsonValue.FALSE;
+		case VALUE_NULL:
+			return JsonValue.NULL;
+		case VALUE_STRING:
+			// javax.json 1.0 has no factory method for single values
+			return Json.createArrayBuilder().add(parser.getString()).build().get(0);
+		case VALUE_NUMBER:
+			return Json.createArrayBuilder().add(parser.getBigDecimal()).build().get(0);
+		default:
+			throw new JsonParsingException("unexpected event ["+event+"]", parser.getLocation());
+		}
+	}
+
+	/**
+	 * Reads the members of an object, of which the START_OBJECT event has already been read.
+	 */
+	public static JsonObject readObject(JsonParser parser) {
+		return readMembers(parser, Json.createObjectBuilder()).build();
+	}
+
+	/**
+	 * Adds the remaining members of an object to <code>builder</code>, up to and including the END_OBJECT event.
+	 */
+	public static JsonObjectBuilder readMembers(JsonParser parser, JsonObjectBuilder builder) {
+		Event event;
+		while ((event=parser.next())!=Event.END_OBJECT) {
+			if (event!=Event.KEY_NAME) {
+				throw new JsonParsingException("expected key name, found ["+event+"]", parser.getLocation());
+			}
+			String key = parser.getString();
+			builder.add(key, readValue(parser, parser.next()));
+		}
+		return builder;
+	}
+
+	/**
+	 * Reads the items of an array, of which the START_ARRAY event has already been read.
+	 */
+	public static JsonArray readArray(JsonParser parser) {
+		JsonArrayBuilder builder = Json.createArrayBuilder();
+		Event event;
+		while ((event=parser.next())!=Event.END_ARRAY) {
+			builder.add(readValue(parser, event));
+		}
+		return builder.build();
+	}
+
+	private static void skipValue(JsonParser parser, Event event) {
+		if (event!=Event.START_OBJECT && event!=Event.START_ARRAY) {
+			return;
+		}
+		int depth=1;
+		while (depth>0) {
+			event=parser.next();
+			if (event==Event.START_OBJECT || event==Event.START_ARRAY) {
+				depth++;
+			} else if (event==Event.END_OBJECT || event==Event.END_ARRAY) {
+				depth--;
+			}
+		}
+	}
+}
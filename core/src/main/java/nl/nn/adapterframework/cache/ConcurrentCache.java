@@ -0,0 +1,307 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.cache;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.doc.IbisDoc;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.stream.Message;
+import nl.nn.adapterframework.util.AppConstants;
+
+/**
+ * In-memory cache, that can be read and written concurrently without locking.
+ * <p>
+ * Concurrent requests for a key that is not in the cache are collapsed by {@link #getOrLoad(String, Loader)}:
+ * the value is loaded once, while the other requests wait for that value. When used as the cache of a pipeline,
+ * the result and the state of the pipeline are stored together in a single entry.
+ * <p>
+ * When the cache is full, the least recently used entry of a small sample of entries is evicted.
+ * <p>
+ * N.B. the default values shown can be overridden using properties in appConstants. The property names are found by prefixing the attribute name with <code>cache.default.</code>.
+ * </p>
+ */
+public class ConcurrentCache<V> extends CacheAdapterBase<V> implements HasStatistics {
+
+	private final String KEY_PREFIX="cache.default.";
+	private final String KEY_MAX_ELEMENTS_IN_MEMORY=KEY_PREFIX+"maxElementsInMemory";
+	private final String KEY_ETERNAL=KEY_PREFIX+"eternal";
+	private final String KEY_TIME_TO_LIVE_SECONDS=KEY_PREFIX+"timeToLiveSeconds";
+
+	private static final int EVICTION_SAMPLE_SIZE=8;
+
+	private int maxElementsInMemory=100;
+	private boolean eternal=false;
+	private int timeToLiveSeconds=36000;
+
+	private final Map<String,Entry> entries = new ConcurrentHashMap<String,Entry>();
+	private final Map<String,CompletableFuture<Object>> loading = new ConcurrentHashMap<String,CompletableFuture<Object>>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder collapsed = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	private StatisticsKeeper loadStatistics;
+
+	/**
+	 * Loads a value for the cache, when it is not present yet.
+	 */
+	public interface Loader<T, E extends Exception> {
+		/**
+		 * Returns the value to be cached, or <code>null</code> if nothing is to be cached.
+		 */
+		T load() throws E;
+	}
+
+	private static class Entry {
+		final Object value;
+		final long expiry;
+		volatile long lastAccess;
+
+		Entry(Object value, long expiry) {
+			this.value = value;
+			this.expiry = expiry;
+			this.lastAccess = System.nanoTime();
+		}
+	}
+
+	public ConcurrentCache() {
+		super();
+		AppConstants ac = AppConstants.getInstance();
+		maxElementsInMemory=ac.getInt(KEY_MAX_ELEMENTS_IN_MEMORY, maxElementsInMemory);
+		eternal=ac.getBoolean(KEY_ETERNAL, eternal);
+		timeToLiveSeconds=ac.getInt(KEY_TIME_TO_LIVE_SECONDS, timeToLiveSeconds);
+	}
+
+	@Override
+	public void configure(String ownerName) throws ConfigurationException {
+		super.configure(ownerName);
+		if (getMaxElementsInMemory()<=0) {
+			throw new ConfigurationException(getLogPrefix()+"maxElementsInMemory must be positive");
+		}
+		loadStatistics = StatisticsKeeper.createDurationStatisticsKeeper("load "+getName());
+	}
+
+	@Override
+	public void open() {
+		// nothing to open, entries are kept in memory
+	}
+
+	@Override
+	public void close() {
+		log.debug("cache ["+getName()+"] clearing data");
+		entries.clear();
+	}
+
+	@Override
+	protected V getElement(String key) {
+		return (V)getValue(key);
+	}
+
+	@Override
+	protected void putElement(String key, V value) {
+		putValue(key, value);
+	}
+
+	@Override
+	protected boolean removeElement(Object key) {
+		return entries.remove(key)!=null;
+	}
+
+	@Override
+	protected V toValue(Message value) {
+		try {
+			return (V)value.asString();
+		} catch (IOException e) {
+			log.warn("Could not perform toValue() by asString()", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the value cached for <code>key</code>. If there is none, it is obtained from <code>loader</code> and cached.
+	 * When other threads request the same key while it is being loaded, they wait for the value that is being loaded.
+	 * If that value is <code>null</code> or loading fails, they each call their own loader.
+	 */
+	public <T, E extends Exception> T getOrLoad(String key, Loader<T,E> loader) throws E {
+		Object value = getValue(key);
+		if (value!=null) {
+			return (T)value;
+		}
+		CompletableFuture<Object> newLoad = new CompletableFuture<Object>();
+		CompletableFuture<Object> currentLoad = loading.putIfAbsent(key, newLoad);
+		if (currentLoad!=null) {
+			collapsed.increment();
+			if (log.isDebugEnabled()) log.debug(getLogPrefix()+"waiting for value of key ["+key+"] that is being loaded by another thread");
+			try {
+				value = currentLoad.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				log.debug(getLogPrefix()+"loading value of key ["+key+"] by another thread failed", e);
+			}
+			if (value!=null) {
+				return (T)value;
+			}
+			return loader.load();
+		}
+		try {
+			long t0 = System.nanoTime();
+			T loadedValue = loader.load();
+			if (loadStatistics!=null) {
+				loadStatistics.addNanoValue(System.nanoTime()-t0);
+			}
+			if (loadedValue!=null) {
+				putValue(key, loadedValue);
+			}
+			newLoad.complete(loadedValue);
+			return loadedValue;
+		} catch (Throwable t) {
+			newLoad.completeExceptionally(t);
+			throw t;
+		} finally {
+			loading.remove(key, newLoad);
+		}
+	}
+
+	private Object getValue(String key) {
+		Entry entry = entries.get(key);
+		if (entry!=null) {
+			long now = System.nanoTime();
+			if (isEternal() || now-entry.expiry<0) {
+				entry.lastAccess = now;
+				hits.increment();
+				return entry.value;
+			}
+			if (entries.remove(key, entry)) {
+				evictions.increment();
+			}
+		}
+		misses.increment();
+		return null;
+	}
+
+	private void putValue(String key, Object value) {
+		long expiry = System.nanoTime()+getTimeToLiveSeconds()*1000000000L;
+		if (entries.put(key, new Entry(value, expiry))==null) {
+			while (entries.size()>getMaxElementsInMemory()) {
+				evictLeastRecentlyUsed();
+			}
+		}
+	}
+
+	/**
+	 * Evicts the least recently used entry of a sample of entries. This approximates LRU, without ordering all entries.
+	 * The sample starts at a random position in the iteration order of the entries, wrapping around at the end, so that 
+	 * every entry can be evicted, and not only the entries that happen to be iterated first.
+	 */
+	private void evictLeastRecentlyUsed() {
+		String victimKey = null;
+		Entry victim = null;
+		int size = entries.size();
+		if (size<=0) {
+			return;
+		}
+		int offset = ThreadLocalRandom.current().nextInt(size);
+		Iterator<Map.Entry<String,Entry>> it = entries.entrySet().iterator();
+		for (int i=0; i<offset && it.hasNext(); i++) {
+			it.next();
+		}
+		for (int i=0; i<EVICTION_SAMPLE_SIZE && i<size; i++) {
+			if (!it.hasNext()) {
+				it = entries.entrySet().iterator();
+				if (!it.hasNext()) {
+					break;
+				}
+			}
+			Map.Entry<String,Entry> candidate = it.next();
+			if (victim==null || candidate.getValue().lastAccess-victim.lastAccess<0) {
+				victimKey = candidate.getKey();
+				victim = candidate.getValue();
+			}
+		}
+		if (victim!=null && entries.remove(victimKey, victim)) {
+			evictions.increment();
+		}
+	}
+
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		Object cacheData = hski.openGroup(data, getName(), "cache");
+		hski.handleScalar(cacheData, "hits", hits.sum());
+		hski.handleScalar(cacheData, "misses", misses.sum());
+		hski.handleScalar(cacheData, "collapsedLoads", collapsed.sum());
+		hski.handleScalar(cacheData, "evictions", evictions.sum());
+		hski.handleScalar(cacheData, "size", entries.size());
+		if (loadStatistics!=null) {
+			hski.handleStatisticsKeeper(cacheData, loadStatistics);
+			loadStatistics.performAction(action);
+		}
+		hski.closeGroup(cacheData);
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+	public long getMisses() {
+		return misses.sum();
+	}
+	public long getCollapsedLoads() {
+		return collapsed.sum();
+	}
+	public long getEvictions() {
+		return evictions.sum();
+	}
+	public int getSize() {
+		return entries.size();
+	}
+
+	@IbisDoc({"1", "The maximum number of elements in memory, before they are evicted", "100"})
+	public void setMaxElementsInMemory(int maxElementsInMemory) {
+		this.maxElementsInMemory = maxElementsInMemory;
+	}
+	public int getMaxElementsInMemory() {
+		return maxElementsInMemory;
+	}
+
+	@IbisDoc({"2", "If <code>true</code>, the elements in the cache are eternal, i.e. never expire", "<code>false</code>"})
+	public void setEternal(boolean eternal) {
+		this.eternal = eternal;
+	}
+	public boolean isEternal() {
+		return eternal;
+	}
+
+	@IbisDoc({"3", "The amount of time to live for an element from its creation date", "36000 (=10 hours)"})
+	public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+		this.timeToLiveSeconds = timeToLiveSeconds;
+	}
+	public int getTimeToLiveSeconds() {
+		return timeToLiveSeconds;
+	}
+
+}
@@ -30,7 +30,7 @@ import java.util.Vector;
 public class BaseConfigurationWarnings extends LinkedList<String> {
 	protected Vector<String> defaultValueExceptions = new Vector<String>();
 
-	protected boolean add(Logger log, String msg, Throwable t, String messageSuffixForLog, boolean onlyOnce) {
+	protected synchronized boolean add(Logger log, String msg, Throwable t, String messageSuffixForLog, boolean onlyOnce) {
 		String logMsg = StringUtils.isNotEmpty(messageSuffixForLog) ? msg + messageSuffixForLog : msg;
 		if (t == null) {
 			log.warn(logMsg);
@@ -0,0 +1,92 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.configuration;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.Logger;
+
+import nl.nn.adapterframework.configuration.IbisContext.ConfigurationLoad;
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Digests configurations on a pool of threads. A configuration that has a parent configuration is digested after
+ * its parent has been digested, or has failed. A configuration that fails does not stop the others from being digested.
+ *
+ * @see IbisContext#load(String)
+ */
+class ConcurrentConfigurationLoader {
+	private static final Logger LOG = LogUtil.getLogger(ConcurrentConfigurationLoader.class);
+
+	private final int threads;
+	private final Function<String, String> parentConfigOf;
+
+	/**
+	 * @param parentConfigOf returns the name of the parent configuration of a configuration, or <code>null</code> if it has none.
+	 */
+	ConcurrentConfigurationLoader(int threads, Function<String, String> parentConfigOf) {
+		this.threads = threads;
+		this.parentConfigOf = parentConfigOf;
+	}
+
+	/**
+	 * Calls <code>digest</code> for every configuration, and waits until all configurations have been digested.
+	 */
+	void load(List<ConfigurationLoad> configurationLoads, Consumer<ConfigurationLoad> digest) {
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory threadFactory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable);
+				thread.setName("ConfigurationLoader-" + threadNumber.incrementAndGet());
+				return thread;
+			}
+		};
+		ExecutorService executor = Executors.newFixedThreadPool(threads, threadFactory);
+		try {
+			Map<String, CompletableFuture<Void>> loaded = new HashMap<>();
+			for (ConfigurationLoad configurationLoad : configurationLoads) {
+				String parentConfig = parentConfigOf.apply(configurationLoad.name);
+				CompletableFuture<Void> parentLoaded = parentConfig != null ? loaded.get(parentConfig) : null;
+				if (parentLoaded == null) {
+					parentLoaded = CompletableFuture.completedFuture(null);
+				}
+				long queued = System.currentTimeMillis();
+				loaded.put(configurationLoad.name, parentLoaded.handle((result, e) -> null).thenRunAsync(() -> {
+					configurationLoad.waitTime = System.currentTimeMillis() - queued;
+					try {
+						digest.accept(configurationLoad);
+					} catch (RuntimeException e) {
+						LOG.error("unexpected exception loading configuration [" + configurationLoad.name + "]", e);
+						throw e;
+					}
+				}, executor));
+			}
+			CompletableFuture.allOf(loaded.values().toArray(new CompletableFuture[loaded.size()])).handle((result, e) -> null).join();
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
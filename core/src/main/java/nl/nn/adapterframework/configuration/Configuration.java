@@ -35,6 +35,7 @@ import nl.nn.adapterframework.scheduler.JobDef;
 import nl.nn.adapterframework.statistics.HasStatistics;
 import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.statistics.StatisticsKeeperLogger;
+import nl.nn.adapterframework.task.TimeoutScheduler;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.LogUtil;
@@ -84,6 +85,10 @@ public class Configuration implements INamedObject{
 				adapter.forEachStatisticsKeeperBody(hski,groupData,action);
 			}
 			IbisCacheManager.iterateOverStatistics(hski, groupData, action);
+			TimeoutScheduler timeoutScheduler = TimeoutScheduler.getRunningInstance();
+			if (timeoutScheduler!=null) {
+				timeoutScheduler.iterateOverStatistics(hski, groupData, action);
+			}
 			hski.closeGroup(groupData);
 		} finally {
 			hski.end(root);
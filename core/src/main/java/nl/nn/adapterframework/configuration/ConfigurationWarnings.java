@@ -32,7 +32,8 @@ import nl.nn.adapterframework.util.ClassUtils;
  */
 public final class ConfigurationWarnings extends BaseConfigurationWarnings {
 	private static ConfigurationWarnings self = null;
-	private Configuration activeConfiguration = null;
+	// configurations can be loaded concurrently, each by its own thread
+	private ThreadLocal<Configuration> activeConfiguration = new ThreadLocal<>();
 
 	public static void addGlobalWarning(Logger log, String msg, SuppressKeys suppressionKey, ClassLoader classLoader) {
 		if(suppressionKey == null) {
@@ -115,8 +116,8 @@ public final class ConfigurationWarnings extends BaseConfigurationWarnings {
 	}
 
 	private void doAdd(Logger log, String msg, Throwable t, String messageSuffixForLog) {
-		if (activeConfiguration!=null) {
-			activeConfiguration.getConfigurationWarnings().add(log, msg, t, messageSuffixForLog, (t==null));
+		if (activeConfiguration.get()!=null) {
+			activeConfiguration.get().getConfigurationWarnings().add(log, msg, t, messageSuffixForLog, (t==null));
 		} else {
 			addConfigurationIndependentWarning(log, msg, t, messageSuffixForLog, (t==null));
 		}
@@ -132,8 +133,8 @@ public final class ConfigurationWarnings extends BaseConfigurationWarnings {
 		if (config!=null) {
 			return config.getConfigurationWarnings().add(log, msg, t, messageSuffixForLog, onlyOnce);
 		} else {
-			if (activeConfiguration!=null) {
-				return activeConfiguration.getConfigurationWarnings().add(log, msg, t, messageSuffixForLog, onlyOnce);
+			if (activeConfiguration.get()!=null) {
+				return activeConfiguration.get().getConfigurationWarnings().add(log, msg, t, messageSuffixForLog, onlyOnce);
 			} else {
 				return addConfigurationIndependentWarning(log, msg, t, messageSuffixForLog, onlyOnce);
 			}
@@ -146,23 +147,27 @@ public final class ConfigurationWarnings extends BaseConfigurationWarnings {
 
 	@Override
 	public boolean containsDefaultValueException(String key) {
-		if (activeConfiguration!=null) {
-			return activeConfiguration.getConfigurationWarnings().containsDefaultValueException(key);
+		if (activeConfiguration.get()!=null) {
+			return activeConfiguration.get().getConfigurationWarnings().containsDefaultValueException(key);
 		} else {
 			return super.containsDefaultValueException(key);
 		}
 	}
 
 	public void addDefaultValueExceptions(String key) {
-		if (activeConfiguration!=null) {
-			activeConfiguration.getConfigurationWarnings().addDefaultValueException(key);
+		if (activeConfiguration.get()!=null) {
+			activeConfiguration.get().getConfigurationWarnings().addDefaultValueException(key);
 		} else {
 			super.addDefaultValueException(key);
 		}
 	}
 
 	public void setActiveConfiguration (Configuration configuration) {
-		activeConfiguration = configuration;
+		if (configuration==null) {
+			activeConfiguration.remove();
+		} else {
+			activeConfiguration.set(configuration);
+		}
 	}
 	
 	public static boolean isSuppressed(SuppressKeys key, IAdapter adapter, ClassLoader cl) {
@@ -17,11 +17,12 @@ package nl.nn.adapterframework.configuration;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.Logger;
@@ -72,11 +73,12 @@ public class IbisContext extends IbisApplicationContext {
 	}
 
 	private IbisManager ibisManager;
-	private Map<String, MessageKeeper> messageKeepers = new HashMap<>();
+	private Map<String, MessageKeeper> messageKeepers = new ConcurrentHashMap<>();
 	private int messageKeeperSize = 10;
 	private FlowDiagramManager flowDiagramManager;
 	private ClassLoaderManager classLoaderManager = null;
-	private static List<String> loadingConfigs = new ArrayList<>();
+	private static List<String> loadingConfigs = Collections.synchronizedList(new ArrayList<>());
+	private final int loadThreads = APP_CONSTANTS.getInt("configurations.load.threads", 1);
 
 	/**
 	 * Creates the Spring context, and load the configuration. Optionally  with
@@ -254,19 +256,26 @@ public class IbisContext extends IbisApplicationContext {
 	/**
 	 * Loads, digests and starts the specified configuration, or all configurations
 	 * Does not check if the configuration already exists. Does not unload old configurations!
+	 * <p>
+	 * When all configurations are loaded and <code>configurations.load.threads</code> is larger than 1, the ClassLoaders are
+	 * created one by one first, after which the configurations are digested and started concurrently. A configuration that
+	 * has a <code>parentConfig</code> is digested after its parent. Otherwise each configuration is digested directly after
+	 * its ClassLoader has been created.
 	 * 
 	 * @param configurationName name of the configuration to load or null when you want to load all configurations
 	 * 
 	 * @see ClassLoaderManager#get(String)
 	 * @see ConfigurationUtils#retrieveAllConfigNames(IbisContext)
-	 * @see #digestClassLoaderConfiguration(ClassLoader, ConfigurationDigester, String, ConfigurationException)
+	 * @see #digestClassLoaderConfiguration(ConfigurationLoad, ConfigurationDigester)
 	 */
 	public void load(String configurationName) {
 		boolean configFound = false;
-
-		//We have an ordered list with all configurations, lets loop through!
+		long start = System.currentTimeMillis();
+		boolean concurrent = configurationName == null && loadThreads > 1;
+		List<ConfigurationLoad> configurationLoads = new ArrayList<>();
 		ConfigurationDigester configurationDigester = new ConfigurationDigester();
 
+		//We have an ordered list with all configurations, lets loop through!
 		Map<String, String> allConfigNamesItems = ConfigurationUtils.retrieveAllConfigNames(this);
 		for (Entry<String, String> currentConfigNameItem : allConfigNamesItems.entrySet()) {
 			String currentConfigurationName = currentConfigNameItem.getKey();
@@ -276,6 +285,7 @@ public class IbisContext extends IbisApplicationContext {
 				LOG.info("loading configuration ["+currentConfigurationName+"]");
 				configFound = true;
 
+				long classLoaderStart = System.currentTimeMillis();
 				ConfigurationException customClassLoaderConfigurationException = null;
 				ClassLoader classLoader = null;
 				try {
@@ -292,17 +302,22 @@ public class IbisContext extends IbisApplicationContext {
 				}
 
 				if(LOG.isDebugEnabled()) LOG.debug("configuration ["+currentConfigurationName+"] found classloader ["+ClassUtils.nameOf(classLoader)+"]");
-				try {
-					loadingConfigs.add(currentConfigurationName);
-					digestClassLoaderConfiguration(classLoader, configurationDigester, currentConfigurationName, customClassLoaderConfigurationException);
-				} finally {
-					loadingConfigs.remove(currentConfigurationName);
+				ConfigurationLoad configurationLoad = new ConfigurationLoad(currentConfigurationName, classLoader, customClassLoaderConfigurationException, System.currentTimeMillis()-classLoaderStart);
+				if (concurrent) {
+					configurationLoads.add(configurationLoad);
+				} else {
+					createConfiguration(configurationLoad);
+					digest(configurationLoad, configurationDigester);
 				}
-
-				LOG.info("configuration ["+currentConfigurationName+"] loaded successfully");
 			}
 		}
 
+		if (concurrent && !configurationLoads.isEmpty()) {
+			int threads = Math.min(loadThreads, configurationLoads.size());
+			loadConcurrently(configurationLoads, threads);
+			log("loaded [" + configurationLoads.size() + "] configurations in " + (System.currentTimeMillis() - start) + " ms using [" + threads + "] threads");
+		}
+
 		generateFlow();
 		//Check if the configuration we try to reload actually exists
 		if (!configFound && configurationName != null) {
@@ -310,36 +325,74 @@ public class IbisContext extends IbisApplicationContext {
 		}
 	}
 
-	private void digestClassLoaderConfiguration(ClassLoader classLoader, 
-			ConfigurationDigester configurationDigester, 
-			String currentConfigurationName, 
-			ConfigurationException customClassLoaderConfigurationException) {
+	/**
+	 * Digests and starts the configurations on a pool of <code>threads</code> threads. The configurations are registered
+	 * with the IbisManager beforehand, to keep them in the order in which they are listed.
+	 */
+	private void loadConcurrently(List<ConfigurationLoad> configurationLoads, int threads) {
+		for (ConfigurationLoad configurationLoad : configurationLoads) {
+			createConfiguration(configurationLoad);
+		}
+		ConcurrentConfigurationLoader loader = new ConcurrentConfigurationLoader(threads, name -> APP_CONSTANTS.getString("configurations." + name + ".parentConfig", null));
+		loader.load(configurationLoads, configurationLoad -> {
+			try {
+				digest(configurationLoad, new ConfigurationDigester());
+			} catch (RuntimeException e) {
+				log(configurationLoad.name, configurationLoad.version, "unexpected exception", MessageKeeperLevel.ERROR, e);
+			}
+		});
+	}
 
-		long start = System.currentTimeMillis();
-		if(LOG.isDebugEnabled()) LOG.debug("creating new configuration ["+currentConfigurationName+"]");
+	private void digest(ConfigurationLoad configurationLoad, ConfigurationDigester configurationDigester) {
+		try {
+			loadingConfigs.add(configurationLoad.name);
+			digestClassLoaderConfiguration(configurationLoad, configurationDigester);
+		} finally {
+			loadingConfigs.remove(configurationLoad.name);
+		}
+		LOG.info("configuration ["+configurationLoad.name+"] loaded successfully");
+	}
 
-		ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
-		String currentConfigurationVersion = null;
+	/**
+	 * Creates the Configuration object and registers it with the IbisManager.
+	 */
+	private void createConfiguration(ConfigurationLoad configurationLoad) {
+		if(LOG.isDebugEnabled()) LOG.debug("creating new configuration ["+configurationLoad.name+"]");
 
+		ClassLoader classLoader = configurationLoad.classLoader;
 		if (classLoader != null) {
-			Thread.currentThread().setContextClassLoader(classLoader);
-			currentConfigurationVersion = ConfigurationUtils.getConfigurationVersion(classLoader);
-			if(StringUtils.isEmpty(currentConfigurationVersion)) {
-				LOG.info("unable to determine [configuration.version] for configuration ["+currentConfigurationName+"]");
+			configurationLoad.version = ConfigurationUtils.getConfigurationVersion(classLoader);
+			if(StringUtils.isEmpty(configurationLoad.version)) {
+				LOG.info("unable to determine [configuration.version] for configuration ["+configurationLoad.name+"]");
 			}
 		}
 
-		if(LOG.isDebugEnabled()) LOG.debug("configuration ["+currentConfigurationName+"] found currentConfigurationVersion ["+currentConfigurationVersion+"]");
+		if(LOG.isDebugEnabled()) LOG.debug("configuration ["+configurationLoad.name+"] found currentConfigurationVersion ["+configurationLoad.version+"]");
 
 		//TODO autowire the entire configuration in it's own context.
 		Configuration configuration = createBeanAutowireByName(Configuration.class);
+		configuration.setName(configurationLoad.name);
+		configuration.setVersion(configurationLoad.version);
+		configuration.setIbisManager(ibisManager);
+		configuration.setClassLoader(classLoader);
+		ibisManager.addConfiguration(configuration);
+		configurationLoad.configuration = configuration;
+	}
+
+	private void digestClassLoaderConfiguration(ConfigurationLoad configurationLoad, ConfigurationDigester configurationDigester) {
+		long start = System.currentTimeMillis();
+		String currentConfigurationName = configurationLoad.name;
+		String currentConfigurationVersion = configurationLoad.version;
+		ClassLoader classLoader = configurationLoad.classLoader;
+		Configuration configuration = configurationLoad.configuration;
+
+		ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
+		if (classLoader != null) {
+			Thread.currentThread().setContextClassLoader(classLoader);
+		}
+
 		try {
-			configuration.setName(currentConfigurationName);
-			configuration.setVersion(currentConfigurationVersion);
-			configuration.setIbisManager(ibisManager);
-			configuration.setClassLoader(classLoader);
-			ibisManager.addConfiguration(configuration);
-			if (customClassLoaderConfigurationException == null) {
+			if (configurationLoad.classLoaderException == null) {
 				ConfigurationWarnings.getInstance().setActiveConfiguration(configuration);
 
 				if(AppConstants.getInstance(classLoader).getBoolean("jdbc.migrator.active", false)) {
@@ -354,7 +407,9 @@ public class IbisContext extends IbisApplicationContext {
 					}
 				}
 
+				long digestStart = System.currentTimeMillis();
 				configurationDigester.digestConfiguration(classLoader, configuration);
+				long digestTime = System.currentTimeMillis() - digestStart;
 				if (currentConfigurationVersion == null) {
 					currentConfigurationVersion = configuration.getVersion();
 				} else if (!currentConfigurationVersion.equals(configuration.getVersion())) {
@@ -362,21 +417,31 @@ public class IbisContext extends IbisApplicationContext {
 				}
 				if (!currentConfigurationName.equals(configuration.getName())) {
 					log(currentConfigurationName, currentConfigurationVersion, "configuration name doesn't match Configuration name attribute: " + configuration.getName(), MessageKeeperLevel.WARN);
-					messageKeepers.put(configuration.getName(), messageKeepers.remove(currentConfigurationName));
+					MessageKeeper messageKeeper = messageKeepers.remove(currentConfigurationName);
+					if (messageKeeper != null) {
+						messageKeepers.put(configuration.getName(), messageKeeper);
+					}
 				}
 
 				String msg;
+				long startTime = 0;
 				if (configuration.isAutoStart()) {
+					long startStart = System.currentTimeMillis();
 					ibisManager.startConfiguration(configuration);
+					startTime = System.currentTimeMillis() - startStart;
 					msg = "startup in " + (System.currentTimeMillis() - start) + " ms";
 				}
 				else {
 					msg = "configured in " + (System.currentTimeMillis() - start) + " ms";
 				}
+				msg += " (classloader " + configurationLoad.classLoaderTime + " ms, "
+						+ (configurationLoad.waitTime > 0 ? "waiting " + configurationLoad.waitTime + " ms, " : "")
+						+ "digest " + digestTime + " ms"
+						+ (configuration.isAutoStart() ? ", start " + startTime + " ms" : "") + ")";
 				log(currentConfigurationName, currentConfigurationVersion, msg);
 				secLog.info("Configuration [" + currentConfigurationName + "] [" + currentConfigurationVersion+"] " + msg);
 			} else {
-				throw customClassLoaderConfigurationException;
+				throw configurationLoad.classLoaderException;
 			}
 
 			LOG.info("configured configuration ["+currentConfigurationName+"] successfully");
@@ -389,6 +454,26 @@ public class IbisContext extends IbisApplicationContext {
 		}
 	}
 
+	/**
+	 * State of a configuration while it is being loaded.
+	 */
+	static class ConfigurationLoad {
+		final String name;
+		final ClassLoader classLoader;
+		final ConfigurationException classLoaderException;
+		final long classLoaderTime;
+		String version;
+		Configuration configuration;
+		long waitTime;
+
+		ConfigurationLoad(String name, ClassLoader classLoader, ConfigurationException classLoaderException, long classLoaderTime) {
+			this.name = name;
+			this.classLoader = classLoader;
+			this.classLoaderException = classLoaderException;
+			this.classLoaderTime = classLoaderTime;
+		}
+	}
+
 	private void generateFlow() { //Generate big flow diagram file for all configurations
 		if (flowDiagramManager != null) {
 			List<Configuration> configurations = ibisManager.getConfigurations();
@@ -427,11 +512,7 @@ public class IbisContext extends IbisApplicationContext {
 		} else {
 			key = configurationName;
 		}
-		MessageKeeper messageKeeper = messageKeepers.get(key);
-		if (messageKeeper == null) {
-			messageKeeper = new MessageKeeper(messageKeeperSize < 1 ? 1 : messageKeeperSize);
-			messageKeepers.put(key, messageKeeper);
-		}
+		MessageKeeper messageKeeper = messageKeepers.computeIfAbsent(key, k -> new MessageKeeper(messageKeeperSize < 1 ? 1 : messageKeeperSize));
 		String m;
 		String version;
 		if (configurationName != null) {
@@ -175,7 +175,7 @@ public class Adapter implements IAdapter, NamedBean {
 		configurationSucceeded = false;
 		log.debug("configuring adapter [" + getName() + "]");
 		messageKeeper = getMessageKeeper();
-		statsMessageProcessingDuration = new StatisticsKeeper(getName());
+		statsMessageProcessingDuration = StatisticsKeeper.createDurationStatisticsKeeper(getName());
 		if (pipeline == null) {
 			String msg = "No pipeline configured for adapter [" + getName() + "]";
 			messageKeeper.add(msg, MessageKeeperLevel.ERROR);
@@ -285,11 +285,10 @@ public class Adapter implements IAdapter, NamedBean {
 	/**
 	 * Decrease the number of messages in process
 	 */
-	private synchronized void decNumOfMessagesInProcess(long duration, boolean processingSuccess) {
+	private synchronized void decNumOfMessagesInProcess(boolean processingSuccess) {
 		synchronized (statsMessageProcessingDuration) {
 			numOfMessagesInProcess--;
 			numOfMessagesProcessed.increase();
-			statsMessageProcessingDuration.addValue(duration);
 			if (processingSuccess) {
 				lastMessageProcessingState = PROCESS_STATE_OK;
 			} else {
@@ -604,6 +603,7 @@ public class Adapter implements IAdapter, NamedBean {
 		PipeLineResult result = new PipeLineResult();
 
 		long startTime = System.currentTimeMillis();
+		long startTimeNanos = System.nanoTime();
 		boolean processingSuccess = true;
 		// prevent executing a stopped adapter
 		// the receivers should implement this, but you never now....
@@ -690,8 +690,10 @@ public class Adapter implements IAdapter, NamedBean {
 		} finally {
 			long endTime = System.currentTimeMillis();
 			long duration = endTime - startTime;
+			// the duration statistics are updated outside the lock of the adapter, they take care of concurrent updates themselves
+			statsMessageProcessingDuration.addNanoValue(System.nanoTime() - startTimeNanos);
 			//reset the InProcess fields, and increase processedMessagesCount
-			decNumOfMessagesInProcess(duration, processingSuccess);
+			decNumOfMessagesInProcess(processingSuccess);
 	
 			if (log.isDebugEnabled()) { // for performance reasons
 				log.debug("Adapter: [" + getName()
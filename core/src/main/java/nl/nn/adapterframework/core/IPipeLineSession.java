@@ -75,4 +75,14 @@ public interface IPipeLineSession extends Map<String,Object> {
 
 	public Principal getPrincipal();
 
+	/**
+	 * Registers a resource, like the temporary file of a preserved message, to be closed by {@link #closeAll()} at the end of the session.
+	 */
+	public void scheduleCloseOnSessionExit(AutoCloseable resource);
+
+	/**
+	 * Closes the resources that have been scheduled by {@link #scheduleCloseOnSessionExit(AutoCloseable)}.
+	 */
+	public void closeAll();
+
 }
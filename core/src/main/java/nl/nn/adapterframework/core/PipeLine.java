@@ -182,7 +182,7 @@ public class PipeLine implements ICacheEnabled<String,String>, HasStatistics, IT
 		pipesByName.put(name, pipe);
 		pipes.add(pipe);
 		if (pipe.getMaxThreads() > 0) {
-			pipeWaitingStatistics.put(name, new StatisticsKeeper(name));
+			pipeWaitingStatistics.put(name, StatisticsKeeper.createDurationStatisticsKeeper(name));
 		}
 		log.debug("added pipe [" + pipe.toString() + "]");
 		if (!isForceFixedForwarding())
@@ -390,10 +390,10 @@ public class PipeLine implements ICacheEnabled<String,String>, HasStatistics, IT
 					configure(messageSendingPipe.getOutputWrapper());
 				}
 				if (messageSendingPipe.getMessageLog() != null) {
-					pipeStatistics.put(messageSendingPipe.getMessageLog().getName(), new StatisticsKeeper(messageSendingPipe.getMessageLog().getName()));
+					pipeStatistics.put(messageSendingPipe.getMessageLog().getName(), StatisticsKeeper.createDurationStatisticsKeeper(messageSendingPipe.getMessageLog().getName()));
 				}
 			}
-			pipeStatistics.put(pipe.getName(), new StatisticsKeeper(pipe.getName()));
+			pipeStatistics.put(pipe.getName(), StatisticsKeeper.createDurationStatisticsKeeper(pipe.getName()));
 			//congestionSensors.addSensor(pipe);
 		} catch (Throwable t) {
 			throw new ConfigurationException("Exception configuring "+ ClassUtils.nameOf(pipe) +" ["+pipe.getName()+"]",t);
@@ -471,6 +471,9 @@ public class PipeLine implements ICacheEnabled<String,String>, HasStatistics, IT
 			}
 		}
 		hski.closeGroup(sizeStatsData);
+		if (cache instanceof HasStatistics) {
+			((HasStatistics)cache).iterateOverStatistics(hski, data, action);
+		}
 	}
 
 	private void handlePipeStat(INamedObject pipe, Map<String, StatisticsKeeper> pipelineStatistics, Object pipeStatsData, StatisticsKeeperIterationHandler handler, boolean deep, int action) throws SenderException {
@@ -16,13 +16,17 @@
 package nl.nn.adapterframework.core;
 
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import nl.nn.adapterframework.util.DateUtils;
+import nl.nn.adapterframework.util.LogUtil;
 
 import org.apache.commons.lang.NotImplementedException;
+import org.apache.logging.log4j.Logger;
 
 
 /**
@@ -33,7 +37,10 @@ import org.apache.commons.lang.NotImplementedException;
  */
 public class PipeLineSessionBase extends HashMap<String,Object> implements IPipeLineSession {
 
+	private static final Logger log = LogUtil.getLogger(PipeLineSessionBase.class);
+
 	private ISecurityHandler securityHandler = null;
+	private transient List<AutoCloseable> closeables = null;
 
 	public PipeLineSessionBase() {
 		super();
@@ -110,6 +117,32 @@ public class PipeLineSessionBase extends HashMap<String,Object> implements IPipe
 		return handler.getPrincipal(this);
 	}
 
+	@Override
+	public synchronized void scheduleCloseOnSessionExit(AutoCloseable resource) {
+		if (closeables==null) {
+			closeables = new ArrayList<AutoCloseable>();
+		}
+		closeables.add(resource);
+	}
+
+	@Override
+	public void closeAll() {
+		List<AutoCloseable> closing;
+		synchronized (this) {
+			closing = closeables;
+			closeables = null;
+		}
+		if (closing!=null) {
+			for (AutoCloseable resource: closing) {
+				try {
+					resource.close();
+				} catch (Exception e) {
+					log.warn("cannot close resource ["+resource+"] at end of session", e);
+				}
+			}
+		}
+	}
+
 	private String getString(String key) {
 		try {
 			return (String) get(key);
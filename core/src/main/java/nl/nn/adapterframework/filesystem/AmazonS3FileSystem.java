@@ -15,11 +15,6 @@
 */
 package nl.nn.adapterframework.filesystem;
 
-import java.io.BufferedOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.DirectoryStream;
@@ -30,8 +25,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.ClientConfiguration;
@@ -66,6 +61,9 @@ public class AmazonS3FileSystem extends FileSystemBase<S3Object> implements IWri
 	public static final List<String> STORAGE_CLASSES = getStorageClasses();
 	public static final List<String> TIERS = getTiers();
 
+	/** Minimum size of a part of a multipart upload, except for the last part */
+	public static final int MIN_PART_SIZE = 5*1024*1024;
+
 	private String accessKey;
 	private String secretKey;
 	private String authAlias;
@@ -89,7 +87,15 @@ public class AmazonS3FileSystem extends FileSystemBase<S3Object> implements IWri
 	
 	private String proxyHost = null;
 	private Integer proxyPort = null;
-	
+
+	private int partSize = 8*1024*1024;
+	private int maxConcurrentParts = 4;
+	private int maxPartRetries = 3;
+	private int maxTransferThreads = 10;
+	private boolean parallelDownloadEnabled = false;
+
+	private ThreadPoolTaskExecutor transferExecutor;
+
 	@Override
 	public void configure() throws ConfigurationException {
 
@@ -101,6 +107,12 @@ public class AmazonS3FileSystem extends FileSystemBase<S3Object> implements IWri
 
 		if (StringUtils.isEmpty(getBucketName()) || !BucketNameUtils.isValidV2BucketName(getBucketName()))
 			throw new ConfigurationException(" invalid or empty bucketName [" + getBucketName() + "] please visit AWS to see correct bucket naming");
+
+		if (getPartSize() < MIN_PART_SIZE)
+			throw new ConfigurationException(" partSize [" + getPartSize() + "] must be at least [" + MIN_PART_SIZE + "]");
+
+		if (getMaxConcurrentParts() < 1 || getMaxTransferThreads() < 1)
+			throw new ConfigurationException(" maxConcurrentParts [" + getMaxConcurrentParts() + "] and maxTransferThreads [" + getMaxTransferThreads() + "] must be at least 1");
 	}
 
 	@Override
@@ -113,12 +125,31 @@ public class AmazonS3FileSystem extends FileSystemBase<S3Object> implements IWri
 				.withCredentials(new AWSStaticCredentialsProvider(awsCreds))
 				.withClientConfiguration(this.getProxyConfig());
 		s3Client = s3ClientBuilder.build();
+		transferExecutor = createTransferExecutor();
 		super.open();
 	}
 
+	/**
+	 * Creates the pool of threads that upload and download the parts of large files.
+	 */
+	protected ThreadPoolTaskExecutor createTransferExecutor() {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(getMaxTransferThreads());
+		executor.setMaxPoolSize(getMaxTransferThreads());
+		executor.setAllowCoreThreadTimeOut(true);
+		executor.setThreadNamePrefix("AmazonS3FileSystem["+getBucketName()+"]-");
+		executor.setDaemon(true);
+		executor.initialize();
+		return executor;
+	}
+
 	@Override
 	public void close() throws FileSystemException {
 		super.close();
+		if (transferExecutor != null) {
+			transferExecutor.shutdown();
+			transferExecutor = null;
+		}
 		if(s3Client != null) {
 			s3Client.shutdown();
 		}
@@ -192,34 +223,13 @@ public class AmazonS3FileSystem extends FileSystemBase<S3Object> implements IWri
 		return s3Client.doesObjectExist(bucketName, f.getKey());
 	}
 
+	/**
+	 * Returns a stream that uploads the file while it is being written, in parts of <code>partSize</code> bytes.
+	 * The file is created when the stream is closed.
+	 */
 	@Override
 	public OutputStream createFile(final S3Object f) throws FileSystemException, IOException {
-		String fileName = FileUtils.getTempDirectory().getAbsolutePath() + "tempFile";
-
-		final File file = new File(fileName);
-		final FileOutputStream fos = new FileOutputStream(file);
-		final BufferedOutputStream bos = new BufferedOutputStream(fos);
-
-		FilterOutputStream filterOutputStream = new FilterOutputStream(bos) {
-			boolean isClosed = false;
-			@Override
-			public void close() throws IOException {
-				super.close();
-				bos.close();
-				if(!isClosed) {
-					try (FileInputStream fis = new FileInputStream(file)) {
-						ObjectMetadata metaData = new ObjectMetadata();
-						metaData.setContentLength(file.length());
-	
-						s3Client.putObject(bucketName, f.getKey(), fis, metaData);
-					} finally {
-						file.delete();
-						isClosed = true;
-					}
-				}
-			}
-		};
-		return filterOutputStream;
+		return new S3MultipartOutputStream(s3Client, bucketName, f.getKey(), getPartSize(), getMaxConcurrentParts(), getMaxPartRetries(), transferExecutor);
 	}
 
 	@Override
@@ -231,6 +241,12 @@ public class AmazonS3FileSystem extends FileSystemBase<S3Object> implements IWri
 	@Override
 	public Message readFile(S3Object f) throws FileSystemException, IOException {
 		try {
+			if (isParallelDownloadEnabled()) {
+				ObjectMetadata metadata = s3Client.getObjectMetadata(bucketName, f.getKey());
+				if (metadata.getContentLength() > getPartSize()) {
+					return new Message(new S3RangedInputStream(s3Client, bucketName, f.getKey(), metadata.getETag(), metadata.getContentLength(), getPartSize(), getMaxConcurrentParts(), getMaxPartRetries(), transferExecutor));
+				}
+			}
 			final S3Object file = s3Client.getObject(bucketName, f.getKey());
 			final S3ObjectInputStream is = file.getObjectContent();
 
@@ -658,4 +674,44 @@ public class AmazonS3FileSystem extends FileSystemBase<S3Object> implements IWri
 		this.proxyPort = proxyPort;
 	}
 
+	public int getPartSize() {
+		return partSize;
+	}
+
+	public void setPartSize(int partSize) {
+		this.partSize = partSize;
+	}
+
+	public int getMaxConcurrentParts() {
+		return maxConcurrentParts;
+	}
+
+	public void setMaxConcurrentParts(int maxConcurrentParts) {
+		this.maxConcurrentParts = maxConcurrentParts;
+	}
+
+	public int getMaxPartRetries() {
+		return maxPartRetries;
+	}
+
+	public void setMaxPartRetries(int maxPartRetries) {
+		this.maxPartRetries = maxPartRetries;
+	}
+
+	public int getMaxTransferThreads() {
+		return maxTransferThreads;
+	}
+
+	public void setMaxTransferThreads(int maxTransferThreads) {
+		this.maxTransferThreads = maxTransferThreads;
+	}
+
+	public boolean isParallelDownloadEnabled() {
+		return parallelDownloadEnabled;
+	}
+
+	public void setParallelDownloadEnabled(boolean parallelDownloadEnabled) {
+		this.parallelDownloadEnabled = parallelDownloadEnabled;
+	}
+
 }
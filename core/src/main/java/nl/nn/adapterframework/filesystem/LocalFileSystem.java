@@ -81,21 +81,28 @@ public class LocalFileSystem extends FileSystemBase<Path> implements IWritableFi
 	public DirectoryStream<Path> listFiles(String folder) throws FileSystemException {
 		final Path dir = toFile(folder);
 
+		DirectoryStream.Filter<Path> filter = createFileFilter(dir);
+		try {
+			return Files.newDirectoryStream(dir, filter);
+		} catch (IOException e) {
+			throw new FileSystemException("Cannot list files in ["+folder+"]", e);
+		}
+	}
+
+	/**
+	 * Creates a filter that accepts the files in <code>dir</code> that are listed by {@link #listFiles(String)}.
+	 */
+	DirectoryStream.Filter<Path> createFileFilter(final Path dir) {
 		final WildCardFilter wildcardfilter =  StringUtils.isEmpty(getWildcard()) ? null : new WildCardFilter(getWildcard());
 		final WildCardFilter excludeFilter =  StringUtils.isEmpty(getExcludeWildcard()) ? null : new WildCardFilter(getExcludeWildcard());
 
-		DirectoryStream.Filter<Path> filter = new DirectoryStream.Filter<Path>() {
+		return new DirectoryStream.Filter<Path>() {
 			public boolean accept(Path file) throws IOException {
 				return !Files.isDirectory(file) 
 						&& (wildcardfilter==null || wildcardfilter.accept(dir.toFile(), file.getFileName().toString()))
 						&& (excludeFilter==null || !excludeFilter.accept(dir.toFile(), file.getFileName().toString()));
 			}
 		};
-		try {
-			return Files.newDirectoryStream(dir, filter);
-		} catch (IOException e) {
-			throw new FileSystemException("Cannot list files in ["+folder+"]", e);
-		}
 	}
 
 	@Override
@@ -0,0 +1,210 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.filesystem;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Logger;
+
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Keeps a bounded queue of candidate files in a folder of a {@link LocalFileSystem}, that is filled by a {@link WatchService}.
+ * <p>
+ * The folder is scanned completely once at startup. After that, only files that are created or modified are added to the queue,
+ * so finding a file no longer requires listing the folder. When the WatchService reports an overflow, or when the queue is
+ * full, events may have been lost, and the folder is scanned again as soon as there is room in the queue.
+ * <p>
+ * The queue only holds candidates: files taken from it may have been removed or claimed by another thread in the meantime.
+ */
+public class LocalFolderWatcher {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private final LocalFileSystem fileSystem;
+	private final String folderName;
+	private final Path folder;
+	private final int maxQueueSize;
+	private final String name;
+
+	private final BlockingQueue<Path> queue;
+	private final Set<Path> queued = ConcurrentHashMap.newKeySet();
+	private volatile boolean rescanNeeded = true;
+	private volatile boolean running;
+	private WatchService watchService;
+	private Thread watcherThread;
+
+	public LocalFolderWatcher(LocalFileSystem fileSystem, String folderName, int maxQueueSize, String name) {
+		this.fileSystem = fileSystem;
+		this.folderName = folderName;
+		this.folder = fileSystem.toFile(folderName);
+		this.maxQueueSize = maxQueueSize;
+		this.name = name;
+		queue = new LinkedBlockingQueue<Path>(maxQueueSize);
+	}
+
+	public synchronized void start() throws FileSystemException {
+		try {
+			watchService = folder.getFileSystem().newWatchService();
+			// register before the initial scan, so no files are missed that are created during the scan
+			folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		} catch (IOException e) {
+			throw new FileSystemException("Cannot watch folder ["+folder+"]", e);
+		}
+		rescan();
+		running = true;
+		watcherThread = new Thread(new Watcher(), "LocalFolderWatcher["+name+"]");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+	}
+
+	public synchronized void close() {
+		running = false;
+		if (watchService!=null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				log.warn(getLogPrefix()+"exception closing WatchService", e);
+			}
+			watchService = null;
+		}
+		if (watcherThread!=null) {
+			watcherThread.interrupt();
+			watcherThread = null;
+		}
+		queue.clear();
+		queued.clear();
+	}
+
+	/**
+	 * Returns the next candidate file, or <code>null</code> if there is none.
+	 */
+	public Path poll() {
+		Path file = queue.poll();
+		if (file!=null) {
+			queued.remove(file);
+		}
+		return file;
+	}
+
+	/**
+	 * Puts a file back in the queue, e.g. because it is not yet stable.
+	 */
+	public void requeue(Path file) {
+		offer(file);
+	}
+
+	/**
+	 * Returns <code>false</code> when the folder is no longer watched, e.g. because it has been removed.
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	public int getQueueSize() {
+		return queue.size();
+	}
+
+	private void offer(Path file) {
+		if (queued.add(file)) {
+			if (!queue.offer(file)) {
+				queued.remove(file);
+				if (!rescanNeeded) {
+					log.info(getLogPrefix()+"queue of candidate files is full, folder will be scanned when there is room");
+					rescanNeeded = true;
+				}
+			}
+		}
+	}
+
+	private void rescan() throws FileSystemException {
+		rescanNeeded = false;
+		if (log.isDebugEnabled()) log.debug(getLogPrefix()+"scanning folder ["+folder+"]");
+		try (DirectoryStream<Path> ds = fileSystem.listFiles(folderName)) {
+			for (Path file : ds) {
+				offer(file);
+				if (rescanNeeded) {
+					break; // queue is full, the remainder will be found at the next scan
+				}
+			}
+		} catch (IOException e) {
+			rescanNeeded = true;
+			throw new FileSystemException("Cannot scan folder ["+folder+"]", e);
+		}
+	}
+
+	private class Watcher implements Runnable {
+
+		@Override
+		public void run() {
+			DirectoryStream.Filter<Path> filter = fileSystem.createFileFilter(folder);
+			WatchService ws = watchService;
+			while (running) {
+				try {
+					if (rescanNeeded && queue.size() < maxQueueSize/2) {
+						try {
+							rescan();
+						} catch (FileSystemException e) {
+							log.warn(getLogPrefix()+"exception scanning folder, will retry", e);
+						}
+					}
+					WatchKey key = ws.poll(1, TimeUnit.SECONDS);
+					if (key==null) {
+						continue;
+					}
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind()==StandardWatchEventKinds.OVERFLOW) {
+							log.info(getLogPrefix()+"WatchService reported overflow, folder will be scanned");
+							rescanNeeded = true;
+							continue;
+						}
+						Path file = folder.resolve((Path)event.context());
+						if (filter.accept(file)) {
+							offer(file);
+						}
+					}
+					if (!key.reset()) {
+						log.warn(getLogPrefix()+"folder ["+folder+"] can no longer be watched, stopping");
+						running = false;
+					}
+				} catch (InterruptedException | ClosedWatchServiceException e) {
+					if (running) {
+						log.warn(getLogPrefix()+"watcher stopped unexpectedly", e);
+					}
+					return;
+				} catch (Exception e) {
+					log.warn(getLogPrefix()+"exception watching folder ["+folder+"]", e);
+					rescanNeeded = true;
+				}
+			}
+		}
+	}
+
+	protected String getLogPrefix() {
+		return "LocalFolderWatcher ["+name+"] ";
+	}
+}
@@ -0,0 +1,237 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.filesystem;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * OutputStream that uploads its contents to Amazon S3 using a multipart upload, while it is being written.
+ * <p>
+ * Each time <code>partSize</code> bytes have been written, the part is uploaded on the executor. At most
+ * <code>maxConcurrentParts</code> parts are uploaded at the same time; further writes block until an upload
+ * has finished, so the memory used is bounded. A part that fails is retried up to <code>maxPartRetries</code>
+ * times. When a part cannot be uploaded, the multipart upload is aborted.
+ * Contents that fit in a single part are uploaded with a single putObject when the stream is closed.
+ */
+class S3MultipartOutputStream extends OutputStream {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private final AmazonS3 s3Client;
+	private final String bucketName;
+	private final String key;
+	private final int partSize;
+	private final int maxPartRetries;
+	private final AsyncTaskExecutor executor;
+	private final Semaphore partsInProgress;
+
+	private byte[] buffer;
+	private int position;
+	private String uploadId;
+	private final List<Future<PartETag>> parts = new ArrayList<>();
+	private int checkedParts;
+	private boolean closed;
+
+	S3MultipartOutputStream(AmazonS3 s3Client, String bucketName, String key, int partSize, int maxConcurrentParts, int maxPartRetries, AsyncTaskExecutor executor) {
+		this.s3Client = s3Client;
+		this.bucketName = bucketName;
+		this.key = key;
+		this.partSize = partSize;
+		this.maxPartRetries = maxPartRetries;
+		this.executor = executor;
+		this.partsInProgress = new Semaphore(maxConcurrentParts);
+		this.buffer = new byte[partSize];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		checkOpen();
+		if (position==buffer.length) {
+			submitPart();
+		}
+		buffer[position++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		checkOpen();
+		while (len>0) {
+			if (position==buffer.length) {
+				submitPart();
+			}
+			int count = Math.min(len, buffer.length-position);
+			System.arraycopy(b, off, buffer, position, count);
+			position += count;
+			off += count;
+			len -= count;
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (closed) {
+			throw new IOException("stream to ["+key+"] is already closed");
+		}
+	}
+
+	private void submitPart() throws IOException {
+		try {
+			if (uploadId==null) {
+				uploadId = s3Client.initiateMultipartUpload(new InitiateMultipartUploadRequest(bucketName, key)).getUploadId();
+				log.debug("initiated multipart upload ["+uploadId+"] of ["+key+"]");
+			}
+			// fail early when an upload of a previous part has failed
+			while (checkedParts<parts.size() && parts.get(checkedParts).isDone()) {
+				getPart(parts.get(checkedParts++));
+			}
+			partsInProgress.acquire();
+			final byte[] data = buffer;
+			final int length = position;
+			final int partNumber = parts.size()+1;
+			try {
+				parts.add(executor.submit(() -> {
+					try {
+						return uploadPart(partNumber, data, length);
+					} finally {
+						partsInProgress.release();
+					}
+				}));
+			} catch (RuntimeException e) {
+				partsInProgress.release();
+				throw e;
+			}
+			buffer = new byte[partSize];
+			position = 0;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			abort();
+			throw new InterruptedIOException("interrupted while uploading ["+key+"]");
+		} catch (SdkClientException e) {
+			abort();
+			throw new IOException("cannot upload part of ["+key+"]", e);
+		} catch (IOException | RuntimeException e) {
+			abort();
+			throw e;
+		}
+	}
+
+	private PartETag uploadPart(int partNumber, byte[] data, int length) {
+		for (int attempt=1;;attempt++) {
+			try {
+				UploadPartRequest request = new UploadPartRequest()
+						.withBucketName(bucketName)
+						.withKey(key)
+						.withUploadId(uploadId)
+						.withPartNumber(partNumber)
+						.withInputStream(new ByteArrayInputStream(data, 0, length))
+						.withPartSize(length);
+				return s3Client.uploadPart(request).getPartETag();
+			} catch (SdkClientException e) {
+				if (attempt>maxPartRetries) {
+					throw e;
+				}
+				log.warn("upload of part ["+partNumber+"] of ["+key+"] failed, attempt ["+attempt+"] of ["+(maxPartRetries+1)+"]", e);
+			}
+		}
+	}
+
+	private PartETag getPart(Future<PartETag> part) throws IOException, InterruptedException {
+		try {
+			return part.get();
+		} catch (ExecutionException e) {
+			throw new IOException("cannot upload part of ["+key+"]", e.getCause());
+		}
+	}
+
+	private void abort() {
+		closed = true;
+		buffer = null;
+		for (Future<PartETag> part: parts) {
+			part.cancel(true);
+		}
+		if (uploadId!=null) {
+			log.warn("aborting multipart upload ["+uploadId+"] of ["+key+"]");
+			try {
+				s3Client.abortMultipartUpload(new AbortMultipartUploadRequest(bucketName, key, uploadId));
+			} catch (SdkClientException e) {
+				log.warn("cannot abort multipart upload ["+uploadId+"] of ["+key+"]", e);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		if (uploadId==null) {
+			closed = true;
+			ObjectMetadata metadata = new ObjectMetadata();
+			metadata.setContentLength(position);
+			try {
+				s3Client.putObject(bucketName, key, new ByteArrayInputStream(buffer, 0, position), metadata);
+			} catch (SdkClientException e) {
+				throw new IOException("cannot upload ["+key+"]", e);
+			} finally {
+				buffer = null;
+			}
+			return;
+		}
+		if (position>0) {
+			submitPart();
+		}
+		try {
+			List<PartETag> partETags = new ArrayList<>();
+			for (Future<PartETag> part: parts) {
+				partETags.add(getPart(part));
+			}
+			s3Client.completeMultipartUpload(new CompleteMultipartUploadRequest(bucketName, key, uploadId, partETags));
+			log.debug("completed multipart upload ["+uploadId+"] of ["+key+"] in ["+partETags.size()+"] parts");
+			closed = true;
+			buffer = null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			abort();
+			throw new InterruptedIOException("interrupted while uploading ["+key+"]");
+		} catch (IOException e) {
+			abort();
+			throw e;
+		} catch (SdkClientException e) {
+			abort();
+			throw new IOException("cannot complete multipart upload of ["+key+"]", e);
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.filesystem;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.Logger;
+import org.springframework.core.task.AsyncTaskExecutor;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
+
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * InputStream that downloads an object from Amazon S3 in ranges of <code>partSize</code> bytes, of which
+ * <code>maxConcurrentParts</code> are downloaded concurrently, ahead of the position that is being read.
+ * A range that fails is retried up to <code>maxPartRetries</code> times. The ranges are requested with the
+ * ETag of the object, so that a change of the object while it is being read results in an IOException.
+ */
+class S3RangedInputStream extends InputStream {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private final AmazonS3 s3Client;
+	private final String bucketName;
+	private final String key;
+	private final String eTag;
+	private final long size;
+	private final int partSize;
+	private final int maxConcurrentParts;
+	private final int maxPartRetries;
+	private final AsyncTaskExecutor executor;
+
+	private final Deque<Future<byte[]>> parts = new ArrayDeque<>();
+	private long nextOffset;
+	private byte[] current;
+	private int position;
+	private boolean closed;
+
+	S3RangedInputStream(AmazonS3 s3Client, String bucketName, String key, String eTag, long size, int partSize, int maxConcurrentParts, int maxPartRetries, AsyncTaskExecutor executor) {
+		this.s3Client = s3Client;
+		this.bucketName = bucketName;
+		this.key = key;
+		this.eTag = eTag;
+		this.size = size;
+		this.partSize = partSize;
+		this.maxConcurrentParts = maxConcurrentParts;
+		this.maxPartRetries = maxPartRetries;
+		this.executor = executor;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!available(true)) {
+			return -1;
+		}
+		return current[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len==0) {
+			return 0;
+		}
+		if (!available(true)) {
+			return -1;
+		}
+		int count = Math.min(len, current.length-position);
+		System.arraycopy(current, position, b, off, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return available(false) ? current.length-position : 0;
+	}
+
+	/*
+	 * Returns true when there are bytes left in the current part, waiting for the next part if wait==true.
+	 */
+	private boolean available(boolean wait) throws IOException {
+		if (closed) {
+			throw new IOException("stream of ["+key+"] is already closed");
+		}
+		if (current!=null && position<current.length) {
+			return true;
+		}
+		requestParts();
+		Future<byte[]> part = parts.peek();
+		if (part==null || !wait && !part.isDone()) {
+			return false;
+		}
+		parts.poll();
+		try {
+			current = part.get();
+			position = 0;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while downloading ["+key+"]");
+		} catch (ExecutionException e) {
+			throw new IOException("cannot download part of ["+key+"]", e.getCause());
+		}
+		requestParts();
+		return current.length>0;
+	}
+
+	private void requestParts() {
+		while (parts.size()<maxConcurrentParts && nextOffset<size) {
+			final long start = nextOffset;
+			final long end = Math.min(start+partSize, size)-1;
+			parts.add(executor.submit(() -> downloadPart(start, end)));
+			nextOffset = end+1;
+		}
+	}
+
+	private byte[] downloadPart(long start, long end) throws IOException {
+		for (int attempt=1;;attempt++) {
+			GetObjectRequest request = new GetObjectRequest(bucketName, key).withRange(start, end);
+			if (eTag!=null) {
+				request.withMatchingETagConstraint(eTag);
+			}
+			try {
+				S3Object object = s3Client.getObject(request);
+				if (object==null) {
+					// no retry, the ETag constraint is not met
+					throw new IllegalStateException("object ["+key+"] has changed while it was being read");
+				}
+				try (S3Object closeable = object) {
+					byte[] data = new byte[(int)(end-start+1)];
+					IOUtils.readFully(object.getObjectContent(), data);
+					return data;
+				}
+			} catch (SdkClientException | IOException e) {
+				if (attempt>maxPartRetries) {
+					throw e;
+				}
+				log.warn("download of range ["+start+"-"+end+"] of ["+key+"] failed, attempt ["+attempt+"] of ["+(maxPartRetries+1)+"]", e);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		closed = true;
+		current = null;
+		for (Future<byte[]> part: parts) {
+			part.cancel(true);
+		}
+		parts.clear();
+	}
+}
@@ -0,0 +1,294 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.ftp;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.pool2.BaseKeyedPooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+import org.apache.logging.log4j.Logger;
+
+import com.sshtools.j2ssh.SftpClient;
+import com.sshtools.j2ssh.SshClient;
+
+import lombok.Getter;
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Pool of authenticated FTP, FTPS and SFTP connections, keyed by host, user and the other connection settings of a {@link FtpSession}.
+ * Reusing connections saves the TCP connect, the SSH key exchange or TLS handshake and the login for every file transferred.
+ * Connections are not kept per remote directory; the directory is changed when a connection is borrowed.
+ * <p>
+ * The pool is shared by all FtpSessions with usePooledConnections=true, and is configured by the following properties:
+ * <ul>
+ * <li><code>ftp.connectionPool.maxPerHost</code>: maximum number of connections per host and user</li>
+ * <li><code>ftp.connectionPool.maxWait</code>: maximum time in ms to wait for a connection when the maximum has been reached</li>
+ * <li><code>ftp.connectionPool.idleTimeout</code>: time in ms after which idle connections are closed</li>
+ * </ul>
+ * Connections are checked before they are borrowed, and while they are idle. The key of a connection includes a hash of the credentials
+ * it has been authenticated with. Idle connections are closed when a configuration is unloaded, and the pool is closed when the
+ * application shuts down.
+ */
+public class FtpConnectionPool {
+	protected static Logger log = LogUtil.getLogger(FtpConnectionPool.class);
+
+	private static FtpConnectionPool instance;
+
+	private final GenericKeyedObjectPool<ConnectionKey, FtpConnection> pool;
+
+	public static synchronized FtpConnectionPool getInstance() {
+		if (instance==null) {
+			instance = new FtpConnectionPool();
+		}
+		return instance;
+	}
+
+	/**
+	 * Closes the pool and all its connections, when it has been created.
+	 */
+	public static synchronized void shutdown() {
+		if (instance!=null) {
+			log.debug("closing ftp connection pool");
+			instance.pool.close();
+			instance=null;
+		}
+	}
+
+	/**
+	 * Closes the idle connections, for instance when the configuration that used them is unloaded.
+	 */
+	public static synchronized void closeIdleConnections() {
+		if (instance!=null) {
+			instance.pool.clear();
+		}
+	}
+
+	private FtpConnectionPool() {
+		AppConstants appConstants = AppConstants.getInstance();
+		GenericKeyedObjectPoolConfig<FtpConnection> config = new GenericKeyedObjectPoolConfig<FtpConnection>();
+		config.setMaxTotalPerKey(appConstants.getInt("ftp.connectionPool.maxPerHost", 4));
+		config.setMaxIdlePerKey(appConstants.getInt("ftp.connectionPool.maxPerHost", 4));
+		config.setMaxTotal(-1);
+		config.setMaxWaitMillis(appConstants.getLong("ftp.connectionPool.maxWait", 30000));
+		long idleTimeout = appConstants.getLong("ftp.connectionPool.idleTimeout", 60000);
+		config.setMinEvictableIdleTimeMillis(idleTimeout);
+		config.setTimeBetweenEvictionRunsMillis(Math.max(idleTimeout/4, 1000));
+		config.setNumTestsPerEvictionRun(-4); // check a quarter of the idle connections per run
+		config.setTestOnBorrow(true);
+		config.setTestWhileIdle(true);
+		config.setLifo(true);
+		config.setJmxEnabled(false);
+		pool = new GenericKeyedObjectPool<ConnectionKey, FtpConnection>(new FtpConnectionFactory(), config);
+	}
+
+	/**
+	 * Borrows a connection for the settings of <code>session</code>. The connection must be returned with {@link #release(FtpConnection)},
+	 * or with {@link #invalidate(FtpConnection)} when an exception occurred while using it.
+	 */
+	public FtpConnection borrow(FtpSession session) throws FtpConnectException {
+		ConnectionKey key = new ConnectionKey(session);
+		try {
+			FtpConnection connection = pool.borrowObject(key);
+			connection.useCount++;
+			return connection;
+		} catch (FtpConnectException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new FtpConnectException("cannot obtain pooled connection to ["+session.getHost()+"]", e);
+		}
+	}
+
+	public void release(FtpConnection connection) {
+		if (connection!=null) {
+			pool.returnObject(connection.key, connection);
+		}
+	}
+
+	public void invalidate(FtpConnection connection) {
+		if (connection!=null) {
+			try {
+				pool.invalidateObject(connection.key, connection);
+			} catch (Exception e) {
+				log.warn("exception invalidating pooled connection to ["+connection.key.host+"]", e);
+			}
+		}
+	}
+
+	public int getNumActive() {
+		return pool.getNumActive();
+	}
+	public int getNumIdle() {
+		return pool.getNumIdle();
+	}
+	public long getCreatedCount() {
+		return pool.getCreatedCount();
+	}
+	public long getDestroyedByEvictorCount() {
+		return pool.getDestroyedByEvictorCount();
+	}
+
+
+	/**
+	 * Authenticated connection, either with an SshClient and SftpClient, or with an FTPClient. Only one thread at a time may use it.
+	 */
+	public static class FtpConnection {
+		private ConnectionKey key;
+		private final @Getter SshClient sshClient;
+		private final @Getter SftpClient sftpClient;
+		private final @Getter FTPClient ftpClient;
+		private final String homeDirectory;
+		private String currentDirectory = "";
+		private long useCount;
+
+		FtpConnection(SshClient sshClient, SftpClient sftpClient, String homeDirectory) {
+			this.sshClient = sshClient;
+			this.sftpClient = sftpClient;
+			this.ftpClient = null;
+			this.homeDirectory = homeDirectory;
+		}
+
+		FtpConnection(FTPClient ftpClient, String homeDirectory) {
+			this.sshClient = null;
+			this.sftpClient = null;
+			this.ftpClient = ftpClient;
+			this.homeDirectory = homeDirectory;
+		}
+
+		/**
+		 * Returns <code>true</code> when the connection has been created for the current borrower, i.e. it was not taken from the pool.
+		 */
+		public boolean isNew() {
+			return useCount<=1;
+		}
+
+		/**
+		 * Changes the working directory to <code>remoteDirectory</code>, relative to the directory after login.
+		 */
+		void changeDirectory(String remoteDirectory) throws IOException {
+			String directory = StringUtils.defaultString(remoteDirectory);
+			if (directory.equals(currentDirectory)) {
+				return;
+			}
+			currentDirectory = null; // unknown until the change has succeeded
+			if (ftpClient!=null) {
+				changeFtpDirectory(homeDirectory);
+				if (StringUtils.isNotEmpty(directory)) {
+					changeFtpDirectory(directory);
+				}
+			} else {
+				sftpClient.cd(homeDirectory);
+				if (StringUtils.isNotEmpty(directory)) {
+					sftpClient.cd(directory);
+				}
+			}
+			currentDirectory = directory;
+		}
+
+		private void changeFtpDirectory(String directory) throws IOException {
+			if (!ftpClient.changeWorkingDirectory(directory)) {
+				throw new IOException("Command [changeWorkingDirectory "+directory+"] returned error [" + ftpClient.getReplyCode() + "]: " + ftpClient.getReplyString());
+			}
+		}
+
+		boolean isValid() {
+			if (ftpClient!=null) {
+				try {
+					return ftpClient.isConnected() && ftpClient.sendNoOp();
+				} catch (IOException e) {
+					log.debug("pooled connection is no longer valid: "+e.getMessage());
+					return false;
+				}
+			}
+			return sshClient.isConnected() && !sftpClient.isClosed();
+		}
+
+		void close() {
+			if (ftpClient!=null) {
+				if (ftpClient.isConnected()) {
+					try {
+						ftpClient.quit();
+						ftpClient.disconnect();
+					} catch (IOException e) {
+						log.warn("exception closing pooled connection", e);
+					}
+				}
+			} else if (sshClient.isConnected()) {
+				sshClient.disconnect();
+			}
+		}
+	}
+
+	private static class ConnectionKey {
+		// used to create connections, not part of the key. Weak, because the pool keeps keys of idle connections, that must not keep the configuration in memory
+		private final WeakReference<FtpSession> session;
+		private final String host;
+		private final String identity;
+
+		ConnectionKey(FtpSession session) {
+			this.session = new WeakReference<FtpSession>(session);
+			this.host = session.getHost();
+			this.identity = session.getConnectionPoolKey();
+		}
+
+		@Override
+		public int hashCode() {
+			return identity.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof ConnectionKey && identity.equals(((ConnectionKey)obj).identity);
+		}
+	}
+
+	private class FtpConnectionFactory extends BaseKeyedPooledObjectFactory<ConnectionKey, FtpConnection> {
+
+		@Override
+		public FtpConnection create(ConnectionKey key) throws Exception {
+			// the key is the one passed to borrow(), the session is still referenced by the borrower
+			FtpSession session = key.session.get();
+			if (session==null) {
+				throw new FtpConnectException("session for connection to ["+key.host+"] is no longer available");
+			}
+			FtpConnection connection = session.createPooledConnection();
+			connection.key = key;
+			if (log.isDebugEnabled()) log.debug("created pooled connection to host ["+key.host+"]");
+			return connection;
+		}
+
+		@Override
+		public PooledObject<FtpConnection> wrap(FtpConnection connection) {
+			return new DefaultPooledObject<FtpConnection>(connection);
+		}
+
+		@Override
+		public boolean validateObject(ConnectionKey key, PooledObject<FtpConnection> p) {
+			return p.getObject().isValid();
+		}
+
+		@Override
+		public void destroyObject(ConnectionKey key, PooledObject<FtpConnection> p) throws Exception {
+			p.getObject().close();
+		}
+	}
+}
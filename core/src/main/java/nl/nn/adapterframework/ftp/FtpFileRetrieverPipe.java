@@ -22,8 +22,11 @@ import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.PipeForward;
 import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
+import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.pipes.FixedForwardPipe;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.stream.Message;
 
 /**
@@ -40,7 +43,7 @@ import nl.nn.adapterframework.stream.Message;
  * @author John Dekker
  * @since   4.4
  */
-public class FtpFileRetrieverPipe extends FixedForwardPipe {
+public class FtpFileRetrieverPipe extends FixedForwardPipe implements HasStatistics {
 
 	private FtpSession ftpSession;
 
@@ -332,4 +335,14 @@ public class FtpFileRetrieverPipe extends FixedForwardPipe {
 		ftpSession.setKeyboardInteractive(keyboardInteractive);
 	}
 
+	@IbisDoc({"when true, authenticated connections are borrowed from a pool that is shared by all (s)ftp senders, pipes and listeners with the same host, user and connection settings", "false"})
+	public void setUsePooledConnections(boolean usePooledConnections) {
+		ftpSession.setUsePooledConnections(usePooledConnections);
+	}
+
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		ftpSession.iterateOverStatistics(hski, data, action);
+	}
+
 }
@@ -21,6 +21,8 @@ import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.senders.SenderWithParametersBase;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.stream.Message;
 
 /**
@@ -29,7 +31,7 @@ import nl.nn.adapterframework.stream.Message;
  *  
  * @author John Dekker
  */
-public class FtpSender extends SenderWithParametersBase {
+public class FtpSender extends SenderWithParametersBase implements HasStatistics {
 
 	private FtpSession ftpSession;
 	
@@ -279,4 +281,14 @@ public class FtpSender extends SenderWithParametersBase {
 	public void setKeyboardInteractive(boolean keyboardInteractive) {
 		ftpSession.setKeyboardInteractive(keyboardInteractive);
 	}
+
+	@IbisDoc({"when true, authenticated connections are borrowed from a pool that is shared by all (s)ftp senders, pipes and listeners with the same host, user and connection settings", "false"})
+	public void setUsePooledConnections(boolean usePooledConnections) {
+		ftpSession.setUsePooledConnections(usePooledConnections);
+	}
+
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		ftpSession.iterateOverStatistics(hski, data, action);
+	}
 }
@@ -33,12 +33,19 @@ import java.util.List;
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.IConfigurable;
 import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.doc.IbisDoc;
+import nl.nn.adapterframework.ftp.FtpConnectionPool.FtpConnection;
 import nl.nn.adapterframework.parameters.ParameterList;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.util.CounterStatistic;
 import nl.nn.adapterframework.util.CredentialFactory;
 import nl.nn.adapterframework.util.FileUtils;
 import nl.nn.adapterframework.util.LogUtil;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPReply;
@@ -69,7 +76,7 @@ import lombok.Getter;
  * 
  * @author John Dekker
  */
-public class FtpSession implements IConfigurable {
+public class FtpSession implements IConfigurable, HasStatistics {
 	protected Logger log = LogUtil.getLogger(this);
 	private @Getter ClassLoader configurationClassLoader = Thread.currentThread().getContextClassLoader();
 
@@ -100,6 +107,7 @@ public class FtpSession implements IConfigurable {
 	private boolean messageIsContent=false;
 	private boolean passive=true;
 	private boolean keyboardInteractive=false;
+	private boolean usePooledConnections=false;
 	
 	// configuration property for sftp
 	private int proxyTransportType = SshConnectionProperties.USE_SOCKS5_PROXY;
@@ -130,6 +138,12 @@ public class FtpSession implements IConfigurable {
 	private SftpClient sftpClient;
 	public FTPClient ftpClient;
 
+	private String connectionPoolKey;
+	private FtpConnection pooledConnection;
+	private CounterStatistic connectionPoolHits = new CounterStatistic(0);
+	private CounterStatistic connectionPoolMisses = new CounterStatistic(0);
+	private StatisticsKeeper connectionPoolWaitStatistics;
+
 	@Override
 	public void configure() throws ConfigurationException {
 		if (StringUtils.isEmpty(ftpTypeDescription)) {
@@ -176,11 +190,39 @@ public class FtpSession implements IConfigurable {
 		catch(IOException e) {
 			throw new ConfigurationException(e);
 		}
-		
+
+		if (isUsePooledConnections()) {
+			// all settings that determine how a connection is set up, connections are only shared between sessions with the same settings
+			connectionPoolKey = StringUtils.join(new Object[] { ftpType, host, port, getAuthAlias(), username, proxyHost, proxyPort, getProxyAuthAlias(), proxyUsername,
+					fileType, passive, keyboardInteractive, proxyTransportType, prefCSEncryption, prefSCEncryption, privateKeyFilePath, getPrivateKeyAuthAlias(),
+					knownHostsPath, consoleKnownHostsVerifier, certificate, certificateAuthAlias, truststore, truststoreAuthAlias, verifyHostname,
+					allowSelfSignedCertificates, protP, getCredentialsHash() }, '|');
+			if (connectionPoolWaitStatistics==null) {
+				connectionPoolWaitStatistics = StatisticsKeeper.createDurationStatisticsKeeper("connection pool wait for "+getHost());
+			}
+		}
+	}
+
+	/*
+	 * Hash of the resolved passwords, to prevent that a session gets a connection that has been authenticated with other credentials,
+	 * without keeping the passwords themselves in the key of the pool.
+	 */
+	private String getCredentialsHash() {
+		String credentials = StringUtils.join(new Object[] {
+				new CredentialFactory(getAuthAlias(), getUsername(), getPassword()).getPassword(),
+				new CredentialFactory(getProxyAuthAlias(), getProxyUsername(), getProxyPassword()).getPassword(),
+				new CredentialFactory(getPrivateKeyAuthAlias(), getUsername(), getPrivateKeyPassword()).getPassword(),
+				new CredentialFactory(getCertificateAuthAlias(), null, getCertificatePassword()).getPassword(),
+				new CredentialFactory(getTruststoreAuthAlias(), null, getTruststorePassword()).getPassword() }, '|');
+		return DigestUtils.sha256Hex(credentials);
 	}
 
 	public void openClient(String remoteDirectory) throws FtpConnectException {
 		log.debug("Open ftp client");
+		if (isUsePooledConnections()) {
+			openPooledClient(remoteDirectory);
+			return;
+		}
 		if (ftpType == SFTP) {
 			if (sftpClient == null || sftpClient.isClosed()) {
 				openSftpClient(remoteDirectory);
@@ -193,31 +235,96 @@ public class FtpSession implements IConfigurable {
 		}
 	}
 
+	private void openPooledClient(String remoteDirectory) throws FtpConnectException {
+		if (pooledConnection==null) {
+			long t0 = System.nanoTime();
+			pooledConnection = FtpConnectionPool.getInstance().borrow(this);
+			connectionPoolWaitStatistics.addNanoValue(System.nanoTime()-t0);
+			if (pooledConnection.isNew()) {
+				connectionPoolMisses.increase();
+			} else {
+				connectionPoolHits.increase();
+			}
+			sshClient = pooledConnection.getSshClient();
+			sftpClient = pooledConnection.getSftpClient();
+			ftpClient = pooledConnection.getFtpClient();
+		}
+		try {
+			pooledConnection.changeDirectory(remoteDirectory);
+		} catch (IOException e) {
+			invalidateClient();
+			throw new FtpConnectException(e);
+		}
+	}
+
+	/**
+	 * Creates a new authenticated connection for the {@link FtpConnectionPool}, in the directory after login.
+	 */
+	FtpConnection createPooledConnection() throws Exception {
+		if (ftpType == SFTP) {
+			SshClient client = createSshClient();
+			try {
+				SftpClient sftp = client.openSftpClient();
+				return new FtpConnection(client, sftp, sftp.pwd());
+			} catch (Exception e) {
+				client.disconnect();
+				throw e;
+			}
+		}
+		FTPClient client = createConnectedFtpClient();
+		try {
+			return new FtpConnection(client, client.printWorkingDirectory());
+		} catch (Exception e) {
+			client.disconnect();
+			throw e;
+		}
+	}
+
 	private void openSftpClient(String remoteDirectory) throws FtpConnectException {
 		try {
-			// Set the connection properties and if necessary the proxy properties
-			SshConnectionProperties sshProp = new SshConnectionProperties();
-			sshProp.setHost(host);
-			sshProp.setPort(port);
-			if (StringUtils.isNotEmpty(prefCSEncryption))
-				sshProp.setPrefCSEncryption(prefCSEncryption);
-			if (StringUtils.isNotEmpty(prefSCEncryption))
-				sshProp.setPrefCSEncryption(prefSCEncryption);
-
-			if (! StringUtils.isEmpty(proxyHost)) {
-				sshProp.setTransportProvider(proxyTransportType);
-				sshProp.setProxyHost(proxyHost);
-				sshProp.setProxyPort(proxyPort);
-				CredentialFactory pcf = new CredentialFactory(getProxyAuthAlias(), proxyUsername, proxyPassword);
-
-				if (! StringUtils.isEmpty(pcf.getUsername())) {
-					sshProp.setProxyUsername(pcf.getUsername());
-					sshProp.setProxyPassword(pcf.getPassword());
-				}
+			sshClient = createSshClient();
+
+			// use the connection for sftp
+			sftpClient = sshClient.openSftpClient();
+			
+			if (! StringUtils.isEmpty(remoteDirectory)) {
+				sftpClient.cd(remoteDirectory);
+			}
+		}
+		catch(Exception e) {
+			closeSftpClient();
+			throw new FtpConnectException(e);
+		}
+	}
+
+	/**
+	 * Creates an SshClient that is connected to the host and authenticated.
+	 */
+	private SshClient createSshClient() throws Exception {
+		// Set the connection properties and if necessary the proxy properties
+		SshConnectionProperties sshProp = new SshConnectionProperties();
+		sshProp.setHost(host);
+		sshProp.setPort(port);
+		if (StringUtils.isNotEmpty(prefCSEncryption))
+			sshProp.setPrefCSEncryption(prefCSEncryption);
+		if (StringUtils.isNotEmpty(prefSCEncryption))
+			sshProp.setPrefCSEncryption(prefSCEncryption);
+
+		if (! StringUtils.isEmpty(proxyHost)) {
+			sshProp.setTransportProvider(proxyTransportType);
+			sshProp.setProxyHost(proxyHost);
+			sshProp.setProxyPort(proxyPort);
+			CredentialFactory pcf = new CredentialFactory(getProxyAuthAlias(), proxyUsername, proxyPassword);
+
+			if (! StringUtils.isEmpty(pcf.getUsername())) {
+				sshProp.setProxyUsername(pcf.getUsername());
+				sshProp.setProxyPassword(pcf.getPassword());
 			}
+		}
 
-			// make a secure connection with the remote host 
-			sshClient = new SshClient();
+		// make a secure connection with the remote host 
+		SshClient sshClient = new SshClient();
+		try {
 			if (StringUtils.isNotEmpty(knownHostsPath)) {
 				AbstractKnownHostsKeyVerification hv = null;
 				if (consoleKnownHostsVerifier) { 
@@ -262,20 +369,15 @@ public class FtpSession implements IConfigurable {
 			int result = sshClient.authenticate(sac);
 			
 			if (result != AuthenticationProtocolState.COMPLETE) {
-				closeSftpClient();
 				throw new IOException("Could not authenticate to sftp server " + result);
 			}
-			
-			// use the connection for sftp
-			sftpClient = sshClient.openSftpClient();
-			
-			if (! StringUtils.isEmpty(remoteDirectory)) {
-				sftpClient.cd(remoteDirectory);
-			}
+			return sshClient;
 		}
 		catch(Exception e) {
-			closeSftpClient();
-			throw new FtpConnectException(e);
+			if (sshClient.isConnected()) {
+				sshClient.disconnect();
+			}
+			throw e;
 		}
 	}
 
@@ -301,44 +403,64 @@ public class FtpSession implements IConfigurable {
 
 	
 	protected void checkReply(String cmd) throws IOException  {
-		if (!FTPReply.isPositiveCompletion(ftpClient.getReplyCode())) {
-			throw new IOException("Command [" + cmd + "] returned error [" + ftpClient.getReplyCode() + "]: " + ftpClient.getReplyString());
+		checkReply(ftpClient, cmd);
+	}
+
+	private void checkReply(FTPClient client, String cmd) throws IOException  {
+		if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
+			throw new IOException("Command [" + cmd + "] returned error [" + client.getReplyCode() + "]: " + client.getReplyString());
 		} 
-		if (log.isDebugEnabled()) log.debug("Command [" + cmd + "] returned " + ftpClient.getReplyString());
+		if (log.isDebugEnabled()) log.debug("Command [" + cmd + "] returned " + client.getReplyString());
 	}
 	
 
 	private void openFtpClient(String remoteDirectory) throws FtpConnectException {
 		try {
-			// set proxy properties
-			if (! StringUtils.isEmpty(proxyHost)) {
-				System.getProperties().put("ftpProxySet", "true" );
-				System.getProperties().put("ftpProxyHost", proxyHost);
-				System.getProperties().put("ftpProxyPort", "" + proxyPort);
-			}
-			
-			// connect and logic using normal, non-secure ftp 
-			ftpClient = createFTPClient();
-			ftpClient.connect(host, port);
-			if (isPassive()) {
-				ftpClient.enterLocalPassiveMode();
-			}
-			CredentialFactory usercf = new CredentialFactory(getAuthAlias(), getUsername(), getPassword());
-			ftpClient.login(usercf.getUsername(), usercf.getPassword());
+			ftpClient = createConnectedFtpClient();
 	
 			if (! StringUtils.isEmpty(remoteDirectory)) {
 				ftpClient.changeWorkingDirectory(remoteDirectory);
 				checkReply("changeWorkingDirectory "+remoteDirectory);
 			}
+		}
+		catch(Exception e) {
+			closeFtpClient();
+			throw new FtpConnectException(e);
+		}
+	}
+
+	/**
+	 * Creates an FTPClient that is connected to the host and logged in.
+	 */
+	private FTPClient createConnectedFtpClient() throws Exception {
+		// set proxy properties
+		if (! StringUtils.isEmpty(proxyHost)) {
+			System.getProperties().put("ftpProxySet", "true" );
+			System.getProperties().put("ftpProxyHost", proxyHost);
+			System.getProperties().put("ftpProxyPort", "" + proxyPort);
+		}
+		
+		// connect and logic using normal, non-secure ftp 
+		FTPClient client = createFTPClient();
+		try {
+			client.connect(host, port);
+			if (isPassive()) {
+				client.enterLocalPassiveMode();
+			}
+			CredentialFactory usercf = new CredentialFactory(getAuthAlias(), getUsername(), getPassword());
+			client.login(usercf.getUsername(), usercf.getPassword());
 			
 			if (StringUtils.isNotEmpty(fileType)) {
-				ftpClient.setFileType(getFileTypeIntValue());
-				checkReply("setFileType "+remoteDirectory);
+				client.setFileType(getFileTypeIntValue());
+				checkReply(client, "setFileType "+fileType);
 			}
+			return client;
 		}
 		catch(Exception e) {
-			closeFtpClient();
-			throw new FtpConnectException(e);
+			if (client.isConnected()) {
+				client.disconnect();
+			}
+			throw e;
 		}
 	}
 
@@ -363,6 +485,11 @@ public class FtpSession implements IConfigurable {
 
 	public void closeClient() {
 		log.debug("Close ftp client");
+		if (pooledConnection != null) {
+			FtpConnectionPool.getInstance().release(pooledConnection);
+			clearPooledClient();
+			return;
+		}
 		if (ftpType == SFTP) {
 			closeSftpClient();
 		}
@@ -371,6 +498,23 @@ public class FtpSession implements IConfigurable {
 		}
 	}
 	
+	/**
+	 * Removes a pooled connection from the pool after an exception occurred while using it, as its state is unknown.
+	 */
+	private void invalidateClient() {
+		if (pooledConnection != null) {
+			FtpConnectionPool.getInstance().invalidate(pooledConnection);
+			clearPooledClient();
+		}
+	}
+
+	private void clearPooledClient() {
+		pooledConnection = null;
+		sshClient = null;
+		sftpClient = null;
+		ftpClient = null;
+	}
+
 	private void closeSftpClient() {
 		if (sshClient != null) {
 			if (sshClient.isConnected()) {
@@ -426,6 +570,10 @@ public class FtpSession implements IConfigurable {
 				checkReply("storeFile "+remoteFilename);
 			}
 		}
+		catch(Exception e) {
+			invalidateClient();
+			throw e;
+		}
 		finally {
 			is.close();
 
@@ -475,6 +623,10 @@ public class FtpSession implements IConfigurable {
 			}
 			return remoteFilenames;
 		}
+		catch(Exception e) {
+			invalidateClient();
+			throw e;
+		}
 		finally {
 			if (closeAfterSend) {
 				closeClient();
@@ -502,6 +654,10 @@ public class FtpSession implements IConfigurable {
 			}
 			return FileUtils.getListFromNames(ftpClient.listNames());
 		}
+		catch(Exception e) {
+			invalidateClient();
+			throw e;
+		}
 		finally {
 			if (closeAfterSend) {
 				closeClient();
@@ -533,6 +689,10 @@ public class FtpSession implements IConfigurable {
 				ftpClient.deleteFile(filename);
 			}
 		}
+		catch(Exception e) {
+			invalidateClient();
+			throw e;
+		}
 		finally {
 			if (closeAfterDelete) {
 				closeClient();
@@ -571,6 +731,10 @@ public class FtpSession implements IConfigurable {
 			}
 			return result.toString();
 		}
+		catch(Exception e) {
+			invalidateClient();
+			throw e;
+		}
 		finally {
 			if (closeAfterGet) {
 				closeClient();
@@ -620,6 +784,10 @@ public class FtpSession implements IConfigurable {
 			}
 			return remoteFilenames;
 		}
+		catch(Exception e) {
+			invalidateClient();
+			throw e;
+		}
 		finally {
 			if (closeAfterGet) {
 				closeClient();
@@ -950,6 +1118,32 @@ public class FtpSession implements IConfigurable {
 		this.keyboardInteractive = keyboardInteractive;
 	}
 
+	@IbisDoc({"when true, authenticated connections are borrowed from a pool that is shared by all sessions with the same host, user and connection settings, instead of connecting and logging in for every transfer. The pool is configured by the ftp.connectionPool.* properties", "false"})
+	public void setUsePooledConnections(boolean usePooledConnections) {
+		this.usePooledConnections = usePooledConnections;
+	}
+	public boolean isUsePooledConnections() {
+		return usePooledConnections;
+	}
+
+	String getConnectionPoolKey() {
+		return connectionPoolKey;
+	}
+
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		if (connectionPoolWaitStatistics!=null) {
+			hski.handleScalar(data, "connectionPoolHits", connectionPoolHits.getValue());
+			hski.handleScalar(data, "connectionPoolMisses", connectionPoolMisses.getValue());
+			hski.handleScalar(data, "connectionPoolHitsThisInterval", connectionPoolHits.getIntervalValue());
+			hski.handleScalar(data, "connectionPoolMissesThisInterval", connectionPoolMisses.getIntervalValue());
+			hski.handleStatisticsKeeper(data, connectionPoolWaitStatistics);
+			connectionPoolHits.performAction(action);
+			connectionPoolMisses.performAction(action);
+			connectionPoolWaitStatistics.performAction(action);
+		}
+	}
+
 	@Override
 	@IbisDoc({"name of the listener or sender", ""})
 	public void setName(String name) {
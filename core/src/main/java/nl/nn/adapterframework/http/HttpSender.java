@@ -531,7 +531,6 @@ public class HttpSender extends HttpSenderBase {
 			Message responseBody = responseHandler.getResponseMessage();
 			String body = "";
 			if(responseBody != null) {
-				responseBody.preserve();
 				try {
 					body = responseBody.asString();
 				} catch(IOException e) {
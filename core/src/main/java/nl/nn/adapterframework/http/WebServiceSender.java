@@ -144,8 +144,11 @@ public class WebServiceSender extends HttpSender {
 		try {
 			httpResult = super.extractResult(responseHandler, session);
 			httpResult.preserve();
+			httpResult.closeOnCloseOf(session);
 		} catch (SenderException e) {
-			soapWrapper.checkForSoapFault(getResponseBody(responseHandler), e);
+			try (Message responseBody = getResponseBody(responseHandler)) {
+				soapWrapper.checkForSoapFault(responseBody, e);
+			}
 			throw e;
 		}
 
@@ -15,7 +15,6 @@ limitations under the License.
 */
 package nl.nn.adapterframework.http.rest;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
@@ -59,6 +58,7 @@ public class ApiServiceDispatcher {
 
 	private Logger log = LogUtil.getLogger(this);
 	private ConcurrentSkipListMap<String, ApiDispatchConfig> patternClients = new ConcurrentSkipListMap<String, ApiDispatchConfig>(new ApiUriComparator());
+	private volatile ApiUriTrie uriTrie = new ApiUriTrie(patternClients); // rebuilt when patterns are (un)registered, to resolve uris without locking
 	private static ApiServiceDispatcher self = null;
 
 	public static synchronized ApiServiceDispatcher getInstance() {
@@ -69,45 +69,17 @@ public class ApiServiceDispatcher {
 	}
 
 	public ApiDispatchConfig findConfigForUri(String uri) {
-		List<ApiDispatchConfig> configs = findMatchingConfigsForUri(uri, true);
-		return configs.isEmpty()? null : configs.get(0); 
+		if (log.isTraceEnabled()) log.trace("looking up pattern for uri ["+uri+"]");
+		return uriTrie.findExactMatch(uri);
 	}
 
 	public List<ApiDispatchConfig> findMatchingConfigsForUri(String uri) {
-		return findMatchingConfigsForUri(uri, false); 
+		if (log.isTraceEnabled()) log.trace("looking up patterns starting with uri ["+uri+"]");
+		return uriTrie.findPrefixMatches(uri);
 	}
 
-	private List<ApiDispatchConfig>  findMatchingConfigsForUri(String uri, boolean exactMatch) {
-		List<ApiDispatchConfig> results = new ArrayList<>();
-
-		String uriSegments[] = uri.split("/");
-
-		for (Iterator<String> it = patternClients.keySet().iterator(); it.hasNext();) {
-			String uriPattern = it.next();
-			log.trace("comparing uri ["+uri+"] to pattern ["+uriPattern+"]");
-
-			String patternSegments[] = uriPattern.split("/");
-			if (exactMatch && patternSegments.length != uriSegments.length || patternSegments.length < uriSegments.length) {
-				continue;
-			}
-
-			int matches = 0;
-			for (int i = 0; i < uriSegments.length; i++) {
-				if(patternSegments[i].equals(uriSegments[i]) || patternSegments[i].equals("*")) {
-					matches++;
-				} else {
-					continue;
-				}
-			}
-			if(matches == uriSegments.length) {
-				ApiDispatchConfig result = patternClients.get(uriPattern); 
-				results.add(result);
-				if (exactMatch) {
-					return results;
-				}
-			}
-		}
-		return results;
+	private void rebuildUriTrie() {
+		uriTrie = new ApiUriTrie(patternClients);
 	}
 
 	public synchronized void registerServiceClient(ApiListener listener) throws ListenerException {
@@ -126,6 +98,7 @@ public class ApiServiceDispatcher {
 		dispatchConfig.register(method, listener);
 
 		patternClients.put(uriPattern, dispatchConfig);
+		rebuildUriTrie();
 		log.trace("ApiServiceDispatcher successfully registered uriPattern ["+uriPattern+"] method ["+method+"]");
 	}
 
@@ -141,6 +114,7 @@ public class ApiServiceDispatcher {
 				log.warn("unable to find DispatchConfig for uriPattern ["+uriPattern+"]");
 			} else {
 				dispatchConfig.destroy(method);
+				rebuildUriTrie();
 
 				log.trace("ApiServiceDispatcher successfully unregistered uriPattern ["+uriPattern+"] method ["+method+"]");
 			}
@@ -322,7 +296,7 @@ public class ApiServiceDispatcher {
 		return responses;
 	}
 
-	public void clear() {
+	public synchronized void clear() {
 		for (Iterator<String> it = patternClients.keySet().iterator(); it.hasNext();) {
 			String uriPattern = it.next();
 			ApiDispatchConfig config = patternClients.remove(uriPattern);
@@ -332,5 +306,6 @@ public class ApiServiceDispatcher {
 			log.warn("unable to gracefully unregister "+patternClients.size()+" DispatchConfigs");
 			patternClients.clear();
 		}
+		rebuildUriTrie();
 	}
 }
@@ -0,0 +1,139 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.http.rest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Immutable trie of uri patterns, with a level per segment. Segments of a pattern are either literals or the wildcard <code>*</code>.
+ * Resolving a uri takes time proportional to the number of segments of the uri, as long as literals and wildcards do not
+ * overlap at many levels.
+ * <p>
+ * Matching follows the same rules as comparing the uri to every pattern: segments are separated by a <code>/</code>, and a
+ * wildcard segment matches any single segment of the uri. Matching patterns are ordered by the {@link ApiUriComparator}.
+ */
+class ApiUriTrie {
+
+	private static final String WILDCARD = "*";
+	private static final ApiUriComparator COMPARATOR = new ApiUriComparator();
+
+	private final Node root = new Node();
+
+	private static class Node {
+		private final Map<String,Node> literals = new HashMap<String,Node>();
+		private Node wildcard;
+		private String uriPattern;
+		private ApiDispatchConfig config;
+	}
+
+	/**
+	 * Builds a trie of the patterns in <code>patternClients</code>. The trie does not change when <code>patternClients</code> changes afterwards.
+	 */
+	public ApiUriTrie(Map<String, ApiDispatchConfig> patternClients) {
+		for (Entry<String, ApiDispatchConfig> entry : patternClients.entrySet()) {
+			add(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private void add(String uriPattern, ApiDispatchConfig config) {
+		Node node = root;
+		for (String segment : uriPattern.split("/")) {
+			Node child;
+			if (WILDCARD.equals(segment)) {
+				child = node.wildcard;
+				if (child == null) {
+					child = node.wildcard = new Node();
+				}
+			} else {
+				child = node.literals.get(segment);
+				if (child == null) {
+					child = new Node();
+					node.literals.put(segment, child);
+				}
+			}
+			node = child;
+		}
+		node.uriPattern = uriPattern;
+		node.config = config;
+	}
+
+	/**
+	 * Returns the config of the first pattern, according to the {@link ApiUriComparator}, that has as many segments as the uri and matches it.
+	 */
+	public ApiDispatchConfig findExactMatch(String uri) {
+		Node match = findExactMatch(root, uri.split("/"), 0);
+		return match == null ? null : match.config;
+	}
+
+	private Node findExactMatch(Node node, String[] segments, int level) {
+		if (level == segments.length) {
+			return node.config != null ? node : null;
+		}
+		Node match = null;
+		Node literal = node.literals.get(segments[level]);
+		if (literal != null) {
+			match = findExactMatch(literal, segments, level+1);
+		}
+		if (node.wildcard != null) {
+			Node wildcardMatch = findExactMatch(node.wildcard, segments, level+1);
+			if (match == null || wildcardMatch != null && COMPARATOR.compare(wildcardMatch.uriPattern, match.uriPattern) < 0) {
+				match = wildcardMatch;
+			}
+		}
+		return match;
+	}
+
+	/**
+	 * Returns the configs of all patterns whose leading segments match the uri, in the order of the {@link ApiUriComparator}.
+	 */
+	public List<ApiDispatchConfig> findPrefixMatches(String uri) {
+		SortedMap<String, ApiDispatchConfig> matches = new TreeMap<String, ApiDispatchConfig>(COMPARATOR);
+		collectPrefixMatches(root, uri.split("/"), 0, matches);
+		return new ArrayList<ApiDispatchConfig>(matches.values());
+	}
+
+	private void collectPrefixMatches(Node node, String[] segments, int level, SortedMap<String, ApiDispatchConfig> matches) {
+		if (level == segments.length) {
+			collectAll(node, matches);
+			return;
+		}
+		Node literal = node.literals.get(segments[level]);
+		if (literal != null) {
+			collectPrefixMatches(literal, segments, level+1, matches);
+		}
+		if (node.wildcard != null) {
+			collectPrefixMatches(node.wildcard, segments, level+1, matches);
+		}
+	}
+
+	private void collectAll(Node node, SortedMap<String, ApiDispatchConfig> matches) {
+		if (node.config != null) {
+			matches.put(node.uriPattern, node.config);
+		}
+		for (Node child : node.literals.values()) {
+			collectAll(child, matches);
+		}
+		if (node.wildcard != null) {
+			collectAll(node.wildcard, matches);
+		}
+	}
+}
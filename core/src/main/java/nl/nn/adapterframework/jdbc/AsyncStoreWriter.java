@@ -0,0 +1,209 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.Logger;
+
+import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+import nl.nn.adapterframework.util.CounterStatistic;
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Writes requests in the background, in batches. A batch is written when it contains batchSize requests,
+ * or when flushInterval ms have passed since the first request of the batch was queued. When the queue is full,
+ * {@link #put(Object)} waits for room in the queue.
+ * <p>
+ * A batch that cannot be written is retried maxRetries times, with an interval that starts at retryInterval ms and
+ * doubles with every attempt. When all attempts fail, the requests of the batch are written one by one. Requests that
+ * still cannot be written are lost: they are logged and counted, and the next call to {@link #put(Object)} throws a
+ * SenderException to report them.
+ */
+class AsyncStoreWriter<R> implements Runnable {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private static final long STOP_TIMEOUT=30000;
+
+	/**
+	 * Writes the requests to the store.
+	 */
+	interface Store<R> {
+		void storeBatch(List<R> batch) throws Exception;
+		void store(R request) throws Exception;
+	}
+
+	private final String name;
+	private final Store<R> store;
+	private final BlockingQueue<R> queue;
+	private final int batchSize;
+	private final long flushInterval;
+	private final int maxRetries;
+	private final long retryInterval;
+
+	private final CounterStatistic failedBatches = new CounterStatistic(0);
+	private final CounterStatistic lostRequests = new CounterStatistic(0);
+	private final AtomicInteger unreportedLostRequests = new AtomicInteger();
+	private final StatisticsKeeper flushStatistics;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	AsyncStoreWriter(String name, Store<R> store, int queueSize, int batchSize, long flushInterval, int maxRetries, long retryInterval) {
+		this.name = name;
+		this.store = store;
+		this.queue = new ArrayBlockingQueue<R>(queueSize);
+		this.batchSize = batchSize;
+		this.flushInterval = flushInterval;
+		this.maxRetries = maxRetries;
+		this.retryInterval = retryInterval;
+		this.flushStatistics = StatisticsKeeper.createDurationStatisticsKeeper("asyncWrite flush "+name);
+	}
+
+	public void start() {
+		running=true;
+		thread = new Thread(this, "AsyncStoreWriter ["+name+"]");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops accepting requests, and waits until the requests that are still in the queue have been written.
+	 */
+	public void stop() {
+		running=false;
+		try {
+			thread.join(flushInterval+STOP_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (thread.isAlive() || !queue.isEmpty()) {
+			log.warn("asynchronous writer ["+name+"] did not finish in time, ["+queue.size()+"] messages have not been stored");
+		}
+	}
+
+	public void put(R request) throws SenderException {
+		if (!running) {
+			throw new SenderException("asynchronous writer ["+name+"] is not running");
+		}
+		int lost = unreportedLostRequests.getAndSet(0);
+		if (lost>0) {
+			throw new SenderException("asynchronous writer ["+name+"] could not store ["+lost+"] previous messages");
+		}
+		try {
+			queue.put(request);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SenderException("interrupted while waiting for room in the queue of asynchronous writer ["+name+"]",e);
+		}
+	}
+
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	public CounterStatistic getFailedBatches() {
+		return failedBatches;
+	}
+
+	public CounterStatistic getLostRequests() {
+		return lostRequests;
+	}
+
+	public StatisticsKeeper getFlushStatistics() {
+		return flushStatistics;
+	}
+
+	@Override
+	public void run() {
+		List<R> batch = new ArrayList<R>(batchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				R request = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+				if (request==null) {
+					continue;
+				}
+				batch.add(request);
+				long deadline = System.currentTimeMillis()+flushInterval;
+				while (batch.size()<batchSize) {
+					queue.drainTo(batch, batchSize-batch.size());
+					long remaining = deadline-System.currentTimeMillis();
+					if (batch.size()>=batchSize || remaining<=0 || !running) {
+						break;
+					}
+					request = queue.poll(remaining, TimeUnit.MILLISECONDS);
+					if (request==null) {
+						break;
+					}
+					batch.add(request);
+				}
+			} catch (InterruptedException e) {
+				log.warn("asynchronous writer ["+name+"] interrupted");
+				running=false;
+			}
+			if (!batch.isEmpty()) {
+				flush(batch);
+				batch.clear();
+			}
+		}
+	}
+
+	private void flush(List<R> batch) {
+		long t0 = System.nanoTime();
+		try {
+			long interval = retryInterval;
+			for (int attempt=0; ; attempt++) {
+				try {
+					store.storeBatch(batch);
+					if (log.isDebugEnabled()) log.debug("asynchronous writer ["+name+"] stored batch of ["+batch.size()+"] messages");
+					return;
+				} catch (Exception e) {
+					failedBatches.increase();
+					if (attempt>=maxRetries) {
+						log.warn("asynchronous writer ["+name+"] could not store batch of ["+batch.size()+"] messages in ["+(attempt+1)+"] attempts, storing them one by one", e);
+						break;
+					}
+					log.warn("asynchronous writer ["+name+"] could not store batch of ["+batch.size()+"] messages, retrying in ["+interval+"] ms", e);
+				}
+				try {
+					Thread.sleep(interval);
+				} catch (InterruptedException e) {
+					log.warn("asynchronous writer ["+name+"] interrupted while waiting to retry");
+					running=false;
+					break;
+				}
+				interval*=2;
+			}
+			for (R request:batch) {
+				try {
+					store.store(request);
+				} catch (Exception e) {
+					lostRequests.increase();
+					unreportedLostRequests.incrementAndGet();
+					log.error("asynchronous writer ["+name+"] could not store message "+request, e);
+				}
+			}
+		} finally {
+			flushStatistics.addNanoValue(System.nanoTime()-t0);
+		}
+	}
+}
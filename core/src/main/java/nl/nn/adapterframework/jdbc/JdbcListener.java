@@ -21,10 +21,17 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.commons.lang.StringUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.IMessageWrapper;
@@ -64,12 +71,16 @@ public class JdbcListener extends JdbcFacade implements IPeekableListener<Object
 	
 	private boolean trace=false;
 	private boolean peekUntransacted=true;
+	private int batchSize=1;
 
 	protected Connection connection=null;
 
 	private String preparedSelectQuery;
 	private String preparedPeekQuery;
 
+	// messages that have been set to 'in process' by a batch read, but have not yet been handed out to a receiver thread
+	private Queue<Object> claimedMessages = new ConcurrentLinkedQueue<Object>();
+
 	@Override
 	public void configure() throws ConfigurationException {
 		try {
@@ -79,8 +90,11 @@ public class JdbcListener extends JdbcFacade implements IPeekableListener<Object
 		} catch (JdbcException e) {
 			throw new ConfigurationException(e);
 		}
+		if (getBatchSize()>1 && (StringUtils.isEmpty(getUpdateStatusToInProcessQuery()) || StringUtils.isEmpty(getRevertInProcessStatusQuery()))) {
+			throw new ConfigurationException(getLogPrefix()+"batchSize ["+getBatchSize()+"] requires an in process status to claim the messages read, and a status to make them available again");
+		}
 		try {
-			preparedSelectQuery = getDbmsSupport().prepareQueryTextForWorkQueueReading(1, getSelectQuery());
+			preparedSelectQuery = getDbmsSupport().prepareQueryTextForWorkQueueReading(getBatchSize(), getSelectQuery());
 			preparedPeekQuery = StringUtils.isNotEmpty(getPeekQuery()) ? getPeekQuery() : getDbmsSupport().prepareQueryTextForWorkQueuePeeking(1, getSelectQuery());
 		} catch (JdbcException e) {
 			throw new ConfigurationException(e);
@@ -100,6 +114,7 @@ public class JdbcListener extends JdbcFacade implements IPeekableListener<Object
 
 	@Override
 	public void close() {
+		releaseClaimedMessages();
 		try {
 			if (connection != null) {
 				connection.close();
@@ -123,6 +138,9 @@ public class JdbcListener extends JdbcFacade implements IPeekableListener<Object
 
 	@Override
 	public boolean hasRawMessageAvailable() throws ListenerException {
+		if (!claimedMessages.isEmpty()) {
+			return true;
+		}
 		if (StringUtils.isEmpty(preparedPeekQuery)) {
 			return true;
 		} else {
@@ -151,6 +169,9 @@ public class JdbcListener extends JdbcFacade implements IPeekableListener<Object
 	
 	@Override
 	public Object getRawMessage(Map<String,Object> threadContext) throws ListenerException {
+		if (getBatchSize()>1) {
+			return getClaimedRawMessage(threadContext);
+		}
 		if (isConnectionsArePooled()) {
 			try (Connection c = getConnection()) {
 				return getRawMessage(c,threadContext);
@@ -164,50 +185,30 @@ public class JdbcListener extends JdbcFacade implements IPeekableListener<Object
 	}
 
 	protected Object getRawMessage(Connection conn, Map<String,Object> threadContext) throws ListenerException {
+		List<Object> rawMessages = getRawMessages(conn, 1);
+		return rawMessages.isEmpty() ? null : rawMessages.get(0);
+	}
+
+	/**
+	 * Reads at most <code>maxMessages</code> messages using the select query. The rows read remain locked until the end of the current transaction.
+	 */
+	protected List<Object> getRawMessages(Connection conn, int maxMessages) throws ListenerException {
 		String query=preparedSelectQuery;
+		List<Object> result = new ArrayList<Object>();
 		try (Statement stmt= conn.createStatement()) {
-			stmt.setFetchSize(1);
+			stmt.setFetchSize(maxMessages);
 			if (trace && log.isDebugEnabled()) log.debug("executing query for ["+query+"]");
 			try (ResultSet rs=stmt.executeQuery(query)) {
-				if (!rs.next()) {
-					return null;
-				}
-				Object result;
-				String key=rs.getString(getKeyField());
-
-				if (StringUtils.isNotEmpty(getMessageField())) {
-					Message message;
-					if ("clob".equalsIgnoreCase(getMessageFieldType())) {
-						message=new Message(JdbcUtil.getClobAsString(getDbmsSupport(), rs,getMessageField(),false));
-					} else {
-						if ("blob".equalsIgnoreCase(getMessageFieldType())) {
-							if (isBlobSmartGet() || StringUtils.isNotEmpty(getBlobCharset())) {
-								message=new Message(JdbcUtil.getBlobAsString(getDbmsSupport(), rs,getMessageField(),getBlobCharset(),isBlobsCompressed(),isBlobSmartGet(),false));
-							} else {
-								try (InputStream blobStream = JdbcUtil.getBlobInputStream(getDbmsSupport(), rs, getMessageField(), isBlobsCompressed())) {
-									message=new Message(blobStream);
-									message.preserve();
-								}
-							}
-						} else {
-							message=new Message(rs.getString(getMessageField()));
-						}
-					}
-					// log.debug("building wrapper for key ["+key+"], message ["+message+"]");
-					MessageWrapper mw = new MessageWrapper();
-					mw.setId(key);
-					mw.setMessage(message);
-					result=mw;
-				} else {
-					result = key;
+				while (result.size()<maxMessages && rs.next()) {
+					result.add(extractRawMessage(rs));
 				}
 				return result;
 			} catch (SQLException e) {
 				if (!getDbmsSupport().hasSkipLockedFunctionality()) {
 					String errorMessage = e.getMessage();
 					if (errorMessage.toLowerCase().contains("timeout") && errorMessage.toLowerCase().contains("lock")) {
-						log.debug(getLogPrefix()+"caught lock timeout exception, returning null: ("+e.getClass().getName()+")"+e.getMessage());
-						return null; // resolve locking conflict for dbmses that do not support SKIP LOCKED
+						log.debug(getLogPrefix()+"caught lock timeout exception, returning messages read so far: ("+e.getClass().getName()+")"+e.getMessage());
+						return result; // resolve locking conflict for dbmses that do not support SKIP LOCKED
 					}
 				}
 				throw e;
@@ -217,6 +218,119 @@ public class JdbcListener extends JdbcFacade implements IPeekableListener<Object
 		}
 	}
 
+	protected Object extractRawMessage(ResultSet rs) throws Exception {
+		Object result;
+		String key=rs.getString(getKeyField());
+
+		if (StringUtils.isNotEmpty(getMessageField())) {
+			Message message;
+			if ("clob".equalsIgnoreCase(getMessageFieldType())) {
+				message=new Message(JdbcUtil.getClobAsString(getDbmsSupport(), rs,getMessageField(),false));
+			} else {
+				if ("blob".equalsIgnoreCase(getMessageFieldType())) {
+					if (isBlobSmartGet() || StringUtils.isNotEmpty(getBlobCharset())) {
+						message=new Message(JdbcUtil.getBlobAsString(getDbmsSupport(), rs,getMessageField(),getBlobCharset(),isBlobsCompressed(),isBlobSmartGet(),false));
+					} else {
+						try (InputStream blobStream = JdbcUtil.getBlobInputStream(getDbmsSupport(), rs, getMessageField(), isBlobsCompressed())) {
+							message=new Message(blobStream);
+							message.preserve();
+						}
+					}
+				} else {
+					message=new Message(rs.getString(getMessageField()));
+				}
+			}
+			// log.debug("building wrapper for key ["+key+"], message ["+message+"]");
+			MessageWrapper mw = new MessageWrapper();
+			mw.setId(key);
+			mw.setMessage(message);
+			result=mw;
+		} else {
+			result = key;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a message from the batch of messages claimed by this listener. When no claimed messages are left, a new batch is read, and
+	 * set to the in process state in the current transaction. The other messages of the batch are then handed out to subsequent calls.
+	 */
+	protected Object getClaimedRawMessage(Map<String,Object> threadContext) throws ListenerException {
+		Object rawMessage = claimedMessages.poll();
+		if (rawMessage!=null) {
+			return rawMessage;
+		}
+		synchronized (claimedMessages) { // only one thread at a time reads a new batch, the others wait for its results
+			rawMessage = claimedMessages.poll();
+			if (rawMessage!=null) {
+				return rawMessage;
+			}
+			List<Object> rawMessages;
+			if (isConnectionsArePooled()) {
+				try (Connection c = getConnection()) {
+					rawMessages = claimRawMessages(c, threadContext);
+				} catch (JdbcException | SQLException e) {
+					throw new ListenerException(e);
+				}
+			} else {
+				synchronized (connection) {
+					rawMessages = claimRawMessages(connection, threadContext);
+				}
+			}
+			if (rawMessages.isEmpty()) {
+				return null;
+			}
+			if (log.isDebugEnabled()) log.debug(getLogPrefix()+"claimed batch of ["+rawMessages.size()+"] messages");
+			if (rawMessages.size()>1) {
+				bufferClaimedMessages(new ArrayList<Object>(rawMessages.subList(1, rawMessages.size())));
+			}
+			return rawMessages.get(0);
+		}
+	}
+
+	/**
+	 * Makes claimed messages available to subsequent calls of getRawMessage. When a transaction is active, this is done when the claim
+	 * has been committed. When it is rolled back, the messages are not in process anymore, and they are not handed out.
+	 */
+	private void bufferClaimedMessages(List<Object> rawMessages) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status==TransactionSynchronization.STATUS_COMMITTED) {
+						claimedMessages.addAll(rawMessages);
+					} else {
+						log.info(getLogPrefix()+"claim of ["+rawMessages.size()+"] messages has not been committed, discarding them");
+					}
+				}
+			});
+		} else {
+			claimedMessages.addAll(rawMessages);
+		}
+	}
+
+	protected List<Object> claimRawMessages(Connection conn, Map<String,Object> threadContext) throws ListenerException {
+		List<Object> rawMessages = getRawMessages(conn, getBatchSize());
+		for (Object rawMessage:rawMessages) {
+			execute(conn, getUpdateStatusToInProcessQuery(), getIdFromRawMessage(rawMessage, null));
+		}
+		return rawMessages;
+	}
+
+	/**
+	 * Makes the messages that have been claimed but not handed out yet available again, for instance when the listener is closed.
+	 */
+	protected void releaseClaimedMessages() {
+		Object rawMessage;
+		while ((rawMessage=claimedMessages.poll())!=null) {
+			try {
+				doConnected(rawMessage, null, revertInProcessStatusToAvailable);
+			} catch (ListenerException e) {
+				log.warn(getLogPrefix()+"could not make claimed message available again", e);
+			}
+		}
+	}
+
 	@Override
 	public String getIdFromRawMessage(Object rawMessage, Map<String,Object> context) throws ListenerException {
 		String id;
@@ -278,6 +392,9 @@ public class JdbcListener extends JdbcFacade implements IPeekableListener<Object
 		if (StringUtils.isEmpty(getUpdateStatusToInProcessQuery())) {
 			return false;
 		}
+		if (getBatchSize()>1) {
+			return true; // message has already been set to 'in process' when it was claimed
+		}
 		String key = getIdFromRawMessage(rawMessage, threadContext);
 		execute(conn,getUpdateStatusToInProcessQuery(), key);
 		return true;
@@ -442,6 +559,15 @@ public class JdbcListener extends JdbcFacade implements IPeekableListener<Object
 		return blobSmartGet;
 	}
 
+	@IbisDoc({"7", "Maximum number of messages that are read and set to the in process state in a single query. The messages are buffered in the listener and handed out to the receiver threads, after the claim has been committed. " +
+			"When the listener is closed, buffered messages are made available again. A value larger than 1 requires an in process status", "1"})
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+	public int getBatchSize() {
+		return batchSize;
+	}
+
 	public boolean isTrace() {
 		return trace;
 	}
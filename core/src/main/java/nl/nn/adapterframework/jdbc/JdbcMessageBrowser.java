@@ -83,6 +83,7 @@ public abstract class JdbcMessageBrowser<M> extends JdbcFacade implements IMessa
 	protected String checkMessageIdQuery;
 	protected String checkCorrelationIdQuery;
 	protected String getMessageCountQuery;
+	protected volatile MessageCountCache messageCountCache; // null when the count is to be determined each time, or when the storage is not open
 	
 	private String selector;
 
@@ -293,7 +294,11 @@ public abstract class JdbcMessageBrowser<M> extends JdbcFacade implements IMessa
 		try (Connection conn = getConnection()) {
 			try (PreparedStatement stmt = conn.prepareStatement(deleteQuery)) {
 				applyStandardParameters(stmt, storageKey, true);
-				stmt.execute();
+				int deleted = stmt.executeUpdate();
+				MessageCountCache cache = messageCountCache;
+				if (cache!=null) {
+					cache.changed(-deleted);
+				}
 			}
 		} catch (Exception e) {
 			throw new ListenerException(e);
@@ -306,6 +311,17 @@ public abstract class JdbcMessageBrowser<M> extends JdbcFacade implements IMessa
 
 	@Override
 	public int getMessageCount() throws ListenerException {
+		MessageCountCache cache = messageCountCache;
+		if (cache!=null) {
+			return cache.getCount(this::countMessages);
+		}
+		return countMessages();
+	}
+
+	/**
+	 * Determines the number of messages by querying the database.
+	 */
+	protected int countMessages() throws ListenerException {
 		try (Connection conn = getConnection()) {
 			try (JdbcSession session = getDbmsSupport().prepareSessionForNonLockingRead(conn)) {
 				try (PreparedStatement stmt = conn.prepareStatement(getMessageCountQuery)) {
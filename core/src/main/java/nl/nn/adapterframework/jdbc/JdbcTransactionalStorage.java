@@ -15,6 +15,7 @@
 */
 package nl.nn.adapterframework.jdbc;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -32,7 +33,9 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 import java.util.zip.ZipException;
 
 import org.apache.commons.lang.StringUtils;
@@ -46,6 +49,7 @@ import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.doc.IbisDocRef;
 import nl.nn.adapterframework.jdbc.dbms.IDbmsSupport;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.JdbcUtil;
@@ -153,6 +157,18 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 	private int retention = 30;
 	private String schemaOwner4Check=null;
 	private boolean onlyStoreWhenMessageIdUnique=false;
+	private int asyncWriteQueueSize=0;
+	private int asyncWriteBatchSize=100;
+	private int asyncWriteFlushInterval=1000;
+	private int asyncWriteMaxRetries=3;
+	private int asyncWriteRetryInterval=1000;
+
+	private String blobFormat=BLOB_FORMAT_SERIALIZED;
+	private int blobCompressionLevel=Deflater.BEST_SPEED;
+	private MessageBlobFormat messageBlobFormat;
+
+	private AsyncStoreWriter<StoreRequest> asyncWriter;
+	private AsyncStoreWriter<StoreRequest> asyncWriterForStatistics;
 
 	
 	protected static final int MAXIDLEN=100;
@@ -175,10 +191,15 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 	
 	private static final String PROPERTY_CHECK_TABLE=CONTROL_PROPERTY_PREFIX+"checkTable";
 	private static final String PROPERTY_CHECK_INDICES=CONTROL_PROPERTY_PREFIX+"checkIndices";	
+	private static final String PROPERTY_MESSAGE_COUNT_RECONCILE_INTERVAL=CONTROL_PROPERTY_PREFIX+"messageCountReconcileInterval";
 	
 	private static final boolean documentQueries=false;
+
+	public static final String BLOB_FORMAT_SERIALIZED="serialized";
+	public static final String BLOB_FORMAT_COMPACT="compact";
 	private boolean checkTable;
 	private boolean checkIndices;	
+	private int messageCountReconcileInterval;
 
 	private final String ITRANSACTIONALSTORAGE = "nl.nn.adapterframework.core.ITransactionalStorage";
 
@@ -210,6 +231,7 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 		AppConstants ac = AppConstants.getInstance();
 		checkTable = ac.getBoolean(PROPERTY_CHECK_TABLE, false);
 		checkIndices = ac.getBoolean(PROPERTY_CHECK_INDICES, true);
+		messageCountReconcileInterval = ac.getInt(PROPERTY_MESSAGE_COUNT_RECONCILE_INTERVAL, 300);
 	}
 
 	private void checkTableColumnPresent(Connection connection, IDbmsSupport dbms, String columnName) throws JdbcException {
@@ -342,8 +364,37 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 		if (StringUtils.isNotEmpty(getHostField())) {
 			host=Misc.getHostname();
 		}
+		if (BLOB_FORMAT_COMPACT.equalsIgnoreCase(getBlobFormat())) {
+			if (isBlobsCompressed() && (getBlobCompressionLevel()<Deflater.BEST_SPEED || getBlobCompressionLevel()>Deflater.BEST_COMPRESSION)) {
+				throw new ConfigurationException("blobCompressionLevel ["+getBlobCompressionLevel()+"] must be between "+Deflater.BEST_SPEED+" and "+Deflater.BEST_COMPRESSION);
+			}
+			messageBlobFormat = new MessageBlobFormat(isBlobsCompressed() ? MessageBlobFormat.Codec.DEFLATE : MessageBlobFormat.Codec.NONE, getBlobCompressionLevel());
+		} else if (!BLOB_FORMAT_SERIALIZED.equalsIgnoreCase(getBlobFormat())) {
+			throw new ConfigurationException("illegal value for blobFormat ["+getBlobFormat()+"], must be '"+BLOB_FORMAT_SERIALIZED+"' or '"+BLOB_FORMAT_COMPACT+"'");
+		}
 		super.configure();
 		checkDatabase();
+		if (getAsyncWriteQueueSize()>0) {
+			String reason=null;
+			if (!isMessageLog()) {
+				reason="it is only supported for messageLogs";
+			} else if (isOnlyStoreWhenMessageIdUnique()) {
+				reason="it is not supported in combination with onlyStoreWhenMessageIdUnique=true";
+			} else if (isStoreFullMessage() && getDbmsSupport().mustInsertEmptyBlobBeforeData()) {
+				reason="it is not supported for databases that require an empty blob to be inserted before the message";
+			}
+			if (reason!=null) {
+				ConfigurationWarnings.add(this, log, "asyncWriteQueueSize ["+getAsyncWriteQueueSize()+"] is ignored, because "+reason);
+				setAsyncWriteQueueSize(0);
+			} else {
+				if (getAsyncWriteBatchSize()<1) {
+					throw new ConfigurationException("asyncWriteBatchSize ["+getAsyncWriteBatchSize()+"] must be positive");
+				}
+				if (getAsyncWriteMaxRetries()<0) {
+					throw new ConfigurationException("asyncWriteMaxRetries ["+getAsyncWriteMaxRetries()+"] cannot be negative");
+				}
+			}
+		}
 	}
 
 	@Override
@@ -355,6 +406,128 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 		} catch (SQLException e) {
 			throw new SenderException(getLogPrefix()+"exception creating table ["+getTableName()+"]",e);
 		} 
+		if (messageCountReconcileInterval>0 && messageCountCache==null) {
+			messageCountCache = MessageCountCache.getInstance(MessageCountCache.getKey(getDatasourceName(), getPrefix()+getTableName(), getSlotId(), getType()), messageCountReconcileInterval*1000L);
+		}
+		if (getAsyncWriteQueueSize()>0 && asyncWriter==null) {
+			asyncWriter = new AsyncStoreWriter<StoreRequest>(getName(), new AsyncStore(), getAsyncWriteQueueSize(), getAsyncWriteBatchSize(), getAsyncWriteFlushInterval(), getAsyncWriteMaxRetries(), getAsyncWriteRetryInterval());
+			asyncWriterForStatistics = asyncWriter;
+			asyncWriter.start();
+		}
+	}
+
+	@Override
+	public void close() {
+		if (asyncWriter!=null) {
+			asyncWriter.stop();
+			asyncWriter=null;
+		}
+		MessageCountCache cache = messageCountCache;
+		if (cache!=null) {
+			messageCountCache=null;
+			cache.release();
+		}
+		super.close();
+	}
+
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		super.iterateOverStatistics(hski, data, action);
+		AsyncStoreWriter<StoreRequest> writer = asyncWriterForStatistics;
+		if (writer!=null) {
+			hski.handleScalar(data, "asyncWriteQueueDepth", writer.getQueueDepth());
+			hski.handleScalar(data, "asyncWriteFailures", writer.getFailedBatches().getValue());
+			hski.handleScalar(data, "asyncWriteFailuresThisInterval", writer.getFailedBatches().getIntervalValue());
+			writer.getFailedBatches().performAction(action);
+			hski.handleScalar(data, "asyncWriteMessagesLost", writer.getLostRequests().getValue());
+			hski.handleScalar(data, "asyncWriteMessagesLostThisInterval", writer.getLostRequests().getIntervalValue());
+			writer.getLostRequests().performAction(action);
+			hski.handleStatisticsKeeper(data, writer.getFlushStatistics());
+			writer.getFlushStatistics().performAction(action);
+		}
+	}
+
+	private class StoreRequest {
+		final String messageId;
+		final String correlationId;
+		final Timestamp receivedDateTime;
+		final String comments;
+		final String label;
+		final byte[] serializedMessage;
+
+		StoreRequest(String messageId, String correlationId, Timestamp receivedDateTime, String comments, String label, byte[] serializedMessage) {
+			this.messageId = messageId;
+			this.correlationId = correlationId;
+			this.receivedDateTime = receivedDateTime;
+			this.comments = comments;
+			this.label = label;
+			this.serializedMessage = serializedMessage;
+		}
+
+		@Override
+		public String toString() {
+			return "messageId ["+messageId+"] correlationId ["+correlationId+"]";
+		}
+	}
+
+	/**
+	 * Inserts the requests of the {@link AsyncStoreWriter}, each batch or single request in its own transaction.
+	 */
+	private class AsyncStore implements AsyncStoreWriter.Store<StoreRequest> {
+
+		@Override
+		public void storeBatch(List<StoreRequest> batch) throws Exception {
+			insert(batch);
+		}
+
+		@Override
+		public void store(StoreRequest request) throws Exception {
+			List<StoreRequest> single = new ArrayList<StoreRequest>(1);
+			single.add(request);
+			insert(single);
+		}
+
+		private void insert(List<StoreRequest> requests) throws Exception {
+			TransactionStatus txStatus=null;
+			if (txManager!=null) {
+				txStatus = txManager.getTransaction(TXREQUIRED);
+			}
+			try (Connection conn = getConnection()) {
+				try (PreparedStatement stmt = conn.prepareStatement(insertQuery)) {
+					for (StoreRequest request:requests) {
+						int parPos=setInsertParameters(stmt, request.messageId, request.correlationId, request.receivedDateTime, request.comments, request.label);
+						if (request.serializedMessage!=null) {
+							stmt.setBytes(++parPos, request.serializedMessage);
+						}
+						if (requests.size()>1) {
+							stmt.addBatch();
+						}
+					}
+					if (requests.size()>1) {
+						stmt.executeBatch();
+					} else {
+						stmt.execute();
+					}
+				}
+				messagesStored(requests.size());
+			} catch (Exception e) {
+				if (txStatus!=null) {
+					txStatus.setRollbackOnly();
+				}
+				throw e;
+			} finally {
+				if (txStatus!=null) {
+					txManager.commit(txStatus);
+				}
+			}
+		}
+	}
+
+	private String truncate(String value, int maxLength) {
+		if (value!=null && value.length()>maxLength) {
+			return value.substring(0,maxLength);
+		}
+		return value;
 	}
 
 	/**
@@ -550,37 +723,7 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 				stmt = conn.prepareStatement(insertQuery);
 			}
 			stmt.clearParameters();
-			int parPos=0;
-			
-			if (StringUtils.isNotEmpty(getTypeField())) {
-				stmt.setString(++parPos,getType());
-			}
-			if (StringUtils.isNotEmpty(getSlotId())) {
-				stmt.setString(++parPos,getSlotId());
-			}			
-			if (StringUtils.isNotEmpty(getHostField())) {
-				stmt.setString(++parPos,host);
-			}
-			if (StringUtils.isNotEmpty(getLabelField())) {
-				stmt.setString(++parPos,label);
-			}
-			stmt.setString(++parPos,messageId);
-			stmt.setString(++parPos,correlationId);
-			stmt.setTimestamp(++parPos, receivedDateTime);
-			stmt.setString(++parPos, comments);
-			if (StorageType.MESSAGELOG_PIPE.getCode().equalsIgnoreCase(getType()) || StorageType.MESSAGELOG_RECEIVER.getCode().equalsIgnoreCase(getType())) {
-				if (getRetention()<0) {
-					stmt.setTimestamp(++parPos, null);
-				} else {
-					Date date = new Date();
-					Calendar cal = Calendar.getInstance();
-					cal.setTime(date);
-					cal.add(Calendar.DAY_OF_MONTH, getRetention());
-					stmt.setTimestamp(++parPos, new Timestamp(cal.getTime().getTime()));
-				}
-			} else {
-				stmt.setTimestamp(++parPos, null);
-			}
+			int parPos=setInsertParameters(stmt, messageId, correlationId, receivedDateTime, comments, label);
 	
 			if (!isStoreFullMessage()) {
 				if (isOnlyStoreWhenMessageIdUnique()) {
@@ -588,22 +731,11 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 					stmt.setString(++parPos, getSlotId());
 				}
 				stmt.execute();
+				messagesStored(stmt.getUpdateCount());
 				return null;
 			}
 			if (!dbmsSupport.mustInsertEmptyBlobBeforeData()) {
-				ByteArrayOutputStream out = new ByteArrayOutputStream();
-				
-				if (isBlobsCompressed()) {
-					DeflaterOutputStream dos = new DeflaterOutputStream(out);
-					ObjectOutputStream oos = new ObjectOutputStream(dos);
-					oos.writeObject(message);
-					dos.close();
-				} else {
-					ObjectOutputStream oos = new ObjectOutputStream(out);
-					oos.writeObject(message);
-				}
-				
-				stmt.setBytes(++parPos, out.toByteArray());
+				stmt.setBytes(++parPos, serializeMessage(message));
 				if (isOnlyStoreWhenMessageIdUnique()) {
 					stmt.setString(++parPos, messageId);
 					stmt.setString(++parPos, getSlotId());
@@ -612,6 +744,7 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 				ResultSet rs = stmt.getGeneratedKeys();
 				boolean messageIdExists = false;
 				if (rs.next() && rs.getString(1) != null) {
+					messagesStored(1);
 					return "<id>" + rs.getString(1) + "</id>";
 				} else {
 					messageIdExists = true;
@@ -665,19 +798,9 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 					}
 					Object blobHandle=dbmsSupport.getBlobUpdateHandle(rs, 1);
 					OutputStream out = dbmsSupport.getBlobOutputStream(rs, 1, blobHandle);
-					if (isBlobsCompressed()) {
-						DeflaterOutputStream dos = new DeflaterOutputStream(out);
-						ObjectOutputStream oos = new ObjectOutputStream(dos);
-						oos.writeObject(message);
-						oos.close();
-						dos.close();
-					} else {
-						ObjectOutputStream oos = new ObjectOutputStream(out);
-						oos.writeObject(message);
-						oos.close();
-					}
-					out.close();
+					writeMessage(message, out);
 					dbmsSupport.updateBlob(rs, 1, blobHandle);
+					messagesStored(updateCount);
 					return "<id>" + newKey+ "</id>";
 				
 				} finally {
@@ -706,6 +829,84 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 		}
 	}
 
+	/**
+	 * Registers stored messages with the messageCountCache. When a transaction is active, the count is updated when it commits.
+	 */
+	private void messagesStored(int count) {
+		MessageCountCache cache = messageCountCache;
+		if (cache!=null && count>0) {
+			cache.changed(count);
+		}
+	}
+
+	/**
+	 * Sets the parameters of the insertQuery up to and including the expiry date, and returns the position of the last parameter set.
+	 */
+	private int setInsertParameters(PreparedStatement stmt, String messageId, String correlationId, Timestamp receivedDateTime, String comments, String label) throws SQLException {
+		int parPos=0;
+		
+		if (StringUtils.isNotEmpty(getTypeField())) {
+			stmt.setString(++parPos,getType());
+		}
+		if (StringUtils.isNotEmpty(getSlotId())) {
+			stmt.setString(++parPos,getSlotId());
+		}			
+		if (StringUtils.isNotEmpty(getHostField())) {
+			stmt.setString(++parPos,host);
+		}
+		if (StringUtils.isNotEmpty(getLabelField())) {
+			stmt.setString(++parPos,label);
+		}
+		stmt.setString(++parPos,messageId);
+		stmt.setString(++parPos,correlationId);
+		stmt.setTimestamp(++parPos, receivedDateTime);
+		stmt.setString(++parPos, comments);
+		if (isMessageLog()) {
+			if (getRetention()<0) {
+				stmt.setTimestamp(++parPos, null);
+			} else {
+				Date date = new Date();
+				Calendar cal = Calendar.getInstance();
+				cal.setTime(date);
+				cal.add(Calendar.DAY_OF_MONTH, getRetention());
+				stmt.setTimestamp(++parPos, new Timestamp(cal.getTime().getTime()));
+			}
+		} else {
+			stmt.setTimestamp(++parPos, null);
+		}
+		return parPos;
+	}
+
+	private boolean isMessageLog() {
+		return StorageType.MESSAGELOG_PIPE.getCode().equalsIgnoreCase(getType()) || StorageType.MESSAGELOG_RECEIVER.getCode().equalsIgnoreCase(getType());
+	}
+
+	private byte[] serializeMessage(S message) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writeMessage(message, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Writes the message to the blob in the configured {@link #setBlobFormat(String) blobFormat}, and closes <code>out</code>.
+	 */
+	private void writeMessage(S message, OutputStream out) throws IOException {
+		if (messageBlobFormat!=null) {
+			messageBlobFormat.write(message, out);
+			return;
+		}
+		if (isBlobsCompressed()) {
+			DeflaterOutputStream dos = new DeflaterOutputStream(out);
+			ObjectOutputStream oos = new ObjectOutputStream(dos);
+			oos.writeObject(message);
+			oos.close();
+		} else {
+			ObjectOutputStream oos = new ObjectOutputStream(out);
+			oos.writeObject(message);
+			oos.close();
+		}
+	}
+
 	private boolean isMessageDifferent(Connection conn, String messageId, S message) throws SQLException{
 		int paramPosition=0;
 		
@@ -745,6 +946,22 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 	
 	@Override
 	public String storeMessage(String messageId, String correlationId, Date receivedDate, String comments, String label, S message) throws SenderException {
+		if (asyncWriter!=null) {
+			if (messageId==null) {
+				throw new SenderException("messageId cannot be null");
+			}
+			if (correlationId==null) {
+				throw new SenderException("correlationId cannot be null");
+			}
+			try {
+				// serialize in the calling thread, to capture the message as it is now and to spread the load
+				byte[] serializedMessage = isStoreFullMessage() ? serializeMessage(message) : null;
+				asyncWriter.put(new StoreRequest(truncate(messageId, MAXIDLEN), truncate(correlationId, MAXCIDLEN), new Timestamp(receivedDate.getTime()), truncate(comments, MAXCOMMENTLEN), truncate(label, MAXLABELLEN), serializedMessage));
+			} catch (IOException e) {
+				throw new SenderException(getLogPrefix()+"cannot serialize message",e);
+			}
+			return null;
+		}
 		TransactionStatus txStatus=null;
 		if (txManager!=null) {
 			txStatus = txManager.getTransaction(TXREQUIRED);
@@ -822,30 +1039,43 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 			if (blobInputStream==null) {
 				return null;
 			}
-			try (ObjectInputStream ois = new ObjectInputStream(blobInputStream)) {
-				return (S)ois.readObject();
-			}
+			return deserialize(blobInputStream);
+		}
+	}
+
+	private S deserialize(InputStream blobInputStream) throws ClassNotFoundException, IOException {
+		try (ObjectInputStream ois = new ObjectInputStream(blobInputStream)) {
+			return (S)ois.readObject();
 		}
 	}
 
-	
 	@Override
 	protected S retrieveObject(ResultSet rs, int columnIndex) throws ClassNotFoundException, JdbcException, IOException, SQLException {
 		try {
-			if (isBlobsCompressed()) {
+			InputStream blobInputStream = JdbcUtil.getBlobInputStream(getDbmsSupport(), rs, columnIndex, false);
+			if (blobInputStream==null) {
+				return null;
+			}
+			try (InputStream in = new BufferedInputStream(blobInputStream)) {
+				if (MessageBlobFormat.hasHeader(in)) {
+					return (S)MessageBlobFormat.read(in);
+				}
+				// blob is in the format used before, with only Java serialization
+				if (isBlobsCompressed()) {
+					try {
+						return deserialize(new InflaterInputStream(in));
+					} catch (ZipException e1) {
+						log.warn(getLogPrefix()+"could not extract compressed blob, trying non-compressed: ("+ClassUtils.nameOf(e1)+") "+e1.getMessage());
+						return retrieveObject(rs,columnIndex,false);
+					}
+				}
 				try {
+					return deserialize(in);
+				} catch (Exception e1) {
+					log.warn(getLogPrefix()+"could not extract non-compressed blob, trying compressed: ("+ClassUtils.nameOf(e1)+") "+e1.getMessage());
 					return retrieveObject(rs,columnIndex,true);
-				} catch (ZipException e1) {
-					log.warn(getLogPrefix()+"could not extract compressed blob, trying non-compressed: ("+ClassUtils.nameOf(e1)+") "+e1.getMessage());
-					return retrieveObject(rs,columnIndex,false);
 				}
 			}
-			try {
-				return retrieveObject(rs,columnIndex,false);
-			} catch (Exception e1) {
-				log.warn(getLogPrefix()+"could not extract non-compressed blob, trying compressed: ("+ClassUtils.nameOf(e1)+") "+e1.getMessage());
-				return retrieveObject(rs,columnIndex,true);
-			}
 		} catch (Exception e2) {
 			throw new JdbcException("could not extract message", e2);
 		}
@@ -1066,4 +1296,64 @@ public class JdbcTransactionalStorage<S extends Serializable> extends JdbcTableM
 		return onlyStoreWhenMessageIdUnique;
 	}
 	
+
+	@IbisDoc({"format of the stored messages. either <code>serialized</code> (Java serialization) or <code>compact</code> (a header followed by the raw text or bytes, avoiding Java serialization for strings and messages). "
+			+ "Messages are always read in both formats", "serialized"})
+	public void setBlobFormat(String blobFormat) {
+		this.blobFormat = blobFormat;
+	}
+	public String getBlobFormat() {
+		return blobFormat;
+	}
+
+	@IbisDoc({"level of compression (1-9) of the stored messages, when blobFormat=<code>compact</code> and blobsCompressed=<code>true</code>. Lower levels are faster, higher levels give smaller blobs", "1"})
+	public void setBlobCompressionLevel(int blobCompressionLevel) {
+		this.blobCompressionLevel = blobCompressionLevel;
+	}
+	public int getBlobCompressionLevel() {
+		return blobCompressionLevel;
+	}
+
+	@IbisDoc({"when set to a value greater than 0, messages are stored asynchronously: they are put on a queue of this size, and written to the database in batches by a background thread. "
+			+ "Only for messageLogs. Messages are not stored as part of the transaction of the caller, and messages that are still in the queue when the application stops abruptly are lost. "
+			+ "When the queue is full, storing a message waits until there is room", "0"})
+	public void setAsyncWriteQueueSize(int asyncWriteQueueSize) {
+		this.asyncWriteQueueSize = asyncWriteQueueSize;
+	}
+	public int getAsyncWriteQueueSize() {
+		return asyncWriteQueueSize;
+	}
+
+	@IbisDoc({"maximum number of messages written in a single batch, when asyncWriteQueueSize &gt; 0", "100"})
+	public void setAsyncWriteBatchSize(int asyncWriteBatchSize) {
+		this.asyncWriteBatchSize = asyncWriteBatchSize;
+	}
+	public int getAsyncWriteBatchSize() {
+		return asyncWriteBatchSize;
+	}
+
+	@IbisDoc({"maximum time (in ms) a message waits in the queue before the batch it is in is written, when asyncWriteQueueSize &gt; 0", "1000"})
+	public void setAsyncWriteFlushInterval(int asyncWriteFlushInterval) {
+		this.asyncWriteFlushInterval = asyncWriteFlushInterval;
+	}
+	public int getAsyncWriteFlushInterval() {
+		return asyncWriteFlushInterval;
+	}
+
+	@IbisDoc({"number of times a batch that cannot be written is retried, when asyncWriteQueueSize &gt; 0. When all attempts fail, the messages of the batch are written one by one. "
+			+ "Messages that still cannot be written are logged and counted, and cause the next call to store a message to fail", "3"})
+	public void setAsyncWriteMaxRetries(int asyncWriteMaxRetries) {
+		this.asyncWriteMaxRetries = asyncWriteMaxRetries;
+	}
+	public int getAsyncWriteMaxRetries() {
+		return asyncWriteMaxRetries;
+	}
+
+	@IbisDoc({"time (in ms) before the first retry of a batch that cannot be written, when asyncWriteQueueSize &gt; 0. The interval doubles with every next retry", "1000"})
+	public void setAsyncWriteRetryInterval(int asyncWriteRetryInterval) {
+		this.asyncWriteRetryInterval = asyncWriteRetryInterval;
+	}
+	public int getAsyncWriteRetryInterval() {
+		return asyncWriteRetryInterval;
+	}
 }
@@ -0,0 +1,266 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.jdbc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import nl.nn.adapterframework.stream.Message;
+import nl.nn.adapterframework.util.Misc;
+
+/**
+ * Compact binary format for messages stored in a blob, that avoids Java serialization for Strings, byte arrays and {@link Message}s.
+ * <p>
+ * A blob in this format starts with a header:
+ * <ul>
+ * <li>the magic bytes <code>IBS</code>, that cannot occur at the start of a Java serialization stream (<code>0xACED</code>) or a zlib stream (<code>0x78</code>)</li>
+ * <li>a version byte, currently 1</li>
+ * <li>a byte for the {@link Codec} used for the payload</li>
+ * <li>a byte for the type of the payload</li>
+ * <li>for binary {@link Message}s: the charset, as written by {@link DataOutputStream#writeUTF(String)}, empty when not known</li>
+ * </ul>
+ * The header is followed by the payload, encoded by the codec, up to the end of the blob. Strings are stored as UTF-8. Objects of other types
+ * are stored using Java serialization. Blobs without the header are assumed to be in the format used before, that uses Java serialization only.
+ * <p>
+ * {@link #hasHeader(InputStream)} only recognizes a header when the version, codec and type are known too, because other content, 
+ * like a plain text message, can start with the magic bytes as well. Readers of such content should fall back to reading it
+ * as before when {@link #read(InputStream)} fails.
+ */
+public class MessageBlobFormat {
+
+	private static final byte[] MAGIC = { 'I', 'B', 'S' };
+	private static final int VERSION = 1;
+	private static final int HEADER_PEEK_SIZE = MAGIC.length+3;
+
+	private static final int TYPE_NULL = 0;
+	private static final int TYPE_STRING = 1;
+	private static final int TYPE_BYTES = 2;
+	private static final int TYPE_MESSAGE_STRING = 3;
+	private static final int TYPE_MESSAGE_BYTES = 4;
+	private static final int TYPE_SERIALIZED = 5;
+	private static final int TYPE_MESSAGE_NULL = 6;
+	private static final int MAX_TYPE = TYPE_MESSAGE_NULL;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Encoding of the payload. New codecs must get a new id, existing ids must never be reused.
+	 */
+	public enum Codec {
+		NONE(0) {
+			@Override
+			OutputStream encode(OutputStream out, int level) {
+				return out;
+			}
+			@Override
+			InputStream decode(InputStream in) {
+				return in;
+			}
+		},
+		DEFLATE(1) {
+			@Override
+			OutputStream encode(OutputStream out, int level) {
+				final Deflater deflater = new Deflater(level);
+				return new DeflaterOutputStream(out, deflater, BUFFER_SIZE) {
+					@Override
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							deflater.end();
+						}
+					}
+				};
+			}
+			@Override
+			InputStream decode(InputStream in) {
+				final Inflater inflater = new Inflater();
+				return new InflaterInputStream(in, inflater, BUFFER_SIZE) {
+					@Override
+					public void close() throws IOException {
+						try {
+							super.close();
+						} finally {
+							inflater.end();
+						}
+					}
+				};
+			}
+		};
+
+		private final int id;
+
+		Codec(int id) {
+			this.id = id;
+		}
+
+		abstract OutputStream encode(OutputStream out, int level);
+		abstract InputStream decode(InputStream in);
+
+		static Codec forId(int id) throws IOException {
+			Codec codec = findById(id);
+			if (codec==null) {
+				throw new IOException("unknown blob codec ["+id+"]");
+			}
+			return codec;
+		}
+
+		static Codec findById(int id) {
+			for (Codec codec : values()) {
+				if (codec.id == id) {
+					return codec;
+				}
+			}
+			return null;
+		}
+	}
+
+	private final Codec codec;
+	private final int compressionLevel;
+
+	public MessageBlobFormat(Codec codec, int compressionLevel) {
+		this.codec = codec;
+		this.compressionLevel = compressionLevel;
+	}
+
+	public byte[] toByteArray(Object message) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(message, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Writes the message to <code>out</code>, and closes it.
+	 */
+	public void write(Object message, OutputStream out) throws IOException {
+		DataOutputStream header = new DataOutputStream(out);
+		header.write(MAGIC);
+		header.writeByte(VERSION);
+		header.writeByte(codec.id);
+		Object payload = message;
+		if (message instanceof Message) {
+			Message m = (Message)message;
+			if (m.asObject()==null) {
+				header.writeByte(TYPE_MESSAGE_NULL);
+				payload = null;
+			} else if (m.isBinary()) {
+				header.writeByte(TYPE_MESSAGE_BYTES);
+				header.writeUTF(m.getCharset()!=null ? m.getCharset() : "");
+				payload = m.asByteArray();
+			} else {
+				header.writeByte(TYPE_MESSAGE_STRING);
+				payload = m.asString();
+			}
+		} else if (message==null) {
+			header.writeByte(TYPE_NULL);
+		} else if (message instanceof String) {
+			header.writeByte(TYPE_STRING);
+		} else if (message instanceof byte[]) {
+			header.writeByte(TYPE_BYTES);
+		} else {
+			header.writeByte(TYPE_SERIALIZED);
+		}
+		header.flush();
+		try (OutputStream body = codec.encode(out, compressionLevel)) {
+			if (payload instanceof String) {
+				body.write(((String)payload).getBytes(StandardCharsets.UTF_8));
+			} else if (payload instanceof byte[]) {
+				body.write((byte[])payload);
+			} else if (payload!=null) {
+				ObjectOutputStream oos = new ObjectOutputStream(body);
+				oos.writeObject(payload);
+				oos.flush();
+			}
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> when <code>in</code> starts with the header of this format, with a known version, codec and type.
+	 * The stream must support {@link InputStream#mark(int) mark}, it is reset to the position it was at.
+	 */
+	public static boolean hasHeader(InputStream in) throws IOException {
+		in.mark(HEADER_PEEK_SIZE);
+		try {
+			for (int i=0; i<MAGIC.length; i++) {
+				if (in.read()!=MAGIC[i]) {
+					return false;
+				}
+			}
+			if (in.read()!=VERSION || Codec.findById(in.read())==null) {
+				return false;
+			}
+			int type = in.read();
+			return type>=TYPE_NULL && type<=MAX_TYPE;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Reads a message, written by {@link #write(Object, OutputStream)}, from <code>in</code>, and closes it.
+	 */
+	public static Object read(InputStream in) throws IOException, ClassNotFoundException {
+		try (DataInputStream header = new DataInputStream(in)) {
+			byte[] magic = new byte[MAGIC.length];
+			header.readFully(magic);
+			for (int i=0; i<MAGIC.length; i++) {
+				if (magic[i]!=MAGIC[i]) {
+					throw new IOException("blob does not start with the expected header");
+				}
+			}
+			int version = header.readUnsignedByte();
+			if (version!=VERSION) {
+				throw new IOException("unsupported blob format version ["+version+"]");
+			}
+			Codec codec = Codec.forId(header.readUnsignedByte());
+			int type = header.readUnsignedByte();
+			String charset = type==TYPE_MESSAGE_BYTES ? header.readUTF() : null;
+			try (InputStream body = codec.decode(header)) {
+				switch (type) {
+				case TYPE_NULL:
+					return null;
+				case TYPE_STRING:
+					return new String(Misc.streamToBytes(body), StandardCharsets.UTF_8);
+				case TYPE_BYTES:
+					return Misc.streamToBytes(body);
+				case TYPE_MESSAGE_STRING:
+					return new Message(new String(Misc.streamToBytes(body), StandardCharsets.UTF_8));
+				case TYPE_MESSAGE_BYTES:
+					return new Message(Misc.streamToBytes(body), charset.isEmpty() ? null : charset);
+				case TYPE_MESSAGE_NULL:
+					return new Message((String)null);
+				case TYPE_SERIALIZED:
+					try (ObjectInputStream ois = new ObjectInputStream(body)) {
+						return ois.readObject();
+					}
+				default:
+					throw new IOException("unknown blob payload type ["+type+"]");
+				}
+			}
+		}
+	}
+}
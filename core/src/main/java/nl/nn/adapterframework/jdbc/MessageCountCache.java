@@ -0,0 +1,229 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.jdbc;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Logger;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import nl.nn.adapterframework.core.ListenerException;
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Keeps the number of messages in a message store, to avoid a <code>SELECT COUNT(*)</code> each time the count is requested.
+ * <p>
+ * The count is determined exactly once, when it is requested for the first time. After that, it is maintained incrementally
+ * by the storage that stores and deletes the messages. Changes made within a transaction are applied when the transaction commits.
+ * Changes made by other means, like by other instances in a cluster or by the cleanup job, are picked up by reconciling the count
+ * with an exact count. This is done in the background, when the count is requested and the last exact count is older than the
+ * reconcile interval. Reconciliations of all caches are performed one at a time, to limit the load on the database.
+ * <p>
+ * Storages that use the same table, slotId and type share a single cache. A cache is kept while it is used by an open storage,
+ * and is removed when the last storage that uses it has released it.
+ */
+public class MessageCountCache {
+	protected static Logger log = LogUtil.getLogger(MessageCountCache.class);
+
+	private static final ConcurrentMap<String,MessageCountCache> CACHES = new ConcurrentHashMap<>();
+	private static ExecutorService reconcileExecutor;
+
+	private final String key;
+	private final long reconcileInterval;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicBoolean reconciling = new AtomicBoolean();
+	private int users; // guarded by CACHES
+	private volatile boolean initialized;
+	private volatile long lastReconciled;
+
+	/**
+	 * Determines the exact number of messages in the store.
+	 */
+	public interface Counter {
+		int countMessages() throws ListenerException;
+	}
+
+	private MessageCountCache(String key, long reconcileInterval) {
+		this.key = key;
+		this.reconcileInterval = reconcileInterval;
+	}
+
+	/**
+	 * Returns the key of the cache for the messages of <code>slotId</code> and <code>type</code> in <code>tableName</code>.
+	 */
+	public static String getKey(String datasourceName, String tableName, String slotId, String type) {
+		return datasourceName+"|"+tableName+"|"+slotId+"|"+type;
+	}
+
+	/**
+	 * Returns the cache for the store identified by <code>key</code>, creating it when it does not exist yet.
+	 * The cache must be {@link #release() released} when it is no longer used.
+	 * @param reconcileInterval maximum age, in milliseconds, of the last exact count before a background reconciliation is started
+	 */
+	public static MessageCountCache getInstance(String key, long reconcileInterval) {
+		return CACHES.compute(key, (k, cache) -> {
+			if (cache==null) {
+				cache = new MessageCountCache(k, reconcileInterval);
+			}
+			cache.users++;
+			return cache;
+		});
+	}
+
+	/**
+	 * Releases the cache obtained by {@link #getInstance(String, long)}. When no users are left, the cache is removed.
+	 */
+	public void release() {
+		CACHES.computeIfPresent(key, (k, cache) -> cache==this && --users<=0 ? null : cache);
+	}
+
+	/**
+	 * Forces a reconciliation of the caches of all slotIds and types in <code>tableName</code>, for instance after messages
+	 * have been deleted from it by the cleanup job. Table names are compared case insensitive, as the database does. When 
+	 * <code>tableName</code> is not qualified by a schema name, caches of the table qualified by any schema name are included.
+	 */
+	public static void invalidate(String datasourceName, String tableName) {
+		for (MessageCountCache cache:CACHES.values()) {
+			String[] keyParts = cache.key.split("\\|", -1);
+			if (keyParts.length==4 && keyParts[0].equals(datasourceName) && isSameTable(keyParts[1], tableName)) {
+				cache.invalidate();
+			}
+		}
+	}
+
+	private static boolean isSameTable(String cachedTableName, String tableName) {
+		if (cachedTableName.equalsIgnoreCase(tableName)) {
+			return true;
+		}
+		return tableName.indexOf('.')<0 && cachedTableName.substring(cachedTableName.lastIndexOf('.')+1).equalsIgnoreCase(tableName);
+	}
+
+	/**
+	 * Removes all caches and stops the background reconciliation, to be called when the application is shut down.
+	 */
+	public static synchronized void shutdown() {
+		CACHES.clear();
+		if (reconcileExecutor!=null) {
+			reconcileExecutor.shutdownNow();
+			reconcileExecutor = null;
+		}
+	}
+
+	static int getCacheCount() {
+		return CACHES.size();
+	}
+
+	/**
+	 * Returns the cached number of messages. The first call determines the count using <code>counter</code>. Later calls start
+	 * a reconciliation using <code>counter</code> in the background when the last exact count has become too old.
+	 */
+	public int getCount(Counter counter) throws ListenerException {
+		if (!initialized) {
+			synchronized (this) {
+				if (!initialized) {
+					reconcile(counter);
+				}
+			}
+		} else if (System.currentTimeMillis()-lastReconciled>reconcileInterval && reconciling.compareAndSet(false, true)) {
+			try {
+				getReconcileExecutor().execute(() -> {
+					try {
+						reconcile(counter);
+					} catch (Exception e) {
+						log.warn("cannot reconcile message count of ["+key+"]", e);
+					} finally {
+						reconciling.set(false);
+					}
+				});
+			} catch (RuntimeException e) {
+				reconciling.set(false);
+				throw e;
+			}
+		}
+		return (int)Math.max(0, count.get());
+	}
+
+	private void reconcile(Counter counter) throws ListenerException {
+		long start = System.currentTimeMillis();
+		int exactCount = counter.countMessages();
+		long previous = count.getAndSet(exactCount);
+		lastReconciled = start;
+		if (initialized && previous!=exactCount && log.isDebugEnabled()) {
+			log.debug("reconciled message count of ["+key+"] from ["+previous+"] to ["+exactCount+"]");
+		}
+		initialized = true;
+	}
+
+	/**
+	 * Registers that <code>delta</code> messages have been added to the store, or removed when negative.
+	 * When a transaction is active, the change is applied when it commits, and ignored when it rolls back.
+	 */
+	public void changed(int delta) {
+		if (delta==0) {
+			return;
+		}
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					if (status==TransactionSynchronization.STATUS_COMMITTED) {
+						apply(delta);
+					}
+				}
+			});
+		} else {
+			apply(delta);
+		}
+	}
+
+	private void apply(int delta) {
+		// before the first exact count there is nothing to maintain
+		if (initialized) {
+			count.addAndGet(delta);
+		}
+	}
+
+	/**
+	 * Forces the next request for the count to start a reconciliation.
+	 */
+	public void invalidate() {
+		lastReconciled = 0;
+	}
+
+	private static synchronized ExecutorService getReconcileExecutor() {
+		if (reconcileExecutor==null) {
+			ThreadFactory threadFactory = new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable);
+					thread.setName("MessageCountCache reconciler");
+					thread.setDaemon(true);
+					return thread;
+				}
+			};
+			reconcileExecutor = Executors.newSingleThreadExecutor(threadFactory);
+		}
+		return reconcileExecutor;
+	}
+}
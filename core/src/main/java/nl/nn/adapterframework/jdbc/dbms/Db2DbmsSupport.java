@@ -48,7 +48,7 @@ public class Db2DbmsSupport extends GenericDbmsSupport {
 		// http://publib.boulder.ibm.com/infocenter/dzichelp/v2r2/topic/com.ibm.db2z10.doc.sqlref/src/tpc/db2z_sql_updateclause.htm
 		// http://publib.boulder.ibm.com/infocenter/dzichelp/v2r2/topic/com.ibm.db2z10.doc.sqlref/src/tpc/db2z_sql_skiplockeddata.htm
 		// http://www.ibm.com/developerworks/data/library/techarticle/dm-0907oracleappsondb2/#code-hd
-		return selectQuery+" FOR UPDATE"; // TODO: test to add SKIP LOCKED DATA";
+		return selectQuery+(batchSize>1?" FETCH FIRST "+batchSize+" ROWS ONLY":"")+" FOR UPDATE"; // TODO: test to add SKIP LOCKED DATA";
 	}
 
 	@Override
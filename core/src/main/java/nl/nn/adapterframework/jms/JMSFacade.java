@@ -700,6 +700,7 @@ public class JMSFacade extends JNDIBase implements HasPhysicalDestination, IXAEn
 		if (!soap) {
 			return message;
 		}
+		// only the Message of an IMessageWrapper can be a stream, it is owned by the wrapper
 		message.preserve();
 		Message messageText=extractMessageBody(message, context, soapWrapper);
 		if (StringUtils.isNotEmpty(soapHeaderSessionKey)) {
@@ -0,0 +1,189 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.jms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+
+import org.apache.logging.log4j.Logger;
+
+import nl.nn.adapterframework.core.IbisException;
+import nl.nn.adapterframework.core.TimeOutException;
+import nl.nn.adapterframework.task.TimeoutScheduler;
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Receives the replies for a synchronous {@link JmsSender} with a small number of long-lived consumers, and hands
+ * them to the waiting requests by their correlationId. This avoids creating a consumer with a message selector for every request.
+ * <p>
+ * When no reply queue is specified, a temporary queue is created, that is consumed by a single consumer. A specified reply queue must
+ * be dedicated to a single JmsSender instance, because replies for other senders would be consumed and discarded.
+ * <p>
+ * Replies that arrive before the request has started waiting are kept until the request picks them up, or until the reply timeout has passed.
+ */
+public class JmsReplyDispatcher implements MessageListener {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private final MessagingSource messagingSource;
+	private final String name;
+	private Destination replyQueue;
+	private final int consumerCount;
+	private final long orphanTimeout;
+
+	private final ConcurrentMap<String, CompletableFuture<Message>> pendingReplies = new ConcurrentHashMap<String, CompletableFuture<Message>>();
+	private final List<Session> sessions = new ArrayList<Session>();
+	private final List<MessageConsumer> consumers = new ArrayList<MessageConsumer>();
+
+	/**
+	 * @param replyQueue queue to receive replies on. If <code>null</code>, a temporary queue is created.
+	 * @param consumerCount number of consumers on the replyQueue.
+	 * @param orphanTimeout time in ms that replies are kept for which no request is waiting.
+	 */
+	public JmsReplyDispatcher(MessagingSource messagingSource, String name, Destination replyQueue, int consumerCount, long orphanTimeout) {
+		this.messagingSource = messagingSource;
+		this.name = name;
+		this.replyQueue = replyQueue;
+		this.consumerCount = replyQueue==null ? 1 : Math.max(consumerCount, 1);
+		this.orphanTimeout = orphanTimeout;
+	}
+
+	public synchronized void open() throws JmsException {
+		try {
+			for (int i=0; i<consumerCount; i++) {
+				Session session = messagingSource.createSession(false, Session.AUTO_ACKNOWLEDGE);
+				sessions.add(session);
+				if (replyQueue==null) {
+					// a temporary queue can only be consumed on the connection that created it
+					replyQueue = session.createTemporaryQueue();
+				}
+				MessageConsumer consumer = session.createConsumer(replyQueue);
+				consumer.setMessageListener(this);
+				consumers.add(consumer);
+			}
+			log.debug(getLogPrefix()+"started ["+consumerCount+"] reply consumers on ["+replyQueue+"]");
+		} catch (JMSException | IbisException e) {
+			close();
+			throw new JmsException(getLogPrefix()+"cannot start reply consumers", e);
+		}
+	}
+
+	public synchronized void close() {
+		for (MessageConsumer consumer:consumers) {
+			try {
+				consumer.close();
+			} catch (JMSException e) {
+				log.warn(getLogPrefix()+"exception closing reply consumer", e);
+			}
+		}
+		consumers.clear();
+		for (Session session:sessions) {
+			messagingSource.releaseSession(session);
+		}
+		sessions.clear();
+		for (CompletableFuture<Message> reply:pendingReplies.values()) {
+			reply.cancel(false);
+		}
+		pendingReplies.clear();
+	}
+
+	public Destination getReplyQueue() {
+		return replyQueue;
+	}
+
+	/**
+	 * Waits at most <code>timeout</code> ms for the reply with JMSCorrelationID <code>correlationId</code>.
+	 */
+	public Message waitForReply(String correlationId, long timeout) throws TimeOutException, JmsException {
+		if (correlationId==null) {
+			throw new JmsException(getLogPrefix()+"cannot wait for reply without replyCorrelationId");
+		}
+		CompletableFuture<Message> reply = getOrRegister(correlationId, false);
+		try {
+			return reply.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new TimeOutException(getLogPrefix()+"did not receive reply on ["+replyQueue+"] replyCorrelationId ["+correlationId+"] within ["+timeout+"] ms");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new JmsException(getLogPrefix()+"interrupted while waiting for reply with replyCorrelationId ["+correlationId+"]", e);
+		} catch (ExecutionException | CancellationException e) {
+			throw new JmsException(getLogPrefix()+"reply consumers closed while waiting for reply with replyCorrelationId ["+correlationId+"]", e);
+		} finally {
+			pendingReplies.remove(correlationId, reply);
+		}
+	}
+
+	@Override
+	public void onMessage(Message message) {
+		try {
+			String correlationId = message.getJMSCorrelationID();
+			if (correlationId==null) {
+				log.warn(getLogPrefix()+"discarding reply without JMSCorrelationID, messageId ["+message.getJMSMessageID()+"]");
+				return;
+			}
+			if (!getOrRegister(correlationId, true).complete(message)) {
+				log.warn(getLogPrefix()+"discarding duplicate reply for replyCorrelationId ["+correlationId+"]");
+			}
+		} catch (JMSException e) {
+			log.warn(getLogPrefix()+"exception dispatching reply", e);
+		}
+	}
+
+	private CompletableFuture<Message> getOrRegister(String correlationId, boolean arrived) {
+		CompletableFuture<Message> reply = pendingReplies.get(correlationId);
+		if (reply==null) {
+			CompletableFuture<Message> newReply = new CompletableFuture<Message>();
+			reply = pendingReplies.putIfAbsent(correlationId, newReply);
+			if (reply==null) {
+				reply = newReply;
+				if (arrived) {
+					// no request is waiting (yet), make sure the reply does not stay forever when it is never picked up
+					final CompletableFuture<Message> orphan = newReply;
+					TimeoutScheduler.getInstance().schedule(new Runnable() {
+						@Override
+						public void run() {
+							if (pendingReplies.remove(correlationId, orphan)) {
+								log.warn(getLogPrefix()+"discarding reply for replyCorrelationId ["+correlationId+"] that was not picked up within ["+orphanTimeout+"] ms");
+							}
+						}
+					}, orphanTimeout);
+				}
+			}
+		}
+		return reply;
+	}
+
+	public int getPendingCount() {
+		return pendingReplies.size();
+	}
+
+	protected String getLogPrefix() {
+		return "JmsReplyDispatcher ["+name+"] ";
+	}
+}
@@ -42,12 +42,17 @@ import nl.nn.adapterframework.core.ParameterException;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.doc.IbisDoc;
+import nl.nn.adapterframework.jms.JmsSessionPool.PooledSession;
 import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.parameters.ParameterList;
 import nl.nn.adapterframework.parameters.ParameterValue;
 import nl.nn.adapterframework.parameters.ParameterValueList;
 import nl.nn.adapterframework.soap.SoapWrapper;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.stream.Message;
+import nl.nn.adapterframework.util.CounterStatistic;
 
 /**
  * This class sends messages with JMS.
@@ -63,7 +68,7 @@ import nl.nn.adapterframework.stream.Message;
  * @author Gerrit van Brakel
  */
 
-public class JmsSender extends JMSFacade implements ISenderWithParameters {
+public class JmsSender extends JMSFacade implements ISenderWithParameters, HasStatistics {
 	private String replyToName = null;
 	private int deliveryMode = 0;
 	private String messageType = null;
@@ -77,12 +82,19 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 	private String soapAction=null;
 	private String soapHeaderParam="soapHeader";
 	private String linkMethod="MESSAGEID";
+	private boolean usePooledSessions=false;
+	private int sharedReplyConsumers=0;
 	
 	protected ParameterList paramList = null;
 	private SoapWrapper soapWrapper = null;
 	private String responseHeaders = null;
 	private List<String> responseHeadersList = new ArrayList<String>();
 
+	private CounterStatistic sessionPoolHits = new CounterStatistic(0);
+	private CounterStatistic sessionPoolMisses = new CounterStatistic(0);
+	private StatisticsKeeper sessionPoolWaitStatistics;
+	private JmsReplyDispatcher replyDispatcher;
+
 	/**
 	 * Configures the sender
 	 */
@@ -111,6 +123,24 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 				responseHeadersList.add(st.nextToken());
 			}
 		}
+		if (isUsePooledSessions()) {
+			if (isTransacted()) {
+				ConfigurationWarnings.add(this, log, "attribute usePooledSessions cannot be used in combination with transacted=true, sessions will not be pooled");
+				setUsePooledSessions(false);
+			} else if (useJms102()) {
+				ConfigurationWarnings.add(this, log, "attribute usePooledSessions cannot be used in combination with JMS 1.0.2, sessions will not be pooled");
+				setUsePooledSessions(false);
+			} else {
+				sessionPoolWaitStatistics = StatisticsKeeper.createDurationStatisticsKeeper("session pool wait for "+getName());
+			}
+		}
+		if (getSharedReplyConsumers()>0) {
+			if (!isSynchronous()) {
+				ConfigurationWarnings.add(this, log, "attribute sharedReplyConsumers has no effect when synchronous=false");
+			} else if (replyToName==null && getSharedReplyConsumers()>1) {
+				ConfigurationWarnings.add(this, log, "a dynamic reply queue is consumed by a single consumer, attribute sharedReplyConsumers ["+getSharedReplyConsumers()+"] is reduced to 1");
+			}
+		}
 	}
 
 	/**
@@ -120,12 +150,29 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 	public void open() throws SenderException {
 		try {
 			super.open();
+			if (isSynchronous() && getSharedReplyConsumers()>0) {
+				Destination replyQueue = replyToName!=null ? getDestination(replyToName) : null;
+				replyDispatcher = new JmsReplyDispatcher(getMessagingSource(), getName(), replyQueue, getSharedReplyConsumers(), getReplyTimeout());
+				replyDispatcher.open();
+			}
 		}
 		catch (Exception e) {
 			throw new SenderException(e);
 		}
 	}
 
+	@Override
+	public void close() {
+		try {
+			if (replyDispatcher!=null) {
+				replyDispatcher.close();
+			}
+		} finally {
+			replyDispatcher=null;
+			super.close();
+		}
+	}
+
 	@Override
 	public void addParameter(Parameter p) { 
 		if (paramList==null) {
@@ -147,6 +194,8 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 	public Message sendMessage(Message message, IPipeLineSession session, String soapHeader) throws SenderException, TimeOutException {
 		Session s = null;
 		MessageProducer mp = null;
+		PooledSession pooledSession = null;
+		boolean pooledSessionValid = false;
 		String correlationID = session==null ? null : session.getMessageId();
 
 		ParameterValueList pvl=null;
@@ -173,8 +222,14 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 				message = soapWrapper.putInEnvelope(message, getEncodingStyleURI(),getServiceNamespaceURI(),soapHeader);
 				if (log.isDebugEnabled()) log.debug(getLogPrefix()+"correlationId ["+correlationID+"] soap message ["+message+"]");
 			}
-			s = createSession();
-			mp = getMessageProducer(s, getDestination(session));
+			if (isUsePooledSessions()) {
+				pooledSession = borrowPooledSession(getDestination(session));
+				s = pooledSession.getSession();
+				mp = pooledSession.getProducer();
+			} else {
+				s = createSession();
+				mp = getMessageProducer(s, getDestination(session));
+			}
 			Destination replyQueue = null;
 
 			// create message
@@ -196,7 +251,9 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 			if (pvl != null) {
 				setProperties(msg, pvl);
 			}
-			if (replyToName != null) {
+			if (replyDispatcher != null) {
+				replyQueue = replyDispatcher.getReplyQueue();
+			} else if (replyToName != null) {
 				replyQueue = getDestination(replyToName);
 			} else {
 				if (isSynchronous()) {
@@ -227,7 +284,7 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 			}
 			if (isSynchronous()) {
 				String replyCorrelationId=null;
-				if (replyToName != null) {
+				if (replyToName != null || replyDispatcher != null) {
 					if ("CORRELATIONID".equalsIgnoreCase(getLinkMethod())) {
 						replyCorrelationId=correlationID;
 					} else if ("CORRELATIONID_FROM_MESSAGE".equalsIgnoreCase(getLinkMethod())) {
@@ -236,10 +293,20 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 						replyCorrelationId=msg.getJMSMessageID();
 					}
 				}
+				if (replyDispatcher != null && replyCorrelationId == null) {
+					pooledSessionValid = true; // the session itself is fine
+					throw new SenderException("[" + getName() + "] cannot wait for reply: no replyCorrelationId available for linkMethod [" + getLinkMethod() + "], requestMsgId [" + msg.getJMSMessageID() + "]");
+				}
 				if (log.isDebugEnabled()) log.debug("[" + getName() + "] start waiting for reply on [" + replyQueue + "] requestMsgId ["+msg.getJMSMessageID()+"] replyCorrelationId ["+replyCorrelationId+"] for ["+getReplyTimeout()+"] ms");
-				MessageConsumer mc = getMessageConsumerForCorrelationId(s,replyQueue,replyCorrelationId);
+				MessageConsumer mc = null;
 				try {
-					javax.jms.Message rawReplyMsg = mc.receive(getReplyTimeout());
+					javax.jms.Message rawReplyMsg;
+					if (replyDispatcher != null) {
+						rawReplyMsg = replyDispatcher.waitForReply(replyCorrelationId, getReplyTimeout());
+					} else {
+						mc = getMessageConsumerForCorrelationId(s,replyQueue,replyCorrelationId);
+						rawReplyMsg = mc.receive(getReplyTimeout());
+					}
 					if (rawReplyMsg==null) {
 						throw new TimeOutException("did not receive reply on [" + replyQueue + "] requestMsgId ["+msg.getJMSMessageID()+"] replyCorrelationId ["+replyCorrelationId+"] within ["+getReplyTimeout()+"] ms");
 					}
@@ -252,7 +319,9 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 							}
 						}
 					}
-					return extractMessage(rawReplyMsg, session, isSoap(), getReplySoapHeaderSessionKey(),soapWrapper);
+					Message result = extractMessage(rawReplyMsg, session, isSoap(), getReplySoapHeaderSessionKey(),soapWrapper);
+					pooledSessionValid = true;
+					return result;
 				} finally {
 					if (mc != null) { 
 						try { 
@@ -263,7 +332,9 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 					}
 				}
 			}
-			return new Message(msg.getJMSMessageID());
+			Message result = new Message(msg.getJMSMessageID());
+			pooledSessionValid = true;
+			return result;
 		} catch (JMSException e) {
 			throw new SenderException(e);
 		} catch (IOException e) {
@@ -277,14 +348,66 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 		} catch (JmsException e) {
 			throw new SenderException(e);
 		} finally {
-			if (mp != null) { 
-				try { 
-					mp.close(); 
-				} catch (JMSException e) { 
-					log.warn("JmsSender [" + getName() + "] got exception closing message producer",e); 
+			if (pooledSession != null) {
+				// a session that has been used when an exception occurred might be broken, so it is not given back to the pool
+				if (pooledSessionValid) {
+					getSessionPool().release(pooledSession);
+				} else {
+					getSessionPool().invalidate(pooledSession);
+				}
+			} else {
+				if (mp != null) { 
+					try { 
+						mp.close(); 
+					} catch (JMSException e) { 
+						log.warn("JmsSender [" + getName() + "] got exception closing message producer",e); 
+					}
 				}
+				closeSession(s);
 			}
-			closeSession(s);
+		}
+	}
+
+	private JmsSessionPool getSessionPool() throws JmsException {
+		return getMessagingSource().getSessionPool();
+	}
+
+	/**
+	 * Borrows a session and producer from the pool of the MessagingSource, and resets the producer to
+	 * the settings of this sender, as the previous user might have changed them.
+	 */
+	private PooledSession borrowPooledSession(Destination destination) throws JmsException, JMSException {
+		long t0 = System.nanoTime();
+		PooledSession pooledSession = getSessionPool().borrow(destination, isJmsTransacted(), getAckMode());
+		sessionPoolWaitStatistics.addNanoValue(System.nanoTime()-t0);
+		if (pooledSession.isNew()) {
+			sessionPoolMisses.increase();
+		} else {
+			sessionPoolHits.increase();
+		}
+		MessageProducer mp = pooledSession.getProducer();
+		try {
+			mp.setDeliveryMode(javax.jms.Message.DEFAULT_DELIVERY_MODE);
+			mp.setPriority(javax.jms.Message.DEFAULT_PRIORITY);
+			mp.setTimeToLive(getMessageTimeToLive()>0 ? getMessageTimeToLive() : javax.jms.Message.DEFAULT_TIME_TO_LIVE);
+		} catch (JMSException e) {
+			getSessionPool().invalidate(pooledSession);
+			throw e;
+		}
+		return pooledSession;
+	}
+
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		if (sessionPoolWaitStatistics!=null) {
+			hski.handleScalar(data, "sessionPoolHits", sessionPoolHits.getValue());
+			hski.handleScalar(data, "sessionPoolMisses", sessionPoolMisses.getValue());
+			hski.handleScalar(data, "sessionPoolHitsThisInterval", sessionPoolHits.getIntervalValue());
+			hski.handleScalar(data, "sessionPoolMissesThisInterval", sessionPoolMisses.getIntervalValue());
+			hski.handleStatisticsKeeper(data, sessionPoolWaitStatistics);
+			sessionPoolHits.performAction(action);
+			sessionPoolMisses.performAction(action);
+			sessionPoolWaitStatistics.performAction(action);
 		}
 	}
 
@@ -356,6 +479,14 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 	public void setReplyToName(String replyTo) {
 		this.replyToName = replyTo;
 	}
+
+	@IbisDoc({"when set (>0) and <code>synchronous=true</code>, replies are received by this number of long-lived consumers that are shared by all requests, instead of by a consumer per request. replies are matched to requests by their correlationid, as specified by <code>linkmethod</code>. when <code>replytoname</code> is set, the reply queue must be dedicated to this sender. when it is not set, a single consumer on a temporary queue is used", "0"})
+	public void setSharedReplyConsumers(int sharedReplyConsumers) {
+		this.sharedReplyConsumers = sharedReplyConsumers;
+	}
+	public int getSharedReplyConsumers() {
+		return sharedReplyConsumers;
+	}
 	
 	@IbisDoc({"value of the jmstype field", "not set by application"})
 	public void setMessageType(String string) {
@@ -391,6 +522,14 @@ public class JmsSender extends JMSFacade implements ISenderWithParameters {
 		priority = i;
 	}
 
+	@IbisDoc({"when <code>true</code>, sessions and message producers are taken from a pool that is shared by all senders that use the same connection factory, instead of being created and closed for every message. cannot be used in combination with <code>transacted=true</code>. the pool is configured by the properties <code>jms.sessionPool.*</code>", "false"})
+	public void setUsePooledSessions(boolean usePooledSessions) {
+		this.usePooledSessions = usePooledSessions;
+	}
+	public boolean isUsePooledSessions() {
+		return usePooledSessions;
+	}
+
 	@IbisDoc({"when <code>true</code>, messages sent are put in a soap envelope", "<code>false</code>"})
 	public void setSoap(boolean b) {
 		soap = b;
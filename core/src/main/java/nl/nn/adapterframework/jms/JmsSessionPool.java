@@ -0,0 +1,217 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.jms;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.Topic;
+
+import org.apache.commons.pool2.BaseKeyedPooledObjectFactory;
+import org.apache.commons.pool2.PooledObject;
+import org.apache.commons.pool2.impl.DefaultPooledObject;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPool;
+import org.apache.commons.pool2.impl.GenericKeyedObjectPoolConfig;
+import org.apache.logging.log4j.Logger;
+
+import lombok.Getter;
+import nl.nn.adapterframework.core.IbisException;
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Pool of JMS Sessions with a MessageProducer, keyed by destination and transactional mode.
+ * Reusing sessions and producers saves several round trips to the broker for every message sent.
+ * <p>
+ * The pool belongs to a {@link MessagingSource}, and is configured by the following properties:
+ * <ul>
+ * <li><code>jms.sessionPool.maxPerDestination</code>: maximum number of sessions per destination and transactional mode</li>
+ * <li><code>jms.sessionPool.maxTotal</code>: maximum number of sessions over all destinations. When it is reached, the oldest idle sessions are
+ * closed to make room for sessions for other destinations. This bounds the number of sessions kept for destinations that are determined
+ * per message, e.g. by a destinationParam</li>
+ * <li><code>jms.sessionPool.maxWait</code>: maximum time in ms to wait for a session when the maximum has been reached</li>
+ * <li><code>jms.sessionPool.idleTimeout</code>: time in ms after which idle sessions are closed</li>
+ * </ul>
+ */
+public class JmsSessionPool {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private final MessagingSource messagingSource;
+	private final GenericKeyedObjectPool<SessionKey, PooledSession> pool;
+
+	public JmsSessionPool(MessagingSource messagingSource) {
+		this.messagingSource = messagingSource;
+		AppConstants appConstants = AppConstants.getInstance();
+		GenericKeyedObjectPoolConfig<PooledSession> config = new GenericKeyedObjectPoolConfig<PooledSession>();
+		config.setMaxTotalPerKey(appConstants.getInt("jms.sessionPool.maxPerDestination", 8));
+		config.setMaxIdlePerKey(appConstants.getInt("jms.sessionPool.maxPerDestination", 8));
+		config.setMaxTotal(appConstants.getInt("jms.sessionPool.maxTotal", 256));
+		config.setMaxWaitMillis(appConstants.getLong("jms.sessionPool.maxWait", 10000));
+		long idleTimeout = appConstants.getLong("jms.sessionPool.idleTimeout", 300000);
+		config.setMinEvictableIdleTimeMillis(idleTimeout);
+		config.setTimeBetweenEvictionRunsMillis(Math.max(idleTimeout/4, 1000));
+		config.setNumTestsPerEvictionRun(-4); // check a quarter of the idle sessions per run
+		config.setLifo(true);
+		config.setJmxEnabled(false);
+		pool = new GenericKeyedObjectPool<SessionKey, PooledSession>(new PooledSessionFactory(), config);
+	}
+
+	/**
+	 * Borrows a session with a producer for <code>destination</code>. The session must be returned with {@link #release(PooledSession)},
+	 * or with {@link #invalidate(PooledSession)} when an exception occurred while using it.
+	 */
+	public PooledSession borrow(Destination destination, boolean transacted, int acknowledgeMode) throws JmsException {
+		SessionKey key = new SessionKey(destination, transacted, acknowledgeMode);
+		try {
+			PooledSession pooledSession = pool.borrowObject(key);
+			pooledSession.useCount++;
+			return pooledSession;
+		} catch (Exception e) {
+			throw new JmsException("cannot obtain pooled session for destination ["+key.destinationName+"]", e);
+		}
+	}
+
+	public void release(PooledSession pooledSession) {
+		if (pooledSession!=null) {
+			pool.returnObject(pooledSession.key, pooledSession);
+		}
+	}
+
+	public void invalidate(PooledSession pooledSession) {
+		if (pooledSession!=null) {
+			try {
+				pool.invalidateObject(pooledSession.key, pooledSession);
+			} catch (Exception e) {
+				log.warn("exception invalidating pooled session for destination ["+pooledSession.key.destinationName+"]", e);
+			}
+		}
+	}
+
+	public void close() {
+		pool.close();
+	}
+
+	public int getNumActive() {
+		return pool.getNumActive();
+	}
+	public int getNumIdle() {
+		return pool.getNumIdle();
+	}
+	public long getCreatedCount() {
+		return pool.getCreatedCount();
+	}
+	public long getDestroyedByEvictorCount() {
+		return pool.getDestroyedByEvictorCount();
+	}
+
+
+	/**
+	 * Session and MessageProducer that are used together. Only one thread at a time may use them.
+	 */
+	public static class PooledSession {
+		private final SessionKey key;
+		private final @Getter Session session;
+		private final @Getter MessageProducer producer;
+		private long useCount;
+
+		private PooledSession(SessionKey key, Session session, MessageProducer producer) {
+			this.key = key;
+			this.session = session;
+			this.producer = producer;
+		}
+
+		/**
+		 * Returns <code>true</code> when the session has been created for the current borrower, i.e. it was not taken from the pool.
+		 */
+		public boolean isNew() {
+			return useCount<=1;
+		}
+	}
+
+	private static class SessionKey {
+		private final Destination destination;
+		private final String destinationName;
+		private final boolean transacted;
+		private final int acknowledgeMode;
+
+		SessionKey(Destination destination, boolean transacted, int acknowledgeMode) throws JmsException {
+			this.destination = destination;
+			this.transacted = transacted;
+			this.acknowledgeMode = acknowledgeMode;
+			try {
+				// Destination objects are not guaranteed to implement equals(), so their names are used to compare them
+				if (destination instanceof Queue) {
+					destinationName = "queue:"+((Queue)destination).getQueueName();
+				} else if (destination instanceof Topic) {
+					destinationName = "topic:"+((Topic)destination).getTopicName();
+				} else {
+					destinationName = String.valueOf(destination);
+				}
+			} catch (JMSException e) {
+				throw new JmsException("cannot determine name of destination ["+destination+"]", e);
+			}
+		}
+
+		@Override
+		public int hashCode() {
+			return destinationName.hashCode()*31 + (transacted ? 1 : 0) + acknowledgeMode*2;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof SessionKey)) {
+				return false;
+			}
+			SessionKey other = (SessionKey)obj;
+			return destinationName.equals(other.destinationName) && transacted==other.transacted && acknowledgeMode==other.acknowledgeMode;
+		}
+	}
+
+	private class PooledSessionFactory extends BaseKeyedPooledObjectFactory<SessionKey, PooledSession> {
+
+		@Override
+		public PooledSession create(SessionKey key) throws Exception {
+			Session session = messagingSource.createSession(key.transacted, key.acknowledgeMode);
+			try {
+				MessageProducer producer = session.createProducer(key.destination);
+				if (log.isDebugEnabled()) log.debug("created pooled session for destination ["+key.destinationName+"] transacted ["+key.transacted+"] acknowledgeMode ["+key.acknowledgeMode+"]");
+				return new PooledSession(key, session, producer);
+			} catch (JMSException e) {
+				messagingSource.releaseSession(session);
+				throw new IbisException("cannot create producer for destination ["+key.destinationName+"]", e);
+			}
+		}
+
+		@Override
+		public PooledObject<PooledSession> wrap(PooledSession pooledSession) {
+			return new DefaultPooledObject<PooledSession>(pooledSession);
+		}
+
+		@Override
+		public void destroyObject(SessionKey key, PooledObject<PooledSession> p) throws Exception {
+			PooledSession pooledSession = p.getObject();
+			try {
+				pooledSession.producer.close();
+			} catch (JMSException e) {
+				log.warn("exception closing pooled producer for destination ["+key.destinationName+"]", e);
+			} finally {
+				messagingSource.releaseSession(pooledSession.session);
+			}
+		}
+	}
+}
@@ -72,6 +72,7 @@ public class MessagingSource  {
 	private Hashtable connectionTable; // hashtable is synchronized and does not permit nulls
 
 	private Queue globalDynamicReplyQueue = null;
+	private JmsSessionPool sessionPool = null;
 	
 	protected MessagingSource(String id, Context context,
 			ConnectionFactory connectionFactory, Map siblingMap,
@@ -98,6 +99,10 @@ public class MessagingSource  {
 			log.debug(getLogPrefix()+"reference count ["+referenceCount+"], cleaning up global objects");
 			siblingMap.remove(getId());
 			try {
+				if (sessionPool != null) {
+					log.debug(getLogPrefix()+"closing session pool");
+					sessionPool.close();
+				}
 				deleteDynamicQueue(globalDynamicReplyQueue);
 				if (globalConnection != null) { 
 					log.debug(getLogPrefix()+"closing global Connection");
@@ -116,6 +121,7 @@ public class MessagingSource  {
 			} catch (Exception e) {
 				throw new IbisException("exception closing connection", e);
 			} finally {
+				sessionPool=null;
 				globalDynamicReplyQueue=null;
 				connectionFactory = null;
 				globalConnection=null;
@@ -128,6 +134,16 @@ public class MessagingSource  {
 		}
 	}
 
+	/**
+	 * Returns the pool of sessions with producers that is shared by all senders that use this MessagingSource.
+	 */
+	public synchronized JmsSessionPool getSessionPool() {
+		if (sessionPool == null) {
+			sessionPool = new JmsSessionPool(this);
+		}
+		return sessionPool;
+	}
+
 	public synchronized void increaseReferences() {
 		referenceCount++;
 	}
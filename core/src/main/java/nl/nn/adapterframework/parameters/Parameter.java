@@ -267,11 +267,30 @@ public class Parameter implements INamedObject, IWithParameters {
 		}
 		return true;
 	}
+
+	/**
+	 * Returns <code>true</code> when the value is determined by parsing the input message as XML, 
+	 * i.e. by an xpathExpression, styleSheetName or sessionKeyXPath that is applied to the input message.
+	 */
+	public boolean parsesInputMessage() {
+		if (transformerPoolSessionKey != null) {
+			return true;
+		}
+		return getTransformerPool() != null && StringUtils.isEmpty(getValue()) && StringUtils.isEmpty(getSessionKey()) && StringUtils.isEmpty(getPattern());
+	}
  
 	/**
 	 * determines the raw value 
 	 */
 	public Object getValue(ParameterValueList alreadyResolvedParameters, Message message, IPipeLineSession session, boolean namespaceAware) throws ParameterException {
+		return getValue(alreadyResolvedParameters, message, null, session, namespaceAware);
+	}
+
+	/**
+	 * determines the raw value, using <code>parsedMessage</code> instead of parsing the message when it is not null.
+	 * @param parsedMessage Source of the already parsed input message, that can be used multiple times
+	 */
+	public Object getValue(ParameterValueList alreadyResolvedParameters, Message message, Source parsedMessage, IPipeLineSession session, boolean namespaceAware) throws ParameterException {
 		Object result = null;
 		log.debug("Calculating value for Parameter ["+getName()+"]");
 		if (!configured) {
@@ -281,7 +300,7 @@ public class Parameter implements INamedObject, IWithParameters {
 		String requestedSessionKey;
 		if (transformerPoolSessionKey != null) {
 			try {
-				requestedSessionKey = transformerPoolSessionKey.transform(message.asSource());
+				requestedSessionKey = transformerPoolSessionKey.transform(parsedMessage != null ? parsedMessage : message.asSource());
 			} catch (Exception e) {
 				throw new ParameterException("SessionKey for parameter ["+getName()+"] exception on transformation to get name", e);
 			}
@@ -337,7 +356,7 @@ public class Parameter implements INamedObject, IWithParameters {
 						log.debug("Parameter ["+getName()+"] pattern ["+getPattern()+"] empty, no transformation will be performed");
 					}
 				} else {
-					source = message.asSource();
+					source = parsedMessage != null ? parsedMessage : message.asSource();
 				}
 				if (source!=null) {
 					if (transformerPoolRemoveNamespaces != null) {
@@ -371,6 +390,7 @@ public class Parameter implements INamedObject, IWithParameters {
 						return null;
 					}
 					message.preserve();
+					message.closeOnCloseOf(session);
 					result=message.asString();
 				} catch (IOException e) {
 					throw new ParameterException(e);
@@ -398,6 +418,7 @@ public class Parameter implements INamedObject, IWithParameters {
 				} else if ("input".equals(token)) {
 					try {
 						message.preserve();
+						message.closeOnCloseOf(session);
 						result=message.asString();
 					} catch (IOException e) {
 						throw new ParameterException(e);
@@ -18,11 +18,24 @@ package nl.nn.adapterframework.parameters;
 import java.util.ArrayList;
 import java.util.Iterator;
 
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.Source;
+import javax.xml.transform.dom.DOMSource;
+
+import org.apache.logging.log4j.Logger;
+import org.w3c.dom.Document;
+import org.xml.sax.helpers.DefaultHandler;
+
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.ParameterException;
 import nl.nn.adapterframework.core.PipeLineSessionBase;
 import nl.nn.adapterframework.stream.Message;
+import nl.nn.adapterframework.util.LogUtil;
+import nl.nn.adapterframework.util.XmlUtils;
+import nl.nn.adapterframework.xml.NonResolvingExternalEntityResolver;
 
 
 /**
@@ -31,6 +44,7 @@ import nl.nn.adapterframework.stream.Message;
  * @author Gerrit van Brakel
  */
 public class ParameterList extends ArrayList<Parameter> {
+	private static Logger log = LogUtil.getLogger(ParameterList.class);
 	
 	public ParameterList() {
 		super();
@@ -75,9 +89,16 @@ public class ParameterList extends ArrayList<Parameter> {
 	}
 	/**
 	 * Returns an array list of <link>ParameterValue<link> objects
+	 * <p>
+	 * When more than one parameter parses the input message as XML, the message is parsed only once, into a DOM 
+	 * document that is used as input for each of these parameters.
 	 */
 	public ParameterValueList getValues(Message message, IPipeLineSession session, boolean namespaceAware) throws ParameterException {
 		ParameterValueList result = new ParameterValueList();
+		Source parsedMessage = null;
+		if (message != null && countParametersParsingInputMessage() > 1) {
+			parsedMessage = parseMessage(message);
+		}
 		for (Parameter parm:this) {
 			String parmSessionKey = parm.getSessionKey();
 			// if a parameter has sessionKey="*", then a list is generated with a synthetic parameter referring to 
@@ -95,19 +116,51 @@ public class ParameterList extends ArrayList<Parameter> {
 							} catch (ConfigurationException e) {
 								throw new ParameterException(e);
 							}
-							result.add(getValue(result, newParm, message, session, namespaceAware));
+							result.add(getValue(result, newParm, message, null, session, namespaceAware));
 						}
 					}
 				}
 			} else {
-				result.add(getValue(result, parm, message, session, namespaceAware));
+				result.add(getValue(result, parm, message, parm.parsesInputMessage() ? parsedMessage : null, session, namespaceAware));
 			}
 		}
 		return result;
 	}
 
-	private ParameterValue getValue(ParameterValueList alreadyResolvedParameters, Parameter p, Message message, IPipeLineSession session, boolean namespaceAware) throws ParameterException {
-		return new ParameterValue(p, p.getValue(alreadyResolvedParameters, message, session, namespaceAware));
+	private ParameterValue getValue(ParameterValueList alreadyResolvedParameters, Parameter p, Message message, Source parsedMessage, IPipeLineSession session, boolean namespaceAware) throws ParameterException {
+		return new ParameterValue(p, p.getValue(alreadyResolvedParameters, message, parsedMessage, session, namespaceAware));
+	}
+
+	private int countParametersParsingInputMessage() {
+		int count=0;
+		for (Parameter p:this) {
+			if (p.parsesInputMessage()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Parses the message into a DOM document, that can be read by multiple transformations. 
+	 * Returns null when the message cannot be parsed, to have each parameter report the error by itself.
+	 */
+	private Source parseMessage(Message message) {
+		try {
+			if (message.asObject() == null) {
+				return null;
+			}
+			DocumentBuilderFactory factory = XmlUtils.getDocumentBuilderFactory(true);
+			factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+			DocumentBuilder builder = factory.newDocumentBuilder();
+			builder.setEntityResolver(new NonResolvingExternalEntityResolver());
+			builder.setErrorHandler(new DefaultHandler()); // avoid errors to be printed to System.err
+			Document document = builder.parse(message.asInputSource());
+			return new DOMSource(document);
+		} catch (Exception e) {
+			if (log.isDebugEnabled()) log.debug("cannot parse input message once for all parameters, each parameter will parse it by itself: "+e.getMessage());
+			return null;
+		}
 	}
 
 	
@@ -17,7 +17,9 @@ package nl.nn.adapterframework.pipes;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
@@ -141,6 +143,7 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 	private boolean closeIteratorOnExit=true;
 	private boolean parallel = false;
 	private int maxChildThreads = 0;
+	private int maxItemsInProgress = 0;
 	
 	private int blockSize=0;
 
@@ -225,12 +228,16 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 		private Vector<I> inputItems = new Vector<I>();
 		private Guard guard;
 		private List<ParallelSenderExecutor> executorList;
+		private Deque<ItemInProgress> window;
+		private int emittedItems=0;
 
 		public ItemCallback(IPipeLineSession session, ISender sender, Writer out) {
 			this.session=session;
 			this.sender=sender;
 			this.results=out;
-			if (isParallel() && isCollectResults()) {
+			if (isParallel() && getMaxItemsInProgress()>0) {
+				window = new ArrayDeque<ItemInProgress>();
+			} else if (isParallel() && isCollectResults()) {
 				guard = new Guard();
 				executorList = new ArrayList<ParallelSenderExecutor>();
 			}
@@ -253,6 +260,9 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 				waitForResults();
 				results.append("</results>");
 			} else {
+				if (window!=null) {
+					waitForResults();
+				}
 				results.append("<results count=\""+getCount()+"\"/>");
 			}
 		}
@@ -278,6 +288,17 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 		 * @return true when looping should continue, false when stop is required. 
 		 */
 		public boolean handleItem(I item) throws SenderException, TimeOutException, IOException {
+			try {
+				return processItem(item);
+			} catch (SenderException | TimeOutException | IOException | RuntimeException e) {
+				if (window!=null) {
+					discardItemsInProgress();
+				}
+				throw e;
+			}
+		}
+
+		private boolean processItem(I item) throws SenderException, TimeOutException, IOException {
 			if (isRemoveDuplicates()) {
 				if (inputItems.indexOf(item)>=0) {
 					log.debug(getLogPrefix(session)+"duplicate item ["+item+"] will not be processed");
@@ -314,6 +335,12 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 					log.debug(getLogPrefix(session)+"iteration ["+totalItems+"] item ["+message+"]");
 				} 
 			}
+			if (window!=null) {
+				// backpressure: the iterator is not advanced until there is room in the window
+				while (window.size()>=getMaxItemsInProgress()) {
+					emitFirstItemInProgress();
+				}
+			}
 			if (childThreadSemaphore!=null) {
 				try {
 					childThreadSemaphore.acquire();
@@ -323,7 +350,16 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 			}
 			try { 
 				try {
-					if (isParallel()) {
+					if (window!=null) {
+						Guard itemGuard = new Guard();
+						itemGuard.addResource();
+						ParallelSenderExecutor pse= new ParallelSenderExecutor(sender, message, session, childThreadSemaphore, itemGuard, senderStatisticsKeeper);
+						window.add(new ItemInProgress(pse, itemGuard));
+						getTaskExecutor().execute(pse);
+						while (!window.isEmpty() && window.peek().guard.isReleased()) {
+							emitFirstItemInProgress();
+						}
+					} else if (isParallel()) {
 						if (isCollectResults()) {
 							guard.addResource();
 						}
@@ -422,31 +458,85 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 		}
 		
 		public void waitForResults() throws SenderException, IOException {
-			if (isParallel()) {
+			if (window!=null) {
+				try {
+					while (!window.isEmpty()) {
+						emitFirstItemInProgress();
+					}
+				} finally {
+					discardItemsInProgress();
+				}
+			} else if (isParallel()) {
 				try {
 					guard.waitForAllResources();
 					int count = 0;
 					for (ParallelSenderExecutor pse : executorList) {
 						count++;
-						String itemResult;
-						if (pse.getThrowable() == null) {
-							itemResult = pse.getReply().asString();
-						} else {
-							itemResult = "<exception>"+XmlUtils.encodeChars(pse.getThrowable().getMessage())+"</exception>";
-						}
-						addResult(count, pse.getRequest(), itemResult);
+						addResult(count, pse.getRequest(), getParallelResult(pse));
 					}
 				} catch (InterruptedException e) {
 					throw new SenderException(getLogPrefix(session)+"was interupted",e);
 				}
 			}
 		}
+
+		/**
+		 * Waits for the oldest item in the window to complete, and adds its result. Items are thus emitted in input order,
+		 * while the items behind it can complete in any order.
+		 */
+		private void emitFirstItemInProgress() throws SenderException, IOException {
+			ItemInProgress first = window.poll();
+			try {
+				first.guard.waitForAllResources();
+			} catch (InterruptedException e) {
+				throw new SenderException(getLogPrefix(session)+"was interupted",e);
+			}
+			emittedItems++;
+			if (isCollectResults()) {
+				addResult(emittedItems, first.executor.getRequest(), getParallelResult(first.executor));
+			}
+		}
+
+		/**
+		 * Waits for the items in the window to complete, without adding their results. Used when iterating stops because of an exception,
+		 * so that no items are still being sent after the pipe has returned.
+		 */
+		private void discardItemsInProgress() {
+			ItemInProgress itemInProgress;
+			while ((itemInProgress=window.poll())!=null) {
+				try {
+					itemInProgress.guard.waitForAllResources();
+				} catch (InterruptedException e) {
+					log.warn(getLogPrefix(session)+"interrupted while waiting for ["+(window.size()+1)+"] items in progress to complete");
+					window.clear();
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+		private String getParallelResult(ParallelSenderExecutor pse) throws IOException {
+			if (pse.getThrowable() == null) {
+				return pse.getReply().asString();
+			}
+			return "<exception>"+XmlUtils.encodeChars(pse.getThrowable().getMessage())+"</exception>";
+		}
 		
 		public int getCount() {
 			return totalItems;
 		}
 	}
 	
+	private static class ItemInProgress {
+		final ParallelSenderExecutor executor;
+		final Guard guard;
+
+		ItemInProgress(ParallelSenderExecutor executor, Guard guard) {
+			this.executor = executor;
+			this.guard = guard;
+		}
+	}
+
 	@Override
 	public MessageOutputStream provideOutputStream(IPipeLineSession session) throws StreamingException {
 		return null; // ancestor MessageSendingPipe forwards provideOutputStream to sender, which is not correct for IteratingPipe
@@ -640,6 +730,17 @@ public abstract class IteratingPipe<I> extends MessageSendingPipe {
 	}
 
 
+	@IbisDoc({"14", "When set to a value greater than 0 and <code>parallel</code> is <code>true</code>, at most this number of items is processed simultaneously. "
+			+ "The results are written in input order, as soon as all preceding items have completed, and the next item is only read from the input when there is room. "
+			+ "This limits the memory used for large inputs. When iterating stops because of an exception, the items in progress are completed first, and their results are discarded. "
+			+ "When 0, all items are started at once and results are collected after the last item has completed", "0"})
+	public void setMaxItemsInProgress(int maxItemsInProgress) {
+		this.maxItemsInProgress = maxItemsInProgress;
+	}
+	public int getMaxItemsInProgress() {
+		return maxItemsInProgress;
+	}
+
 	@IbisDoc({"15", "Controls multiline behaviour. when set to a value greater than 0, it specifies the number of rows send in a block to the sender.", "0 (one line at a time, no prefix of suffix)"})
 	public void setBlockSize(int i) {
 		blockSize = i;
@@ -27,6 +27,7 @@ import java.util.Set;
 import javax.json.Json;
 import javax.json.JsonObject;
 import javax.json.JsonStructure;
+import javax.json.stream.JsonParser;
 import javax.xml.validation.ValidatorHandler;
 
 import org.apache.commons.lang.StringUtils;
@@ -65,6 +66,11 @@ import nl.nn.adapterframework.xml.XmlWriter;
 * <tr><td>"failure"</td><td>if a validation error occurred</td></tr>
 * </table>
 * <br>
+* The input message and the result are kept in memory as a whole. When JSON input is converted, an array at the root of the
+* message, or wrapped in an object with the root element as only key, is aligned one item at a time, so that the parsed form
+* of the complete message is not held in memory. Other JSON objects, including an object at the root, are read completely
+* before they are aligned, because the order of their members can differ from the order of the elements in the schema.
+* <br>
 * @author Gerrit van Brakel
 */
 public class Json2XmlValidator extends XmlValidator implements HasPhysicalDestination {
@@ -255,7 +261,7 @@ public class Json2XmlValidator extends XmlValidator implements HasPhysicalDestin
 				}
 				aligner.setOverrideValues(parametervalues);
 			}
-			JsonStructure jsonStructure = Json.createReader(new StringReader(messageToValidate)).read();
+			JsonParser jsonParser = Json.createParser(new StringReader(messageToValidate));
 	
 			// cannot build filter chain as usual backwardly, because it ends differently. 
 			// This will be fixed once an OutputStream can be provided to Xml2Json
@@ -269,7 +275,7 @@ public class Json2XmlValidator extends XmlValidator implements HasPhysicalDestin
 			if (getOutputFormat(session,responseMode).equalsIgnoreCase(FORMAT_JSON)) {
 				Xml2Json xml2json = new Xml2Json(aligner, isCompactJsonArrays(), !isJsonWithRootElements());
 				sourceFilter.setContentHandler(xml2json);
-				aligner.startParse(jsonStructure);
+				aligner.startParse(jsonParser);
 				out=xml2json.toString();
 			} else {
 				XmlWriter xmlWriter = new XmlWriter();
@@ -279,7 +285,7 @@ public class Json2XmlValidator extends XmlValidator implements HasPhysicalDestin
 					handler = new NamespaceRemovingFilter(handler);
 				}
 				sourceFilter.setContentHandler(handler);
-				aligner.startParse(jsonStructure);
+				aligner.startParse(jsonParser);
 				out = xmlWriter.toString();
 			}
 		} catch (Exception e) {
@@ -15,34 +15,64 @@
 */
 package nl.nn.adapterframework.pipes;
 
+import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+
+import javax.xml.transform.TransformerConfigurationException;
+
 import org.apache.commons.lang.StringUtils;
-import org.json.JSONArray;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 import org.json.XML;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
 import nl.nn.adapterframework.doc.IbisDoc;
+import nl.nn.adapterframework.stream.IThreadCreator;
 import nl.nn.adapterframework.stream.Message;
+import nl.nn.adapterframework.stream.MessageOutputStream;
+import nl.nn.adapterframework.stream.StreamingException;
+import nl.nn.adapterframework.stream.StreamingPipe;
+import nl.nn.adapterframework.stream.ThreadConnector;
+import nl.nn.adapterframework.stream.ThreadLifeCycleEventListener;
+import nl.nn.adapterframework.util.JsonToXmlConverter;
+import nl.nn.adapterframework.util.JsonXmlReader;
+import nl.nn.adapterframework.util.StreamUtil;
 import nl.nn.adapterframework.util.TransformerPool;
+import nl.nn.adapterframework.util.XmlJsonWriter;
 import nl.nn.adapterframework.util.XmlUtils;
+import nl.nn.adapterframework.xml.SaxException;
+import nl.nn.adapterframework.xml.XmlWriter;
 
 /**
- * Perform an JSON to XML transformation
+ * Perform an JSON to XML transformation, or an XML to JSON transformation.
+ * <p>
+ * JSON is converted to XML while it is being read, and the XML is passed as SAX events to the next pipe when that can accept a stream.
+ * For direction=xml2json and version 2 or 3 the pipe can accept a stream itself, and the JSON is written while the XML is being parsed.
+ * For direction=json2xml the pipe can accept a stream too: the JSON written to it is converted by a separate thread.
+ * Version 1 of xml2json requires the complete message to be in memory. When it accepts a stream, the XML is collected from the SAX events
+ * it receives, and converted at the end of the document.
  *
  * @author Martijn Onstwedder
  * @author Tom van der Heijden
  */
 
-public class JsonPipe extends FixedForwardPipe {
+public class JsonPipe extends StreamingPipe implements IThreadCreator {
 	private String direction = "json2xml";
 	private String version = "1";
 	private boolean addXmlRootElement=true;
 	
 	private TransformerPool tpXml2Json;
+	private ThreadLifeCycleEventListener<Object> threadLifeCycleEventListener;
 
 	@Override
 	public void configure() throws ConfigurationException {
@@ -62,46 +92,166 @@ public class JsonPipe extends FixedForwardPipe {
 	@Override
 	public PipeRunResult doPipe(Message message, IPipeLineSession session) throws PipeRunException {
 
-		if (message == null) {
+		if (message == null || message.asObject() == null) {
 			throw new PipeRunException(this, getLogPrefix(session) + "got null input");
 		}
 
-		try {
-			String stringResult=null;
-			String actualDirection = getDirection();
-			String actualVersion = getVersion();
-			
-			if ("json2xml".equalsIgnoreCase(actualDirection)) {
-				stringResult = message.asString();
-				JSONTokener jsonTokener = new JSONTokener(stringResult);
-				if (stringResult.startsWith("{")) {
-					JSONObject jsonObject = new JSONObject(jsonTokener);
-					stringResult = XML.toString(jsonObject);
+		try (MessageOutputStream target=getTargetStream(session)) {
+			if ("json2xml".equals(getDirection())) {
+				Reader messageReader = message.asReader();
+				json2xml(messageReader != null ? messageReader : new StringReader(""), target);
+			} else {
+				ContentHandler handler = createXml2JsonHandler(session, target);
+				if (handler == null) {
+					JSONObject jsonObject = XML.toJSONObject(message.asString());
+					try (Writer writer = target.asWriter()) {
+						writer.write(jsonObject.toString());
+					}
+				} else {
+					XmlUtils.parseXml(message.asInputSource(), handler);
+				}
+			}
+			return target.getPipeRunResult();
+		} catch (Exception e) {
+			throw new PipeRunException(this, getLogPrefix(session) + " Exception on transforming input", e);
+		}
+	}
+
+	private void json2xml(Reader messageReader, MessageOutputStream target) throws IOException, SAXException, StreamingException {
+		try (PushbackReader reader = new PushbackReader(messageReader)) {
+			if ("3".equals(getVersion())) {
+				new JsonXmlReader(target.asContentHandler()).parse(new InputSource(reader));
+				return;
+			}
+			int firstChar = reader.read();
+			if (firstChar >= 0) {
+				reader.unread(firstChar);
+			}
+			if (firstChar == '{' || firstChar == '[') {
+				new JsonToXmlConverter(target.asContentHandler(), addXmlRootElement()).convert(reader);
+			} else {
+				// not a JSON object or array, the input is returned as is
+				String result = StreamUtil.readerToString(reader, null);
+				if (addXmlRootElement() && !XmlUtils.isWellFormed(result)) {
+					result = "<root>" + result + "</root>";
 				}
-				if (stringResult.startsWith("[")) {
-					JSONArray jsonArray = new JSONArray(jsonTokener);
-					stringResult = XML.toString(jsonArray);
+				try (Writer writer = target.asWriter()) {
+					writer.write(result);
 				}
+			}
+		}
+	}
+
+	/**
+	 * Returns a handler that writes the JSON for the XML it receives to the target, or null when the conversion cannot be done in a streaming way.
+	 */
+	private ContentHandler createXml2JsonHandler(IPipeLineSession session, MessageOutputStream target) throws StreamingException, TransformerConfigurationException {
+		if ("3".equals(getVersion())) {
+			return new XmlJsonWriter(target.asWriter());
+		}
+		if ("2".equals(getVersion())) {
+			XmlWriter xmlWriter = new XmlWriter(target.asWriter());
+			xmlWriter.setTextMode(true);
+			return tpXml2Json.getTransformerFilter(this, threadLifeCycleEventListener, session, false, xmlWriter);
+		}
+		return null;
+	}
+
+	@Override
+	public MessageOutputStream provideOutputStream(IPipeLineSession session) throws StreamingException {
+		MessageOutputStream target = getTargetStream(session);
+		if ("json2xml".equals(getDirection())) {
+			// the JSON parser reads its input from a Reader, that is fed by the Writer that is provided
+			ThreadConnector threadConnector = new ThreadConnector(this, threadLifeCycleEventListener, session);
+			return new MessageOutputStream(this, new Json2XmlWriter(target, threadConnector), target);
+		}
+		try {
+			ContentHandler handler = createXml2JsonHandler(session, target);
+			if (handler == null) {
+				handler = new Xml2JsonVersion1Handler(target);
+			}
+			return new MessageOutputStream(this, handler, target, threadLifeCycleEventListener, session);
+		} catch (TransformerConfigurationException e) {
+			throw new StreamingException(getLogPrefix(session) + "cannot create xml2json handler", e);
+		}
+	}
+
+	/*
+	 * Writer for JSON, that is converted to XML by a separate thread, that reads the JSON via a pipe.
+	 */
+	private class Json2XmlWriter extends PipedWriter implements Thread.UncaughtExceptionHandler {
+		private final PipedReader pipedReader;
+		private final Thread converter;
+		private Throwable exception;
 
-				if(addXmlRootElement()) {
-					boolean isWellFormed = XmlUtils.isWellFormed(stringResult);
-					if (!isWellFormed) {
-						stringResult = "<root>" + stringResult + "</root>";
+		public Json2XmlWriter(MessageOutputStream target, ThreadConnector threadConnector) throws StreamingException {
+			try {
+				pipedReader = new PipedReader(this);
+			} catch (IOException e) {
+				throw new StreamingException(e);
+			}
+			converter = new Thread() {
+				@Override
+				public void run() {
+					try (Reader reader = pipedReader) {
+						threadConnector.startThread(null);
+						json2xml(reader, target);
+						threadConnector.endThread(null);
+					} catch (Exception e) {
+						setException(threadConnector.abortThread(e));
 					}
 				}
-			}
+			};
+			converter.setUncaughtExceptionHandler(this);
+			converter.start();
+		}
 
-			if ("xml2json".equalsIgnoreCase(actualDirection)) {
-				if ("2".equals(actualVersion)) {
-					stringResult = tpXml2Json.transform(message,null);
-				} else {
-					JSONObject jsonObject = XML.toJSONObject(message.asString());
-					stringResult = jsonObject.toString();
+		@Override
+		public void close() throws IOException {
+			super.close();
+			try {
+				converter.join();
+				if (getException()!=null) {
+					throw new IOException(getException());
 				}
+			} catch (InterruptedException e) {
+				log.warn(e);
+			}
+		}
+
+		@Override
+		public void uncaughtException(Thread thread, Throwable t) {
+			setException(t);
+		}
+
+		public synchronized void setException(Throwable exception) {
+			this.exception = exception;
+		}
+		public synchronized Throwable getException() {
+			return exception;
+		}
+	}
+
+	/*
+	 * Collects the XML of the SAX events it receives, and writes the JSON for it to the target at the end of the document, 
+	 * because version 1 of xml2json requires the complete message.
+	 */
+	private class Xml2JsonVersion1Handler extends XmlWriter {
+		private final MessageOutputStream target;
+
+		public Xml2JsonVersion1Handler(MessageOutputStream target) {
+			super();
+			this.target = target;
+		}
+
+		@Override
+		public void endDocument() throws SAXException {
+			super.endDocument();
+			try (Writer writer = target.asWriter()) {
+				writer.write(XML.toJSONObject(toString()).toString());
+			} catch (Exception e) {
+				throw new SaxException("cannot convert xml to json", e);
 			}
-			return new PipeRunResult(getForward(), stringResult);
-		} catch (Exception e) {
-			throw new PipeRunException(this, getLogPrefix(session) + " Exception on transforming input", e);
 		}
 	}
 
@@ -114,7 +264,8 @@ public class JsonPipe extends FixedForwardPipe {
 		return StringUtils.lowerCase(direction);
 	}
 
-	@IbisDoc({"Version of the jsonpipe. Either 1 or 2.", "1"})
+	@IbisDoc({"Version of the jsonpipe. Either 1, 2 or 3. Version 2 uses a stylesheet for xml2json. "
+			+ "Version 3 converts between json and its XML representation in XSLT 3.0 (map, array, string, number, boolean and null elements in the namespace http://www.w3.org/2013/XSL/json), in a streaming way in both directions", "1"})
 	public void setVersion(String version) {
 		this.version = version;
 	}
@@ -127,8 +278,13 @@ public class JsonPipe extends FixedForwardPipe {
 		return addXmlRootElement;
 	}
 
-	@IbisDoc({"when true, and direction is json2xml, it wraps a root element around the converted message", "true"})
+	@IbisDoc({"when true, and direction is json2xml, it wraps a root element around the converted message, unless it has a single root element already. To decide that, the first element is held until the second one starts or the message ends; when it is larger than 1M characters, it is held in a temporary file", "true"})
 	public void setAddXmlRootElement(boolean addXmlRootElement) {
 		this.addXmlRootElement = addXmlRootElement;
 	}
+
+	@Override
+	public void setThreadLifeCycleEventListener(ThreadLifeCycleEventListener<Object> threadLifeCycleEventListener) {
+		this.threadLifeCycleEventListener=threadLifeCycleEventListener;
+	}
 }
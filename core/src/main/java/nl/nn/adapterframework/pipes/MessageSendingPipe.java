@@ -516,6 +516,7 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 	protected void preserve(Message input, IPipeLineSession session) throws PipeRunException {
 		try {
 			input.preserve();
+			input.closeOnCloseOf(session);
 		} catch (IOException e) {
 			throw new PipeRunException(this,getLogPrefix(session)+"cannot preserve message",e);
 		}
@@ -978,6 +979,11 @@ public class MessageSendingPipe extends StreamingPipe implements HasSender, HasS
 		if (sender instanceof HasStatistics) {
 			((HasStatistics)sender).iterateOverStatistics(hski,data,action);
 		}
+		if (getMessageLog() instanceof HasStatistics) {
+			Object mlogData=hski.openGroup(data,null,"messageLog");
+			((HasStatistics)getMessageLog()).iterateOverStatistics(hski, mlogData, action);
+			hski.closeGroup(mlogData);
+		}
 	}
 
 	@Override
@@ -171,6 +171,7 @@ public class SignaturePipe extends FixedForwardPipe {
 			} else {
 				dsa.initVerify(publicKey);
 				message.preserve();
+				message.closeOnCloseOf(session);
 			}
 			try (BufferedInputStream bufin = new BufferedInputStream(message.asInputStream())) {
 				byte[] buffer = new byte[1024];
@@ -160,12 +160,14 @@ public class XmlSwitch extends AbstractPipe {
 				parameterList =  getParameterList();
 				if (parameterList!=null) {
 					message.preserve();
+					message.closeOnCloseOf(session);
 					parametervalues = parameterList.getValues(message, session, isNamespaceAware()).getValueMap();
 				}
 				if (StringUtils.isNotEmpty(getSessionKey())) {
 					forward = transformerPool.transform(Message.asMessage(session.get(sessionKey)), parametervalues);
 				} else {
 					message.preserve();
+					message.closeOnCloseOf(session);
 					forward = transformerPool.transform(message, parametervalues);
 				}
 			} catch (Throwable e) {
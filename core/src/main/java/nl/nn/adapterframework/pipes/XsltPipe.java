@@ -116,6 +116,7 @@ public class XsltPipe extends StreamingPipe implements IThreadCreator {
 				nextPipe=null;
 				if (StringUtils.isNotEmpty(getSessionKey())) {
 					input.preserve();
+					input.closeOnCloseOf(session);
 				}
 			}
 			PipeRunResult prr = sender.sendMessage(input, session, nextPipe);
@@ -17,6 +17,7 @@ package nl.nn.adapterframework.processors;
 
 import java.io.IOException;
 
+import nl.nn.adapterframework.cache.ConcurrentCache;
 import nl.nn.adapterframework.cache.ICacheAdapter;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.PipeLine;
@@ -26,6 +27,9 @@ import nl.nn.adapterframework.stream.Message;
 
 /**
  * PipelineProcessor that handles caching.
+ * <p>
+ * When the cache is a {@link ConcurrentCache}, result and state are stored as a single entry without locking,
+ * and concurrent requests with the same key are collapsed into a single execution of the pipeline.
  * 
  * @author  Gerrit van Brakel
  * @since   4.11
@@ -51,6 +55,9 @@ public class CachePipeLineProcessor extends PipeLineProcessorBase {
 			return pipeLineProcessor.processPipeLine(pipeLine, messageId, message, pipeLineSession, firstPipe);
 		}
 		if (log.isDebugEnabled()) log.debug("cache key ["+key+"]");
+		if (cache instanceof ConcurrentCache) {
+			return processPipeLineConcurrently((ConcurrentCache<?>)cache, key, pipeLine, messageId, message, pipeLineSession, firstPipe);
+		}
 		Message result;
 		String state;
 		synchronized (cache) {
@@ -75,4 +82,39 @@ public class CachePipeLineProcessor extends PipeLineProcessorBase {
 		return prr;
 	}
 
+	private PipeLineResult processPipeLineConcurrently(ConcurrentCache<?> cache, String key, PipeLine pipeLine, String messageId, Message message, IPipeLineSession pipeLineSession, String firstPipe) throws PipeRunException {
+		PipeLineResult[] executedResult = new PipeLineResult[1];
+		CachedPipeLineResult cachedResult = cache.<CachedPipeLineResult,PipeRunException>getOrLoad(key, () -> {
+			if (log.isDebugEnabled()) log.debug("no cached results found using key ["+key+"]");
+			PipeLineResult prr=pipeLineProcessor.processPipeLine(pipeLine, messageId, message, pipeLineSession, firstPipe);
+			executedResult[0]=prr;
+			String cacheValue=(String)cache.transformValue(prr.getResult(), pipeLineSession);
+			if (cacheValue==null || prr.getState()==null) {
+				return null;
+			}
+			if (log.isDebugEnabled()) log.debug("caching result using key ["+key+"]");
+			return new CachedPipeLineResult(cacheValue, prr.getState());
+		});
+		if (executedResult[0]!=null) {
+			return executedResult[0];
+		}
+		if (log.isDebugEnabled()) log.debug("retrieved result from cache using key ["+key+"]");
+		PipeLineResult prr=new PipeLineResult();
+		prr.setState(cachedResult.state);
+		prr.setResult(new Message(cachedResult.result));
+		return prr;
+	}
+
+	/**
+	 * Result and state of a pipeline, stored together as a single cache entry.
+	 */
+	private static class CachedPipeLineResult {
+		private final String result;
+		private final String state;
+
+		CachedPipeLineResult(String result, String state) {
+			this.result = result;
+			this.state = state;
+		}
+	}
 }
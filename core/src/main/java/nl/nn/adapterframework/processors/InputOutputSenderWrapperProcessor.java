@@ -46,6 +46,7 @@ public class InputOutputSenderWrapperProcessor extends SenderWrapperProcessorBas
 		if (senderWrapperBase.isPreserveInput() && message==senderInput) { // test if it is the same object, not if the contents is the same
 			try {
 				message.preserve();
+				message.closeOnCloseOf(session);
 			} catch (IOException e) {
 				throw new SenderException("Could not preserve input",e);
 			}
@@ -46,7 +46,7 @@ public class MonitoringPipeProcessor extends PipeProcessorBase {
 			pe = (IExtendedPipe)pipe;
 		}
     	
-		long pipeStartTime= System.currentTimeMillis();
+		long pipeStartTime= System.nanoTime();
 		
 		if (log.isDebugEnabled()){  // for performance reasons
 			StringBuffer sb=new StringBuffer();
@@ -91,13 +91,13 @@ public class MonitoringPipeProcessor extends PipeProcessorBase {
 			throw new PipeRunException(pipe, "Uncaught runtime exception running pipe '"
 					+ (pipe==null?"null":pipe.getName()) + "'", re);
 		} finally {
-			long pipeEndTime = System.currentTimeMillis();
-			pipeDuration = pipeEndTime - pipeStartTime;
+			long pipeDurationNanos = System.nanoTime() - pipeStartTime;
+			pipeDuration = pipeDurationNanos / 1000000;
 			StatisticsKeeper sk = pipeLine.getPipeStatistics(pipe);
 			if (sk==null) {
 				log.warn("Could not get statistics for pipe [+"+pipe.getName()+"]");
 			} else {
-				sk.addValue(pipeDuration);
+				sk.addNanoValue(pipeDurationNanos);
 			}
 
 			if (pe!=null) {
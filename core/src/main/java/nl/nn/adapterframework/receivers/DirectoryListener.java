@@ -15,18 +15,115 @@
 */
 package nl.nn.adapterframework.receivers;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
 
+import org.apache.commons.lang.StringUtils;
+
+import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.core.ListenerException;
 import nl.nn.adapterframework.doc.IbisDoc;
+import nl.nn.adapterframework.filesystem.FileSystemException;
 import nl.nn.adapterframework.filesystem.FileSystemListener;
+import nl.nn.adapterframework.filesystem.FileSystemUtils;
 import nl.nn.adapterframework.filesystem.LocalFileSystem;
+import nl.nn.adapterframework.filesystem.LocalFolderWatcher;
 
 public class DirectoryListener extends FileSystemListener<Path, LocalFileSystem>{
 
+	private boolean useWatchService=false;
+	private int watchQueueSize=10000;
+
+	private LocalFolderWatcher folderWatcher;
+
 	@Override
 	protected LocalFileSystem createFileSystem() {
 		return new LocalFileSystem();
 	}
+
+	@Override
+	public void configure() throws ConfigurationException {
+		super.configure();
+		if (isUseWatchService()) {
+			if (StringUtils.isEmpty(getInProcessFolder())) {
+				throw new ConfigurationException("attribute 'useWatchService' requires attribute 'inProcessFolder' to be set");
+			}
+			if (getWatchQueueSize()<=0) {
+				throw new ConfigurationException("attribute 'watchQueueSize' must be positive");
+			}
+		}
+	}
+
+	@Override
+	public void open() throws ListenerException {
+		super.open();
+		if (isUseWatchService()) {
+			folderWatcher = new LocalFolderWatcher(getFileSystem(), getInputFolder(), getWatchQueueSize(), getName());
+			try {
+				folderWatcher.start();
+			} catch (FileSystemException e) {
+				folderWatcher.close();
+				folderWatcher = null;
+				throw new ListenerException("Cannot watch inputFolder ["+getInputFolder()+"]", e);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws ListenerException {
+		try {
+			if (folderWatcher!=null) {
+				folderWatcher.close();
+			}
+		} finally {
+			folderWatcher = null;
+			super.close();
+		}
+	}
+
+	/**
+	 * When the inputFolder is watched, candidate files are taken from the queue of the watcher instead of listing the folder.
+	 * Files are claimed by moving them to the inProcessFolder, so multiple threads can do this concurrently: a thread that
+	 * loses the race for a file just skips it.
+	 */
+	@Override
+	public Path getRawMessage(Map<String,Object> threadContext) throws ListenerException {
+		LocalFolderWatcher watcher = folderWatcher;
+		if (watcher==null || !watcher.isRunning()) {
+			return super.getRawMessage(threadContext);
+		}
+		LocalFileSystem fileSystem=getFileSystem();
+		long stabilityLimit = getMinStableTime();
+		if (stabilityLimit>0) {
+			stabilityLimit=System.currentTimeMillis()-stabilityLimit;
+		}
+		int candidates = watcher.getQueueSize();
+		for (int i=0; i<candidates; i++) {
+			Path file = watcher.poll();
+			if (file==null) {
+				return null;
+			}
+			try {
+				if (!Files.exists(file)) {
+					continue; // claimed by another thread, or removed
+				}
+				if (stabilityLimit>0 && fileSystem.getModificationTime(file).getTime()>stabilityLimit) {
+					watcher.requeue(file);
+					continue;
+				}
+				if (threadContext!=null) threadContext.put(ORIGINAL_FILENAME_KEY, fileSystem.getName(file));
+				return FileSystemUtils.moveFile(fileSystem, file, getInProcessFolder(), false, 0, isCreateFolders());
+			} catch (FileSystemException e) {
+				if (!Files.exists(file)) {
+					if (log.isDebugEnabled()) log.debug("file ["+file+"] was claimed by another thread");
+					continue;
+				}
+				throw new ListenerException(e);
+			}
+		}
+		return null;
+	}
 	
 	@IbisDoc({"1", "Optional base folder, that serves as root for all other folders", ""})
 	public void setRoot(String root) {
@@ -43,4 +140,20 @@ public class DirectoryListener extends FileSystemListener<Path, LocalFileSystem>
 		getFileSystem().setExcludeWildcard(excludeWildcard);
 	}
 
+	@IbisDoc({"4", "If set <code>true</code>, the inputFolder is watched for new files, instead of listing it at every poll. The folder is only listed completely at startup, and when events might have been lost. Requires <code>inProcessFolder</code> to be set, and allows multiple threads to pick up files concurrently", "false"})
+	public void setUseWatchService(boolean useWatchService) {
+		this.useWatchService = useWatchService;
+	}
+	public boolean isUseWatchService() {
+		return useWatchService;
+	}
+
+	@IbisDoc({"5", "Maximum number of candidate files that are kept in memory when <code>useWatchService=true</code>. When more files arrive, the folder is listed again when there is room", "10000"})
+	public void setWatchQueueSize(int watchQueueSize) {
+		this.watchQueueSize = watchQueueSize;
+	}
+	public int getWatchQueueSize() {
+		return watchQueueSize;
+	}
+
 }
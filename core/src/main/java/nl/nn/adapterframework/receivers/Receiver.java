@@ -20,11 +20,12 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -86,7 +87,6 @@ import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.task.TimeoutGuard;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.CompactSaxHandler;
-import nl.nn.adapterframework.util.Counter;
 import nl.nn.adapterframework.util.CounterStatistic;
 import nl.nn.adapterframework.util.DateUtils;
 import nl.nn.adapterframework.util.JtaUtil;
@@ -257,7 +257,7 @@ public class Receiver<M> implements IManagable, IReceiverStatistics, IMessageHan
 	protected RunStateManager runState = new RunStateManager();
 	private PullingListenerContainer<M> listenerContainer;
 
-	private Counter threadsProcessing = new Counter(0);
+	private AtomicInteger threadsProcessing = new AtomicInteger();
 
 	private long lastMessageDate = 0;
 
@@ -266,8 +266,8 @@ public class Receiver<M> implements IManagable, IReceiverStatistics, IMessageHan
 	private CounterStatistic numRetried = new CounterStatistic(0);
 	private CounterStatistic numRejected = new CounterStatistic(0);
 
-	private List<StatisticsKeeper> processStatistics = new ArrayList<>();
-	private List<StatisticsKeeper> idleStatistics = new ArrayList<>();
+	private ThreadCountStatistics processStatistics = new ThreadCountStatistics(1);
+	private ThreadCountStatistics idleStatistics = new ThreadCountStatistics(0);
 	private List<StatisticsKeeper> queueingStatistics;
 
 	private StatisticsKeeper messageExtractionStatistics = new StatisticsKeeper("request extraction");
@@ -302,20 +302,16 @@ public class Receiver<M> implements IManagable, IReceiverStatistics, IMessageHan
 	 * storage, but unless the server crashes, a message that has been
 	 * put in the processResultCache will not be reprocessed even if it's
 	 * offered again.
+	 * The cache holds at most processResultCacheSize entries, the first cached messageIds are evicted first.
 	 */
-	private Map<String,ProcessResultCacheItem> processResultCache = new LinkedHashMap<String,ProcessResultCacheItem>() {
-
-		@Override
-		protected boolean removeEldestEntry(Entry<String,ProcessResultCacheItem> eldest) {
-			return size() > getProcessResultCacheSize();
-		}
-
-	};
+	private Map<String,ProcessResultCacheItem> processResultCache = new ConcurrentHashMap<String,ProcessResultCacheItem>();
+	private ConcurrentLinkedQueue<String> processResultCacheOrder = new ConcurrentLinkedQueue<String>();
+	private AtomicInteger processResultCacheCount = new AtomicInteger();
 
 	private class ProcessResultCacheItem {
-		private int receiveCount;
-		private Date receiveDate;
-		private String comments;
+		private volatile int receiveCount;
+		private volatile Date receiveDate;
+		private volatile String comments;
 	}
 
 	public boolean configurationSucceeded() {
@@ -716,6 +712,10 @@ public class Receiver<M> implements IManagable, IReceiverStatistics, IMessageHan
 				getMessageLog().setHideMethod(getHideMethod());
 			}
 
+			// allocate the statistics for the expected number of threads in advance, to avoid copying them while messages are processed
+			processStatistics.allocate(Math.max(getNumThreads(), 1));
+			idleStatistics.allocate(Math.max(getNumThreads(), 1));
+
 			if (adapter != null) {
 				adapter.getMessageKeeper().add(getLogPrefix()+"initialization complete");
 			}
@@ -819,22 +819,16 @@ public class Receiver<M> implements IManagable, IReceiverStatistics, IMessageHan
 	}
 
 	protected void startProcessingMessage(long waitingDuration) {
-		synchronized (threadsProcessing) {
-			int threadCount = (int) threadsProcessing.getValue();
-			
-			if (waitingDuration>=0) {
-				getIdleStatistics(threadCount).addValue(waitingDuration);
-			}
-			threadsProcessing.increase();
+		int threadCount = threadsProcessing.getAndIncrement();
+		if (waitingDuration>=0) {
+			getIdleStatistics(threadCount).addValue(waitingDuration);
 		}
 		log.debug(getLogPrefix()+"starts processing message");
 	}
 
 	protected void finishProcessingMessage(long processingDuration) {
-		synchronized (threadsProcessing) {
-			int threadCount = (int) threadsProcessing.decrease();
-			getProcessStatistics(threadCount).addValue(processingDuration);
-		}
+		int threadCount = threadsProcessing.decrementAndGet();
+		getProcessStatistics(threadCount).addValue(processingDuration);
 		log.debug(getLogPrefix()+"finishes processing message");
 	}
 
@@ -1239,6 +1233,10 @@ public class Receiver<M> implements IManagable, IReceiverStatistics, IMessageHan
 			numReceived.increase();
 			// Note: errorMessage is used to pass value from catch-clause to finally-clause!
 			pipelineSession = createProcessingContext(businessCorrelationId, threadContext, messageId);
+			if (message!=null) {
+				// also when the message is not processed, it may have been preserved to determine the correlationId or label
+				message.closeOnCloseOf(pipelineSession);
+			}
 //			threadContext=pipelineSession; // this is to enable Listeners to use session variables, for instance in afterProcessMessage()
 			try {
 				if (getMessageLog()!=null) {
@@ -1339,6 +1337,18 @@ public class Receiver<M> implements IManagable, IReceiverStatistics, IMessageHan
 					throw wrapExceptionAsListenerException(e);
 				}
 			} finally {
+				if (pipelineSession!=null) {
+					// the result and the session values copied to the threadContext are used by the caller, after the session has been closed
+					if (result!=null) {
+						result.keepAfterSessionExit();
+					}
+					for (Object value:threadContext.values()) {
+						if (value instanceof Message) {
+							((Message)value).keepAfterSessionExit();
+						}
+					}
+					pipelineSession.closeAll();
+				}
 				long finishProcessingTimestamp = System.currentTimeMillis();
 				finishProcessingMessage(finishProcessingTimestamp-startProcessingTimestamp);
 				if (!txStatus.isCompleted()) {
@@ -1366,21 +1376,33 @@ public class Receiver<M> implements IManagable, IReceiverStatistics, IMessageHan
 	}
 	
 	@SuppressWarnings("synthetic-access")
-	private synchronized void cacheProcessResult(String messageId, String errorMessage, Date receivedDate) {
-		ProcessResultCacheItem cacheItem=getCachedProcessResult(messageId);
-		if (cacheItem==null) {
+	private void cacheProcessResult(String messageId, String errorMessage, Date receivedDate) {
+		ProcessResultCacheItem cacheItem = processResultCache.compute(messageId, (key, item) -> {
+			if (item==null) {
+				item = new ProcessResultCacheItem();
+				item.receiveCount=1;
+				item.receiveDate=receivedDate;
+			} else {
+				item.receiveCount++;
+			}
+			item.comments=errorMessage;
+			return item;
+		});
+		if (cacheItem.receiveCount==1) {
 			if (log.isDebugEnabled()) log.debug(getLogPrefix()+"caching first result for messageId ["+messageId+"]");
-			cacheItem= new ProcessResultCacheItem();
-			cacheItem.receiveCount=1;
-			cacheItem.receiveDate=receivedDate;
+			processResultCacheOrder.offer(messageId);
+			if (processResultCacheCount.incrementAndGet()>getProcessResultCacheSize()) {
+				String eldest = processResultCacheOrder.poll();
+				if (eldest!=null) {
+					processResultCache.remove(eldest);
+					processResultCacheCount.decrementAndGet();
+				}
+			}
 		} else {
-			cacheItem.receiveCount++;
 			if (log.isDebugEnabled()) log.debug(getLogPrefix()+"increased try count for messageId ["+messageId+"] to ["+cacheItem.receiveCount+"]");
 		}
-		cacheItem.comments=errorMessage;
-		processResultCache.put(messageId, cacheItem);
 	}
-	private synchronized ProcessResultCacheItem getCachedProcessResult(String messageId) {
+	private ProcessResultCacheItem getCachedProcessResult(String messageId) {
 		return processResultCache.get(messageId);
 	}
 
@@ -1566,6 +1588,11 @@ public class Receiver<M> implements IManagable, IReceiverStatistics, IMessageHan
 			hski.closeGroup(qstatData);
 		}
 
+		if (getMessageLog() instanceof HasStatistics) {
+			Object mlogData=hski.openGroup(recData,null,"messageLog");
+			((HasStatistics)getMessageLog()).iterateOverStatistics(hski, mlogData, action);
+			hski.closeGroup(mlogData);
+		}
 
 		hski.closeGroup(recData);
 	}
@@ -1724,41 +1751,21 @@ public class Receiver<M> implements IManagable, IReceiverStatistics, IMessageHan
 		return plc;
 	}
 
-	protected synchronized StatisticsKeeper getProcessStatistics(int threadsProcessing) {
-		StatisticsKeeper result;
-		try {
-			result = processStatistics.get(threadsProcessing);
-		} catch (IndexOutOfBoundsException e) {
-			result = null;
-		}
-	
-		if (result==null) {
-			while (processStatistics.size()<threadsProcessing+1){
-				result = new StatisticsKeeper((processStatistics.size()+1)+" threads processing");
-				processStatistics.add(processStatistics.size(), result);
-			}
-		}
-		
+	protected StatisticsKeeper getProcessStatistics(int threadsProcessing) {
 		return processStatistics.get(threadsProcessing);
 	}
 	
-	protected synchronized StatisticsKeeper getIdleStatistics(int threadsProcessing) {
-		StatisticsKeeper result;
-		try {
-			result = idleStatistics.get(threadsProcessing);
-		} catch (IndexOutOfBoundsException e) {
-			result = null;
-		}
-
-		if (result==null) {
-			while (idleStatistics.size()<threadsProcessing+1){
-			result = new StatisticsKeeper((idleStatistics.size())+" threads processing");
-				idleStatistics.add(idleStatistics.size(), result);
-			}
-		}
+	protected StatisticsKeeper getIdleStatistics(int threadsProcessing) {
 		return idleStatistics.get(threadsProcessing);
 	}
-	
+
+	/**
+	 * Returns the number of threads that are currently processing a message.
+	 */
+	public int getThreadsProcessing() {
+		return threadsProcessing.get();
+	}
+
 	/**
 	 * Returns an iterator over the process-statistics
 	 * @return iterator
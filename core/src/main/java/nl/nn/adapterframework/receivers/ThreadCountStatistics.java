@@ -0,0 +1,78 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.receivers;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+
+/**
+ * Duration statistics of a {@link Receiver}, kept per number of threads processing.
+ * <p>
+ * The slots are allocated in advance, for the number of threads the receiver is configured with, so that
+ * they can be looked up without locking. Only when more threads are processing than expected, the slots
+ * are copied to a larger array. Iteration returns the slots up to the highest number of threads seen.
+ * <p>
+ * Threads that start or finish at the same time can update the same slot. The slots are created by
+ * {@link StatisticsKeeper#createDurationStatisticsKeeper(String)}, that returns keepers that can be updated concurrently.
+ */
+class ThreadCountStatistics implements Iterable<StatisticsKeeper> {
+
+	private final int nameOffset;
+	private volatile StatisticsKeeper[] slots = new StatisticsKeeper[0];
+	private final AtomicInteger slotsInUse = new AtomicInteger();
+
+	/**
+	 * @param nameOffset added to the index of a slot to obtain the number of threads in its name
+	 */
+	ThreadCountStatistics(int nameOffset) {
+		this.nameOffset = nameOffset;
+	}
+
+	/**
+	 * Makes sure slots are available for thread counts up to, but not including, <code>size</code>.
+	 */
+	synchronized void allocate(int size) {
+		StatisticsKeeper[] current = slots;
+		if (size>current.length) {
+			StatisticsKeeper[] allocated = Arrays.copyOf(current, size);
+			for (int i=current.length; i<size; i++) {
+				allocated[i] = StatisticsKeeper.createDurationStatisticsKeeper((i+nameOffset)+" threads processing");
+			}
+			slots = allocated;
+		}
+	}
+
+	StatisticsKeeper get(int threadCount) {
+		StatisticsKeeper[] current = slots;
+		if (threadCount>=current.length) {
+			allocate(threadCount+1);
+			current = slots;
+		}
+		if (threadCount>=slotsInUse.get()) {
+			slotsInUse.accumulateAndGet(threadCount+1, Math::max);
+		}
+		return current[threadCount];
+	}
+
+	@Override
+	public Iterator<StatisticsKeeper> iterator() {
+		StatisticsKeeper[] current = slots;
+		return Arrays.asList(current).subList(0, Math.min(slotsInUse.get(), current.length)).iterator();
+	}
+}
@@ -19,13 +19,17 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.ToStringBuilder;
@@ -53,18 +57,21 @@ import nl.nn.adapterframework.core.ITransactionAttributes;
 import nl.nn.adapterframework.core.ITransactionalStorage;
 import nl.nn.adapterframework.core.IbisTransaction;
 import nl.nn.adapterframework.core.PipeLine;
+import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.http.RestListener;
 import nl.nn.adapterframework.http.RestServiceDispatcher;
 import nl.nn.adapterframework.jdbc.DirectQuerySender;
 import nl.nn.adapterframework.jdbc.FixedQuerySender;
 import nl.nn.adapterframework.jdbc.JdbcTransactionalStorage;
+import nl.nn.adapterframework.jdbc.MessageCountCache;
 import nl.nn.adapterframework.jdbc.dbms.Dbms;
 import nl.nn.adapterframework.jms.JmsRealmFactory;
 import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.pipes.MessageSendingPipe;
 import nl.nn.adapterframework.receivers.Receiver;
 import nl.nn.adapterframework.scheduler.IbisJobDetail.JobType;
+import nl.nn.adapterframework.scheduler.MessageLogCleaner.MessageLogTable;
 import nl.nn.adapterframework.senders.IbisLocalSender;
 import nl.nn.adapterframework.statistics.HasStatistics;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
@@ -391,6 +398,8 @@ public class JobDef implements ITransactionAttributes {
 	private String jobGroup = null;
 
 	private List<DirectoryCleaner> directoryCleaners = new ArrayList<DirectoryCleaner>();
+	private Map<String, MessageLogCleaner> messageLogCleaners = new ConcurrentHashMap<>();
+	private String cleanupResumeKey;
 
 	private class MessageLogObject {
 		private String datasourceName;
@@ -440,6 +449,10 @@ public class JobDef implements ITransactionAttributes {
 		public String getTypeField() {
 			return typeField;
 		}
+
+		public String getKey() {
+			return datasourceName+"/"+tableName+"/"+expiryDateField;
+		}
 	}
 
 	@Override
@@ -702,7 +715,13 @@ public class JobDef implements ITransactionAttributes {
 	private void cleanupDatabase(IbisManager ibisManager) {
 		Date date = new Date();
 
-		int maxRows = AppConstants.getInstance().getInt("cleanup.database.maxrows", 25000);
+		AppConstants appConstants = AppConstants.getInstance();
+		int maxRows = appConstants.getInt("cleanup.database.maxrows", 0);
+		int chunkSize = appConstants.getInt("cleanup.database.chunkSize", 1000);
+		long maxDuration = appConstants.getLong("cleanup.database.maxDuration", 1800000);
+		long pause = appConstants.getLong("cleanup.database.pause", 100);
+		long busyPause = appConstants.getLong("cleanup.database.busyPause", 2000);
+		long deadline = maxDuration>0 ? date.getTime()+maxDuration : Long.MAX_VALUE;
 		
 		List<String> datasourceNames = getAllLockerDatasourceNames(ibisManager);
 
@@ -739,50 +758,135 @@ public class JobDef implements ITransactionAttributes {
 		}
 
 		List<MessageLogObject> messageLogs = getAllMessageLogs(ibisManager);
-
+		List<String> messageLogKeys = new ArrayList<>();
 		for (MessageLogObject mlo: messageLogs) {
-			DirectQuerySender qs = null;
-			try {
-				qs = ibisManager.getIbisContext().createBeanAutowireByName(DirectQuerySender.class);
-				qs.setDatasourceName(mlo.getDatasourceName());
-				qs.setName("cleanupDatabase-"+mlo.getTableName());
-				qs.setQueryType("other");
-				qs.setTimeout(getQueryTimeout());
-
-				Parameter param = new Parameter();
-				param.setName("now");
-				param.setType(Parameter.TYPE_TIMESTAMP);
-				param.setValue(DateUtils.format(date));
-				qs.addParameter(param);
-				qs.configure(true);
-				qs.open();
-				
-				String query;
-				if (qs.getDatabaseType() == Dbms.MSSQL) {
-					query = "DELETE FROM " + mlo.getTableName() + " WHERE " + mlo.getKeyField() + " IN (SELECT "+(maxRows>0?"TOP "+maxRows+" ":"") + mlo.getKeyField() + " FROM " + mlo.getTableName()
-							+ " WITH (readpast) WHERE " + mlo.getTypeField() + " IN ('" + IMessageBrowser.StorageType.MESSAGELOG_PIPE.getCode() + "','" + IMessageBrowser.StorageType.MESSAGELOG_RECEIVER.getCode()
-							+ "') AND " + mlo.getExpiryDateField() + " < ?)";
-					qs.setSqlDialect(Dbms.MSSQL.getKey());
+			messageLogKeys.add(mlo.getKey());
+		}
+		messageLogCleaners.keySet().retainAll(messageLogKeys);
+		// resume with the messageLog at which the previous run ran out of time
+		int resumeIndex = cleanupResumeKey!=null ? messageLogKeys.indexOf(cleanupResumeKey) : -1;
+		if (resumeIndex>0) {
+			Collections.rotate(messageLogs, -resumeIndex);
+		}
+		cleanupResumeKey = null;
+
+		BooleanSupplier receiversBusy = () -> isAnyReceiverBusy(ibisManager);
+		for (int i=0; i<messageLogs.size(); i++) {
+			MessageLogObject mlo = messageLogs.get(i);
+			if (System.currentTimeMillis()>=deadline) {
+				if (cleanupResumeKey==null) {
+					cleanupResumeKey = mlo.getKey();
 				}
-				else {
-					query = ("DELETE FROM " + mlo.getTableName() + " WHERE " + mlo.getKeyField() + " IN (SELECT " + mlo.getKeyField() + " FROM " + mlo.getTableName()
+				String msg = "time budget of ["+maxDuration+"] ms exhausted, cleanup of ["+(messageLogs.size()-i)+"] tables postponed to next run";
+				getMessageKeeper().add(msg, MessageKeeperLevel.WARN);
+				log.warn(getLogPrefix()+msg);
+				break;
+			}
+			MessageLogCleaner cleaner = messageLogCleaners.computeIfAbsent(mlo.getKey(), k -> new MessageLogCleaner(mlo.getTableName()+" ("+mlo.getDatasourceName()+")"));
+			cleaner.setChunkSize(chunkSize);
+			cleaner.setMaxRows(maxRows);
+			cleaner.setPause(pause);
+			cleaner.setBusyPause(busyPause);
+			if (!cleanupMessageLog(ibisManager, mlo, cleaner, date, deadline, receiversBusy) && cleanupResumeKey==null && System.currentTimeMillis()>=deadline) {
+				cleanupResumeKey = mlo.getKey();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the expired records of a messageLog in chunks.
+	 * @return <code>false</code> when expired records are left, or when they could not be deleted
+	 */
+	private boolean cleanupMessageLog(IbisManager ibisManager, MessageLogObject mlo, MessageLogCleaner cleaner, Date date, long deadline, BooleanSupplier receiversBusy) {
+		DirectQuerySender qs = null;
+		try {
+			qs = ibisManager.getIbisContext().createBeanAutowireByName(DirectQuerySender.class);
+			qs.setDatasourceName(mlo.getDatasourceName());
+			qs.setName("cleanupDatabase-"+mlo.getTableName());
+			qs.setQueryType("other");
+			qs.setTimeout(getQueryTimeout());
+
+			Parameter param = new Parameter();
+			param.setName("now");
+			param.setType(Parameter.TYPE_TIMESTAMP);
+			param.setValue(DateUtils.format(date));
+			qs.addParameter(param);
+			qs.configure(true);
+			qs.open();
+
+			boolean mssql = qs.getDatabaseType() == Dbms.MSSQL;
+			qs.setSqlDialect(mssql ? Dbms.MSSQL.getKey() : Dbms.ORACLE.getKey());
+			String expiredRecords = " FROM " + mlo.getTableName() + (mssql ? " WITH (readpast)" : "")
 					+ " WHERE " + mlo.getTypeField() + " IN ('" + IMessageBrowser.StorageType.MESSAGELOG_PIPE.getCode() + "','" + IMessageBrowser.StorageType.MESSAGELOG_RECEIVER.getCode()
-					+ "') AND " + mlo.getExpiryDateField() + " < ?"+(maxRows>0?" FETCH FIRST "+maxRows+ " ROWS ONLY":"")+")");
-					qs.setSqlDialect(Dbms.ORACLE.getKey());
+					+ "') AND " + mlo.getExpiryDateField() + " < ?";
+			DirectQuerySender sender = qs;
+			MessageLogTable table = new MessageLogTable() {
+
+				@Override
+				public int deleteExpired(int maxRows) throws Exception {
+					String query;
+					if (mssql) {
+						query = "DELETE FROM " + mlo.getTableName() + " WHERE " + mlo.getKeyField() + " IN (SELECT TOP " + maxRows + " " + mlo.getKeyField() + expiredRecords + ")";
+					} else {
+						query = "DELETE FROM " + mlo.getTableName() + " WHERE " + mlo.getKeyField() + " IN (SELECT " + mlo.getKeyField() + expiredRecords + " FETCH FIRST " + maxRows + " ROWS ONLY)";
+					}
+					Message result = sender.sendMessage(new Message(query), null);
+					String rowsUpdated = StringUtils.substringBetween(result.asString(), "<rowsupdated>", "</rowsupdated>");
+					if (rowsUpdated==null) {
+						throw new SenderException("cannot determine number of deleted records from result [" + result + "]");
+					}
+					return Integer.parseInt(rowsUpdated.trim());
 				}
 
-				Message result = qs.sendMessage(new Message(query), null);
-				log.info("result [" + result + "]");
-			} catch (Exception e) {
-				String msg = "error while deleting expired records from table ["+mlo.getTableName()+"] (as part of scheduled job execution): " + e.getMessage();
-				getMessageKeeper().add(msg, MessageKeeperLevel.ERROR);
-				log.error(getLogPrefix()+msg);
-			} finally {
-				if(qs != null) {
-					qs.close();
+				@Override
+				public Date getOldestExpiryDate() throws Exception {
+					Connection conn = null;
+					ResultSet rs = null;
+					try {
+						conn = sender.getConnection();
+						PreparedStatement stmt = conn.prepareStatement("SELECT MIN(" + mlo.getExpiryDateField() + ")" + expiredRecords);
+						stmt.setTimestamp(1, new Timestamp(date.getTime()));
+						rs = stmt.executeQuery();
+						return rs.next() ? rs.getTimestamp(1) : null;
+					} finally {
+						JdbcUtil.fullClose(conn, rs);
+					}
+				}
+			};
+
+			boolean caughtUp = cleaner.cleanup(table, date, deadline, receiversBusy);
+			if (cleaner.getRowsDeletedLastRun()>0) {
+				// the deletes bypass the storages, so their cached message counts must be determined again
+				MessageCountCache.invalidate(mlo.getDatasourceName(), mlo.getTableName());
+			}
+			String msg = "cleanup of expired records: " + cleaner.getStatus();
+			getMessageKeeper().add(msg, MessageKeeperLevel.INFO);
+			log.info(getLogPrefix()+msg);
+			return caughtUp;
+		} catch (Exception e) {
+			String msg = "error while deleting expired records from table ["+mlo.getTableName()+"] (as part of scheduled job execution): " + e.getMessage();
+			getMessageKeeper().add(msg, MessageKeeperLevel.ERROR);
+			log.error(getLogPrefix()+msg);
+			return false;
+		} finally {
+			if(qs != null) {
+				qs.close();
+			}
+		}
+	}
+
+	/**
+	 * A receiver is considered busy when all of its threads are processing messages.
+	 */
+	private boolean isAnyReceiverBusy(IbisManager ibisManager) {
+		for (IAdapter adapter : ibisManager.getRegisteredAdapters()) {
+			for (Receiver<?> receiver: adapter.getReceivers()) {
+				if (receiver.getNumThreads()>0 && receiver.getThreadsProcessing()>=receiver.getNumThreads()) {
+					return true;
 				}
 			}
 		}
+		return false;
 	}
 
 	private void cleanupFileSystem(IbisManager ibisManager) {
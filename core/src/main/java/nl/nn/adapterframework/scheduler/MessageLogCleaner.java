@@ -0,0 +1,225 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.scheduler;
+
+import java.util.Date;
+import java.util.function.BooleanSupplier;
+
+import org.apache.logging.log4j.Logger;
+
+import nl.nn.adapterframework.util.DateUtils;
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Removes expired records from a messageLog table in chunks of at most <code>chunkSize</code> records. Each chunk is deleted by
+ * a separate statement, that is committed on its own when the job does not run in a transaction, so locks on the table are held only briefly.
+ * <p>
+ * Chunks are deleted until no expired records are left, until <code>maxRows</code> records have been deleted or until the deadline of the run
+ * has passed. Between chunks the cleaner pauses, and it pauses longer when receivers are busy, to leave room for their work.
+ * The cleaner keeps its progress between runs of the job: the totals, whether the table was caught up and how far it lags behind expiry,
+ * i.e. the age of the oldest expired record that is still present. When a run fails, the error is kept until the next run.
+ */
+public class MessageLogCleaner {
+	protected Logger log = LogUtil.getLogger(this);
+
+	private final String name;
+
+	private int chunkSize = 1000;
+	private int maxRows = 0;
+	private long pause = 100;
+	private long busyPause = 2000;
+
+	private Date lastRun;
+	private int rowsDeletedLastRun;
+	private int chunksLastRun;
+	private long durationLastRun;
+	private long totalRowsDeleted;
+	private boolean caughtUp;
+	private long lag = -1;
+	private String lastError;
+
+	public interface MessageLogTable {
+		/**
+		 * Deletes at most <code>maxRows</code> expired records, and returns the number of records deleted.
+		 */
+		int deleteExpired(int maxRows) throws Exception;
+		/**
+		 * Returns the expiry date of the oldest expired record, or <code>null</code> when there are no expired records left.
+		 */
+		Date getOldestExpiryDate() throws Exception;
+	}
+
+	public MessageLogCleaner(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Deletes expired records from <code>table</code> until it is caught up, <code>maxRows</code> records have been deleted or <code>deadline</code> has passed.
+	 * @param now      the moment the records are considered expired against
+	 * @param deadline time in ms at which no new chunks are started anymore
+	 * @param busy     indicates whether receivers are busy, in which case <code>busyPause</code> is used between chunks instead of <code>pause</code>
+	 * @return <code>true</code> when no expired records are left
+	 */
+	public synchronized boolean cleanup(MessageLogTable table, Date now, long deadline, BooleanSupplier busy) throws Exception {
+		long startTime = System.currentTimeMillis();
+		lastRun = new Date(startTime);
+		rowsDeletedLastRun = 0;
+		chunksLastRun = 0;
+		caughtUp = false;
+		lastError = null;
+		try {
+			deleteExpired(table, now, deadline, busy);
+		} catch (Exception e) {
+			lastError = e.getClass().getSimpleName()+": "+e.getMessage();
+			throw e;
+		} finally {
+			durationLastRun = System.currentTimeMillis()-startTime;
+		}
+		return caughtUp;
+	}
+
+	private void deleteExpired(MessageLogTable table, Date now, long deadline, BooleanSupplier busy) throws Exception {
+		while (true) {
+			int rowsToDelete = maxRows>0 ? Math.min(chunkSize, maxRows-rowsDeletedLastRun) : chunkSize;
+			int rowsDeleted = table.deleteExpired(rowsToDelete);
+			chunksLastRun++;
+			rowsDeletedLastRun += rowsDeleted;
+			totalRowsDeleted += rowsDeleted;
+			if (log.isDebugEnabled()) log.debug("["+name+"] deleted ["+rowsDeleted+"] expired records in chunk ["+chunksLastRun+"]");
+			if (rowsDeleted<rowsToDelete) {
+				caughtUp = true;
+				break;
+			}
+			if (maxRows>0 && rowsDeletedLastRun>=maxRows) {
+				log.info("["+name+"] stops after deleting maximum number of ["+maxRows+"] records");
+				break;
+			}
+			if (System.currentTimeMillis()>=deadline) {
+				log.info("["+name+"] stops because time budget is exhausted");
+				break;
+			}
+			if (!pause(busy.getAsBoolean() ? busyPause : pause)) {
+				log.info("["+name+"] stops because it was interrupted");
+				break;
+			}
+		}
+		if (caughtUp) {
+			lag = 0;
+		} else {
+			Date oldestExpiryDate = table.getOldestExpiryDate();
+			if (oldestExpiryDate==null) {
+				caughtUp = true;
+				lag = 0;
+			} else {
+				lag = Math.max(0, now.getTime()-oldestExpiryDate.getTime());
+			}
+		}
+	}
+
+	/**
+	 * Sleeps <code>millis</code> ms, and returns <code>false</code> when the thread has been interrupted.
+	 */
+	protected boolean pause(long millis) {
+		if (Thread.currentThread().isInterrupted()) {
+			return false;
+		}
+		if (millis>0) {
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public String getStatus() {
+		if (lastRun==null) {
+			return "["+name+"] has not run yet";
+		}
+		return "["+name+"] deleted ["+rowsDeletedLastRun+"] expired records in ["+chunksLastRun+"] chunks in ["+durationLastRun+"] ms, total ["+totalRowsDeleted+"], "
+				+(lastError!=null ? "failed: "+lastError : caughtUp ? "caught up" : "lags ["+(lag/1000)+"] s behind expiry");
+	}
+
+	@Override
+	public String toString() {
+		return getStatus()+(lastRun!=null ? ", last run at ["+DateUtils.format(lastRun)+"]" : "");
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setChunkSize(int chunkSize) {
+		this.chunkSize = Math.max(1, chunkSize);
+	}
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	public void setMaxRows(int maxRows) {
+		this.maxRows = maxRows;
+	}
+	public int getMaxRows() {
+		return maxRows;
+	}
+
+	public void setPause(long pause) {
+		this.pause = pause;
+	}
+	public long getPause() {
+		return pause;
+	}
+
+	public void setBusyPause(long busyPause) {
+		this.busyPause = busyPause;
+	}
+	public long getBusyPause() {
+		return busyPause;
+	}
+
+	public Date getLastRun() {
+		return lastRun;
+	}
+	public int getRowsDeletedLastRun() {
+		return rowsDeletedLastRun;
+	}
+	public int getChunksLastRun() {
+		return chunksLastRun;
+	}
+	public long getDurationLastRun() {
+		return durationLastRun;
+	}
+	public long getTotalRowsDeleted() {
+		return totalRowsDeleted;
+	}
+	public boolean isCaughtUp() {
+		return caughtUp;
+	}
+	/**
+	 * Returns the error of the last run, <code>null</code> when it succeeded.
+	 */
+	public String getLastError() {
+		return lastError;
+	}
+	/**
+	 * Returns the age in ms of the oldest expired record that was left after the last run, <code>-1</code> when the cleaner has not run yet.
+	 */
+	public long getLag() {
+		return lag;
+	}
+}
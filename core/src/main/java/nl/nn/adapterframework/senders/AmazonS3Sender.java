@@ -213,5 +213,29 @@ public class AmazonS3Sender extends FileSystemSender<S3Object, AmazonS3FileSyste
 		getFileSystem().setProxyPort(proxyPort);
 	}
 
-	
+	@IbisDoc({ "size in bytes of the parts in which files are uploaded, and downloaded when parallelDownloadEnabled=true. Must be at least 5MB", "8388608" })
+	public void setPartSize(int partSize) {
+		getFileSystem().setPartSize(partSize);
+	}
+
+	@IbisDoc({ "maximum number of parts of a single file that are transferred concurrently, and kept in memory", "4" })
+	public void setMaxConcurrentParts(int maxConcurrentParts) {
+		getFileSystem().setMaxConcurrentParts(maxConcurrentParts);
+	}
+
+	@IbisDoc({ "number of times the transfer of a part is retried before the upload or download fails", "3" })
+	public void setMaxPartRetries(int maxPartRetries) {
+		getFileSystem().setMaxPartRetries(maxPartRetries);
+	}
+
+	@IbisDoc({ "maximum number of threads that transfer parts, for all files together", "10" })
+	public void setMaxTransferThreads(int maxTransferThreads) {
+		getFileSystem().setMaxTransferThreads(maxTransferThreads);
+	}
+
+	@IbisDoc({ "when set <code>true</code>, files larger than partSize are downloaded in ranges that are read concurrently", "false" })
+	public void setParallelDownloadEnabled(boolean parallelDownloadEnabled) {
+		getFileSystem().setParallelDownloadEnabled(parallelDownloadEnabled);
+	}
+
 }
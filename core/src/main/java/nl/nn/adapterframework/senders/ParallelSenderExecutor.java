@@ -31,7 +31,7 @@ public class ParallelSenderExecutor extends RequestReplyExecutor {
 	private ISender sender;
 	private IPipeLineSession session;
 	private Semaphore semaphore; // supports to limit the number of threads processing in parallel, may be null
-	private Guard guard;         // supports to wait for all threads to have ended
+	private Guard guard;         // supports to wait for all threads to have ended, may be null
 	private StatisticsKeeper sk;
 
 	public ParallelSenderExecutor(ISender sender, Message message, IPipeLineSession session, Guard guard, StatisticsKeeper sk) {
@@ -65,7 +65,9 @@ public class ParallelSenderExecutor extends RequestReplyExecutor {
 			if (semaphore!=null) {
 				semaphore.release();
 			}
-			guard.releaseResource();
+			if (guard!=null) {
+				guard.releaseResource();
+			}
 		}
 	}
 
@@ -17,12 +17,12 @@ package nl.nn.adapterframework.senders;
 
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
-import org.springframework.beans.BeansException;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.ApplicationContextAware;
 import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
@@ -32,14 +32,21 @@ import nl.nn.adapterframework.core.ISender;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.core.TimeOutException;
 import nl.nn.adapterframework.doc.IbisDoc;
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
 import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.ClassUtils;
-import nl.nn.adapterframework.util.Guard;
 import nl.nn.adapterframework.util.XmlBuilder;
 import nl.nn.adapterframework.util.XmlUtils;
 
 /**
  * Collection of Senders, that are executed all at the same time.
+ * <p>
+ * Each ParallelSenders has its own pool of threads, that is not shared with other components. When <code>maxConcurrentThreads</code>
+ * is set, at most <code>queueCapacity</code> messages wait for a thread; further messages are rejected, which is reported in the result
+ * of the sender concerned. The results are returned when all senders have finished, when <code>quorum</code> senders have finished
+ * successfully, or when the <code>timeout</code> has expired, whichever comes first. Senders that have not finished by then are
+ * reported with type <code>timeout</code> or <code>incomplete</code>, and are left to finish in the background.
  * 
  * <table border="1">
  * <tr><th>nested elements</th><th>description</th></tr>
@@ -50,10 +57,15 @@ import nl.nn.adapterframework.util.XmlUtils;
  * @author  Gerrit van Brakel
  * @since   4.9
  */
-public class ParallelSenders extends SenderSeries implements ApplicationContextAware {
+public class ParallelSenders extends SenderSeries {
 
 	private int maxConcurrentThreads = 0;
-	private ApplicationContext applicationContext;
+	private int queueCapacity = 1000;
+	private int timeout = 0;
+	private int quorum = 0;
+
+	private TaskExecutor taskExecutor;
+	private Map<ISender, StatisticsKeeper> queueWaitStatisticsMap = new HashMap<ISender, StatisticsKeeper>();
 
 	@Override
 	public void configure() throws ConfigurationException {
@@ -65,16 +77,76 @@ public class ParallelSenders extends SenderSeries implements ApplicationContextA
 			}
 			ConfigurationWarnings.add(this, log, "parameters ["+paramList+"] of ParallelSenders ["+getName()+"] are not available for use by nested Senders");
 		}
+		if (getQueueCapacity()<0) {
+			throw new ConfigurationException(getLogPrefix()+"queueCapacity ["+getQueueCapacity()+"] cannot be negative");
+		}
+		if (getTimeout()<0) {
+			throw new ConfigurationException(getLogPrefix()+"timeout ["+getTimeout()+"] cannot be negative");
+		}
+		if (getQuorum()<0) {
+			throw new ConfigurationException(getLogPrefix()+"quorum ["+getQuorum()+"] cannot be negative");
+		}
+	}
+
+	@Override
+	public void close() throws SenderException {
+		try {
+			super.close();
+		} finally {
+			synchronized (this) {
+				if (taskExecutor instanceof ThreadPoolTaskExecutor) {
+					((ThreadPoolTaskExecutor)taskExecutor).shutdown();
+				}
+				taskExecutor=null;
+			}
+		}
 	}
 
 	@Override
 	public Message sendMessage(Message message, IPipeLineSession session) throws SenderException, TimeOutException {
-		Guard guard = new Guard();
-		Map<ISender, ParallelSenderExecutor> executorMap = new HashMap<ISender, ParallelSenderExecutor>();
-		TaskExecutor executor = createTaskExecutor();
+		ParallelExecution execution = execute(getSenders(), message, session, getQuorum());
 
+		XmlBuilder resultsXml = new XmlBuilder("results");
 		for (ISender sender: getSenders()) {
-			guard.addResource();
+			XmlBuilder resultXml = new XmlBuilder("result");
+			resultXml.addAttribute("senderClass", ClassUtils.nameOf(sender));
+			resultXml.addAttribute("senderName", sender.getName());
+			if (execution.isFinished(sender)) {
+				ParallelSenderExecutor pse = execution.getExecutor(sender);
+				Throwable throwable = pse.getThrowable();
+				if (throwable==null) {
+					Message result = pse.getReply();
+					if (result==null) {
+						resultXml.addAttribute("type", "null");
+					} else {
+						try {
+							resultXml.addAttribute("type", ClassUtils.nameOf(result.asObject()));
+							resultXml.setValue(XmlUtils.skipXmlDeclaration(result.asString()),false);
+						} catch (IOException e) {
+							throw new SenderException(getLogPrefix(),e);
+						}
+					}
+				} else {
+					resultXml.addAttribute("type", ClassUtils.nameOf(throwable));
+					resultXml.setValue(throwable.getMessage());
+				}
+			} else {
+				resultXml.addAttribute("type", getUnfinishedType(execution));
+			}
+			resultsXml.addSubElement(resultXml); 
+		}
+		return new Message(resultsXml.toXML());
+	}
+
+	/**
+	 * Executes the senders in parallel. Returns when all senders have finished, when <code>quorum</code> senders have
+	 * finished successfully, or when the timeout has expired.
+	 * @param quorum number of senders that must have finished successfully, 0 to wait for all senders
+	 */
+	protected ParallelExecution execute(Iterable<ISender> senders, Message message, IPipeLineSession session, int quorum) throws SenderException {
+		ParallelExecution execution = new ParallelExecution();
+		TaskExecutor executor = getTaskExecutor();
+		for (ISender sender: senders) {
 			// Create a new ParameterResolutionContext to be thread safe, see
 			// documentation on constructor of ParameterResolutionContext
 			// (parameter singleThreadOnly).
@@ -86,44 +158,25 @@ public class ParallelSenders extends SenderSeries implements ApplicationContextA
 			// messages of 1 MB concurrently to a pipeline which will process
 			// the message in parallel with 10 SenderWrappers (containing a
 			// XsltSender and IbisLocalSender).
-			
-			ParallelSenderExecutor pse = new ParallelSenderExecutor(sender, message, session, guard, getStatisticsKeeper(sender));
-			executorMap.put(sender, pse);
-
-			executor.execute(pse);
+			SenderExecutor pse = new SenderExecutor(execution, sender, message, session);
+			execution.add(sender, pse);
+			try {
+				executor.execute(pse);
+			} catch (TaskRejectedException e) {
+				pse.setThrowable(new SenderException(getLogPrefix()+"no thread available for sender ["+sender.getName()+"], queue of ["+getQueueCapacity()+"] is full", e));
+				execution.finished(pse);
+			}
 		}
 		try {
-			guard.waitForAllResources();
+			execution.await(quorum, getTimeout());
 		} catch (InterruptedException e) {
 			throw new SenderException(getLogPrefix()+"was interupted",e);
 		}
+		return execution;
+	}
 
-		XmlBuilder resultsXml = new XmlBuilder("results");
-		for (ISender sender: getSenders()) {
-			ParallelSenderExecutor pse = executorMap.get(sender);
-			XmlBuilder resultXml = new XmlBuilder("result");
-			resultXml.addAttribute("senderClass", ClassUtils.nameOf(sender));
-			resultXml.addAttribute("senderName", sender.getName());
-			Throwable throwable = pse.getThrowable();
-			if (throwable==null) {
-				Message result = pse.getReply();
-				if (result==null) {
-					resultXml.addAttribute("type", "null");
-				} else {
-					try {
-						resultXml.addAttribute("type", ClassUtils.nameOf(result.asObject()));
-						resultXml.setValue(XmlUtils.skipXmlDeclaration(result.asString()),false);
-					} catch (IOException e) {
-						throw new SenderException(getLogPrefix(),e);
-					}
-				}
-			} else {
-				resultXml.addAttribute("type", ClassUtils.nameOf(throwable));
-				resultXml.setValue(throwable.getMessage());
-			}
-			resultsXml.addSubElement(resultXml); 
-		}
-		return new Message(resultsXml.toXML());
+	protected String getUnfinishedType(ParallelExecution execution) {
+		return execution.isTimedOut() ? "timeout" : "incomplete";
 	}
 
 	@Override
@@ -133,12 +186,127 @@ public class ParallelSenders extends SenderSeries implements ApplicationContextA
 		} 
 	}
 
+	@Override
+	public void registerSender(ISender sender) {
+		super.registerSender(sender);
+		queueWaitStatisticsMap.put(sender, new StatisticsKeeper("-> "+ClassUtils.nameOf(sender)+" queue wait"));
+	}
+
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		super.iterateOverStatistics(hski, data, action);
+		for (ISender sender: getSenders()) {
+			hski.handleStatisticsKeeper(data, queueWaitStatisticsMap.get(sender));
+		}
+	}
+
+	protected synchronized TaskExecutor getTaskExecutor() {
+		if (taskExecutor==null) {
+			taskExecutor=createTaskExecutor();
+		}
+		return taskExecutor;
+	}
+
+	/**
+	 * Creates the pool of threads that is dedicated to this ParallelSenders.
+	 */
 	protected TaskExecutor createTaskExecutor() {
-		ThreadPoolTaskExecutor executor = applicationContext.getBean("concurrentTaskExecutor", ThreadPoolTaskExecutor.class);
-		executor.setCorePoolSize(getMaxConcurrentThreads());
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		if (getMaxConcurrentThreads()>0) {
+			executor.setCorePoolSize(getMaxConcurrentThreads());
+			executor.setMaxPoolSize(getMaxConcurrentThreads());
+			executor.setQueueCapacity(getQueueCapacity());
+			executor.setAllowCoreThreadTimeOut(true);
+		} else {
+			executor.setCorePoolSize(0);
+			executor.setMaxPoolSize(Integer.MAX_VALUE);
+			executor.setQueueCapacity(0);
+		}
+		executor.setThreadNamePrefix(ClassUtils.nameOf(this)+"["+getName()+"]-");
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		executor.initialize();
 		return executor;
 	}
 
+	/**
+	 * Executes a sender, and keeps track of the time it waited for a thread.
+	 */
+	private class SenderExecutor extends ParallelSenderExecutor {
+		private final ParallelExecution execution;
+		private final StatisticsKeeper queueWaitStatisticsKeeper;
+		private final long queued = System.currentTimeMillis();
+
+		SenderExecutor(ParallelExecution execution, ISender sender, Message message, IPipeLineSession session) {
+			super(sender, message, session, null, getStatisticsKeeper(sender));
+			this.execution = execution;
+			this.queueWaitStatisticsKeeper = queueWaitStatisticsMap.get(sender);
+		}
+
+		@Override
+		public void run() {
+			if (queueWaitStatisticsKeeper!=null) {
+				queueWaitStatisticsKeeper.addValue(System.currentTimeMillis()-queued);
+			}
+			try {
+				super.run();
+			} finally {
+				execution.finished(this);
+			}
+		}
+	}
+
+	/**
+	 * Keeps track of the senders executed for a single message.
+	 */
+	protected static class ParallelExecution {
+		private final Map<ISender, ParallelSenderExecutor> executors = new HashMap<ISender, ParallelSenderExecutor>();
+		private final Set<ParallelSenderExecutor> finishedExecutors = new HashSet<ParallelSenderExecutor>();
+		private int succeeded;
+		private boolean timedOut;
+
+		synchronized void add(ISender sender, ParallelSenderExecutor executor) {
+			executors.put(sender, executor);
+		}
+
+		synchronized void finished(ParallelSenderExecutor executor) {
+			if (finishedExecutors.add(executor) && executor.getThrowable()==null) {
+				succeeded++;
+			}
+			notifyAll();
+		}
+
+		synchronized void await(int quorum, long timeout) throws InterruptedException {
+			long deadline = timeout>0 ? System.currentTimeMillis()+timeout : 0;
+			while (finishedExecutors.size()<executors.size() && (quorum<=0 || succeeded<quorum)) {
+				if (deadline>0) {
+					long remaining = deadline-System.currentTimeMillis();
+					if (remaining<=0) {
+						timedOut=true;
+						return;
+					}
+					wait(remaining);
+				} else {
+					wait();
+				}
+			}
+		}
+
+		public synchronized ParallelSenderExecutor getExecutor(ISender sender) {
+			return executors.get(sender);
+		}
+
+		/**
+		 * Returns <code>true</code> when the sender has finished, after which its reply or throwable can be inspected.
+		 */
+		public synchronized boolean isFinished(ISender sender) {
+			return finishedExecutors.contains(executors.get(sender));
+		}
+
+		public synchronized boolean isTimedOut() {
+			return timedOut;
+		}
+	}
+
 	@IbisDoc({"Set the upper limit to the amount of concurrent threads that can be run simultaneously. Use 0 to disable.", "0"})
 	public void setMaxConcurrentThreads(int maxThreads) {
 		if(maxThreads < 1)
@@ -150,8 +318,27 @@ public class ParallelSenders extends SenderSeries implements ApplicationContextA
 		return maxConcurrentThreads;
 	}
 
-	@Override
-	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
-		this.applicationContext = applicationContext;
+	@IbisDoc({"Maximum number of messages that wait for a thread when maxConcurrentThreads is reached. Further messages are rejected", "1000"})
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	@IbisDoc({"Maximum time in ms to wait for the senders to finish. Senders that have not finished by then are reported with type <code>timeout</code>. Use 0 to wait until all senders have finished", "0"})
+	public void setTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+	public int getTimeout() {
+		return timeout;
+	}
+
+	@IbisDoc({"When set, the results are returned as soon as this number of senders have finished successfully. Senders that have not finished by then are reported with type <code>incomplete</code>. Use 0 to wait until all senders have finished", "0"})
+	public void setQuorum(int quorum) {
+		this.quorum = quorum;
+	}
+	public int getQuorum() {
+		return quorum;
 	}
 }
@@ -17,14 +17,11 @@ package nl.nn.adapterframework.senders;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-
-import org.springframework.core.task.TaskExecutor;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
+import nl.nn.adapterframework.configuration.ConfigurationWarnings;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.ISender;
 import nl.nn.adapterframework.core.SenderException;
@@ -33,7 +30,6 @@ import nl.nn.adapterframework.doc.IbisDoc;
 import nl.nn.adapterframework.statistics.StatisticsKeeper;
 import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.util.ClassUtils;
-import nl.nn.adapterframework.util.Guard;
 import nl.nn.adapterframework.util.XmlBuilder;
 import nl.nn.adapterframework.util.XmlUtils;
 
@@ -94,6 +90,10 @@ public class ShadowSender extends ParallelSenders {
 		if(getSenderList().size()==0)
 			throw new ConfigurationException("this is not supposed to happen, like ever");
 
+		if(getQuorum() > 0) {
+			ConfigurationWarnings.add(this, log, "quorum ["+getQuorum()+"] is not supported by ShadowSender ["+getName()+"], the results of all senders are awaited");
+		}
+
 		super.configure();
 	}
 
@@ -102,35 +102,10 @@ public class ShadowSender extends ParallelSenders {
 	 */
 	@Override
 	public Message doSendMessage(Message message, IPipeLineSession session) throws SenderException, TimeOutException {
-		Guard guard = new Guard();
-		Map<ISender, ParallelSenderExecutor> executorMap = new HashMap<ISender, ParallelSenderExecutor>();
-		TaskExecutor executor = createTaskExecutor();
-
-		// Create a new ParameterResolutionContext to be thread safe, see
-		// documentation on constructor of ParameterResolutionContext
-		// (parameter cacheXmlSource).
-		// Testing also showed that disabling caching is better for
-		// performance. At least when testing with a lot of large messages
-		// in parallel. This might be due to the fact that objects can be
-		// garbage collected earlier. OutOfMemoryErrors occur much
-		// faster when caching is enabled. Testing was done by sending 10
-		// messages of 1 MB concurrently to a pipeline which will process
-		// the message in parallel with 10 SenderWrappers (containing a
-		// XsltSender and IbisLocalSender).
-		for (Iterator<ISender> it = getExecutableSenders(); it.hasNext();) {
-			ISender sender = it.next();
-			guard.addResource();
-			ParallelSenderExecutor pse = new ParallelSenderExecutor(sender, message, session, guard, getStatisticsKeeper(sender));
-			executorMap.put(sender, pse);
-			executor.execute(pse);
-		}
-		try {
-			guard.waitForAllResources();
-		} catch (InterruptedException e) {
-			throw new SenderException(getLogPrefix()+"was interupted",e);
-		}
+		ParallelExecution execution = execute(getSenderList(), message, session, 0);
 
 		ParallelSenderExecutor originalSender = null;
+		boolean originalSenderFinished = false;
 		XmlBuilder resultsXml = new XmlBuilder("results");
 		String correlationID = session==null ? null : session.getMessageId();
 		resultsXml.addAttribute("correlationID", correlationID);
@@ -146,25 +121,31 @@ public class ShadowSender extends ParallelSenders {
 		// First loop through all (Shadow)Senders and handle their results
 		for (Iterator<ISender> it = getExecutableSenders(); it.hasNext();) {
 			ISender sender = it.next();
-			ParallelSenderExecutor pse = executorMap.get(sender);
+			ParallelSenderExecutor pse = execution.getExecutor(sender);
+			boolean finished = execution.isFinished(sender);
 
 			XmlBuilder resultXml;
 			if(sender.getName() != null && sender.getName().equalsIgnoreCase(getOriginalSender())) {
 				originalSender = pse;
+				originalSenderFinished = finished;
 				resultXml = new XmlBuilder("originalResult");
 			}
 			else {
 				resultXml = new XmlBuilder("shadowResult");
 			}
 
-			StatisticsKeeper sk = getStatisticsKeeper(sender);
-			resultXml.addAttribute("duration", sk.getLast() + sk.getUnits());
-			resultXml.addAttribute("count", sk.getCount());
+			if (finished) {
+				StatisticsKeeper sk = getStatisticsKeeper(sender);
+				resultXml.addAttribute("duration", sk.getLast() + sk.getUnits());
+				resultXml.addAttribute("count", sk.getCount());
+			}
 
 			resultXml.addAttribute("senderClass", ClassUtils.nameOf(sender));
 			resultXml.addAttribute("senderName", sender.getName());
 			Throwable throwable = pse.getThrowable();
-			if (throwable==null) {
+			if (!finished) {
+				resultXml.addAttribute("type", getUnfinishedType(execution));
+			} else if (throwable==null) {
 				Object result = pse.getReply();
 				if (result==null) {
 					resultXml.addAttribute("type", "null");
@@ -193,6 +174,9 @@ public class ShadowSender extends ParallelSenders {
 			log.warn("failed to send ShadowSender result to ["+resultISender.getName()+"]");
 		}
 
+		if (!originalSenderFinished) {
+			throw new TimeOutException(getLogPrefix()+"originalSender ["+getOriginalSender()+"] did not finish within ["+getTimeout()+"] ms");
+		}
 		if (originalSender.getThrowable() != null) {
 			throw new SenderException(originalSender.getThrowable());
 		}
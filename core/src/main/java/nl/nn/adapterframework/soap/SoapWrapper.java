@@ -128,6 +128,7 @@ public class SoapWrapper {
 	
 	public Message getBody(Message message, boolean allowPlainXml, IPipeLineSession session, String soapNamespaceSessionKey) throws SAXException, TransformerException, IOException  {
 		message.preserve();
+		message.closeOnCloseOf(session);
 		Message result = new Message(extractBodySoap11.transform(message.asSource()));
 		if (!Message.isEmpty(result)) {
 			if (session!=null && StringUtils.isNotEmpty(soapNamespaceSessionKey)) {
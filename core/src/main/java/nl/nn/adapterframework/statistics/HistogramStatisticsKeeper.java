@@ -0,0 +1,370 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.statistics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.XmlBuilder;
+import nl.nn.adapterframework.util.XmlUtils;
+
+/**
+ * Lock-free StatisticsKeeper for durations, that records values with nanosecond precision.
+ * <p>
+ * Values are counted in log-linear histograms, that are striped over threads to avoid contention, and are
+ * only merged when the statistics are read. Values are reported in milliseconds, like the values of a regular
+ * StatisticsKeeper, but with fractions.
+ * <p>
+ * Percentiles are approximations, calculated from the merged histogram. Durations below {@value #SUB_BUCKET_COUNT}
+ * nanoseconds are counted exactly, above that each bucket is 1/{@value #SUB_BUCKET_HALF_COUNT} of its lowest value
+ * wide. A percentile is reported as the middle of its bucket, so it deviates at most 1/{@value #SUB_BUCKET_COUNT}
+ * (about 1.5%) from the exact value. Count, minimum, maximum, average and standard deviation are exact.
+ * This keeper is only used when <code>Statistics.histograms=true</code>.
+ */
+public class HistogramStatisticsKeeper extends StatisticsKeeper {
+
+	public static final String STRIPES_KEY="Statistics.histogram.stripes";
+
+	private static final int SUB_BUCKET_BITS=6;
+	private static final int SUB_BUCKET_COUNT=1<<SUB_BUCKET_BITS;
+	private static final int SUB_BUCKET_HALF_COUNT=SUB_BUCKET_COUNT/2;
+	private static final int MAX_VALUE_BITS=45; // 2^45 ns is almost 10 hours, larger values are counted in the highest bucket
+	private static final long MAX_TRACKABLE_VALUE=(1L<<MAX_VALUE_BITS)-1;
+	private static final int HISTOGRAM_LENGTH=bucketIndex(MAX_TRACKABLE_VALUE)+1;
+
+	private static final double NANOS_PER_MILLI=1000000d;
+
+	private final int stripeMask;
+	private final AtomicReferenceArray<AtomicLongArray> stripes;
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final DoubleAdder sumOfSquares = new DoubleAdder();
+	private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+	private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+	private final AtomicLong first = new AtomicLong(Long.MIN_VALUE);
+	private volatile long last;
+
+	private final LongAccumulator intervalMin = new LongAccumulator(Math::min, Long.MAX_VALUE);
+	private final LongAccumulator intervalMax = new LongAccumulator(Math::max, Long.MIN_VALUE);
+	private volatile long markCount;
+	private volatile long markSum;
+	private volatile double markSumOfSquares;
+
+	public HistogramStatisticsKeeper(String name) {
+		super(name);
+		int requestedStripes = AppConstants.getInstance().getInt(STRIPES_KEY, Math.min(4, Runtime.getRuntime().availableProcessors()));
+		int stripeCount=1;
+		while (stripeCount<requestedStripes) {
+			stripeCount<<=1;
+		}
+		stripeMask=stripeCount-1;
+		stripes = new AtomicReferenceArray<AtomicLongArray>(stripeCount);
+	}
+
+	/**
+	 * Returns the index of the histogram bucket that counts <code>value</code>. Values below {@value #SUB_BUCKET_COUNT} are
+	 * counted exactly, above that each power of two is divided in {@value #SUB_BUCKET_HALF_COUNT} equally sized buckets.
+	 */
+	static int bucketIndex(long value) {
+		if (value<SUB_BUCKET_COUNT) {
+			return (int)Math.max(value,0);
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS-1);
+		return shift*SUB_BUCKET_HALF_COUNT + (int)(value >>> shift);
+	}
+
+	/**
+	 * Returns the lowest value that is counted in bucket <code>index</code>.
+	 */
+	static long lowestValueOfBucket(int index) {
+		if (index<SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index/SUB_BUCKET_HALF_COUNT - 1;
+		long subBucket = index - shift*SUB_BUCKET_HALF_COUNT;
+		return subBucket << shift;
+	}
+
+	/**
+	 * Returns the number of distinct values that are counted in bucket <code>index</code>.
+	 */
+	static long bucketWidth(int index) {
+		if (index<SUB_BUCKET_COUNT) {
+			return 1;
+		}
+		return 1L << (index/SUB_BUCKET_HALF_COUNT - 1);
+	}
+
+	private AtomicLongArray getStripe() {
+		int stripeIndex = (int)Thread.currentThread().getId() & stripeMask;
+		AtomicLongArray stripe = stripes.get(stripeIndex);
+		if (stripe==null) {
+			stripes.compareAndSet(stripeIndex, null, new AtomicLongArray(HISTOGRAM_LENGTH));
+			stripe = stripes.get(stripeIndex);
+		}
+		return stripe;
+	}
+
+	/**
+	 * Merges the histograms of all stripes.
+	 */
+	private long[] getHistogram() {
+		long[] result = new long[HISTOGRAM_LENGTH];
+		for (int i=0; i<stripes.length(); i++) {
+			AtomicLongArray stripe = stripes.get(i);
+			if (stripe!=null) {
+				for (int j=0; j<HISTOGRAM_LENGTH; j++) {
+					result[j]+=stripe.get(j);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Adds a value in milliseconds.
+	 */
+	@Override
+	public void addValue(long value) {
+		addNanoValue(value*1000000L);
+	}
+
+	@Override
+	public void addNanoValue(long nanos) {
+		long value = Math.max(nanos, 0);
+		getStripe().incrementAndGet(bucketIndex(Math.min(value, MAX_TRACKABLE_VALUE)));
+		min.accumulate(value);
+		max.accumulate(value);
+		intervalMin.accumulate(value);
+		intervalMax.accumulate(value);
+		sum.add(value);
+		sumOfSquares.add((double)value*value);
+		first.compareAndSet(Long.MIN_VALUE, value);
+		last = value;
+		count.increment(); // increment count last, so readers see consistent values for non-zero counts
+	}
+
+	@Override
+	public void performAction(int action) {
+		if (action==HasStatistics.STATISTICS_ACTION_FULL || action==HasStatistics.STATISTICS_ACTION_SUMMARY) {
+			return;
+		}
+		if (action==HasStatistics.STATISTICS_ACTION_RESET) {
+			clear();
+		}
+		if (action==HasStatistics.STATISTICS_ACTION_MARK_FULL || action==HasStatistics.STATISTICS_ACTION_MARK_MAIN) {
+			intervalMin.reset();
+			intervalMax.reset();
+			markCount = count.sum();
+			markSum = sum.sum();
+			markSumOfSquares = sumOfSquares.sum();
+		}
+	}
+
+	@Override
+	public void clear() {
+		for (int i=0; i<stripes.length(); i++) {
+			stripes.set(i, null);
+		}
+		count.reset();
+		sum.reset();
+		sumOfSquares.reset();
+		min.reset();
+		max.reset();
+		intervalMin.reset();
+		intervalMax.reset();
+		first.set(Long.MIN_VALUE);
+		last = 0;
+		markCount = 0;
+		markSum = 0;
+		markSumOfSquares = 0;
+	}
+
+	@Override
+	public long[] getClassCounts() {
+		long[] classBoundaries = getClassBoundaries();
+		long[] result = new long[classBoundaries.length];
+		long[] histogram = getHistogram();
+		for (int i=0; i<classBoundaries.length; i++) {
+			long boundary = (long)(classBoundaries[i]*NANOS_PER_MILLI);
+			for (int j=0; j<HISTOGRAM_LENGTH && lowestValueOfBucket(j)<boundary; j++) {
+				result[i]+=histogram[j];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the value in nanoseconds below which <code>percentage</code> percent of the values fall.
+	 */
+	public double getPercentile(double percentage) {
+		long[] histogram = getHistogram();
+		long total = 0;
+		for (int i=0; i<HISTOGRAM_LENGTH; i++) {
+			total+=histogram[i];
+		}
+		if (total==0) {
+			return Double.NaN;
+		}
+		long rank = Math.max(1, (long)Math.ceil(percentage*total/100));
+		if (rank>=total) {
+			return max.get();
+		}
+		long cumulative = 0;
+		for (int i=0; i<HISTOGRAM_LENGTH; i++) {
+			cumulative+=histogram[i];
+			if (cumulative>=rank) {
+				double value = lowestValueOfBucket(i)+(bucketWidth(i)-1)/2.0;
+				return Math.max(Math.min(value, max.get()), min.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public Object getItemValue(int index) {
+		long count = getCount();
+		if (index==0) {
+			return new Long(count);
+		}
+		if (count==0) {
+			return null;
+		}
+		switch (index) {
+			case 1: return new Double(min.get()/NANOS_PER_MILLI);
+			case 2: return new Double(max.get()/NANOS_PER_MILLI);
+			case 3: return new Double(getAvg());
+			case 4: return new Double(getStdDev());
+			case 5: return new Double(sum.sum()/NANOS_PER_MILLI);
+			case 6: return new Double(first.get()/NANOS_PER_MILLI);
+			case 7: return new Double(last/NANOS_PER_MILLI);
+			default:
+				int classIndex = index-NUM_STATIC_ITEMS;
+				long[] classBoundaries = getClassBoundaries();
+				if (classIndex < classBoundaries.length) {
+					return new Double(getClassCounts()[classIndex]/(double)count);
+				}
+				int percentileIndex = classIndex-classBoundaries.length;
+				if (percentileIndex < pest.getNumPercentiles()) {
+					return new Double(getPercentile(pest.getPercentage(percentileIndex))/NANOS_PER_MILLI);
+				}
+				throw new ArrayIndexOutOfBoundsException("HistogramStatisticsKeeper.getItemValue() item index too high: "+index);
+		}
+	}
+
+	@Override
+	public Object getIntervalItemValue(int index) {
+		long intervalCount = count.sum()-markCount;
+		switch (index) {
+			case 0: return new Long(intervalCount);
+			case 1: if (intervalCount == 0) return null; else return new Double(intervalMin.get()/NANOS_PER_MILLI);
+			case 2: if (intervalCount == 0) return null; else return new Double(intervalMax.get()/NANOS_PER_MILLI);
+			case 3: if (intervalCount == 0) return null; else return new Double((sum.sum()-markSum)/NANOS_PER_MILLI/intervalCount);
+			case 4: return new Long(Math.round((sum.sum()-markSum)/NANOS_PER_MILLI));
+			case 5: return new Long(Math.round((sumOfSquares.sum()-markSumOfSquares)/(NANOS_PER_MILLI*NANOS_PER_MILLI)));
+			default : return null;
+		}
+	}
+
+	@Override
+	public XmlBuilder dumpToXml() {
+		XmlBuilder result = new XmlBuilder("StatisticsKeeper");
+		XmlBuilder items = new XmlBuilder("items");
+		result.addSubElement(items);
+		for (int i=0;i<getItemCount();i++) {
+			XmlBuilder item = new XmlBuilder("item");
+			items.addSubElement(item);
+			item.addAttribute("index",""+i);
+			item.addAttribute("name",XmlUtils.encodeChars(getItemName(i)));
+			item.addAttribute("type",""+getItemType(i));
+			item.addAttribute("value",ItemUtil.getItemValueFormated(this,i));
+		}
+		XmlBuilder item = new XmlBuilder("item");
+		items.addSubElement(item);
+		item.addAttribute("index","-1");
+		item.addAttribute("name","sumofsquares");
+		item.addAttribute("value",""+getTotalSquare());
+
+		XmlBuilder histogramXml = new XmlBuilder("histogram");
+		result.addSubElement(histogramXml);
+		long[] histogram = getHistogram();
+		for (int i=0; i<HISTOGRAM_LENGTH; i++) {
+			if (histogram[i]>0) {
+				XmlBuilder bucket = new XmlBuilder("bucket");
+				bucket.addAttribute("from", ""+lowestValueOfBucket(i));
+				bucket.addAttribute("width", ""+bucketWidth(i));
+				bucket.addAttribute("count", ""+histogram[i]);
+				histogramXml.addSubElement(bucket);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public long getCount() {
+		return count.sum();
+	}
+
+	@Override
+	public double getAvg() {
+		long count = getCount();
+		if (count==0) {
+			return 0;
+		}
+		return sum.sum()/NANOS_PER_MILLI/count;
+	}
+
+	@Override
+	public long getFirst() {
+		return Math.round(first.get()/NANOS_PER_MILLI);
+	}
+	@Override
+	public long getLast() {
+		return Math.round(last/NANOS_PER_MILLI);
+	}
+	@Override
+	public long getMax() {
+		return getCount()==0 ? 0 : Math.round(max.get()/NANOS_PER_MILLI);
+	}
+	@Override
+	public long getMin() {
+		return getCount()==0 ? Long.MAX_VALUE : Math.round(min.get()/NANOS_PER_MILLI);
+	}
+	@Override
+	public long getTotal() {
+		return Math.round(sum.sum()/NANOS_PER_MILLI);
+	}
+	@Override
+	public long getTotalSquare() {
+		return Math.round(sumOfSquares.sum()/(NANOS_PER_MILLI*NANOS_PER_MILLI));
+	}
+	@Override
+	public double getVariance() {
+		long count = getCount();
+		if (count<2) {
+			return Double.NaN;
+		}
+		double sumMs = sum.sum()/NANOS_PER_MILLI;
+		double sumOfSquaresMs = sumOfSquares.sum()/(NANOS_PER_MILLI*NANOS_PER_MILLI);
+		return (sumOfSquaresMs-(sumMs*sumMs)/count)/(count-1);
+	}
+}
@@ -61,6 +61,20 @@ public class StatisticsKeeper implements ItemList {
 
 	protected PercentileEstimator pest;	
 
+	private static final boolean useHistograms=AppConstants.getInstance().getBoolean("Statistics.histograms", false);
+
+	/**
+	 * Creates a StatisticsKeeper for durations, that can be updated concurrently. When <code>Statistics.histograms</code> is set
+	 * to <code>true</code>, this is a lock-free {@link HistogramStatisticsKeeper}, that reports approximate percentiles. Otherwise
+	 * it is a regular StatisticsKeeper, that synchronizes its updates.
+	 */
+	public static StatisticsKeeper createDurationStatisticsKeeper(String name) {
+		if (useHistograms) {
+			return new HistogramStatisticsKeeper(name);
+		}
+		return new StatisticsKeeper(name);
+	}
+
 	/**
 	 * Constructor for StatisticsKeeper.
 	 *
@@ -105,7 +119,7 @@ public class StatisticsKeeper implements ItemList {
 		return "ms";
 	}
 	
-	public void performAction(int action) {
+	public synchronized void performAction(int action) {
 		if (action==HasStatistics.STATISTICS_ACTION_FULL || action==HasStatistics.STATISTICS_ACTION_SUMMARY) {
 			return;
 		}
@@ -117,7 +131,7 @@ public class StatisticsKeeper implements ItemList {
 		}
 	}
 	
-	public void clear() {
+	public synchronized void clear() {
 		cumulative.reset();
 		mark.reset();
 		first=0;
@@ -125,7 +139,15 @@ public class StatisticsKeeper implements ItemList {
 		pest.clear();
 	}
 	
-	public void addValue(long value) {
+	/**
+	 * Adds a duration measured in nanoseconds, e.g. using {@link System#nanoTime()}.
+	 * This implementation has a resolution of milliseconds.
+	 */
+	public void addNanoValue(long nanos) {
+		addValue(nanos/1000000);
+	}
+
+	public synchronized void addValue(long value) {
 		if (first==Long.MIN_VALUE) { 
 			first=value;
 		}
@@ -16,6 +16,8 @@
 package nl.nn.adapterframework.stream;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FilterInputStream;
@@ -43,19 +45,28 @@ import org.apache.logging.log4j.Logger;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
+import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.ClassUtils;
 import nl.nn.adapterframework.util.LogUtil;
+import nl.nn.adapterframework.util.Misc;
 import nl.nn.adapterframework.util.StreamUtil;
 import nl.nn.adapterframework.util.XmlUtils;
 
-public class Message implements Serializable {
+public class Message implements Serializable, AutoCloseable {
 
 	private static final long serialVersionUID = 437863352486501445L;
 
+	public static final String SPILL_THRESHOLD_KEY = "message.preserve.spillThreshold";
+	private static final int BUFFER_SIZE = 64*1024;
+	private static Long spillThreshold = null;
+
 	protected transient Logger log = LogUtil.getLogger(this);
 
 	private Object request;
 	private String charset; // representing a charset of byte typed requests
+	private transient boolean ownsSpilledContent; // true when this Message holds a reference to a SpilledContent request, that must be released on close()
+	private transient IPipeLineSession closingSession; // the last session the SpilledContent request was registered with
 
 	private Message(Object request, String charset) {
 		if (request instanceof Message) {
@@ -118,6 +129,10 @@ public class Message implements Serializable {
 	 * Notify the message object that the request object will be used multiple times.
 	 * If the request object can only be read one time, it can turn it into a less volatile representation. 
 	 * For instance, it could replace an InputStream with a byte array or String.
+	 * Streams that are larger than the spill threshold (property <code>message.preserve.spillThreshold</code>) 
+	 * are preserved in a temporary file. The Message owns the file, and deletes it when it is {@link #close() closed}, 
+	 * or hands it over to a session by {@link #closeOnCloseOf(IPipeLineSession)}. Callers that have a session should
+	 * register the Message with it, other callers should close the Message when they no longer need it.
 	 * 
 	 * @throws IOException
 	 */
@@ -128,34 +143,181 @@ public class Message implements Serializable {
 		if (request == null) {
 			return;
 		}
+		long threshold = getSpillThreshold();
 		if (request instanceof Reader) {
+			if (threshold<0) {
+				log.debug("preserving Reader as String");
+				request = StreamUtil.readerToString((Reader) request, null);
+				return;
+			}
+			Reader reader = (Reader) request;
+			CharArrayWriter head = new CharArrayWriter();
+			char[] buffer = new char[BUFFER_SIZE];
+			int len;
+			while ((len=reader.read(buffer))>=0) {
+				head.write(buffer, 0, len);
+				if (head.size()>threshold) {
+					log.debug("preserving Reader of more than ["+threshold+"] characters in temporary file");
+					request = SpilledContent.spill(head, reader);
+					ownsSpilledContent = true;
+					return;
+				}
+			}
+			reader.close();
 			log.debug("preserving Reader as String");
-			request = StreamUtil.readerToString((Reader) request, null);
+			request = head.toString();
 			return;
 		}
 		if (request instanceof InputStream) {
+			if (threshold<0) {
+				log.debug("preserving InputStream as byte[]");
+				request = StreamUtil.streamToByteArray((InputStream) request, false);
+				return;
+			}
+			InputStream stream = (InputStream) request;
+			ByteArrayOutputStream head = new ByteArrayOutputStream();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int len;
+			while ((len=stream.read(buffer))>=0) {
+				head.write(buffer, 0, len);
+				if (head.size()>threshold) {
+					log.debug("preserving InputStream of more than ["+threshold+"] bytes in temporary file");
+					request = SpilledContent.spill(head, stream);
+					ownsSpilledContent = true;
+					return;
+				}
+			}
+			stream.close();
 			log.debug("preserving InputStream as byte[]");
-			request = StreamUtil.streamToByteArray((InputStream) request, false);
+			request = head.toByteArray();
 			return;
 		}
-		// if deepPreserve=true, File and URL are also preserved as byte array
+		// if deepPreserve=true, File, URL and temporary files are also preserved as byte array or String
 		// otherwise we rely on that File and URL can be repeatedly read
+		if (deepPreserve && request instanceof SpilledContent) {
+			SpilledContent content = (SpilledContent) request;
+			log.debug("deep preserving temporary file");
+			request = content.isCharacterData() ? StreamUtil.readerToString(content.openReader(), null) : StreamUtil.streamToByteArray(content.openStream(), false);
+			releaseSpilledContent(content);
+			return;
+		}
 		if (deepPreserve && !(request instanceof String || request instanceof byte[])) {
 			log.debug("deep preserving as byte[]");
 			request = StreamUtil.streamToByteArray(asInputStream(), false);
 		}
 	}
 
+	/**
+	 * Returns the size in bytes, or for character data in characters, above which streams are preserved in a temporary file. 
+	 * A negative value disables preserving in temporary files.
+	 */
+	public static synchronized long getSpillThreshold() {
+		if (spillThreshold == null) {
+			String definitionString = AppConstants.getInstance().getString(SPILL_THRESHOLD_KEY, null);
+			spillThreshold = Misc.toFileSize(definitionString, -1);
+		}
+		return spillThreshold;
+	}
+	static synchronized void setSpillThreshold(long threshold) {
+		spillThreshold = threshold;
+	}
+
+	/**
+	 * Makes the session responsible for deleting the temporary file of a preserved Message: the reference of the Message is handed over 
+	 * to the session, and released when the session is closed. Closing the Message itself is then no longer required, and has no effect
+	 * on the file. When the reference was already handed over to another session, an additional reference is registered for this
+	 * session. Registering the Message again with the same session has no effect.
+	 */
+	public void closeOnCloseOf(IPipeLineSession session) {
+		if (request instanceof SpilledContent && session!=null && session!=closingSession) {
+			SpilledContent content = (SpilledContent) request;
+			closingSession = session;
+			if (ownsSpilledContent) {
+				ownsSpilledContent = false;
+			} else {
+				content.acquire();
+			}
+			session.scheduleCloseOnSessionExit(content::release);
+		}
+	}
+
+	/**
+	 * Makes this Message hold its own reference to its temporary file again, so that the file is kept when the sessions it was registered
+	 * with are closed. To be called for Messages that are used after the end of the session, like the result of a pipeline. The file is then
+	 * deleted when this Message is closed, or when it has become unreachable.
+	 */
+	public void keepAfterSessionExit() {
+		if (request instanceof SpilledContent && !ownsSpilledContent) {
+			((SpilledContent)request).acquire();
+			ownsSpilledContent = true;
+		}
+	}
+
+	private void releaseSpilledContent(SpilledContent content) {
+		if (ownsSpilledContent) {
+			ownsSpilledContent = false;
+			content.release();
+		}
+	}
+
+	/**
+	 * Releases the resources held by this Message. When the Message was preserved in a temporary file, the file is deleted,
+	 * unless other Messages or sessions still use it.
+	 */
+	@Override
+	public void close() throws IOException {
+		Object closing = request;
+		request = null;
+		if (closing instanceof SpilledContent) {
+			releaseSpilledContent((SpilledContent)closing);
+		} else if (closing instanceof AutoCloseable) {
+			try {
+				((AutoCloseable)closing).close();
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException("cannot close "+ClassUtils.nameOf(closing), e);
+			}
+		}
+	}
+
+	/**
+	 * Returns the request object. When the Message has been preserved in a temporary file, a new {@link Reader} (for character data) 
+	 * or {@link InputStream} on the file is returned instead, because the lifecycle of the file is managed by this Message.
+	 */
 	public Object asObject() {
+		if (request instanceof SpilledContent) {
+			SpilledContent content = (SpilledContent) request;
+			try {
+				return content.isCharacterData() ? content.openReader() : content.openStream();
+			} catch (IOException e) {
+				throw new IllegalStateException("cannot open "+content, e);
+			}
+		}
 		return request;
 	}
 
+	/**
+	 * Returns the temporary file the Message has been preserved in, or <code>null</code> if it has not been preserved in a temporary file.
+	 */
+	SpilledContent getSpilledContent() {
+		return request instanceof SpilledContent ? (SpilledContent)request : null;
+	}
+
+	/**
+	 * Returns the charset of binary data, if known.
+	 */
+	public String getCharset() {
+		return charset;
+	}
+
 	public boolean isBinary() {
-		return request instanceof InputStream || request instanceof URL || request instanceof File || request instanceof Path || request instanceof byte[];
+		return request instanceof InputStream || request instanceof URL || request instanceof File || request instanceof Path || request instanceof byte[]
+				|| request instanceof SpilledContent && !((SpilledContent)request).isCharacterData();
 	}
 	
 	public boolean isRepeatable() {
-		return request instanceof String || request instanceof URL || request instanceof File || request instanceof Path || request instanceof byte[];
+		return request instanceof String || request instanceof URL || request instanceof File || request instanceof Path || request instanceof byte[] || request instanceof SpilledContent;
 	}
 	
 	public boolean requiresStream() {
@@ -177,6 +339,10 @@ public class Message implements Serializable {
 			log.debug("returning Reader as Reader");
 			return (Reader) request;
 		}
+		if (request instanceof SpilledContent && ((SpilledContent)request).isCharacterData()) {
+			log.debug("returning temporary file as Reader");
+			return ((SpilledContent)request).openReader();
+		}
 		if (isBinary()) {
 			String readerCharset = charset; //Don't overwrite the Message's charset
 			if (StringUtils.isEmpty(readerCharset)) {
@@ -230,6 +396,15 @@ public class Message implements Serializable {
 		if (StringUtils.isEmpty(defaultCharset)) {
 			defaultCharset=StreamUtil.DEFAULT_INPUT_STREAM_ENCODING;
 		}
+		if (request instanceof SpilledContent) {
+			SpilledContent content = (SpilledContent) request;
+			if (!content.isCharacterData() || StreamUtil.DEFAULT_CHARSET.name().equalsIgnoreCase(defaultCharset)) {
+				log.debug("returning temporary file as InputStream");
+				return content.openStream();
+			}
+			log.debug("returning temporary file as InputStream in charset ["+defaultCharset+"]");
+			return new ReaderInputStream(content.openReader(), defaultCharset);
+		}
 		if (request instanceof Reader) {
 			log.debug("returning Reader as InputStream");
 			return new ReaderInputStream((Reader) request, defaultCharset);
@@ -282,6 +457,8 @@ public class Message implements Serializable {
 
 	/**
 	 * return the request object as a byte array. Has the side effect of preserving the input as byte array.
+	 * When the request has been preserved in a temporary file, the file remains the preserved representation, 
+	 * and each call reads the complete file into memory again. Use {@link #asInputStream()} for such messages.
 	 */
 	public byte[] asByteArray() throws IOException {
 		return asByteArray(null);
@@ -299,6 +476,11 @@ public class Message implements Serializable {
 		if (request instanceof String) {
 			return ((String)request).getBytes(defaultCharset);
 		}
+		if (request instanceof SpilledContent) {
+			// the temporary file remains the preserved representation
+			logReadingSpilledContent((SpilledContent)request);
+			return StreamUtil.streamToByteArray(asInputStream(defaultCharset), false);
+		}
 		// save the generated byte array as the request before returning it
 		request = StreamUtil.streamToByteArray(asInputStream(defaultCharset), false);
 		return (byte[]) request;
@@ -306,6 +488,8 @@ public class Message implements Serializable {
 
 	/**
 	 * return the request object as a String. Has the side effect of preserving the input as a String.
+	 * When the request has been preserved in a temporary file, the file remains the preserved representation, 
+	 * and each call reads the complete file into memory again. Use {@link #asReader()} for such messages.
 	 */
 	public String asString() throws IOException {
 		return asString(null);
@@ -317,11 +501,22 @@ public class Message implements Serializable {
 		if (request instanceof String) {
 			return (String)request;
 		}
+		if (request instanceof SpilledContent) {
+			// the temporary file remains the preserved representation
+			logReadingSpilledContent((SpilledContent)request);
+			return StreamUtil.readerToString(asReader(defaultCharset), null);
+		}
 		// save the generated String as the request before returning it
 		request = StreamUtil.readerToString(asReader(defaultCharset), null);
 		return (String) request;
 	}
 
+	private void logReadingSpilledContent(SpilledContent content) {
+		if (log.isDebugEnabled()) {
+			log.debug("reading "+content+" into memory, consider to process this message as a stream");
+		}
+	}
+
 	public boolean isEmpty() {
 		return request == null || request instanceof String && ((String)request).isEmpty();
 	}
@@ -422,18 +617,33 @@ public class Message implements Serializable {
 
 	/*
 	 * this method is used by Serializable, to serialize objects to a stream.
+	 * The content of a temporary file is copied to the stream in chunks, instead of being read into memory as a whole.
 	 */
 	private void writeObject(ObjectOutputStream stream) throws IOException {
+		if (request instanceof SpilledContent) {
+			SpilledContent content = (SpilledContent) request;
+			ObjectOutputStream.PutField fields = stream.putFields();
+			fields.put("request", new SpilledContent.SerializedForm(content));
+			fields.put("charset", charset);
+			stream.writeFields();
+			content.writeChunks(stream);
+			return;
+		}
 		preserve(true);
 		stream.defaultWriteObject();
 	}
 
 	/*
 	 * this method is used by Serializable, to deserialize objects from a stream.
+	 * The content of a serialized temporary file is copied to a new temporary file.
 	 */
 	private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
 		log = LogUtil.getLogger(this);
 		stream.defaultReadObject();
+		if (request instanceof SpilledContent.SerializedForm) {
+			request = SpilledContent.readChunks(stream, (SpilledContent.SerializedForm)request);
+			ownsSpilledContent = true;
+		}
 	}
 
 	/**
@@ -469,6 +679,9 @@ public class Message implements Serializable {
 		if (request instanceof byte[]) {
 			return ((byte[]) request).length;
 		}
+		if (request instanceof SpilledContent) {
+			return ((SpilledContent) request).size();
+		}
 
 		if(!(request instanceof InputStream || request instanceof Reader)) {
 			//Unable to determine the size of a Stream
@@ -0,0 +1,275 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.stream;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.CharArrayWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.Writer;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.Logger;
+
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Content of a {@link Message} that has been preserved in a temporary file, because it was too large to be kept in memory.
+ * <p>
+ * The content can be read any number of times, through a {@link java.nio.channels.FileChannel FileChannel} on the file.
+ * The file is reference counted: it is deleted when all holders have {@link #release() released} it. Files of which
+ * the SpilledContent has become unreachable without having been released, are deleted when the next file is created.
+ */
+public final class SpilledContent {
+	protected static Logger log = LogUtil.getLogger(SpilledContent.class);
+
+	private static final int BUFFER_SIZE = 64*1024;
+
+	private static final ReferenceQueue<SpilledContent> UNREACHABLE = new ReferenceQueue<SpilledContent>();
+	private static final Set<FileReference> FILES = ConcurrentHashMap.newKeySet();
+
+	private final Path file;
+	private final long size;
+	private final boolean characterData;
+	private final FileReference fileReference;
+	private final AtomicInteger references = new AtomicInteger(1);
+
+	/*
+	 * Deletes the file, either when the last reference is released, or when the SpilledContent has become unreachable.
+	 */
+	private static class FileReference extends PhantomReference<SpilledContent> {
+		private final Path file;
+
+		FileReference(SpilledContent content, Path file) {
+			super(content, UNREACHABLE);
+			this.file = file;
+			FILES.add(this);
+		}
+
+		void delete() {
+			if (FILES.remove(this)) {
+				clear();
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					log.warn("cannot delete temporary file ["+file+"]", e);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Takes the place of the content in the serialized form of a Message, that is followed by the content of the file in chunks.
+	 */
+	static class SerializedForm implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final long size;
+		private final boolean characterData;
+
+		SerializedForm(SpilledContent content) {
+			this.size = content.size();
+			this.characterData = content.isCharacterData();
+		}
+	}
+
+	private SpilledContent(Path file, long size, boolean characterData) {
+		this.file = file;
+		this.size = size;
+		this.characterData = characterData;
+		this.fileReference = new FileReference(this, file);
+	}
+
+	/**
+	 * Writes the bytes in <code>head</code>, followed by the remainder of <code>stream</code>, to a temporary file. The stream is closed.
+	 */
+	public static SpilledContent spill(ByteArrayOutputStream head, InputStream stream) throws IOException {
+		Path file = createTempFile();
+		long size = head.size();
+		try (InputStream in = stream; OutputStream out = Files.newOutputStream(file)) {
+			head.writeTo(out);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int len;
+			while ((len=in.read(buffer))>=0) {
+				out.write(buffer, 0, len);
+				size += len;
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+		return new SpilledContent(file, size, false);
+	}
+
+	/**
+	 * Writes the characters in <code>head</code>, followed by the remainder of <code>reader</code>, UTF-8 encoded to a temporary file. The reader is closed.
+	 */
+	public static SpilledContent spill(CharArrayWriter head, Reader reader) throws IOException {
+		Path file = createTempFile();
+		long size = head.size();
+		try (Reader in = reader; Writer out = new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8)) {
+			head.writeTo(out);
+			char[] buffer = new char[BUFFER_SIZE];
+			int len;
+			while ((len=in.read(buffer))>=0) {
+				out.write(buffer, 0, len);
+				size += len;
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+		return new SpilledContent(file, size, true);
+	}
+
+	/**
+	 * Writes the content of the file to <code>out</code> in chunks of at most 64K, followed by a chunk length of -1.
+	 */
+	void writeChunks(DataOutput out) throws IOException {
+		try (InputStream in = Files.newInputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int len;
+			while ((len=in.read(buffer))>=0) {
+				if (len>0) {
+					out.writeInt(len);
+					out.write(buffer, 0, len);
+				}
+			}
+		}
+		out.writeInt(-1);
+	}
+
+	/**
+	 * Reads chunks written by {@link #writeChunks(DataOutput)} into a new temporary file.
+	 */
+	static SpilledContent readChunks(DataInput in, SerializedForm form) throws IOException {
+		Path file = createTempFile();
+		try (OutputStream out = Files.newOutputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int len;
+			while ((len=in.readInt())>=0) {
+				if (len>BUFFER_SIZE) {
+					throw new IOException("invalid chunk length ["+len+"] in serialized content");
+				}
+				in.readFully(buffer, 0, len);
+				out.write(buffer, 0, len);
+			}
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(file);
+			throw e;
+		}
+		return new SpilledContent(file, form.size, form.characterData);
+	}
+
+	private static Path createTempFile() throws IOException {
+		deleteUnreachable();
+		String tmpdir = AppConstants.getInstance().getString("ibis.tmpdir", null);
+		if (StringUtils.isEmpty(tmpdir)) {
+			return Files.createTempFile("message-", ".tmp");
+		}
+		Path dir = Paths.get(tmpdir);
+		Files.createDirectories(dir);
+		return Files.createTempFile(dir, "message-", ".tmp");
+	}
+
+	private static void deleteUnreachable() {
+		Reference<? extends SpilledContent> reference;
+		while ((reference=UNREACHABLE.poll())!=null) {
+			FileReference fileReference = (FileReference)reference;
+			log.debug("deleting temporary file ["+fileReference.file+"] of unreachable content");
+			fileReference.delete();
+		}
+	}
+
+	/**
+	 * Registers an additional holder of the content, that must call {@link #release()} when it no longer needs it.
+	 */
+	public void acquire() {
+		int count;
+		do {
+			count = references.get();
+			if (count<=0) {
+				throw new IllegalStateException("temporary file ["+file+"] has already been deleted");
+			}
+		} while (!references.compareAndSet(count, count+1));
+	}
+
+	/**
+	 * Releases a reference to the content. When the last reference is released, the file is deleted.
+	 */
+	public void release() {
+		if (references.decrementAndGet()==0) {
+			log.debug("deleting temporary file ["+file+"]");
+			fileReference.delete();
+		}
+	}
+
+	/**
+	 * Opens a new stream on the content. For character data, the stream returns the UTF-8 encoded characters.
+	 */
+	public InputStream openStream() throws IOException {
+		return new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+	}
+
+	/**
+	 * Opens a new reader on the content. Only valid for character data.
+	 */
+	public Reader openReader() throws IOException {
+		return new InputStreamReader(openStream(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns <code>true</code> when the content consists of the characters of a {@link Reader}, instead of the bytes of an {@link InputStream}.
+	 */
+	public boolean isCharacterData() {
+		return characterData;
+	}
+
+	/**
+	 * Returns the number of characters of character data, and the number of bytes otherwise.
+	 */
+	public long size() {
+		return size;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	@Override
+	public String toString() {
+		return "temporary file ["+file+"] size ["+size+"]"+(characterData?" characters":" bytes");
+	}
+}
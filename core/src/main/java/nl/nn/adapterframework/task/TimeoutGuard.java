@@ -15,15 +15,14 @@
 */
 package nl.nn.adapterframework.task;
 
-import java.util.Timer;
-import java.util.TimerTask;
-
 import nl.nn.adapterframework.util.LogUtil;
 
 import org.apache.logging.log4j.Logger;
 
 /**
  * TimeoutGuard interrupts running thread when timeout is exceeded.
+ * <p>
+ * Guards are registered with the application wide {@link TimeoutScheduler}, so activating a guard does not create a thread.
  * 
  * @author  Gerrit van Brakel
  * @since   4.9.10  
@@ -33,17 +32,18 @@ public class TimeoutGuard {
 
 	int timeout;
 	String description;
-	boolean threadKilled;
+	volatile boolean threadKilled;
 
-	private Timer timer;
+	private TimeoutScheduler.Timeout timer;
 
-	private class Killer extends TimerTask {
+	private class Killer implements Runnable {
 
 		private Thread thread;
+		private TimeoutScheduler scheduler;
 
-		public Killer() {
-			super();
+		public Killer(TimeoutScheduler scheduler) {
 			thread = Thread.currentThread();
+			this.scheduler = scheduler;
 		}
 
 		@Override
@@ -51,7 +51,21 @@ public class TimeoutGuard {
 			log.warn("Thread ["+thread.getName()+"] executing task ["+description+"] exceeds timeout of ["+timeout+"] s, interuppting");
 			threadKilled=true;
 			thread.interrupt();
-			abort();
+			if (!scheduler.isRunning()) {
+				log.warn("TimeoutScheduler is stopped, not aborting task ["+description+"]");
+				return;
+			}
+			// abort() might block, keep it off the thread of the scheduler. Use the scheduler that fired, getInstance() would start a new one after a shutdown
+			scheduler.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						abort();
+					} catch (Throwable t) {
+						log.warn("exception aborting task ["+description+"]", t);
+					}
+				}
+			});
 		}
 	}
 
@@ -79,11 +93,16 @@ public class TimeoutGuard {
 	 * @param timeout in seconds
 	 */
 	public void activateGuard(int timeout) {
+		if (timeout > 0) {
+			activateGuard(timeout, TimeoutScheduler.getInstance());
+		}
+	}
+
+	void activateGuard(int timeout, TimeoutScheduler scheduler) {
 		if (timeout > 0) {
 			this.timeout=timeout;
 			if (log.isDebugEnabled()) log.debug("setting timeout of ["+timeout+"] s for task ["+description+"]");
-			timer = new Timer("GuardTask["+description+"]");
-			timer.schedule(new Killer(),timeout*1000);
+			timer = scheduler.schedule(new Killer(scheduler), timeout*1000L);
 		}
 	}
 
@@ -102,6 +121,7 @@ public class TimeoutGuard {
 
 	/**
 	 * Implement this method to stop the process and cleanup the resources you are 'guarding'.
+	 * It is called on a separate thread, after the guarded thread has been interrupted.
 	 */
 	protected void abort() {
 		// can be called in descendants to kill the guarded job when timeout is exceeded.
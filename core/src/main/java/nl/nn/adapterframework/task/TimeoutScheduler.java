@@ -0,0 +1,398 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.task;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.Logger;
+
+import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+import nl.nn.adapterframework.util.AppConstants;
+import nl.nn.adapterframework.util.LogUtil;
+
+/**
+ * Application wide scheduler for timeouts, implemented as a hashed timing wheel.
+ * <p>
+ * A single daemon thread advances the wheel every <code>timeoutScheduler.tickDuration</code> milliseconds and runs
+ * the tasks whose deadline has passed. Scheduling and cancelling a timeout are O(1) operations that do not create
+ * a thread, which makes it suitable to guard every single message, as is done by {@link TimeoutGuard}.
+ * <p>
+ * Tasks are executed on the thread of the scheduler, so they should return quickly and must not block. Work that
+ * might block, like aborting a guarded process, must be handed to {@link #execute(Runnable)}.
+ * <p>
+ * The application wide instance is stopped by {@link #shutdown()} when the IBIS instance is shut down.
+ */
+public class TimeoutScheduler implements HasStatistics {
+	protected static Logger log = LogUtil.getLogger(TimeoutScheduler.class);
+
+	public static final String TICK_DURATION_KEY = "timeoutScheduler.tickDuration";
+	public static final String WHEEL_SIZE_KEY = "timeoutScheduler.wheelSize";
+
+	private static TimeoutScheduler self;
+
+	private final long tickDuration; // nanoseconds
+	private final Bucket[] wheel;
+	private final int mask;
+	private final long startTime;
+
+	private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+	private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+	private final Thread workerThread;
+	private final ExecutorService taskExecutor;
+	private volatile boolean running=true;
+	private long tick;
+
+	private final AtomicLong armedCount = new AtomicLong();
+	private final AtomicLong firedCount = new AtomicLong();
+	private final AtomicLong cancelledCount = new AtomicLong();
+	private final AtomicLong pendingCount = new AtomicLong();
+
+	public static synchronized TimeoutScheduler getInstance() {
+		if (self==null) {
+			AppConstants appConstants = AppConstants.getInstance();
+			self = new TimeoutScheduler(appConstants.getLong(TICK_DURATION_KEY, 100), appConstants.getInt(WHEEL_SIZE_KEY, 512));
+		}
+		return self;
+	}
+
+	/**
+	 * Returns the application wide instance, or <code>null</code> if it has not been started.
+	 */
+	public static synchronized TimeoutScheduler getRunningInstance() {
+		return self;
+	}
+
+	/**
+	 * Stops the application wide instance. Timeouts that have not fired yet are discarded.
+	 * A subsequent call to {@link #getInstance()} starts a new instance.
+	 */
+	public static synchronized void shutdown() {
+		if (self!=null) {
+			self.stop();
+			self=null;
+		}
+	}
+
+	/**
+	 * @param tickDuration duration of a single tick of the wheel in milliseconds, i.e. the resolution of the timeouts.
+	 * @param wheelSize number of buckets in the wheel, rounded up to the next power of two.
+	 */
+	public TimeoutScheduler(long tickDuration, int wheelSize) {
+		if (tickDuration<=0) {
+			throw new IllegalArgumentException("tickDuration must be positive, but was ["+tickDuration+"]");
+		}
+		if (wheelSize<=0 || wheelSize>(1<<30)) {
+			throw new IllegalArgumentException("wheelSize must be between 1 and 2^30, but was ["+wheelSize+"]");
+		}
+		int normalizedWheelSize=1;
+		while (normalizedWheelSize<wheelSize) {
+			normalizedWheelSize<<=1;
+		}
+		this.tickDuration = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+		wheel = new Bucket[normalizedWheelSize];
+		for (int i=0; i<wheel.length; i++) {
+			wheel[i] = new Bucket();
+		}
+		mask = wheel.length-1;
+		startTime = System.nanoTime();
+		workerThread = new Thread(new Worker(), "TimeoutScheduler");
+		workerThread.setDaemon(true);
+		taskExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "TimeoutScheduler-task-"+threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		workerThread.start();
+	}
+
+	/**
+	 * Stops the thread of the scheduler. Timeouts that have not fired yet are discarded.
+	 */
+	public void stop() {
+		running=false;
+		workerThread.interrupt();
+		try {
+			workerThread.join(TimeUnit.NANOSECONDS.toMillis(tickDuration)+1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		taskExecutor.shutdown();
+		log.debug("TimeoutScheduler stopped, discarded ["+pendingCount.get()+"] pending timeouts");
+	}
+
+	public boolean isRunning() {
+		return running && workerThread.isAlive();
+	}
+
+	/**
+	 * Executes <code>task</code> on a separate thread. To be used by timeout tasks for work that might block, so that
+	 * it does not delay the other timeouts.
+	 */
+	public void execute(Runnable task) {
+		try {
+			taskExecutor.execute(task);
+		} catch (RejectedExecutionException e) {
+			log.warn("TimeoutScheduler is stopped, cannot execute task ["+task+"]");
+		}
+	}
+
+	/**
+	 * Schedules <code>task</code> to be executed once after <code>delay</code> milliseconds, unless
+	 * the returned {@link Timeout} is cancelled before that.
+	 */
+	public Timeout schedule(Runnable task, long delay) {
+		if (task==null) {
+			throw new NullPointerException("task must not be null");
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay) - startTime;
+		Timeout timeout = new Timeout(this, task, deadline);
+		armedCount.incrementAndGet();
+		pendingCount.incrementAndGet();
+		pendingTimeouts.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Total number of timeouts that have been scheduled.
+	 */
+	public long getArmedCount() {
+		return armedCount.get();
+	}
+	/**
+	 * Number of timeouts whose task has been executed.
+	 */
+	public long getFiredCount() {
+		return firedCount.get();
+	}
+	/**
+	 * Number of timeouts that have been cancelled before their task was executed.
+	 */
+	public long getCancelledCount() {
+		return cancelledCount.get();
+	}
+	/**
+	 * Number of timeouts that are currently scheduled, i.e. neither fired nor cancelled.
+	 */
+	public long getPendingCount() {
+		return pendingCount.get();
+	}
+
+	@Override
+	public void iterateOverStatistics(StatisticsKeeperIterationHandler hski, Object data, int action) throws SenderException {
+		Object subdata=hski.openGroup(data, "TimeoutScheduler", "timeoutScheduler");
+		hski.handleScalar(subdata, "armed", getArmedCount());
+		hski.handleScalar(subdata, "fired", getFiredCount());
+		hski.handleScalar(subdata, "cancelled", getCancelledCount());
+		hski.handleScalar(subdata, "pending", getPendingCount());
+		hski.closeGroup(subdata);
+	}
+
+
+	private class Worker implements Runnable {
+
+		@Override
+		public void run() {
+			while (running) {
+				long deadline = waitForNextTick();
+				if (!running) {
+					break;
+				}
+				processCancelledTimeouts();
+				transferPendingTimeouts();
+				wheel[(int)(tick & mask)].expireTimeouts(deadline);
+				tick++;
+			}
+		}
+
+		private long waitForNextTick() {
+			long deadline = tickDuration * (tick + 1);
+			while (running) {
+				long currentTime = System.nanoTime() - startTime;
+				long sleepTimeMs = TimeUnit.NANOSECONDS.toMillis(deadline - currentTime + 999999);
+				if (sleepTimeMs <= 0) {
+					return currentTime;
+				}
+				try {
+					Thread.sleep(sleepTimeMs);
+				} catch (InterruptedException e) {
+					if (running) {
+						log.warn("TimeoutScheduler thread interrupted, continuing");
+					}
+				}
+			}
+			return System.nanoTime() - startTime;
+		}
+
+		private void transferPendingTimeouts() {
+			Timeout timeout;
+			while ((timeout = pendingTimeouts.poll()) != null) {
+				if (timeout.isCancelled()) {
+					continue;
+				}
+				long calculated = timeout.deadline / tickDuration;
+				timeout.remainingRounds = (calculated - tick) / wheel.length;
+				long ticks = Math.max(calculated, tick); // ensure timeouts in the past are executed in the current tick
+				wheel[(int)(ticks & mask)].add(timeout);
+			}
+		}
+
+		private void processCancelledTimeouts() {
+			Timeout timeout;
+			while ((timeout = cancelledTimeouts.poll()) != null) {
+				timeout.remove();
+			}
+		}
+	}
+
+	/**
+	 * Doubly linked list of timeouts, only accessed by the worker thread.
+	 */
+	private static class Bucket {
+		private Timeout head;
+		private Timeout tail;
+
+		void add(Timeout timeout) {
+			timeout.bucket = this;
+			if (head == null) {
+				head = tail = timeout;
+			} else {
+				tail.next = timeout;
+				timeout.prev = tail;
+				tail = timeout;
+			}
+		}
+
+		void expireTimeouts(long deadline) {
+			Timeout timeout = head;
+			while (timeout != null) {
+				Timeout next = timeout.next;
+				if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+					remove(timeout);
+					timeout.expire();
+				} else if (timeout.isCancelled()) {
+					remove(timeout);
+				} else if (timeout.remainingRounds > 0) {
+					timeout.remainingRounds--;
+				}
+				timeout = next;
+			}
+		}
+
+		void remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if (timeout.prev != null) {
+				timeout.prev.next = next;
+			}
+			if (timeout.next != null) {
+				timeout.next.prev = timeout.prev;
+			}
+			if (timeout == head) {
+				if (timeout == tail) {
+					tail = null;
+					head = null;
+				} else {
+					head = next;
+				}
+			} else if (timeout == tail) {
+				tail = timeout.prev;
+			}
+			timeout.prev = null;
+			timeout.next = null;
+			timeout.bucket = null;
+		}
+	}
+
+	/**
+	 * Handle to a scheduled task, that can be used to cancel it.
+	 */
+	public static class Timeout {
+		private static final int STATE_INIT = 0;
+		private static final int STATE_CANCELLED = 1;
+		private static final int STATE_EXPIRED = 2;
+
+		private final TimeoutScheduler scheduler;
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+
+		// fields below are only accessed by the worker thread
+		private long remainingRounds;
+		private Timeout next;
+		private Timeout prev;
+		private Bucket bucket;
+
+		private Timeout(TimeoutScheduler scheduler, Runnable task, long deadline) {
+			this.scheduler = scheduler;
+			this.task = task;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Cancels the timeout. Returns <code>false</code> if the task has already been executed or the timeout was cancelled before.
+		 */
+		public boolean cancel() {
+			if (!state.compareAndSet(STATE_INIT, STATE_CANCELLED)) {
+				return false;
+			}
+			scheduler.cancelledCount.incrementAndGet();
+			scheduler.pendingCount.decrementAndGet();
+			scheduler.cancelledTimeouts.add(this);
+			return true;
+		}
+
+		public boolean isCancelled() {
+			return state.get() == STATE_CANCELLED;
+		}
+
+		public boolean isExpired() {
+			return state.get() == STATE_EXPIRED;
+		}
+
+		private void remove() {
+			if (bucket != null) {
+				bucket.remove(this);
+			}
+		}
+
+		private void expire() {
+			if (!state.compareAndSet(STATE_INIT, STATE_EXPIRED)) {
+				return;
+			}
+			scheduler.firedCount.incrementAndGet();
+			scheduler.pendingCount.decrementAndGet();
+			try {
+				task.run();
+			} catch (Throwable t) {
+				log.warn("exception executing timeout task", t);
+			}
+		}
+	}
+}
@@ -20,6 +20,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.logging.log4j.Logger;
 import org.quartz.SchedulerException;
@@ -42,16 +43,20 @@ import nl.nn.adapterframework.core.IListener;
 import nl.nn.adapterframework.core.ITransactionalStorage;
 import nl.nn.adapterframework.extensions.esb.EsbJmsListener;
 import nl.nn.adapterframework.extensions.esb.EsbUtils;
+import nl.nn.adapterframework.ftp.FtpConnectionPool;
 import nl.nn.adapterframework.jdbc.JdbcTransactionalStorage;
+import nl.nn.adapterframework.jdbc.MessageCountCache;
 import nl.nn.adapterframework.receivers.Receiver;
 import nl.nn.adapterframework.scheduler.JobDef;
 import nl.nn.adapterframework.scheduler.SchedulerHelper;
 import nl.nn.adapterframework.senders.IbisLocalSender;
 import nl.nn.adapterframework.statistics.HasStatistics;
 import nl.nn.adapterframework.stream.Message;
+import nl.nn.adapterframework.task.TimeoutScheduler;
 import nl.nn.adapterframework.util.AppConstants;
 import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.util.RunStateEnum;
+import nl.nn.adapterframework.util.TemplatesCache;
 import nl.nn.adapterframework.util.flow.FlowDiagramManager;
 
 /**
@@ -66,7 +71,7 @@ public class DefaultIbisManager implements IbisManager, InitializingBean {
 	protected Logger secLog = LogUtil.getLogger("SEC");
 
 	private IbisContext ibisContext;
-	private List<Configuration> configurations = new ArrayList<Configuration>();
+	private List<Configuration> configurations = new CopyOnWriteArrayList<Configuration>();
 	private SchedulerHelper schedulerHelper;
 	private PlatformTransactionManager transactionManager;
 	private ApplicationEventPublisher applicationEventPublisher;
@@ -135,6 +140,9 @@ public class DefaultIbisManager implements IbisManager, InitializingBean {
 	public void shutdown() {
 		unload((String) null);
 		IbisCacheManager.shutdown();
+		FtpConnectionPool.shutdown();
+		TimeoutScheduler.shutdown();
+		MessageCountCache.shutdown();
 	}
 
 	@Override
@@ -183,6 +191,8 @@ public class DefaultIbisManager implements IbisManager, InitializingBean {
 			}
 		}
 
+		TemplatesCache.getInstance().release(configuration.getClassLoader());
+		FtpConnectionPool.closeIdleConnections();
 		configurations.remove(configuration);
 	}
 
@@ -15,6 +15,7 @@
 */
 package nl.nn.adapterframework.util;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
 import java.io.EOFException;
@@ -58,6 +59,7 @@ import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.ParameterException;
 import nl.nn.adapterframework.jdbc.JdbcException;
 import nl.nn.adapterframework.jdbc.JdbcFacade;
+import nl.nn.adapterframework.jdbc.MessageBlobFormat;
 import nl.nn.adapterframework.jdbc.dbms.IDbmsSupport;
 import nl.nn.adapterframework.jms.JmsRealmFactory;
 import nl.nn.adapterframework.parameters.Parameter;
@@ -335,7 +337,7 @@ public class JdbcUtil {
 	}
 	
 	public static String getBlobAsString(final IDbmsSupport dbmsSupport, final ResultSet rs, int column, String charset, boolean blobIsCompressed, boolean blobSmartGet, boolean encodeBlobBase64) throws IOException, JdbcException, SQLException {
-		try (InputStream blobStream = getBlobInputStream(dbmsSupport, rs, column, blobIsCompressed)) {
+		try (InputStream blobStream = blobSmartGet ? getSmartBlobInputStream(dbmsSupport.getBlobInputStream(rs, column), blobIsCompressed) : getBlobInputStream(dbmsSupport, rs, column, blobIsCompressed)) {
 			return getBlobAsString(blobStream, Integer.toString(column), charset, blobSmartGet, encodeBlobBase64);
 		} catch (ZipException | EOFException e) { 	// if any decompression exception occurs in getBlobInputStream
 			if (blobSmartGet && blobIsCompressed) { // then 'blobSmartGet' will try again to retrieve the stream, but then without decompressing
@@ -347,7 +349,7 @@ public class JdbcUtil {
 		}
 	}
 	public static String getBlobAsString(final IDbmsSupport dbmsSupport, final ResultSet rs, String column, String charset, boolean blobIsCompressed, boolean blobSmartGet, boolean encodeBlobBase64) throws IOException, JdbcException, SQLException {
-		try (InputStream blobStream = getBlobInputStream(dbmsSupport, rs, column, blobIsCompressed)) {
+		try (InputStream blobStream = blobSmartGet ? getSmartBlobInputStream(dbmsSupport.getBlobInputStream(rs, column), blobIsCompressed) : getBlobInputStream(dbmsSupport, rs, column, blobIsCompressed)) {
 			return getBlobAsString(blobStream, column, charset, blobSmartGet, encodeBlobBase64);
 		} catch (ZipException | EOFException e) { 	// if any decompression exception occurs in getBlobInputStream
 			if (blobSmartGet && blobIsCompressed) { // then 'blobSmartGet' will try again to retrieve the stream, but then without decompressing
@@ -358,6 +360,20 @@ public class JdbcUtil {
 			throw e;
 		}
 	}
+	/*
+	 * Blobs in the compact {@link MessageBlobFormat} start with an uncompressed header, and take care of their own compression.
+	 */
+	private static InputStream getSmartBlobInputStream(InputStream blobIntputStream, boolean blobIsCompressed) throws IOException {
+		if (blobIntputStream==null || !blobIsCompressed) {
+			return blobIntputStream;
+		}
+		InputStream bufferedStream = new BufferedInputStream(blobIntputStream);
+		if (MessageBlobFormat.hasHeader(bufferedStream)) {
+			return bufferedStream;
+		}
+		return new InflaterInputStream(bufferedStream);
+	}
+
 	public static String getBlobAsString(final InputStream blobIntputStream, String column, String charset, boolean blobSmartGet, boolean encodeBlobBase64) throws IOException, JdbcException, SQLException {
 		if (blobIntputStream==null) {
 			log.debug("no blob found in column ["+column+"]");
@@ -371,11 +387,23 @@ public class JdbcUtil {
 			Object result = null;
 			boolean objectOK = true;
 			try (ByteArrayInputStream bis = new ByteArrayInputStream(bytes)) {
-				try (ObjectInputStream ois = new ObjectInputStream(bis)) {
-					result = ois.readObject();
-				} catch (Exception e) {
-					log.debug("message in column ["+column+"] is probably not a serialized object: "+e.getClass().getName());
-					objectOK=false;
+				if (MessageBlobFormat.hasHeader(bis)) {
+					try {
+						result = MessageBlobFormat.read(bis);
+					} catch (ClassNotFoundException e) {
+						throw new JdbcException("cannot read message in column ["+column+"]", e);
+					} catch (IOException e) {
+						// content that only happens to start like the header of the compact format
+						log.debug("message in column ["+column+"] is probably not in the compact blob format: "+e.getClass().getName());
+						objectOK=false;
+					}
+				} else {
+					try (ObjectInputStream ois = new ObjectInputStream(bis)) {
+						result = ois.readObject();
+					} catch (Exception e) {
+						log.debug("message in column ["+column+"] is probably not a serialized object: "+e.getClass().getName());
+						objectOK=false;
+					}
 				}
 			}
 			String rawMessage;
@@ -0,0 +1,653 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+import nl.nn.adapterframework.xml.SaxException;
+
+/**
+ * Converts JSON to XML in the layout of <code>org.json.XML.toString()</code>, as SAX events. Keys become element names,
+ * the elements of arrays become repeated elements, and the elements of a top level array are named <code>array</code>.
+ * The input is read token by token, so only a single value is held in memory at a time. The syntax that is accepted is
+ * as lenient as that of <code>org.json</code>: keys and strings may be unquoted or single quoted, and comments are skipped.
+ * <p>
+ * When <code>addRootElement</code> is set, the result is wrapped in a <code>root</code> element when it would not have a single root element.
+ * As that is only known when the second top level element starts, the events of the first top level element are kept until then.
+ * When they take more than <code>maxBufferSize</code> characters, they are kept in a temporary file instead of in memory.
+ * Elements are written in the order of the keys in the input.
+ */
+public class JsonToXmlConverter {
+
+	public static final String ROOT_ELEMENT_NAME="root";
+	public static final String ARRAY_ELEMENT_NAME="array";
+	public static final int DEFAULT_MAX_BUFFER_SIZE=1024*1024;
+
+	private static final int END=-1;
+	private static final String UNQUOTED_DELIMITERS=",:]}/\\\"[{;=#";
+	private static final AttributesImpl NO_ATTRIBUTES=new AttributesImpl();
+
+	private final ContentHandler handler;
+	private final boolean addRootElement;
+	private int maxBufferSize=DEFAULT_MAX_BUFFER_SIZE;
+
+	private Reader reader;
+	private int pushedBack=END;
+	private boolean pushBackAvailable=false;
+	private int position;
+
+	private int depth;
+	private int topLevelItems;
+	private boolean rootElementStarted;
+	private EventBuffer firstItem;
+
+	public JsonToXmlConverter(ContentHandler handler, boolean addRootElement) {
+		this.handler=handler;
+		this.addRootElement=addRootElement;
+	}
+
+	/**
+	 * Sets the number of characters of the first top level element that are kept in memory, when <code>addRootElement</code> is set.
+	 */
+	public void setMaxBufferSize(int maxBufferSize) {
+		this.maxBufferSize=maxBufferSize;
+	}
+
+	/**
+	 * Converts a JSON object or array read from <code>reader</code>. Characters after the end of the object or array are ignored.
+	 */
+	public void convert(Reader reader) throws IOException, SAXException {
+		try {
+			convertDocument(reader);
+		} finally {
+			if (firstItem!=null) {
+				firstItem.close();
+				firstItem=null;
+			}
+		}
+	}
+
+	private void convertDocument(Reader reader) throws IOException, SAXException {
+		this.reader=reader;
+		handler.startDocument();
+		int c=nextClean();
+		back(c);
+		if (c=='{') {
+			convertObject(null);
+		} else if (c=='[' || c=='(') {
+			convertArray(ARRAY_ELEMENT_NAME);
+		} else {
+			throw syntaxError("A JSON text must begin with '{' or '['");
+		}
+		if (addRootElement) {
+			if (topLevelItems==1 && !rootElementStarted) {
+				replayFirstItem();
+			} else {
+				if (!rootElementStarted) {
+					startRootElement();
+				}
+				handler.endElement("", ROOT_ELEMENT_NAME, ROOT_ELEMENT_NAME);
+			}
+		}
+		handler.endDocument();
+	}
+
+	private void convertObject(String tagName) throws IOException, SAXException {
+		if (nextClean()!='{') {
+			throw syntaxError("A JSONObject text must begin with '{'");
+		}
+		if (tagName!=null) {
+			startElement(tagName);
+		}
+		int c=nextClean();
+		if (c!='}') {
+			back(c);
+			for (;;) {
+				c=nextClean();
+				if (c=='{' || c=='[' || c==END) {
+					throw syntaxError(c==END ? "A JSONObject text must end with '}'" : "Expected a key");
+				}
+				back(c);
+				String key=nextScalar();
+				c=nextClean();
+				if (c=='=') {
+					c=next();
+					if (c!='>') {
+						back(c);
+					}
+				} else if (c!=':') {
+					throw syntaxError("Expected a ':' after a key");
+				}
+				convertMember(key);
+				c=nextClean();
+				if (c==';' || c==',') {
+					c=nextClean();
+					if (c=='}') {
+						break;
+					}
+					back(c);
+				} else if (c=='}') {
+					break;
+				} else {
+					throw syntaxError("Expected a ',' or '}'");
+				}
+			}
+		}
+		if (tagName!=null) {
+			endElement(tagName);
+		}
+	}
+
+	private void convertMember(String key) throws IOException, SAXException {
+		int c=nextClean();
+		back(c);
+		if (key.equals("content")) {
+			if (c=='[' || c=='(') {
+				// the elements of a content array are joined by newlines
+				nextClean();
+				boolean first=true;
+				while (nextArrayElement(c=='[' ? ']' : ')', first)) {
+					if (!first) {
+						characters("\n");
+					}
+					convertContent();
+					first=false;
+				}
+			} else {
+				convertContent();
+			}
+		} else if (c=='[' || c=='(') {
+			nextClean();
+			boolean first=true;
+			while (nextArrayElement(c=='[' ? ']' : ')', first)) {
+				int e=nextClean();
+				back(e);
+				if (e=='[' || e=='(') {
+					startElement(key);
+					convertArray(ARRAY_ELEMENT_NAME);
+					endElement(key);
+				} else {
+					convertValue(key);
+				}
+				first=false;
+			}
+		} else {
+			convertValue(key);
+		}
+	}
+
+	private void convertContent() throws IOException, SAXException {
+		int c=nextClean();
+		back(c);
+		if (c=='{') {
+			convertObject(null);
+		} else if (c=='[' || c=='(') {
+			convertArray(ARRAY_ELEMENT_NAME);
+		} else {
+			characters(nextScalar());
+		}
+	}
+
+	/*
+	 * Converts an array of which each element is written with the same tagName; nested arrays are flattened.
+	 */
+	private void convertArray(String tagName) throws IOException, SAXException {
+		int c=nextClean();
+		if (c!='[' && c!='(') {
+			throw syntaxError("A JSONArray text must start with '['");
+		}
+		boolean first=true;
+		while (nextArrayElement(c=='[' ? ']' : ')', first)) {
+			convertValue(tagName);
+			first=false;
+		}
+	}
+
+	/*
+	 * Positions the reader on the next array element. Returns false when the end of the array has been reached.
+	 */
+	private boolean nextArrayElement(char closingChar, boolean first) throws IOException, SAXException {
+		int c=nextClean();
+		if (first) {
+			if (c==']' || c==')') {
+				return false;
+			}
+			back(c);
+			return true;
+		}
+		if (c==';' || c==',') {
+			c=nextClean();
+			if (c==']') {
+				return false;
+			}
+			back(c);
+			return true;
+		}
+		if (c==']' || c==')') {
+			if (c!=closingChar) {
+				throw syntaxError("Expected a '"+closingChar+"'");
+			}
+			return false;
+		}
+		throw syntaxError("Expected a ',' or ']'");
+	}
+
+	private void convertValue(String tagName) throws IOException, SAXException {
+		int c=nextClean();
+		back(c);
+		if (c=='{') {
+			convertObject(tagName);
+		} else if (c=='[' || c=='(') {
+			convertArray(tagName);
+		} else if (c==',') {
+			// missing array element
+			simpleElement(tagName, "null");
+		} else {
+			simpleElement(tagName, nextScalar());
+		}
+	}
+
+	private void simpleElement(String tagName, String value) throws SAXException {
+		startElement(tagName);
+		characters(value);
+		endElement(tagName);
+	}
+
+
+	private void startElement(String name) throws SAXException {
+		if (depth++==0) {
+			startTopLevelItem(false);
+		}
+		if (firstItem!=null) {
+			firstItem.add(BufferedEvent.START, name);
+		} else {
+			handler.startElement("", name, name, NO_ATTRIBUTES);
+		}
+	}
+
+	private void endElement(String name) throws SAXException {
+		depth--;
+		if (firstItem!=null) {
+			firstItem.add(BufferedEvent.END, name);
+		} else {
+			handler.endElement("", name, name);
+		}
+	}
+
+	private void characters(String text) throws SAXException {
+		if (text.isEmpty()) {
+			return;
+		}
+		if (depth==0) {
+			if (StringUtils.isBlank(text) && !rootElementStarted) {
+				return;
+			}
+			startTopLevelItem(true);
+		}
+		if (firstItem!=null) {
+			firstItem.add(BufferedEvent.CHARACTERS, text);
+		} else {
+			handler.characters(text.toCharArray(), 0, text.length());
+		}
+	}
+
+	private void startTopLevelItem(boolean text) throws SAXException {
+		topLevelItems++;
+		if (!addRootElement || rootElementStarted) {
+			return;
+		}
+		if (topLevelItems==1 && !text) {
+			firstItem=new EventBuffer(maxBufferSize);
+			return;
+		}
+		// a second element, or text: the result would not be well formed without a root element
+		startRootElement();
+		replayFirstItem();
+	}
+
+	private void startRootElement() throws SAXException {
+		rootElementStarted=true;
+		handler.startElement("", ROOT_ELEMENT_NAME, ROOT_ELEMENT_NAME, NO_ATTRIBUTES);
+	}
+
+	private void replayFirstItem() throws SAXException {
+		if (firstItem==null) {
+			return;
+		}
+		EventBuffer events=firstItem;
+		firstItem=null;
+		try {
+			events.replay(handler);
+		} finally {
+			events.close();
+		}
+	}
+
+
+	private int next() throws IOException {
+		if (pushBackAvailable) {
+			pushBackAvailable=false;
+			return pushedBack;
+		}
+		int c=reader.read();
+		position++;
+		return c;
+	}
+
+	private void back(int c) {
+		pushedBack=c;
+		pushBackAvailable=true;
+	}
+
+	/*
+	 * Returns the next character that is not whitespace or part of a comment.
+	 */
+	private int nextClean() throws IOException, SAXException {
+		for (;;) {
+			int c=next();
+			if (c=='/') {
+				int c2=next();
+				if (c2=='/') {
+					skipToEndOfLine();
+				} else if (c2=='*') {
+					for (;;) {
+						c=next();
+						if (c==END) {
+							throw syntaxError("Unclosed comment");
+						}
+						if (c=='*') {
+							c=next();
+							if (c=='/') {
+								break;
+							}
+							back(c);
+						}
+					}
+				} else {
+					back(c2);
+					return '/';
+				}
+			} else if (c=='#') {
+				skipToEndOfLine();
+			} else if (c==END || c>' ') {
+				return c;
+			}
+		}
+	}
+
+	private void skipToEndOfLine() throws IOException {
+		int c;
+		do {
+			c=next();
+		} while (c!='\n' && c!='\r' && c!=END);
+	}
+
+	/*
+	 * Returns the next quoted or unquoted value, in the string representation that org.json would produce for it.
+	 */
+	private String nextScalar() throws IOException, SAXException {
+		int c=nextClean();
+		if (c=='"' || c=='\'') {
+			return nextString((char)c);
+		}
+		StringBuilder sb=new StringBuilder();
+		while (c>=' ' && UNQUOTED_DELIMITERS.indexOf(c)<0) {
+			sb.append((char)c);
+			c=next();
+		}
+		back(c);
+		String value=sb.toString().trim();
+		if (value.isEmpty()) {
+			throw syntaxError("Missing value");
+		}
+		return stringToValue(value);
+	}
+
+	private String nextString(char quote) throws IOException, SAXException {
+		StringBuilder sb=new StringBuilder();
+		for (;;) {
+			int c=next();
+			switch (c) {
+			case END:
+			case '\n':
+			case '\r':
+				throw syntaxError("Unterminated string");
+			case '\\':
+				c=next();
+				switch (c) {
+				case 'b':
+					sb.append('\b');
+					break;
+				case 't':
+					sb.append('\t');
+					break;
+				case 'n':
+					sb.append('\n');
+					break;
+				case 'f':
+					sb.append('\f');
+					break;
+				case 'r':
+					sb.append('\r');
+					break;
+				case 'u':
+					sb.append((char)Integer.parseInt(nextChars(4), 16));
+					break;
+				case 'x':
+					sb.append((char)Integer.parseInt(nextChars(2), 16));
+					break;
+				case END:
+					throw syntaxError("Unterminated string");
+				default:
+					sb.append((char)c);
+				}
+				break;
+			default:
+				if (c==quote) {
+					return sb.toString();
+				}
+				sb.append((char)c);
+			}
+		}
+	}
+
+	private String nextChars(int n) throws IOException, SAXException {
+		char[] chars=new char[n];
+		for (int i=0; i<n; i++) {
+			int c=next();
+			if (c==END) {
+				throw syntaxError("Substring bounds error");
+			}
+			chars[i]=(char)c;
+		}
+		return new String(chars);
+	}
+
+	/*
+	 * Interprets unquoted values like org.json does, i.e. converting numbers to their Java representation.
+	 */
+	static String stringToValue(String value) {
+		if (value.equalsIgnoreCase("true")) {
+			return "true";
+		}
+		if (value.equalsIgnoreCase("false")) {
+			return "false";
+		}
+		if (value.equalsIgnoreCase("null")) {
+			return "null";
+		}
+		char b=value.charAt(0);
+		if ((b>='0' && b<='9') || b=='.' || b=='-' || b=='+') {
+			if (b=='0') {
+				if (value.length()>2 && (value.charAt(1)=='x' || value.charAt(1)=='X')) {
+					try {
+						return Integer.toString(Integer.parseInt(value.substring(2), 16));
+					} catch (NumberFormatException e) {
+						// not a hexadecimal number
+					}
+				} else {
+					try {
+						return Integer.toString(Integer.parseInt(value, 8));
+					} catch (NumberFormatException e) {
+						// not an octal number
+					}
+				}
+			}
+			try {
+				return Integer.valueOf(value).toString();
+			} catch (NumberFormatException e) {
+				// not an integer
+			}
+			try {
+				return Long.valueOf(value).toString();
+			} catch (NumberFormatException e) {
+				// not a long
+			}
+			try {
+				return Double.valueOf(value).toString();
+			} catch (NumberFormatException e) {
+				// not a number
+			}
+		}
+		return value;
+	}
+
+	private SAXException syntaxError(String message) {
+		return new SaxException(message+" at character "+position);
+	}
+
+	private static class BufferedEvent {
+		static final int START=0;
+		static final int END=1;
+		static final int CHARACTERS=2;
+
+		final int type;
+		final String value;
+
+		BufferedEvent(int type, String value) {
+			this.type=type;
+			this.value=value;
+		}
+
+		static void send(ContentHandler handler, int type, String value) throws SAXException {
+			switch (type) {
+			case START:
+				handler.startElement("", value, value, NO_ATTRIBUTES);
+				break;
+			case END:
+				handler.endElement("", value, value);
+				break;
+			default:
+				handler.characters(value.toCharArray(), 0, value.length());
+			}
+		}
+	}
+
+	/*
+	 * Keeps events in memory until they take more than maxBufferSize characters, and in a temporary file after that.
+	 */
+	private static class EventBuffer {
+		private final int maxBufferSize;
+		private List<BufferedEvent> events=new ArrayList<>();
+		private long size;
+		private File file;
+		private DataOutputStream out;
+
+		EventBuffer(int maxBufferSize) {
+			this.maxBufferSize=maxBufferSize;
+		}
+
+		void add(int type, String value) throws SAXException {
+			try {
+				if (out!=null) {
+					write(type, value);
+					return;
+				}
+				events.add(new BufferedEvent(type, value));
+				size+=value.length();
+				if (size>maxBufferSize) {
+					file=File.createTempFile("JsonToXml", ".tmp");
+					file.deleteOnExit();
+					out=new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+					for (BufferedEvent event:events) {
+						write(event.type, event.value);
+					}
+					events=null;
+				}
+			} catch (IOException e) {
+				throw new SaxException("cannot buffer events of first element", e);
+			}
+		}
+
+		private void write(int type, String value) throws IOException {
+			out.writeByte(type);
+			out.writeInt(value.length());
+			out.writeChars(value);
+		}
+
+		void replay(ContentHandler handler) throws SAXException {
+			if (out==null) {
+				for (BufferedEvent event:events) {
+					BufferedEvent.send(handler, event.type, event.value);
+				}
+				return;
+			}
+			try {
+				out.close();
+				try (DataInputStream in=new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+					int type;
+					while ((type=in.read())>=0) {
+						char[] value=new char[in.readInt()];
+						for (int i=0; i<value.length; i++) {
+							value[i]=in.readChar();
+						}
+						BufferedEvent.send(handler, type, new String(value));
+					}
+				}
+			} catch (IOException e) {
+				throw new SaxException("cannot read buffered events of first element", e);
+			}
+		}
+
+		void close() {
+			if (file==null) {
+				return;
+			}
+			try {
+				out.close();
+			} catch (IOException e) {
+				// ignore, the file is deleted anyway
+			}
+			file.delete();
+			file=null;
+		}
+	}
+}
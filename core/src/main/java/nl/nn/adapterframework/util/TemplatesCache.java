@@ -0,0 +1,228 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.adapterframework.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Cache of compiled stylesheets, shared by all {@link TransformerPool}s. Templates are thread safe, so a stylesheet
+ * that is used by many pipes, senders and parameters, or an XPath expression that is used in many places, is compiled only once.
+ * <p>
+ * Entries are keyed by a hash of the stylesheet contents, the systemId, the xslt version and the ClassLoader that resolves
+ * the includes and imports of the stylesheet. Because of the latter, stylesheets are only shared within a configuration,
+ * and the entries of a configuration are released by {@link #release(ClassLoader)} when it is unloaded.
+ * <p>
+ * Different stylesheets are compiled concurrently; threads that request a stylesheet that is being compiled wait for that compilation only.
+ * The cache can be disabled by setting the property <code>transformerPool.templatesCache.enabled=false</code>.
+ */
+public class TemplatesCache {
+	protected static Logger log = LogUtil.getLogger(TemplatesCache.class);
+
+	private static TemplatesCache instance;
+
+	private final boolean enabled;
+	private final Map<TemplatesKey, Entry> cache = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong compileNanos = new AtomicLong();
+	private final AtomicLong compileNanosSaved = new AtomicLong();
+
+	public interface TemplatesCompiler {
+		Templates compile() throws TransformerConfigurationException;
+	}
+
+	public static synchronized TemplatesCache getInstance() {
+		if (instance==null) {
+			instance = new TemplatesCache(AppConstants.getInstance().getBoolean("transformerPool.templatesCache.enabled", true));
+		}
+		return instance;
+	}
+
+	TemplatesCache(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Returns the Templates for the stylesheet with hash <code>contentHash</code>, calling <code>compiler</code> when it is not yet in the cache.
+	 * A compilation that fails is not cached.
+	 */
+	public Templates getTemplates(String contentHash, long contentSize, String sysId, int xsltVersion, ClassLoader classLoader, TemplatesCompiler compiler) throws TransformerConfigurationException {
+		if (!enabled || contentHash==null) {
+			return compiler.compile();
+		}
+		TemplatesKey key = new TemplatesKey(contentHash, sysId, xsltVersion, classLoader);
+		Entry entry = cache.get(key);
+		boolean hit = true;
+		if (entry==null) {
+			Entry newEntry = new Entry(contentSize, compiler);
+			entry = cache.putIfAbsent(key, newEntry);
+			if (entry==null) {
+				entry = newEntry;
+				hit = false;
+				misses.incrementAndGet();
+				newEntry.compilation.run();
+			}
+		}
+		try {
+			Templates templates = entry.compilation.get();
+			if (hit) {
+				hits.incrementAndGet();
+				compileNanosSaved.addAndGet(entry.compileNanos);
+			}
+			return templates;
+		} catch (ExecutionException e) {
+			cache.remove(key, entry);
+			Throwable cause = e.getCause();
+			if (cause instanceof TransformerConfigurationException) {
+				throw (TransformerConfigurationException)cause;
+			}
+			throw new TransformerConfigurationException("cannot compile stylesheet ["+sysId+"]", cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TransformerConfigurationException("interrupted while waiting for compilation of stylesheet ["+sysId+"]", e);
+		}
+	}
+
+	/**
+	 * Removes all stylesheets that have been compiled for <code>classLoader</code>, to be called when the configuration that uses it is unloaded.
+	 */
+	public void release(ClassLoader classLoader) {
+		int count = 0;
+		for (Iterator<TemplatesKey> it = cache.keySet().iterator(); it.hasNext();) {
+			if (it.next().classLoader==classLoader) {
+				it.remove();
+				count++;
+			}
+		}
+		if (count>0 && log.isDebugEnabled()) log.debug("released ["+count+"] compiled stylesheets of classloader ["+ClassUtils.nameOf(classLoader)+"]");
+	}
+
+	public void clear() {
+		cache.clear();
+	}
+
+	public int size() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the size of the stylesheets in the cache, as an indication of the memory held by their compiled form.
+	 */
+	public long getContentSize() {
+		long result = 0;
+		for (Entry entry: cache.values()) {
+			result += entry.contentSize;
+		}
+		return result;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getCompileTime() {
+		return TimeUnit.NANOSECONDS.toMillis(compileNanos.get());
+	}
+
+	/**
+	 * Returns the time in ms that has been saved by reusing compiled stylesheets, based on the time the first compilation took.
+	 */
+	public long getCompileTimeSaved() {
+		return TimeUnit.NANOSECONDS.toMillis(compileNanosSaved.get());
+	}
+
+	public Map<String, Object> toMap() {
+		Map<String, Object> statistics = new LinkedHashMap<String, Object>();
+		statistics.put("enabled", enabled);
+		statistics.put("entries", size());
+		statistics.put("stylesheetSize", Misc.toFileSize(getContentSize()));
+		statistics.put("hits", getHits());
+		statistics.put("misses", getMisses());
+		statistics.put("compileTime", getCompileTime());
+		statistics.put("compileTimeSaved", getCompileTimeSaved());
+		return statistics;
+	}
+
+	private class Entry {
+		private final long contentSize;
+		private final FutureTask<Templates> compilation;
+		private volatile long compileNanos;
+
+		Entry(long contentSize, TemplatesCompiler compiler) {
+			this.contentSize = contentSize;
+			this.compilation = new FutureTask<Templates>(() -> {
+				long start = System.nanoTime();
+				Templates templates = compiler.compile();
+				compileNanos = System.nanoTime()-start;
+				TemplatesCache.this.compileNanos.addAndGet(compileNanos);
+				return templates;
+			});
+		}
+	}
+
+	private static class TemplatesKey {
+		private final String contentHash;
+		private final String sysId;
+		private final int xsltVersion;
+		private final ClassLoader classLoader;
+
+		TemplatesKey(String contentHash, String sysId, int xsltVersion, ClassLoader classLoader) {
+			this.contentHash = contentHash;
+			this.sysId = sysId;
+			this.xsltVersion = xsltVersion;
+			this.classLoader = classLoader;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o instanceof TemplatesKey) {
+				TemplatesKey other = (TemplatesKey) o;
+				return xsltVersion == other.xsltVersion
+						&& classLoader == other.classLoader
+						&& contentHash.equals(other.contentHash)
+						&& StringUtils.equals(sysId, other.sysId);
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return contentHash.hashCode() + 31 * xsltVersion + System.identityHashCode(classLoader);
+		}
+	}
+}
@@ -16,6 +16,7 @@
 package nl.nn.adapterframework.util;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
 import java.net.URL;
 import java.util.Iterator;
@@ -33,10 +34,13 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.URIResolver;
 import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
 import javax.xml.transform.sax.SAXTransformerFactory;
 import javax.xml.transform.sax.TransformerHandler;
 import javax.xml.transform.stream.StreamSource;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.pool2.BasePooledObjectFactory;
 import org.apache.commons.pool2.ObjectPool;
@@ -46,6 +50,7 @@ import org.apache.commons.pool2.impl.SoftReferenceObjectPool;
 import org.apache.logging.log4j.Logger;
 import org.w3c.dom.Document;
 import org.xml.sax.ContentHandler;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
@@ -68,6 +73,9 @@ import nl.nn.adapterframework.xml.TransformerFilter;
  * <p>
  * When the property 'transformerPool.useCaching' equals true, transformers are
  * put in a cache and shared (for the same stylesheet) to save memory.
+ * <p>
+ * Independent of that, the compiled stylesheets are shared via the {@link TemplatesCache}, 
+ * so that each stylesheet is compiled only once per configuration.
  * 
  * @author Gerrit van Brakel
  */
@@ -89,7 +97,7 @@ public class TransformerPool {
 
 	private ObjectPool<Transformer> pool;
 
-	private static Map<TransformerPoolKey, TransformerPool> transformerPools = new ConcurrentHashMap<TransformerPoolKey, TransformerPool>();
+	private static ConcurrentHashMap<TransformerPoolKey, TransformerPool> transformerPools = new ConcurrentHashMap<TransformerPoolKey, TransformerPool>();
 
 	private static class TransformerPoolKey {
 		private String xsltString;
@@ -147,7 +155,7 @@ public class TransformerPool {
 
 
 
-	private TransformerPool(Source source, String sysId, int xsltVersion, Source configSource, ClassLoader classLoader) throws TransformerConfigurationException {
+	private TransformerPool(Source source, String sysId, int xsltVersion, Source configSource, ClassLoader classLoader, String contentHash, long contentSize) throws TransformerConfigurationException {
 		super();
 		this.configSource=configSource;
 		try {
@@ -172,7 +180,11 @@ public class TransformerPool {
 			classLoaderURIResolver = new NonResolvingURIResolver();
 			tFactory.setURIResolver(classLoaderURIResolver);
 		}
-		initTransformerPool(source, sysId);
+		try {
+			templates = TemplatesCache.getInstance().getTemplates(contentHash, contentSize, sysId, xsltVersion, classLoader, () -> compileTemplates(source, sysId));
+		} finally {
+			closeSource(source); // the source is not read when the stylesheet was found in the cache
+		}
 
 		open();
 		// check if a transformer can be initiated
@@ -183,7 +195,11 @@ public class TransformerPool {
 
 
 	private TransformerPool(Resource resource, int xsltVersion) throws TransformerConfigurationException, IOException, SAXException {
-		this(resource.asSource(),resource.getSystemId(),xsltVersion,resource.asSource(), resource.getClassLoader());
+		this(resource, readContentForCache(resource), xsltVersion);
+	}
+
+	private TransformerPool(Resource resource, byte[] content, int xsltVersion) throws TransformerConfigurationException, IOException, SAXException {
+		this(resource.asSource(),resource.getSystemId(),xsltVersion,resource.asSource(), resource.getClassLoader(), content==null ? null : DigestUtils.sha256Hex(content), content==null ? 0 : content.length);
 	}
 
 	//TODO Fix this, Thread.currentThread().getContextClassLoader() should not be used and causes memory leaks upon reloading configurations!!!
@@ -192,7 +208,27 @@ public class TransformerPool {
 	}
 
 	private TransformerPool(String xsltString, String sysId, int xsltVersion, ClassLoader classLoader) throws TransformerConfigurationException {
-		this(new StreamSource(new StringReader(xsltString)), sysId, xsltVersion,new StreamSource(new StringReader(xsltString)), classLoader);
+		this(new StreamSource(new StringReader(xsltString)), sysId, xsltVersion,new StreamSource(new StringReader(xsltString)), classLoader, TemplatesCache.getInstance().isEnabled() ? DigestUtils.sha256Hex(xsltString) : null, xsltString.length());
+	}
+
+	private static void closeSource(Source source) {
+		InputSource inputSource = SAXSource.sourceToInputSource(source);
+		if (inputSource != null && inputSource.getByteStream() != null) {
+			try {
+				inputSource.getByteStream().close();
+			} catch (IOException e) {
+				log.warn("cannot close stylesheet source ["+source.getSystemId()+"]", e);
+			}
+		}
+	}
+
+	private static byte[] readContentForCache(Resource resource) throws IOException {
+		if (!TemplatesCache.getInstance().isEnabled()) {
+			return null;
+		}
+		try (InputStream inputStream = resource.openStream()) {
+			return IOUtils.toByteArray(inputStream);
+		}
 	}
 
 	public static TransformerPool getInstance(String xsltString) throws TransformerConfigurationException {
@@ -228,15 +264,19 @@ public class TransformerPool {
 		};
 	}
 
-	private static synchronized TransformerPool retrieveInstance(String xsltString, String sysId, int xsltVersion) throws TransformerConfigurationException {
+	private static TransformerPool retrieveInstance(String xsltString, String sysId, int xsltVersion) throws TransformerConfigurationException {
 		TransformerPoolKey tpKey = new TransformerPoolKey(xsltString, null, sysId, xsltVersion);
-		if (transformerPools.containsKey(tpKey)) {
-			return transformerPools.get(tpKey);
-		} else {
-			TransformerPool transformerPool = new TransformerPool(xsltString, sysId, xsltVersion);
-			transformerPools.put(tpKey, transformerPool);
-			return transformerPool;
+		TransformerPool transformerPool = transformerPools.get(tpKey);
+		if (transformerPool == null) {
+			// no lock required: concurrent creations for the same key share the compiled stylesheet via the TemplatesCache
+			transformerPool = new TransformerPool(xsltString, sysId, xsltVersion);
+			TransformerPool existingPool = transformerPools.putIfAbsent(tpKey, transformerPool);
+			if (existingPool != null) {
+				transformerPool.close();
+				transformerPool = existingPool;
+			}
 		}
+		return transformerPool;
 	}
 
 
@@ -260,30 +300,33 @@ public class TransformerPool {
 		}
 	}
 
-	private static synchronized TransformerPool retrieveInstance(Resource resource, int xsltVersion) throws TransformerConfigurationException, IOException {
+	private static TransformerPool retrieveInstance(Resource resource, int xsltVersion) throws TransformerConfigurationException, IOException {
 		TransformerPoolKey tpKey = new TransformerPoolKey(null, resource.getURL(), null, xsltVersion);
-		if (transformerPools.containsKey(tpKey)) {
-			return transformerPools.get(tpKey);
-		} else {
+		TransformerPool transformerPool = transformerPools.get(tpKey);
+		if (transformerPool == null) {
 			try {
-				TransformerPool transformerPool = new TransformerPool(resource, xsltVersion);
-				transformerPools.put(tpKey, transformerPool);
-				return transformerPool;
+				transformerPool = new TransformerPool(resource, xsltVersion);
 			} catch (SAXException e) {
 				throw new TransformerConfigurationException(e);
 			}
+			TransformerPool existingPool = transformerPools.putIfAbsent(tpKey, transformerPool);
+			if (existingPool != null) {
+				transformerPool.close();
+				transformerPool = existingPool;
+			}
 		}
+		return transformerPool;
 	}
 
 
-	private void initTransformerPool(Source source, String sysId) throws TransformerConfigurationException {
+	private Templates compileTemplates(Source source, String sysId) throws TransformerConfigurationException {
 		if (StringUtils.isNotEmpty(sysId)) {
 			sysId=ClassUtils.getCleanedFilePath(sysId); // fix websphere classpath references
 			source.setSystemId(sysId);
 			log.debug("setting systemId to ["+sysId+"]");
 		}
 		try {
-			templates=tFactory.newTemplates(source);
+			return tFactory.newTemplates(source);
 		} catch (TransformerConfigurationException e) {
 			TransformerErrorListener tel = (TransformerErrorListener)tFactory.getErrorListener();
 			TransformerException te=tel.getFatalTransformerException();
@@ -297,7 +340,7 @@ public class TransformerPool {
 	private void reloadTransformerPool() throws TransformerConfigurationException, IOException {
 		if (reloadResource!=null) {
 			try {
-				initTransformerPool(reloadResource.asSource(), reloadResource.getSystemId());
+				templates=compileTemplates(reloadResource.asSource(), reloadResource.getSystemId());
 				pool.clear();
 			} catch (Exception e) {
 				throw new TransformerConfigurationException("Could not clear pool",e);
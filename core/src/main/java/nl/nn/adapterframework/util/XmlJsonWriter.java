@@ -44,7 +44,9 @@ public class XmlJsonWriter extends DefaultHandler implements ContentHandler {
 			if (attrs!=null) {
 				String key=attrs.getValue("key");
 				if (key!=null) {
-					writer.append('"').append(key).append("\":");
+					writer.append('"');
+					writeEscaped(key.toCharArray(), 0, key.length());
+					writer.append("\":");
 				}
 			}
 			if (localname.equals("array")) {
@@ -54,6 +56,7 @@ public class XmlJsonWriter extends DefaultHandler implements ContentHandler {
 			} else if (localname.equals("null")) {
 				writer.write("null");
 			} else if (localname.equals("string")) {
+				writer.write('"');
 				stringOpen=true;
 			}
 		} catch (IOException e) {
@@ -69,6 +72,7 @@ public class XmlJsonWriter extends DefaultHandler implements ContentHandler {
 			} else if (localname.equals("map")) {
 				writer.write("}");
 			} else if (localname.equals("string")) {
+				writer.write('"');
 				stringOpen=false;
 			}
 			commaRequired=true;
@@ -80,14 +84,50 @@ public class XmlJsonWriter extends DefaultHandler implements ContentHandler {
 	@Override
 	public void characters(char[] chars, int start, int length) throws SAXException {
 		try {
-			if (stringOpen) writer.write('"');
-			writer.write(chars, start, length);
-			if (stringOpen) writer.write('"');
+			if (stringOpen) {
+				writeEscaped(chars, start, length);
+			} else {
+				writer.write(chars, start, length);
+			}
 		} catch (IOException e) {
 			throw new SaxException(e);
 		}
 	}
 
+	private void writeEscaped(char[] chars, int start, int length) throws IOException {
+		for (int i=start; i<start+length; i++) {
+			char c=chars[i];
+			switch (c) {
+			case '"':
+			case '\\':
+				writer.write('\\');
+				writer.write(c);
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			case '\b':
+				writer.write("\\b");
+				break;
+			case '\f':
+				writer.write("\\f");
+				break;
+			default:
+				if (c<' ') {
+					writer.write(String.format("\\u%04x", (int)c));
+				} else {
+					writer.write(c);
+				}
+			}
+		}
+	}
+
 	@Override
 	public String toString() {
 		return writer.toString().trim();
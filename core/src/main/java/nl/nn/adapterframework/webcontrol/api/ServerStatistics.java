@@ -61,6 +61,7 @@ import nl.nn.adapterframework.util.MessageKeeper;
 import nl.nn.adapterframework.util.Misc;
 import nl.nn.adapterframework.util.ProcessMetrics;
 import nl.nn.adapterframework.util.RunStateEnum;
+import nl.nn.adapterframework.util.TemplatesCache;
 
 /**
  * Collection of server and application statistics and information.
@@ -144,6 +145,7 @@ public class ServerStatistics extends Base {
 		fileSystem.put("freeSpace", Misc.getFileSystemFreeSpace());
 		returnMap.put("fileSystem", fileSystem);
 		returnMap.put("processMetrics", ProcessMetrics.toMap());
+		returnMap.put("templatesCache", TemplatesCache.getInstance().toMap());
 		Date date = new Date();
 		returnMap.put("serverTime", date.getTime());
 		returnMap.put("machineName" , Misc.getHostname());
@@ -16,6 +16,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 
 import nl.nn.adapterframework.testutil.MatchUtils;
+import nl.nn.adapterframework.xml.XmlWriter;
 
 public class TestJson2Xml extends AlignTestBase {
 	
@@ -36,6 +37,8 @@ public class TestJson2Xml extends AlignTestBase {
 	    		fail("could not convert to xml: "+description);
 	    	}
 	       	assertTrue("converted XML is not aligned: "+description,  Utils.validate(schemaUrl, xmlAct));
+	       	String xmlStreamed = Json2Xml.translate(Json.createParser(new StringReader(jsonIn)), schemaUrl, compactConversion, rootElement, strictSyntax, deepSearch, targetNamespace, properties);
+	       	assertEquals("streamed conversion differs: "+description, xmlAct, xmlStreamed);
 	       	if (resultJsonExpected!=null) {
 		       	String roundTrippedJson=Xml2Json.translate(xmlAct, schemaUrl, compactConversion, rootElement!=null).toString(true);
 		       	assertEquals("roundTrippedJson",resultJsonExpected,roundTrippedJson);
@@ -165,4 +168,21 @@ public class TestJson2Xml extends AlignTestBase {
 		testTreeAndMap("NestedValue/nestedValue.xsd","urn:gbpd","NestedValue","/NestedValue/nestedValue","/NestedValue/result",null);
     }
 
+	@Test
+	public void testWrappedArrayFollowedByOtherKey() throws Exception {
+		URL schemaUrl=getSchemaURL("WrappedArray/wrappedArray.xsd");
+		String jsonIn="{\"root\":[\"a\",\"b\"],\"other\":\"x\"}";
+		testJsonNoRoundTrip(jsonIn, schemaUrl, null, "root", true, false, null, "wrapped array followed by other key");
+
+		String xmlExpected=Json2Xml.translate(jsonIn, schemaUrl, true, "root", null);
+		assertTrue(xmlExpected, xmlExpected.contains("<other>x</other>"));
+
+		Json2Xml j2x = new Json2Xml(Json2Xml.getValidatorHandler(schemaUrl), Json2Xml.getSchemaInformation(schemaUrl), true, "root", false);
+		j2x.setMaxBufferSize(2); // spill the array to a temporary file
+		XmlWriter xmlWriter = new XmlWriter();
+		j2x.setContentHandler(xmlWriter);
+		j2x.startParse(Json.createParser(new StringReader(jsonIn)));
+		assertEquals(xmlExpected, xmlWriter.toString());
+	}
+
 }
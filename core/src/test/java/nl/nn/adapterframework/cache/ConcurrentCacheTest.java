@@ -0,0 +1,160 @@
+package nl.nn.adapterframework.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConcurrentCacheTest {
+
+	private ConcurrentCache<String> cache;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new ConcurrentCache<String>();
+		cache.setMaxElementsInMemory(10);
+		cache.configure("test");
+		cache.open();
+	}
+
+	@After
+	public void tearDown() {
+		cache.close();
+	}
+
+	@Test
+	public void testPutAndGet() {
+		assertNull(cache.get("key"));
+		cache.put("key", "value");
+		assertEquals("value", cache.get("key"));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testGetOrLoadCachesValue() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		ConcurrentCache.Loader<String,Exception> loader = () -> "loaded"+loads.incrementAndGet();
+
+		assertEquals("loaded1", cache.getOrLoad("key", loader));
+		assertEquals("loaded1", cache.getOrLoad("key", loader));
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testNullValueIsNotCached() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		ConcurrentCache.Loader<String,Exception> loader = () -> { loads.incrementAndGet(); return null; };
+
+		assertNull(cache.getOrLoad("key", loader));
+		assertNull(cache.getOrLoad("key", loader));
+		assertEquals(2, loads.get());
+		assertEquals(0, cache.getSize());
+	}
+
+	@Test
+	public void testConcurrentMissesAreCollapsed() throws Exception {
+		int threads = 8;
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch loadStarted = new CountDownLatch(1);
+		CountDownLatch releaseLoad = new CountDownLatch(1);
+		ConcurrentCache.Loader<String,Exception> loader = () -> {
+			loads.incrementAndGet();
+			loadStarted.countDown();
+			releaseLoad.await();
+			return "value";
+		};
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			results.add(executor.submit(() -> cache.getOrLoad("key", loader)));
+			assertTrue(loadStarted.await(10, TimeUnit.SECONDS));
+			for (int i=1; i<threads; i++) {
+				results.add(executor.submit(() -> cache.getOrLoad("key", loader)));
+			}
+			// give the other threads the opportunity to start waiting for the load in progress
+			long deadline = System.currentTimeMillis()+10000;
+			while (cache.getCollapsedLoads()<threads-1 && System.currentTimeMillis()<deadline) {
+				Thread.sleep(10);
+			}
+			releaseLoad.countDown();
+			for (Future<String> result:results) {
+				assertEquals("value", result.get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, loads.get());
+		assertEquals(threads-1, cache.getCollapsedLoads());
+	}
+
+	@Test
+	public void testSizeIsLimited() {
+		for (int i=0; i<100; i++) {
+			cache.put("key"+i, "value"+i);
+		}
+		assertEquals(10, cache.getSize());
+		assertEquals(90, cache.getEvictions());
+	}
+
+	@Test
+	public void testEvictionSamplesWholeKeySpace() throws Exception {
+		ConcurrentCache<String> largeCache = new ConcurrentCache<String>();
+		largeCache.setMaxElementsInMemory(100);
+		largeCache.configure("testEvictionSamplesWholeKeySpace");
+		largeCache.open();
+		try {
+			// a map of the same type and size iterates the keys in the same order as the entries of the cache
+			Map<String,String> iterationOrder = new ConcurrentHashMap<String,String>();
+			for (int i=0; i<100; i++) {
+				largeCache.put("key"+i, "value"+i);
+				iterationOrder.put("key"+i, "value"+i);
+			}
+			List<String> keys = new ArrayList<String>(iterationOrder.keySet());
+			for (int i=0; i<50; i++) {
+				largeCache.put("newKey"+i, "newValue"+i);
+			}
+			assertEquals(50, largeCache.getEvictions());
+
+			int evictedFromFirstQuarter=0;
+			int evictedFromLastQuarter=0;
+			for (int i=0; i<keys.size(); i++) {
+				if (largeCache.get(keys.get(i))==null) {
+					if (i<25) {
+						evictedFromFirstQuarter++;
+					} else if (i>=75) {
+						evictedFromLastQuarter++;
+					}
+				}
+			}
+			assertTrue("no entries evicted from the first quarter of the key space", evictedFromFirstQuarter>0);
+			assertTrue("no entries evicted from the last quarter of the key space", evictedFromLastQuarter>0);
+		} finally {
+			largeCache.close();
+		}
+	}
+
+	@Test
+	public void testExpiredEntryIsEvicted() {
+		cache.setTimeToLiveSeconds(0);
+		cache.put("key", "value");
+		assertNull(cache.get("key"));
+		assertEquals(1, cache.getEvictions());
+		assertEquals(0, cache.getSize());
+	}
+}
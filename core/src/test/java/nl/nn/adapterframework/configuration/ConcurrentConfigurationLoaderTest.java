@@ -0,0 +1,115 @@
+package nl.nn.adapterframework.configuration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Logger;
+import org.junit.Test;
+
+import nl.nn.adapterframework.configuration.IbisContext.ConfigurationLoad;
+import nl.nn.adapterframework.core.INamedObject;
+import nl.nn.adapterframework.util.LogUtil;
+
+public class ConcurrentConfigurationLoaderTest {
+	private Logger log = LogUtil.getLogger(this);
+
+	private Map<String, String> parentConfigs = new HashMap<>();
+	private List<String> digested = Collections.synchronizedList(new ArrayList<>());
+
+	private List<ConfigurationLoad> configurationLoads(String... names) {
+		List<ConfigurationLoad> configurationLoads = new ArrayList<>();
+		for (String name : names) {
+			ConfigurationLoad configurationLoad = new ConfigurationLoad(name, null, null, 0);
+			configurationLoad.configuration = new Configuration();
+			configurationLoad.configuration.setName(name);
+			configurationLoads.add(configurationLoad);
+		}
+		return configurationLoads;
+	}
+
+	private ConcurrentConfigurationLoader loader(int threads) {
+		return new ConcurrentConfigurationLoader(threads, parentConfigs::get);
+	}
+
+	@Test
+	public void testConfigurationsAreDigestedConcurrently() throws Exception {
+		CountDownLatch allStarted = new CountDownLatch(3);
+		loader(3).load(configurationLoads("config1", "config2", "config3"), configurationLoad -> {
+			allStarted.countDown();
+			try {
+				// only completes when all configurations are being digested at the same time
+				assertTrue("configurations not digested concurrently", allStarted.await(5, TimeUnit.SECONDS));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			digested.add(configurationLoad.name);
+		});
+		assertEquals(3, digested.size());
+		assertEquals(0, allStarted.getCount());
+	}
+
+	@Test
+	public void testChildIsDigestedAfterParent() throws Exception {
+		parentConfigs.put("child", "parent");
+		loader(2).load(configurationLoads("parent", "child", "other"), configurationLoad -> {
+			if ("parent".equals(configurationLoad.name)) {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			digested.add(configurationLoad.name);
+		});
+		assertEquals(3, digested.size());
+		assertTrue(digested.toString(), digested.indexOf("parent") < digested.indexOf("child"));
+	}
+
+	@Test
+	public void testFailingConfigurationDoesNotStopOthers() throws Exception {
+		parentConfigs.put("child", "failing");
+		loader(2).load(configurationLoads("failing", "child", "other"), configurationLoad -> {
+			if ("failing".equals(configurationLoad.name)) {
+				throw new IllegalStateException("cannot digest configuration");
+			}
+			digested.add(configurationLoad.name);
+		});
+		assertEquals(2, digested.size());
+		assertTrue(digested.contains("child"));
+		assertTrue(digested.contains("other"));
+	}
+
+	@Test
+	public void testWarningsAreAddedToTheirOwnConfiguration() throws Exception {
+		CyclicBarrier barrier = new CyclicBarrier(2);
+		List<ConfigurationLoad> configurationLoads = configurationLoads("config1", "config2");
+		loader(2).load(configurationLoads, configurationLoad -> {
+			ConfigurationWarnings.getInstance().setActiveConfiguration(configurationLoad.configuration);
+			try {
+				// both configurations are active, each on its own thread
+				barrier.await(5, TimeUnit.SECONDS);
+				ConfigurationWarnings.add((INamedObject)null, log, "warning of " + configurationLoad.name);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			} finally {
+				ConfigurationWarnings.getInstance().setActiveConfiguration(null);
+			}
+			digested.add(configurationLoad.name);
+		});
+		assertEquals(2, digested.size());
+		for (ConfigurationLoad configurationLoad : configurationLoads) {
+			BaseConfigurationWarnings warnings = configurationLoad.configuration.getConfigurationWarnings();
+			assertEquals(1, warnings.size());
+			assertEquals(" warning of " + configurationLoad.name, warnings.get(0));
+		}
+	}
+}
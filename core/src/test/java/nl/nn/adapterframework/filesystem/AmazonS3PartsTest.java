@@ -0,0 +1,166 @@
+package nl.nn.adapterframework.filesystem;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+public class AmazonS3PartsTest {
+
+	private static final int PART_SIZE = 10;
+
+	private AmazonS3 s3Client;
+	private ThreadPoolTaskExecutor executor;
+	private Map<Integer, byte[]> uploadedParts = new ConcurrentHashMap<>();
+	private byte[] completedObject;
+
+	@Before
+	public void setUp() {
+		executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(3);
+		executor.initialize();
+
+		s3Client = mock(AmazonS3.class);
+		InitiateMultipartUploadResult initiateResult = new InitiateMultipartUploadResult();
+		initiateResult.setUploadId("upload");
+		when(s3Client.initiateMultipartUpload(any(InitiateMultipartUploadRequest.class))).thenReturn(initiateResult);
+		when(s3Client.uploadPart(any(UploadPartRequest.class))).thenAnswer(this::uploadPart);
+		when(s3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class))).thenAnswer(invocation -> {
+			CompleteMultipartUploadRequest request = invocation.getArgument(0);
+			ByteArrayOutputStream object = new ByteArrayOutputStream();
+			for (PartETag partETag: request.getPartETags()) {
+				assertEquals("etag"+partETag.getPartNumber(), partETag.getETag());
+				object.write(uploadedParts.get(partETag.getPartNumber()));
+			}
+			completedObject = object.toByteArray();
+			return null;
+		});
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	private UploadPartResult uploadPart(InvocationOnMock invocation) throws IOException {
+		UploadPartRequest request = invocation.getArgument(0);
+		uploadedParts.put(request.getPartNumber(), IOUtils.toByteArray(request.getInputStream()));
+		UploadPartResult result = new UploadPartResult();
+		result.setPartNumber(request.getPartNumber());
+		result.setETag("etag"+request.getPartNumber());
+		return result;
+	}
+
+	private byte[] createContents(int size) {
+		byte[] contents = new byte[size];
+		for (int i=0; i<size; i++) {
+			contents[i] = (byte)i;
+		}
+		return contents;
+	}
+
+	@Test
+	public void testMultipartUpload() throws Exception {
+		byte[] contents = createContents(PART_SIZE*7+3);
+		try (OutputStream out = new S3MultipartOutputStream(s3Client, "bucket", "key", PART_SIZE, 2, 1, executor)) {
+			out.write(contents, 0, 5);
+			out.write(contents[5]);
+			out.write(contents, 6, contents.length-6);
+		}
+		assertEquals(8, uploadedParts.size());
+		assertArrayEquals(contents, completedObject);
+		verify(s3Client, never()).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+	}
+
+	@Test
+	public void testSinglePartUsesPutObject() throws Exception {
+		try (OutputStream out = new S3MultipartOutputStream(s3Client, "bucket", "key", PART_SIZE, 2, 1, executor)) {
+			out.write(createContents(PART_SIZE));
+		}
+		verify(s3Client).putObject(any(String.class), any(String.class), any(InputStream.class), any(ObjectMetadata.class));
+		verify(s3Client, never()).initiateMultipartUpload(any(InitiateMultipartUploadRequest.class));
+	}
+
+	@Test
+	public void testFailingPartIsRetried() throws Exception {
+		doThrow(new SdkClientException("transient failure")).doAnswer(this::uploadPart).when(s3Client).uploadPart(any(UploadPartRequest.class));
+		byte[] contents = createContents(PART_SIZE*2+1);
+		try (OutputStream out = new S3MultipartOutputStream(s3Client, "bucket", "key", PART_SIZE, 1, 1, executor)) {
+			out.write(contents);
+		}
+		assertArrayEquals(contents, completedObject);
+	}
+
+	@Test
+	public void testFailingUploadIsAborted() throws Exception {
+		doThrow(new SdkClientException("permanent failure")).when(s3Client).uploadPart(any(UploadPartRequest.class));
+		OutputStream out = new S3MultipartOutputStream(s3Client, "bucket", "key", PART_SIZE, 1, 2, executor);
+		try {
+			out.write(createContents(PART_SIZE*3+1));
+			out.close();
+			fail("expected IOException");
+		} catch (IOException e) {
+			// expected
+		}
+		verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+		verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+	}
+
+	@Test
+	public void testRangedDownload() throws Exception {
+		byte[] contents = createContents(PART_SIZE*5+7);
+		when(s3Client.getObject(any(GetObjectRequest.class))).thenAnswer(invocation -> {
+			GetObjectRequest request = invocation.getArgument(0);
+			assertEquals("etag", request.getMatchingETagConstraints().get(0));
+			long[] range = request.getRange();
+			S3Object object = new S3Object();
+			object.setObjectContent(new ByteArrayInputStream(Arrays.copyOfRange(contents, (int)range[0], (int)range[1]+1)));
+			return object;
+		});
+		try (InputStream in = new S3RangedInputStream(s3Client, "bucket", "key", "etag", contents.length, PART_SIZE, 3, 1, executor)) {
+			assertArrayEquals(contents, IOUtils.toByteArray(in));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testRangedDownloadOfChangedObject() throws Exception {
+		when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(null);
+		try (InputStream in = new S3RangedInputStream(s3Client, "bucket", "key", "etag", PART_SIZE*3, PART_SIZE, 2, 1, executor)) {
+			IOUtils.toByteArray(in);
+		}
+	}
+}
@@ -1,7 +1,12 @@
 package nl.nn.adapterframework.filesystem;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
 import java.nio.file.Path;
 
+import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import nl.nn.adapterframework.receivers.DirectoryListener;
@@ -29,6 +34,37 @@ public class LocalFileSystemListenerTest extends FileSystemListenerTest<Path, Lo
 		return new LocalFileSystemTestHelper(folder);
 	}
 
+	private Path waitForRawMessage(DirectoryListener listener, long timeout) throws Exception {
+		long deadline = System.currentTimeMillis()+timeout;
+		Path rawMessage;
+		while ((rawMessage=listener.getRawMessage(threadContext))==null && System.currentTimeMillis()<deadline) {
+			Thread.sleep(50);
+		}
+		return rawMessage;
+	}
+
+	@Test
+	public void fileListenerTestGetRawMessageUsingWatchService() throws Exception {
+		DirectoryListener listener = (DirectoryListener)fileSystemListener;
+		String inProcessFolder = "inProcessFolder";
+		_createFolder(inProcessFolder);
+		createFile(null, "existingFile", "contents");
 
+		listener.setUseWatchService(true);
+		listener.setMinStableTime(0);
+		listener.setInProcessFolder(inProcessFolder);
+		listener.configure();
+		listener.open();
 
+		Path rawMessage = listener.getRawMessage(threadContext);
+		assertNotNull("file present at startup must be found by initial scan", rawMessage);
+		assertEquals("existingFile", rawMessage.getFileName().toString());
+		assertNull("file must have been moved to inProcessFolder", listener.getRawMessage(threadContext));
+
+		createFile(null, "newFile", "contents");
+		rawMessage = waitForRawMessage(listener, 20000);
+		assertNotNull("file created after startup must be found by WatchService", rawMessage);
+		assertEquals("newFile", rawMessage.getFileName().toString());
+		assertNull("file must have been moved to inProcessFolder", listener.getRawMessage(threadContext));
+	}
 }
@@ -0,0 +1,197 @@
+package nl.nn.adapterframework.ftp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import nl.nn.adapterframework.ftp.FtpConnectionPool.FtpConnection;
+
+public class FtpConnectionPoolTest {
+
+	@After
+	public void tearDown() {
+		FtpConnectionPool.shutdown();
+	}
+
+	private FTPClient mockFtpClient() throws IOException {
+		FTPClient ftpClient = mock(FTPClient.class);
+		when(ftpClient.isConnected()).thenReturn(true);
+		when(ftpClient.sendNoOp()).thenReturn(true);
+		when(ftpClient.changeWorkingDirectory(anyString())).thenReturn(true);
+		return ftpClient;
+	}
+
+	private FtpSession mockSession(String connectionPoolKey, FTPClient... ftpClients) throws Exception {
+		FtpSession session = mock(FtpSession.class);
+		when(session.getHost()).thenReturn("host");
+		when(session.getConnectionPoolKey()).thenReturn(connectionPoolKey);
+		FtpConnection first = new FtpConnection(ftpClients[0], "/");
+		FtpConnection[] next = new FtpConnection[ftpClients.length-1];
+		for (int i=1; i<ftpClients.length; i++) {
+			next[i-1] = new FtpConnection(ftpClients[i], "/");
+		}
+		when(session.createPooledConnection()).thenReturn(first, next);
+		return session;
+	}
+
+	@Test
+	public void borrowAndRelease() throws Exception {
+		FTPClient ftpClient = mockFtpClient();
+		FtpSession session = mockSession("borrowAndRelease", ftpClient);
+		FtpConnectionPool pool = FtpConnectionPool.getInstance();
+
+		FtpConnection connection = pool.borrow(session);
+		assertTrue(connection.isNew());
+		assertSame(ftpClient, connection.getFtpClient());
+		assertEquals(1, pool.getNumActive());
+		pool.release(connection);
+		assertEquals(0, pool.getNumActive());
+		assertEquals(1, pool.getNumIdle());
+
+		FtpConnection reused = pool.borrow(session);
+		assertSame(connection, reused);
+		assertFalse(reused.isNew());
+		pool.release(reused);
+		verify(session, times(1)).createPooledConnection();
+		verify(ftpClient, never()).disconnect();
+	}
+
+	@Test
+	public void invalidatedConnectionIsClosed() throws Exception {
+		FTPClient ftpClient1 = mockFtpClient();
+		FTPClient ftpClient2 = mockFtpClient();
+		FtpSession session = mockSession("invalidatedConnectionIsClosed", ftpClient1, ftpClient2);
+		FtpConnectionPool pool = FtpConnectionPool.getInstance();
+
+		FtpConnection connection = pool.borrow(session);
+		pool.invalidate(connection);
+		verify(ftpClient1).disconnect();
+		assertEquals(0, pool.getNumActive());
+		assertEquals(0, pool.getNumIdle());
+
+		FtpConnection replacement = pool.borrow(session);
+		assertNotSame(connection, replacement);
+		assertSame(ftpClient2, replacement.getFtpClient());
+		pool.release(replacement);
+	}
+
+	@Test
+	public void invalidConnectionIsNotReused() throws Exception {
+		FTPClient ftpClient1 = mockFtpClient();
+		FTPClient ftpClient2 = mockFtpClient();
+		FtpSession session = mockSession("invalidConnectionIsNotReused", ftpClient1, ftpClient2);
+		FtpConnectionPool pool = FtpConnectionPool.getInstance();
+
+		FtpConnection connection = pool.borrow(session);
+		pool.release(connection);
+		when(ftpClient1.sendNoOp()).thenReturn(false);
+
+		FtpConnection replacement = pool.borrow(session);
+		assertSame(ftpClient2, replacement.getFtpClient());
+		pool.release(replacement);
+	}
+
+	@Test
+	public void connectionsAreSeparatedByKey() throws Exception {
+		FTPClient ftpClient1 = mockFtpClient();
+		FTPClient ftpClient2 = mockFtpClient();
+		// e.g. same host and user, but other credentials
+		FtpSession session1 = mockSession("host|user|hash1", ftpClient1);
+		FtpSession session2 = mockSession("host|user|hash2", ftpClient2);
+		FtpConnectionPool pool = FtpConnectionPool.getInstance();
+
+		FtpConnection connection1 = pool.borrow(session1);
+		pool.release(connection1);
+		FtpConnection connection2 = pool.borrow(session2);
+		assertSame(ftpClient2, connection2.getFtpClient());
+		pool.release(connection2);
+
+		assertSame(connection1, pool.borrow(session1));
+		verify(session1, times(1)).createPooledConnection();
+		verify(session2, times(1)).createPooledConnection();
+	}
+
+	@Test
+	public void closeIdleConnections() throws Exception {
+		FTPClient ftpClient = mockFtpClient();
+		FtpSession session = mockSession("closeIdleConnections", ftpClient);
+		FtpConnectionPool pool = FtpConnectionPool.getInstance();
+
+		pool.release(pool.borrow(session));
+		FtpConnectionPool.closeIdleConnections();
+		verify(ftpClient).disconnect();
+		assertEquals(0, pool.getNumIdle());
+	}
+
+	@Test
+	public void changeDirectoryIsRelativeToHome() throws Exception {
+		FTPClient ftpClient = mock(FTPClient.class);
+		when(ftpClient.changeWorkingDirectory(anyString())).thenReturn(true);
+		FtpConnection connection = new FtpConnection(ftpClient, "/home/user");
+
+		connection.changeDirectory("in");
+		connection.changeDirectory("in");
+		connection.changeDirectory("out");
+
+		InOrder inOrder = inOrder(ftpClient);
+		inOrder.verify(ftpClient).changeWorkingDirectory("/home/user");
+		inOrder.verify(ftpClient).changeWorkingDirectory("in");
+		inOrder.verify(ftpClient).changeWorkingDirectory("/home/user");
+		inOrder.verify(ftpClient).changeWorkingDirectory("out");
+		inOrder.verifyNoMoreInteractions();
+	}
+
+	@Test
+	public void emptyDirectoryIsHome() throws Exception {
+		FTPClient ftpClient = mock(FTPClient.class);
+		FtpConnection connection = new FtpConnection(ftpClient, "/home/user");
+
+		connection.changeDirectory(null);
+		verify(ftpClient, never()).changeWorkingDirectory(anyString());
+	}
+
+	@Test
+	public void failedChangeIsRetried() throws Exception {
+		FTPClient ftpClient = mock(FTPClient.class);
+		when(ftpClient.changeWorkingDirectory("/home/user")).thenReturn(true);
+		when(ftpClient.changeWorkingDirectory("in")).thenReturn(false, true);
+		FtpConnection connection = new FtpConnection(ftpClient, "/home/user");
+
+		try {
+			connection.changeDirectory("in");
+			fail("expected IOException");
+		} catch (IOException e) {
+			// expected
+		}
+		connection.changeDirectory("in");
+		verify(ftpClient, times(2)).changeWorkingDirectory("in");
+	}
+
+	@Test
+	public void validation() throws Exception {
+		FTPClient ftpClient = mock(FTPClient.class);
+		when(ftpClient.isConnected()).thenReturn(true);
+		when(ftpClient.sendNoOp()).thenReturn(true, false);
+		FtpConnection connection = new FtpConnection(ftpClient, "/");
+
+		assertTrue(connection.isValid());
+		assertFalse(connection.isValid());
+	}
+}
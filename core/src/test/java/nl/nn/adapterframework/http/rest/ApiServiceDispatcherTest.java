@@ -1,6 +1,7 @@
 package nl.nn.adapterframework.http.rest;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -43,6 +44,54 @@ public class ApiServiceDispatcherTest {
 		assertEquals(amount, dispatcher.getPatternClients().size());
 	}
 
+	private void register(String uriPattern) throws ListenerException {
+		ApiListener listener = new ApiListener();
+		listener.setName(uriPattern);
+		listener.setMethod("GET");
+		listener.setUriPattern(uriPattern);
+		dispatcher.registerServiceClient(listener);
+	}
+
+	@Test
+	public void testFindConfigForUriPrefersLiteralSegments() throws ListenerException {
+		register("/pets/{id}");
+		register("/pets/cats");
+		register("/{type}/cats");
+		register("/pets/{id}/owner");
+
+		assertEquals("/pets/cats", dispatcher.findConfigForUri("/pets/cats").getUriPattern());
+		assertEquals("/pets/*", dispatcher.findConfigForUri("/pets/dogs").getUriPattern());
+		assertEquals("/*/cats", dispatcher.findConfigForUri("/shop/cats").getUriPattern());
+		assertEquals("/pets/*/owner", dispatcher.findConfigForUri("/pets/12/owner").getUriPattern());
+		assertNull(dispatcher.findConfigForUri("/pets"));
+		assertNull(dispatcher.findConfigForUri("/pets/12/owner/name"));
+		assertNull(dispatcher.findConfigForUri("/shop/dogs"));
+	}
+
+	@Test
+	public void testFindMatchingConfigsForUriReturnsPatternsStartingWithUri() throws ListenerException {
+		register("/pets");
+		register("/pets/{id}");
+		register("/pets/{id}/owner");
+		register("/shops/{id}");
+
+		List<ApiDispatchConfig> configs = dispatcher.findMatchingConfigsForUri("/pets");
+		assertEquals(3, configs.size());
+		assertEquals("/pets", configs.get(0).getUriPattern());
+		assertEquals("/pets/*", configs.get(1).getUriPattern());
+		assertEquals("/pets/*/owner", configs.get(2).getUriPattern());
+		assertEquals(2, dispatcher.findMatchingConfigsForUri("/pets/12").size());
+		assertEquals(0, dispatcher.findMatchingConfigsForUri("/owners").size());
+	}
+
+	@Test
+	public void testClearRemovesPatterns() throws ListenerException {
+		register("/pets/{id}");
+		assertEquals("/pets/*", dispatcher.findConfigForUri("/pets/12").getUriPattern());
+		dispatcher.clear();
+		assertNull(dispatcher.findConfigForUri("/pets/12"));
+	}
+
 	private class CreateListener implements Runnable {
 		private String name = null;
 
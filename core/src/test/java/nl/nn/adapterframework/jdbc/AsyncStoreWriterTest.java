@@ -0,0 +1,154 @@
+package nl.nn.adapterframework.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import nl.nn.adapterframework.core.SenderException;
+
+public class AsyncStoreWriterTest {
+
+	private List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<List<Integer>>());
+	private List<Integer> singles = Collections.synchronizedList(new ArrayList<Integer>());
+	private AtomicInteger batchFailuresToGo = new AtomicInteger();
+	private volatile boolean failSingle13;
+
+	private AsyncStoreWriter.Store<Integer> store = new AsyncStoreWriter.Store<Integer>() {
+
+		@Override
+		public void storeBatch(List<Integer> batch) throws Exception {
+			if (batchFailuresToGo.getAndDecrement()>0) {
+				throw new Exception("batch failure");
+			}
+			batches.add(new ArrayList<Integer>(batch));
+		}
+
+		@Override
+		public void store(Integer request) throws Exception {
+			if (failSingle13 && request==13) {
+				throw new Exception("single failure");
+			}
+			singles.add(request);
+		}
+	};
+
+	private int storedCount() {
+		int count = singles.size();
+		synchronized (batches) {
+			for (List<Integer> batch:batches) {
+				count += batch.size();
+			}
+		}
+		return count;
+	}
+
+	private void waitForStored(int expected) throws InterruptedException {
+		for (int i=0; i<100 && storedCount()<expected; i++) {
+			Thread.sleep(50);
+		}
+	}
+
+	@Test
+	public void testBatchSize() throws Exception {
+		AsyncStoreWriter<Integer> writer = new AsyncStoreWriter<Integer>("testBatchSize", store, 100, 5, 1000, 0, 10);
+		writer.start();
+		for (int i=0; i<10; i++) {
+			writer.put(i);
+		}
+		waitForStored(10);
+		writer.stop();
+		assertEquals(10, storedCount());
+		for (List<Integer> batch:batches) {
+			assertTrue("batch of ["+batch.size()+"] is larger than batchSize", batch.size()<=5);
+		}
+		assertEquals(Integer.valueOf(0), batches.get(0).get(0));
+	}
+
+	@Test
+	public void testFlushInterval() throws Exception {
+		AsyncStoreWriter<Integer> writer = new AsyncStoreWriter<Integer>("testFlushInterval", store, 100, 1000, 100, 0, 10);
+		writer.start();
+		try {
+			writer.put(1);
+			writer.put(2);
+			waitForStored(2);
+			assertEquals(2, storedCount());
+			assertEquals(0, writer.getQueueDepth());
+		} finally {
+			writer.stop();
+		}
+	}
+
+	@Test
+	public void testRetryFailedBatch() throws Exception {
+		batchFailuresToGo.set(2);
+		AsyncStoreWriter<Integer> writer = new AsyncStoreWriter<Integer>("testRetryFailedBatch", store, 100, 10, 50, 3, 10);
+		writer.start();
+		try {
+			writer.put(1);
+			writer.put(2);
+			waitForStored(2);
+		} finally {
+			writer.stop();
+		}
+		assertEquals(2, storedCount());
+		assertEquals(0, singles.size());
+		assertEquals(2, writer.getFailedBatches().getValue());
+		assertEquals(0, writer.getLostRequests().getValue());
+	}
+
+	@Test
+	public void testFallbackToSingleStores() throws Exception {
+		batchFailuresToGo.set(Integer.MAX_VALUE);
+		failSingle13 = true;
+		AsyncStoreWriter<Integer> writer = new AsyncStoreWriter<Integer>("testFallbackToSingleStores", store, 100, 10, 50, 1, 10);
+		writer.start();
+		try {
+			writer.put(12);
+			writer.put(13);
+			writer.put(14);
+			waitForStored(2);
+			for (int i=0; i<100 && writer.getLostRequests().getValue()==0; i++) {
+				Thread.sleep(50);
+			}
+			assertEquals(2, singles.size());
+			assertEquals(1, writer.getLostRequests().getValue());
+			try {
+				writer.put(15);
+				fail("lost message should have been reported");
+			} catch (SenderException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("[1] previous messages"));
+			}
+			// reported only once
+			writer.put(16);
+		} finally {
+			writer.stop();
+		}
+		assertTrue(singles.contains(16));
+	}
+
+	@Test
+	public void testStopDrainsQueue() throws Exception {
+		AsyncStoreWriter<Integer> writer = new AsyncStoreWriter<Integer>("testStopDrainsQueue", store, 1000, 7, 1000, 0, 10);
+		writer.start();
+		for (int i=0; i<100; i++) {
+			writer.put(i);
+		}
+		writer.stop();
+		assertEquals(100, storedCount());
+		assertEquals(0, writer.getQueueDepth());
+		try {
+			writer.put(100);
+			fail("stopped writer should not accept messages");
+		} catch (SenderException e) {
+			// expected
+		}
+	}
+}
@@ -14,6 +14,8 @@ import java.sql.SQLException;
 import javax.sql.DataSource;
 
 import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.ListenerException;
@@ -242,6 +244,100 @@ public class JdbcTableListenerTest extends JdbcTestBase {
 		assertEquals("status should be returned to available, to be able to try again", "1", status);
 	}
 
+	@Test(expected=ConfigurationException.class)
+	public void testBatchSizeRequiresStatusInProcess() throws Exception {
+		listener.setBatchSize(10);
+		listener.configure();
+	}
+
+	@Test
+	public void testGetRawMessageInBatch() throws Exception {
+		listener.setStatusValueInProcess("4");
+		listener.setBatchSize(2);
+		listener.setOrderField("TKEY");
+		listener.configure();
+		listener.open();
+
+		JdbcUtil.executeStatement(dbmsSupport,connection, "INSERT INTO TEMP (TKEY,TINT) VALUES (10,1)", null);
+		JdbcUtil.executeStatement(dbmsSupport,connection, "INSERT INTO TEMP (TKEY,TINT) VALUES (11,1)", null);
+		JdbcUtil.executeStatement(dbmsSupport,connection, "INSERT INTO TEMP (TKEY,TINT) VALUES (12,1)", null);
+
+		assertEquals("10", listener.getRawMessage(null));
+		assertEquals("both messages of the batch should be claimed", "4", JdbcUtil.executeStringQuery(connection, "SELECT TINT FROM TEMP WHERE TKEY=11"));
+		assertEquals("message outside batch should not be claimed", "1", JdbcUtil.executeStringQuery(connection, "SELECT TINT FROM TEMP WHERE TKEY=12"));
+		assertTrue(listener.setMessageStateToInProcess("10", null));
+
+		assertEquals("11", listener.getRawMessage(null));
+		assertEquals("12", listener.getRawMessage(null));
+		assertNull(listener.getRawMessage(null));
+	}
+
+	/*
+	 * Claims a batch while transaction synchronization is active, and completes the synchronizations with the given status.
+	 * The connections of the test are not managed by a transaction manager, so the claim itself is not rolled back.
+	 */
+	private Object getRawMessageInTransaction(int completionStatus) throws Exception {
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			Object rawMessage = listener.getRawMessage(null);
+			for (TransactionSynchronization synchronization:TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(completionStatus);
+			}
+			return rawMessage;
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+	}
+
+	@Test
+	public void testClaimedMessagesHandedOutAfterCommit() throws Exception {
+		listener.setStatusValueInProcess("4");
+		listener.setBatchSize(2);
+		listener.setOrderField("TKEY");
+		listener.configure();
+		listener.open();
+
+		JdbcUtil.executeStatement(dbmsSupport,connection, "INSERT INTO TEMP (TKEY,TINT) VALUES (10,1)", null);
+		JdbcUtil.executeStatement(dbmsSupport,connection, "INSERT INTO TEMP (TKEY,TINT) VALUES (11,1)", null);
+
+		assertEquals("10", getRawMessageInTransaction(TransactionSynchronization.STATUS_COMMITTED));
+		assertEquals("11", listener.getRawMessage(null));
+	}
+
+	@Test
+	public void testClaimedMessagesDiscardedAfterRollback() throws Exception {
+		listener.setStatusValueInProcess("4");
+		listener.setBatchSize(2);
+		listener.setOrderField("TKEY");
+		listener.configure();
+		listener.open();
+
+		JdbcUtil.executeStatement(dbmsSupport,connection, "INSERT INTO TEMP (TKEY,TINT) VALUES (10,1)", null);
+		JdbcUtil.executeStatement(dbmsSupport,connection, "INSERT INTO TEMP (TKEY,TINT) VALUES (11,1)", null);
+
+		assertEquals("10", getRawMessageInTransaction(TransactionSynchronization.STATUS_ROLLED_BACK));
+		assertNull("message of rolled back claim should not be handed out", listener.getRawMessage(null));
+	}
+
+	@Test
+	public void testCloseReleasesClaimedMessages() throws Exception {
+		listener.setStatusValueInProcess("4");
+		listener.setBatchSize(10);
+		listener.setOrderField("TKEY");
+		listener.configure();
+		listener.open();
+
+		JdbcUtil.executeStatement(dbmsSupport,connection, "INSERT INTO TEMP (TKEY,TINT) VALUES (10,1)", null);
+		JdbcUtil.executeStatement(dbmsSupport,connection, "INSERT INTO TEMP (TKEY,TINT) VALUES (11,1)", null);
+
+		assertEquals("10", listener.getRawMessage(null));
+		assertTrue(listener.hasRawMessageAvailable());
+		listener.close();
+
+		assertEquals("handed out message should remain in process", "4", JdbcUtil.executeStringQuery(connection, "SELECT TINT FROM TEMP WHERE TKEY=10"));
+		assertEquals("claimed message should be available again", "1", JdbcUtil.executeStringQuery(connection, "SELECT TINT FROM TEMP WHERE TKEY=11"));
+	}
+
 	private boolean getMessageInParallel() throws Exception {
 		// execute peek, the result does not matter, but it should not throw an exception;
 		listener.hasRawMessageAvailable();
@@ -0,0 +1,116 @@
+package nl.nn.adapterframework.jdbc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+
+import nl.nn.adapterframework.jdbc.MessageBlobFormat.Codec;
+import nl.nn.adapterframework.stream.Message;
+
+public class MessageBlobFormatTest {
+
+	private MessageBlobFormat compressed = new MessageBlobFormat(Codec.DEFLATE, Deflater.BEST_SPEED);
+	private MessageBlobFormat uncompressed = new MessageBlobFormat(Codec.NONE, 0);
+
+	private Object roundTrip(MessageBlobFormat format, Object message) throws Exception {
+		byte[] blob = format.toByteArray(message);
+		InputStream in = new BufferedInputStream(new ByteArrayInputStream(blob));
+		assertTrue(MessageBlobFormat.hasHeader(in));
+		return MessageBlobFormat.read(in);
+	}
+
+	@Test
+	public void testString() throws Exception {
+		assertEquals("<tekst>€ éèë</tekst>", roundTrip(compressed, "<tekst>€ éèë</tekst>"));
+		assertEquals("<tekst>€ éèë</tekst>", roundTrip(uncompressed, "<tekst>€ éèë</tekst>"));
+	}
+
+	@Test
+	public void testBytes() throws Exception {
+		byte[] bytes = { (byte)0xEF, (byte)0xBB, (byte)0xBF, 0, 1, 2, (byte)0xFF };
+		assertArrayEquals(bytes, (byte[])roundTrip(compressed, bytes));
+		assertArrayEquals(bytes, (byte[])roundTrip(uncompressed, bytes));
+	}
+
+	@Test
+	public void testStringMessage() throws Exception {
+		Message result = (Message)roundTrip(compressed, new Message("<tekst/>"));
+		assertEquals("<tekst/>", result.asString());
+		assertFalse(result.isBinary());
+	}
+
+	@Test
+	public void testBinaryMessage() throws Exception {
+		Message result = (Message)roundTrip(compressed, new Message("<tekst>é</tekst>".getBytes("ISO-8859-1"), "ISO-8859-1"));
+		assertTrue(result.isBinary());
+		assertEquals("ISO-8859-1", result.getCharset());
+		assertEquals("<tekst>é</tekst>", result.asString());
+	}
+
+	@Test
+	public void testNullMessage() throws Exception {
+		Message result = (Message)roundTrip(compressed, new Message((String)null));
+		assertNull(result.asObject());
+		assertNull(roundTrip(compressed, null));
+	}
+
+	@Test
+	public void testSerializableObject() throws Exception {
+		Date date = new Date();
+		assertEquals(date, roundTrip(compressed, date));
+	}
+
+	@Test
+	public void testLegacyBlobsHaveNoHeader() throws Exception {
+		assertFalse(MessageBlobFormat.hasHeader(new BufferedInputStream(new ByteArrayInputStream(serializeLegacy("tekst", false)))));
+		InputStream in = new BufferedInputStream(new ByteArrayInputStream(serializeLegacy("tekst", true)));
+		assertFalse(MessageBlobFormat.hasHeader(in));
+		// the stream must be positioned at the start again
+		try (ObjectInputStream ois = new ObjectInputStream(new InflaterInputStream(in))) {
+			assertEquals("tekst", ois.readObject());
+		}
+	}
+
+	private byte[] serializeLegacy(Object message, boolean compress) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(compress ? new DeflaterOutputStream(out) : out);
+		oos.writeObject(message);
+		oos.close();
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testContentStartingWithMagicHasNoHeader() throws Exception {
+		assertFalse(MessageBlobFormat.hasHeader(new BufferedInputStream(new ByteArrayInputStream("IBS is not a header".getBytes("UTF-8")))));
+		byte[] unknownVersion = { 'I', 'B', 'S', 2, 0, 1, 'x' };
+		assertFalse(MessageBlobFormat.hasHeader(new BufferedInputStream(new ByteArrayInputStream(unknownVersion))));
+		byte[] unknownCodec = { 'I', 'B', 'S', 1, 9, 1, 'x' };
+		assertFalse(MessageBlobFormat.hasHeader(new BufferedInputStream(new ByteArrayInputStream(unknownCodec))));
+		byte[] unknownType = { 'I', 'B', 'S', 1, 0, 9, 'x' };
+		assertFalse(MessageBlobFormat.hasHeader(new BufferedInputStream(new ByteArrayInputStream(unknownType))));
+	}
+
+	@Test(expected=IOException.class)
+	public void testCorruptPayload() throws Exception {
+		byte[] blob = { 'I', 'B', 'S', 1, 1, 1, 'n', 'o', 't', ' ', 'd', 'e', 'f', 'l', 'a', 't', 'e', 'd' };
+		InputStream in = new BufferedInputStream(new ByteArrayInputStream(blob));
+		assertTrue(MessageBlobFormat.hasHeader(in));
+		MessageBlobFormat.read(in);
+	}
+}
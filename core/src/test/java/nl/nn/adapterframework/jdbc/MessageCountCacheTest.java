@@ -0,0 +1,159 @@
+package nl.nn.adapterframework.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class MessageCountCacheTest {
+
+	private AtomicInteger exactCount = new AtomicInteger();
+	private AtomicInteger countQueries = new AtomicInteger();
+
+	private int countMessages() {
+		countQueries.incrementAndGet();
+		return exactCount.get();
+	}
+
+	@Test
+	public void testIncrementalCount() throws Exception {
+		MessageCountCache cache = MessageCountCache.getInstance("testIncrementalCount", 60000);
+		exactCount.set(10);
+		assertEquals(10, cache.getCount(this::countMessages));
+		cache.changed(3);
+		cache.changed(-1);
+		assertEquals(12, cache.getCount(this::countMessages));
+		assertEquals(1, countQueries.get());
+	}
+
+	@Test
+	public void testChangesBeforeFirstCountAreIgnored() throws Exception {
+		MessageCountCache cache = MessageCountCache.getInstance("testChangesBeforeFirstCountAreIgnored", 60000);
+		cache.changed(5);
+		exactCount.set(5);
+		assertEquals(5, cache.getCount(this::countMessages));
+	}
+
+	@Test
+	public void testChangesAppliedAfterCommit() throws Exception {
+		MessageCountCache cache = MessageCountCache.getInstance("testChangesAppliedAfterCommit", 60000);
+		exactCount.set(2);
+		assertEquals(2, cache.getCount(this::countMessages));
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			cache.changed(1);
+			assertEquals(2, cache.getCount(this::countMessages));
+			for (TransactionSynchronization synchronization:TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertEquals(3, cache.getCount(this::countMessages));
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			cache.changed(1);
+			for (TransactionSynchronization synchronization:TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertEquals(3, cache.getCount(this::countMessages));
+	}
+
+	@Test
+	public void testReconcileInBackground() throws Exception {
+		MessageCountCache cache = MessageCountCache.getInstance("testReconcileInBackground", 60000);
+		exactCount.set(4);
+		assertEquals(4, cache.getCount(this::countMessages));
+		exactCount.set(7); // changed by another instance
+
+		cache.invalidate();
+		cache.getCount(this::countMessages); // starts reconciliation, returns the count before or after it
+		for (int i=0; i<100 && cache.getCount(this::countMessages)!=7; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(7, cache.getCount(this::countMessages));
+		assertEquals(2, countQueries.get());
+	}
+
+	@Test
+	public void testCacheIsRemovedWhenReleasedByAllUsers() throws Exception {
+		String key = MessageCountCache.getKey("jdbc/test", "IBISSTORE", "testCacheIsRemovedWhenReleasedByAllUsers", "L");
+		MessageCountCache cache1 = MessageCountCache.getInstance(key, 60000);
+		MessageCountCache cache2 = MessageCountCache.getInstance(key, 60000);
+		assertSame(cache1, cache2);
+		int cacheCount = MessageCountCache.getCacheCount();
+
+		cache1.release();
+		assertEquals(cacheCount, MessageCountCache.getCacheCount());
+		assertSame(cache2, MessageCountCache.getInstance(key, 60000));
+		cache2.release();
+		cache2.release();
+		assertEquals(cacheCount-1, MessageCountCache.getCacheCount());
+
+		MessageCountCache cache3 = MessageCountCache.getInstance(key, 60000);
+		assertNotSame(cache1, cache3);
+		cache1.release(); // released cache does not affect its successor
+		assertSame(cache3, MessageCountCache.getInstance(key, 60000));
+		cache3.release();
+		cache3.release();
+	}
+
+	@Test
+	public void testInvalidateTable() throws Exception {
+		MessageCountCache cache = MessageCountCache.getInstance(MessageCountCache.getKey("jdbc/test", "SCHEMA.TESTINVALIDATETABLE", "slot", "L"), 60000);
+		MessageCountCache otherTable = MessageCountCache.getInstance(MessageCountCache.getKey("jdbc/test", "OTHERTABLE", "slot", "L"), 60000);
+		MessageCountCache sameSuffix = MessageCountCache.getInstance(MessageCountCache.getKey("jdbc/test", "MY_TESTINVALIDATETABLE", "slot", "L"), 60000);
+		try {
+			exactCount.set(4);
+			assertEquals(4, cache.getCount(this::countMessages));
+			assertEquals(4, otherTable.getCount(this::countMessages));
+			assertEquals(4, sameSuffix.getCount(this::countMessages));
+			exactCount.set(1); // records deleted by the cleanup job
+
+			MessageCountCache.invalidate("jdbc/test", "TestInvalidateTable");
+			assertEquals(4, otherTable.getCount(this::countMessages));
+			assertEquals(4, sameSuffix.getCount(this::countMessages));
+			cache.getCount(this::countMessages); // starts reconciliation, returns the count before or after it
+			for (int i=0; i<100 && cache.getCount(this::countMessages)!=1; i++) {
+				Thread.sleep(50);
+			}
+			assertEquals(1, cache.getCount(this::countMessages));
+			assertEquals(4, otherTable.getCount(this::countMessages));
+			assertEquals(4, sameSuffix.getCount(this::countMessages));
+			assertEquals(4, countQueries.get());
+		} finally {
+			cache.release();
+			otherTable.release();
+			sameSuffix.release();
+		}
+	}
+
+	@Test
+	public void testShutdown() throws Exception {
+		MessageCountCache cache = MessageCountCache.getInstance("testShutdown", 60000);
+		exactCount.set(4);
+		assertEquals(4, cache.getCount(this::countMessages));
+		cache.invalidate();
+		cache.getCount(this::countMessages); // starts reconciliation
+
+		MessageCountCache.shutdown();
+		assertEquals(0, MessageCountCache.getCacheCount());
+		cache.release();
+
+		MessageCountCache newCache = MessageCountCache.getInstance("testShutdown", 60000);
+		assertNotSame(cache, newCache);
+		exactCount.set(6);
+		assertEquals(6, newCache.getCount(this::countMessages));
+		newCache.release();
+	}
+}
@@ -0,0 +1,30 @@
+package nl.nn.adapterframework.jdbc.dbms;
+
+import static org.junit.Assert.assertEquals;
+
+import nl.nn.adapterframework.jdbc.JdbcException;
+
+import org.junit.Test;
+
+public class Db2Test {
+
+	public Db2DbmsSupport createDbmsSupport() {
+		return new Db2DbmsSupport();
+	}
+
+	private String selectQuery = "select * from ibisstore";
+
+	@Test
+	public void testPrepareQueryTextForWorkQueueReading() throws JdbcException {
+		String query = createDbmsSupport().prepareQueryTextForWorkQueueReading(1, selectQuery);
+
+		assertEquals("select * from ibisstore FOR UPDATE", query);
+	}
+
+	@Test
+	public void testPrepareQueryTextForWorkQueueReadingInBatch() throws JdbcException {
+		String query = createDbmsSupport().prepareQueryTextForWorkQueueReading(10, selectQuery);
+
+		assertEquals("select * from ibisstore FETCH FIRST 10 ROWS ONLY FOR UPDATE", query);
+	}
+}
@@ -0,0 +1,140 @@
+package nl.nn.adapterframework.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Destination;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.nn.adapterframework.core.TimeOutException;
+
+public class JmsReplyDispatcherTest {
+
+	private MessagingSource messagingSource;
+	private Session session;
+	private MessageConsumer consumer;
+	private JmsReplyDispatcher dispatcher;
+
+	@Before
+	public void setUp() throws Exception {
+		messagingSource = mock(MessagingSource.class);
+		session = mock(Session.class);
+		consumer = mock(MessageConsumer.class);
+		TemporaryQueue temporaryQueue = mock(TemporaryQueue.class);
+		when(messagingSource.createSession(anyBoolean(), anyInt())).thenReturn(session);
+		when(session.createTemporaryQueue()).thenReturn(temporaryQueue);
+		when(session.createConsumer(any(Destination.class))).thenReturn(consumer);
+		dispatcher = new JmsReplyDispatcher(messagingSource, "test", null, 1, 200);
+		dispatcher.open();
+	}
+
+	@After
+	public void tearDown() {
+		dispatcher.close();
+	}
+
+	private Message reply(String correlationId) throws Exception {
+		Message message = mock(Message.class);
+		when(message.getJMSCorrelationID()).thenReturn(correlationId);
+		return message;
+	}
+
+	@Test
+	public void testOpenRegistersListenerOnTemporaryQueue() throws Exception {
+		verify(consumer).setMessageListener(dispatcher);
+		assertSame(session.createTemporaryQueue(), dispatcher.getReplyQueue());
+	}
+
+	@Test
+	public void testReplyRoutedToWaitingRequest() throws Exception {
+		CompletableFuture<Message> result1 = CompletableFuture.supplyAsync(() -> waitForReply("c1"));
+		CompletableFuture<Message> result2 = CompletableFuture.supplyAsync(() -> waitForReply("c2"));
+		for (int i=0; i<100 && dispatcher.getPendingCount()<2; i++) {
+			Thread.sleep(10);
+		}
+		Message reply2 = reply("c2");
+		Message reply1 = reply("c1");
+		dispatcher.onMessage(reply2);
+		dispatcher.onMessage(reply1);
+		assertSame(reply1, result1.get(5, TimeUnit.SECONDS));
+		assertSame(reply2, result2.get(5, TimeUnit.SECONDS));
+		assertEquals(0, dispatcher.getPendingCount());
+	}
+
+	private Message waitForReply(String correlationId) {
+		try {
+			return dispatcher.waitForReply(correlationId, 5000);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Test
+	public void testReplyArrivingBeforeRequestWaits() throws Exception {
+		Message reply = reply("early");
+		dispatcher.onMessage(reply);
+		assertEquals(1, dispatcher.getPendingCount());
+		assertSame(reply, dispatcher.waitForReply("early", 1000));
+		assertEquals(0, dispatcher.getPendingCount());
+	}
+
+	@Test
+	public void testOrphanReplyIsDiscarded() throws Exception {
+		dispatcher.onMessage(reply("orphan"));
+		assertEquals(1, dispatcher.getPendingCount());
+		for (int i=0; i<300 && dispatcher.getPendingCount()>0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, dispatcher.getPendingCount());
+	}
+
+	@Test
+	public void testTimeoutRemovesPendingReply() throws Exception {
+		try {
+			dispatcher.waitForReply("late", 50);
+			fail("expected TimeOutException");
+		} catch (TimeOutException e) {
+			// expected
+		}
+		assertEquals(0, dispatcher.getPendingCount());
+	}
+
+	@Test
+	public void testDuplicateReplyIsDiscarded() throws Exception {
+		Message first = reply("dup");
+		Message second = reply("dup");
+		dispatcher.onMessage(first);
+		dispatcher.onMessage(second);
+		assertEquals(1, dispatcher.getPendingCount());
+		assertSame(first, dispatcher.waitForReply("dup", 1000));
+		assertEquals(0, dispatcher.getPendingCount());
+	}
+
+	@Test
+	public void testReplyWithoutCorrelationIdIsDiscarded() throws Exception {
+		dispatcher.onMessage(reply(null));
+		assertEquals(0, dispatcher.getPendingCount());
+	}
+
+	@Test(expected = JmsException.class)
+	public void testWaitWithoutCorrelationId() throws Exception {
+		dispatcher.waitForReply(null, 1000);
+	}
+}
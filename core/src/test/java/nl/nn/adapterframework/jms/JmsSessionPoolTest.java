@@ -0,0 +1,122 @@
+package nl.nn.adapterframework.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.jms.Destination;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import nl.nn.adapterframework.jms.JmsSessionPool.PooledSession;
+import nl.nn.adapterframework.util.AppConstants;
+
+public class JmsSessionPoolTest {
+
+	private MessagingSource messagingSource;
+	private JmsSessionPool pool;
+
+	@Before
+	public void setUp() throws Exception {
+		messagingSource = mock(MessagingSource.class);
+		when(messagingSource.createSession(anyBoolean(), anyInt())).thenAnswer(invocation -> {
+			Session session = mock(Session.class);
+			when(session.createProducer(any(Destination.class))).thenReturn(mock(MessageProducer.class));
+			return session;
+		});
+	}
+
+	@After
+	public void tearDown() {
+		if (pool!=null) {
+			pool.close();
+		}
+		AppConstants.getInstance().setProperty("jms.sessionPool.maxTotal", "256");
+	}
+
+	private Queue queue(String name) throws Exception {
+		Queue queue = mock(Queue.class);
+		when(queue.getQueueName()).thenReturn(name);
+		return queue;
+	}
+
+	@Test
+	public void testBorrowAndRelease() throws Exception {
+		pool = new JmsSessionPool(messagingSource);
+		PooledSession pooledSession = pool.borrow(queue("q1"), false, Session.AUTO_ACKNOWLEDGE);
+		assertTrue(pooledSession.isNew());
+		assertEquals(1, pool.getNumActive());
+		pool.release(pooledSession);
+		assertEquals(0, pool.getNumActive());
+		assertEquals(1, pool.getNumIdle());
+
+		// another Destination object for the same queue
+		PooledSession reused = pool.borrow(queue("q1"), false, Session.AUTO_ACKNOWLEDGE);
+		assertSame(pooledSession, reused);
+		assertFalse(reused.isNew());
+		pool.release(reused);
+		assertEquals(1, pool.getCreatedCount());
+		verify(pooledSession.getProducer(), never()).close();
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		pool = new JmsSessionPool(messagingSource);
+		PooledSession pooledSession = pool.borrow(queue("q1"), false, Session.AUTO_ACKNOWLEDGE);
+		pool.invalidate(pooledSession);
+		verify(pooledSession.getProducer()).close();
+		verify(messagingSource).releaseSession(pooledSession.getSession());
+		assertEquals(0, pool.getNumActive());
+		assertEquals(0, pool.getNumIdle());
+
+		PooledSession replacement = pool.borrow(queue("q1"), false, Session.AUTO_ACKNOWLEDGE);
+		assertNotSame(pooledSession, replacement);
+		pool.release(replacement);
+	}
+
+	@Test
+	public void testKeyedByDestinationAndMode() throws Exception {
+		pool = new JmsSessionPool(messagingSource);
+		PooledSession q1 = pool.borrow(queue("q1"), false, Session.AUTO_ACKNOWLEDGE);
+		pool.release(q1);
+		PooledSession q2 = pool.borrow(queue("q2"), false, Session.AUTO_ACKNOWLEDGE);
+		PooledSession q1Transacted = pool.borrow(queue("q1"), true, Session.AUTO_ACKNOWLEDGE);
+		assertNotSame(q1, q2);
+		assertNotSame(q1, q1Transacted);
+		pool.release(q2);
+		pool.release(q1Transacted);
+		assertEquals(3, pool.getCreatedCount());
+		assertSame(q1, pool.borrow(queue("q1"), false, Session.AUTO_ACKNOWLEDGE));
+	}
+
+	@Test
+	public void testNumberOfSessionsOverDestinationsIsBounded() throws Exception {
+		AppConstants.getInstance().setProperty("jms.sessionPool.maxTotal", "2");
+		pool = new JmsSessionPool(messagingSource);
+		PooledSession q1 = pool.borrow(queue("q1"), false, Session.AUTO_ACKNOWLEDGE);
+		pool.release(q1);
+		PooledSession q2 = pool.borrow(queue("q2"), false, Session.AUTO_ACKNOWLEDGE);
+		pool.release(q2);
+
+		PooledSession q3 = pool.borrow(queue("q3"), false, Session.AUTO_ACKNOWLEDGE);
+		// the oldest idle session has been closed to make room
+		verify(q1.getProducer()).close();
+		verify(q2.getProducer(), never()).close();
+		pool.release(q3);
+		assertEquals(2, pool.getNumIdle());
+	}
+}
@@ -194,4 +194,59 @@ public class ParameterTest {
 		assertEquals(sessionMessage, Message.asMessage(result).asString());
 	}
 
+	@Test
+	public void testParameterListWithMultipleXPathParametersOnInput() throws ConfigurationException, ParameterException {
+		ParameterList list = new ParameterList();
+		Parameter p1 = new Parameter();
+		p1.setName("name");
+		p1.setXpathExpression("/root/person/@name");
+		list.add(p1);
+		Parameter p2 = new Parameter();
+		p2.setName("city");
+		p2.setXpathExpression("/root/person/address/city");
+		list.add(p2);
+		Parameter p3 = new Parameter();
+		p3.setName("address");
+		p3.setXpathExpression("/root/person/address");
+		p3.setType(Parameter.TYPE_XML);
+		list.add(p3);
+		Parameter p4 = new Parameter();
+		p4.setName("fixed");
+		p4.setValue("fixedValue");
+		list.add(p4);
+		Parameter p5 = new Parameter();
+		p5.setName("fromSession");
+		p5.setSessionKeyXPath("concat('key',/root/person/@id)");
+		list.add(p5);
+		list.configure();
+
+		IPipeLineSession session = new PipeLineSessionBase();
+		session.put("key1", "sessionValue");
+		Message input = new Message("<root><person id=\"1\" name=\"Jan\"><address><city>Amsterdam</city></address></person></root>");
+
+		ParameterValueList values = list.getValues(input, session);
+		assertEquals("Jan", values.getValue("name"));
+		assertEquals("Amsterdam", values.getValue("city"));
+		assertEquals("<address><city>Amsterdam</city></address>", values.getValue("address"));
+		assertEquals("fixedValue", values.getValue("fixed"));
+		assertEquals("sessionValue", values.getValue("fromSession"));
+	}
+
+	@Test
+	public void testParameterListWithMultipleXPathParametersOnInvalidInput() throws ConfigurationException, ParameterException {
+		ParameterList list = new ParameterList();
+		Parameter p1 = new Parameter();
+		p1.setName("p1");
+		p1.setXpathExpression("/root/a");
+		list.add(p1);
+		Parameter p2 = new Parameter();
+		p2.setName("p2");
+		p2.setXpathExpression("/root/b");
+		list.add(p2);
+		list.configure();
+
+		exception.expect(ParameterException.class);
+		exception.expectMessage("Parameter [p1]");
+		list.getValues(new Message("no xml"), new PipeLineSessionBase());
+	}
 }
@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executors;
 
 import org.hamcrest.Matchers;
 import org.hamcrest.core.StringContains;
@@ -819,6 +820,25 @@ public class ForEachChildElementPipeTest extends StreamingPipeTestBase<ForEachCh
 		assertEquals(expected, actual);
 	}
 
+	@Test
+	public void testBulk2ParallelMaxItemsInProgress() throws Exception, IOException {
+		pipe.setSender(getElementRenderer());
+		pipe.setTargetElement("XDOC");
+		pipe.setParallel(true);
+		pipe.setTaskExecutor(new ConcurrentTaskExecutor(Executors.newFixedThreadPool(4)));
+		pipe.setMaxItemsInProgress(3);
+		pipe.setRemoveNamespaces(false);
+		configurePipe();
+		pipe.start();
+
+		String input = TestFileUtils.getTestFile("/ForEachChildElementPipe/bulk2.xml");
+		String expected = TestFileUtils.getTestFile("/ForEachChildElementPipe/bulk2out.xml");
+		PipeRunResult prr = doPipe(pipe, input, session);
+		String actual = Message.asString(prr.getResult());
+
+		assertEquals(expected, actual);
+	}
+
 
 	@Test
 	public void testRemoveNamespacesInAttributes() throws Exception, IOException {
@@ -1,9 +1,13 @@
 package nl.nn.adapterframework.pipes;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Test;
 import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
@@ -11,6 +15,7 @@ import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
 import nl.nn.adapterframework.core.IDataIterator;
 import nl.nn.adapterframework.core.IPipeLineSession;
 import nl.nn.adapterframework.core.ISender;
+import nl.nn.adapterframework.core.PipeRunException;
 import nl.nn.adapterframework.core.PipeRunResult;
 import nl.nn.adapterframework.core.SenderException;
 import nl.nn.adapterframework.core.TimeOutException;
@@ -254,4 +259,67 @@ public class IteratingPipeTest<P extends IteratingPipe<String>> extends PipeTest
 		assertEquals(expectedRenderResult, resultLog.toString().trim());
 	}
 
+	/*
+	 * Renders items like getElementRenderer(), after a delay, and keeps track of the number of items that are sent simultaneously.
+	 */
+	private class ConcurrencyProbe extends EchoSender {
+		private AtomicInteger inProgress = new AtomicInteger();
+		private AtomicInteger maxInProgress = new AtomicInteger();
+		private AtomicInteger started = new AtomicInteger();
+		private long delay;
+
+		ConcurrencyProbe(long delay) {
+			this.delay = delay;
+		}
+
+		@Override
+		public Message sendMessage(Message message, IPipeLineSession session) throws SenderException, TimeOutException {
+			started.incrementAndGet();
+			int current = inProgress.incrementAndGet();
+			maxInProgress.accumulateAndGet(current, Math::max);
+			try {
+				Thread.sleep(delay);
+				return new Message("["+message.asString()+"]");
+			} catch (InterruptedException | IOException e) {
+				throw new SenderException(getLogPrefix(),e);
+			} finally {
+				inProgress.decrementAndGet();
+			}
+		}
+	}
+
+	@Test
+	public void testParallelMaxItemsInProgress() throws Exception {
+		ConcurrencyProbe probe = new ConcurrencyProbe(50);
+		pipe.setSender(probe);
+		pipe.setParallel(true);
+		pipe.setMaxItemsInProgress(3);
+		pipe.setTaskExecutor(new ConcurrentTaskExecutor(Executors.newFixedThreadPool(8)));
+		configurePipe();
+		pipe.start();
+		testTenLines();
+		assertEquals(10, probe.started.get());
+		assertTrue("items in progress ["+probe.maxInProgress.get()+"] exceeds maxItemsInProgress", probe.maxInProgress.get()<=3);
+		assertTrue("items were not processed in parallel", probe.maxInProgress.get()>1);
+	}
+
+	@Test
+	public void testParallelMaxItemsInProgressCompletedOnException() throws Exception {
+		ConcurrencyProbe probe = new ConcurrencyProbe(300);
+		pipe.setSender(probe);
+		pipe.setParallel(true);
+		pipe.setMaxItemsInProgress(5);
+		pipe.setXpathExpression("/a");
+		pipe.setTaskExecutor(new ConcurrentTaskExecutor(Executors.newFixedThreadPool(8)));
+		configurePipe();
+		pipe.start();
+
+		try {
+			doPipe(new Message("<a>1</a>\n<a>2</a>\n<a>3</a>\nno xml\n<a>5</a>"));
+			fail("expected transformation of item 4 to fail");
+		} catch (PipeRunException e) {
+			assertEquals("items still in progress after the pipe returned", 0, probe.inProgress.get());
+			assertEquals(3, probe.started.get());
+		}
+	}
 }
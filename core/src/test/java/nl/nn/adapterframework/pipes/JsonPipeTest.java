@@ -4,12 +4,20 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+
+import javax.json.Json;
+import javax.json.JsonReader;
+import javax.json.JsonStructure;
 
 import org.junit.Test;
 
 import nl.nn.adapterframework.configuration.ConfigurationException;
 import nl.nn.adapterframework.core.PipeRunResult;
 import nl.nn.adapterframework.stream.Message;
+import nl.nn.adapterframework.stream.MessageOutputStream;
+import nl.nn.adapterframework.util.XmlUtils;
 
 public class JsonPipeTest extends PipeTestBase<JsonPipe> {
 
@@ -85,4 +93,107 @@ public class JsonPipeTest extends PipeTestBase<JsonPipe> {
 		assertEquals("<root><array>Wie</array><array>dit leest</array><array>is gek</array></root>", result);
 	}
 
+	private String json2xml(String input) throws Exception {
+		pipe.configure();
+		pipe.start();
+		PipeRunResult prr = doPipe(pipe, input, session);
+		return Message.asString(prr.getResult());
+	}
+
+	@Test
+	public void doPipeNestedInputInDocumentOrder() throws Exception {
+		String input = "{\"a\":{\"b\":\"x\",\"c\":[\"1\",2]},\"d\":\"\"}";
+		assertEquals("<root><a><b>x</b><c>1</c><c>2</c></a><d/></root>", json2xml(input));
+	}
+
+	@Test
+	public void doPipeSingleRootElementIsNotWrapped() throws Exception {
+		String input = "{\"a\":{\"b\":[1,[2,3]]}}";
+		assertEquals("<a><b>1</b><b><array>2</array><array>3</array></b></a>", json2xml(input));
+	}
+
+	@Test
+	public void doPipeWithoutRootElement() throws Exception {
+		pipe.setAddXmlRootElement(false);
+		assertEquals("<a>1</a><b>2</b>", json2xml("{\"a\":1,\"b\":2}"));
+	}
+
+	@Test
+	public void doPipeLenientInput() throws Exception {
+		String input = "{ name: 'Lars', // comment\n score: 1.50, member: TRUE }";
+		assertEquals("<root><name>Lars</name><score>1.5</score><member>true</member></root>", json2xml(input));
+	}
+
+	@Test
+	public void doPipeTopLevelContentIsWrapped() throws Exception {
+		assertEquals("<root>text</root>", json2xml("{\"content\":\"text\"}"));
+	}
+
+	@Test
+	public void doPipeEscaping() throws Exception {
+		assertEquals("<a>x&lt;y&amp;z</a>", json2xml("{\"a\":\"x<y&z\"}"));
+	}
+
+	@Test
+	public void doPipeVersion3RoundTrip() throws Exception {
+		String json = "{\"a\":[1,\"x y\",true,null],\"b\":{\"c\":\"q\\\"uote \\n\"}}";
+		pipe.setVersion("3");
+		String xml = json2xml(json);
+
+		JsonPipe xml2json = createPipe();
+		xml2json.setDirection("xml2json");
+		xml2json.setVersion("3");
+		xml2json.configure();
+		xml2json.start();
+		PipeRunResult prr = doPipe(xml2json, xml, session);
+		assertEquals(readJson(json), readJson(Message.asString(prr.getResult())));
+	}
+
+	private JsonStructure readJson(String json) {
+		try (JsonReader reader = Json.createReader(new StringReader(json))) {
+			return reader.read();
+		}
+	}
+
+	@Test
+	public void provideOutputStreamForXml2Json() throws Exception {
+		pipe.setDirection("xml2json");
+		pipe.setVersion("3");
+		pipe.configure();
+		pipe.start();
+		String xml = "<map xmlns=\"http://www.w3.org/2013/XSL/json\"><string key=\"a\">x</string><number key=\"b\">1</number></map>";
+		try (MessageOutputStream target = pipe.provideOutputStream(session)) {
+			XmlUtils.parseXml(xml, target.asContentHandler());
+			assertEquals("{\"a\":\"x\",\"b\":1}", Message.asString(target.getPipeRunResult().getResult()));
+		}
+	}
+
+	@Test
+	public void provideOutputStreamForXml2JsonVersion1() throws Exception {
+		pipe.setDirection("xml2json");
+		pipe.configure();
+		pipe.start();
+		String xml = "<a><b>x</b><c>1</c></a>";
+		String expected = Message.asString(doPipe(pipe, xml, session).getResult());
+		try (MessageOutputStream target = pipe.provideOutputStream(session)) {
+			XmlUtils.parseXml(xml, target.asContentHandler());
+			assertEquals(expected, Message.asString(target.getPipeRunResult().getResult()));
+		}
+	}
+
+	@Test
+	public void provideOutputStreamForJson2Xml() throws Exception {
+		pipe.configure();
+		pipe.start();
+		String json = "{\"a\":{\"b\":\"x\",\"c\":[\"1\",2]},\"d\":\"\"}";
+		MessageOutputStream target = pipe.provideOutputStream(session);
+		try {
+			try (Writer writer = target.asWriter()) {
+				writer.write(json);
+			}
+			assertEquals("<root><a><b>x</b><c>1</c><c>2</c></a><d/></root>", Message.asString(target.getPipeRunResult().getResult()));
+		} finally {
+			target.close();
+		}
+	}
 }
@@ -0,0 +1,90 @@
+package nl.nn.adapterframework.receivers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import nl.nn.adapterframework.statistics.StatisticsKeeper;
+
+public class ThreadCountStatisticsTest {
+
+	private List<String> names(ThreadCountStatistics statistics) {
+		List<String> result = new ArrayList<>();
+		for (StatisticsKeeper keeper:statistics) {
+			result.add(keeper.getName());
+		}
+		return result;
+	}
+
+	@Test
+	public void onlyUsedSlotsAreIterated() {
+		ThreadCountStatistics statistics = new ThreadCountStatistics(1);
+		statistics.allocate(4);
+		assertEquals(0, names(statistics).size());
+
+		statistics.get(1).addValue(10);
+		assertEquals("[1 threads processing, 2 threads processing]", names(statistics).toString());
+	}
+
+	@Test
+	public void slotsGrowBeyondAllocation() {
+		ThreadCountStatistics statistics = new ThreadCountStatistics(0);
+		statistics.allocate(1);
+		StatisticsKeeper first = statistics.get(0);
+
+		StatisticsKeeper third = statistics.get(2);
+		assertEquals("2 threads processing", third.getName());
+		assertSame(first, statistics.get(0));
+		assertEquals(3, names(statistics).size());
+	}
+
+	@Test
+	public void concurrentUpdates() throws Exception {
+		ThreadCountStatistics statistics = new ThreadCountStatistics(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i=0; i<8; i++) {
+			int threadCount = i;
+			executor.execute(() -> {
+				for (int j=0; j<1000; j++) {
+					statistics.get(threadCount).addValue(j);
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(30, TimeUnit.SECONDS);
+
+		assertEquals(8, names(statistics).size());
+		for (StatisticsKeeper keeper:statistics) {
+			assertEquals(1000, keeper.getCount());
+		}
+	}
+
+	@Test
+	public void concurrentUpdatesOfSameSlot() throws Exception {
+		ThreadCountStatistics statistics = new ThreadCountStatistics(1);
+		statistics.allocate(2);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		for (int i=0; i<8; i++) {
+			executor.execute(() -> {
+				for (int j=0; j<10000; j++) {
+					statistics.get(1).addValue(j%100);
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(30, TimeUnit.SECONDS);
+
+		StatisticsKeeper keeper = statistics.get(1);
+		assertEquals(80000, keeper.getCount());
+		assertEquals(80000*49.5, keeper.getTotal(), 0);
+		assertEquals(0, keeper.getMin());
+		assertEquals(99, keeper.getMax());
+	}
+}
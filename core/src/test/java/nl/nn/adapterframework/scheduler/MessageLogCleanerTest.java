@@ -0,0 +1,137 @@
+package nl.nn.adapterframework.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import nl.nn.adapterframework.scheduler.MessageLogCleaner.MessageLogTable;
+
+public class MessageLogCleanerTest {
+
+	private List<Long> pauses = new ArrayList<>();
+
+	private MessageLogCleaner cleaner = new MessageLogCleaner("test") {
+		@Override
+		protected boolean pause(long millis) {
+			pauses.add(millis);
+			return true;
+		}
+	};
+
+	private class Table implements MessageLogTable {
+		private int expiredRecords;
+		private List<Integer> chunks = new ArrayList<>();
+		private Date oldestExpiryDate;
+
+		Table(int expiredRecords, Date oldestExpiryDate) {
+			this.expiredRecords = expiredRecords;
+			this.oldestExpiryDate = oldestExpiryDate;
+		}
+
+		@Override
+		public int deleteExpired(int maxRows) {
+			chunks.add(maxRows);
+			int deleted = Math.min(maxRows, expiredRecords);
+			expiredRecords -= deleted;
+			return deleted;
+		}
+
+		@Override
+		public Date getOldestExpiryDate() {
+			return expiredRecords>0 ? oldestExpiryDate : null;
+		}
+	}
+
+	@Test
+	public void deletesInChunksUntilCaughtUp() throws Exception {
+		cleaner.setChunkSize(10);
+		Table table = new Table(25, null);
+
+		assertTrue(cleaner.cleanup(table, new Date(), Long.MAX_VALUE, () -> false));
+		assertEquals(3, table.chunks.size());
+		assertEquals(25, cleaner.getRowsDeletedLastRun());
+		assertEquals(3, cleaner.getChunksLastRun());
+		assertEquals(0, cleaner.getLag());
+		assertEquals(2, pauses.size());
+	}
+
+	@Test
+	public void stopsAtMaxRowsAndReportsLag() throws Exception {
+		Date now = new Date();
+		cleaner.setChunkSize(10);
+		cleaner.setMaxRows(15);
+		Table table = new Table(100, new Date(now.getTime()-60000));
+
+		assertFalse(cleaner.cleanup(table, now, Long.MAX_VALUE, () -> false));
+		assertEquals("[10, 5]", table.chunks.toString());
+		assertEquals(85, table.expiredRecords);
+		assertEquals(60000, cleaner.getLag());
+	}
+
+	@Test
+	public void stopsAtDeadlineAndResumesInNextRun() throws Exception {
+		cleaner.setChunkSize(10);
+		Table table = new Table(25, new Date());
+
+		assertFalse(cleaner.cleanup(table, new Date(), 0, () -> false));
+		assertEquals(1, table.chunks.size());
+		assertFalse(cleaner.isCaughtUp());
+
+		assertTrue(cleaner.cleanup(table, new Date(), Long.MAX_VALUE, () -> false));
+		assertEquals(15, cleaner.getRowsDeletedLastRun());
+		assertEquals(25, cleaner.getTotalRowsDeleted());
+		assertTrue(cleaner.isCaughtUp());
+	}
+
+	@Test
+	public void pausesLongerWhenReceiversAreBusy() throws Exception {
+		cleaner.setChunkSize(10);
+		cleaner.setPause(1);
+		cleaner.setBusyPause(50);
+		Table table = new Table(30, null);
+		boolean[] busy = { true };
+
+		cleaner.cleanup(table, new Date(), Long.MAX_VALUE, () -> { busy[0] = !busy[0]; return !busy[0]; });
+		assertEquals("[50, 1, 50]", pauses.toString());
+	}
+
+	@Test
+	public void keepsErrorOfFailedRun() throws Exception {
+		cleaner.setChunkSize(10);
+		Table table = new Table(25, new Date()) {
+			private boolean firstChunk = true;
+
+			@Override
+			public int deleteExpired(int maxRows) {
+				if (!firstChunk) {
+					throw new IllegalStateException("deadlock");
+				}
+				firstChunk = false;
+				return super.deleteExpired(maxRows);
+			}
+		};
+
+		try {
+			cleaner.cleanup(table, new Date(), Long.MAX_VALUE, () -> false);
+			fail("expected cleanup to fail");
+		} catch (IllegalStateException e) {
+			assertEquals("deadlock", e.getMessage());
+		}
+		assertFalse(cleaner.isCaughtUp());
+		assertEquals(10, cleaner.getRowsDeletedLastRun());
+		assertEquals("IllegalStateException: deadlock", cleaner.getLastError());
+		assertTrue(cleaner.getStatus(), cleaner.getStatus().endsWith("failed: IllegalStateException: deadlock"));
+
+		assertTrue(cleaner.cleanup(new Table(5, null), new Date(), Long.MAX_VALUE, () -> false));
+		assertNull(cleaner.getLastError());
+		assertTrue(cleaner.getStatus(), cleaner.getStatus().endsWith("caught up"));
+	}
+}
@@ -0,0 +1,86 @@
+package nl.nn.adapterframework.senders;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.SenderException;
+import nl.nn.adapterframework.core.TimeOutException;
+import nl.nn.adapterframework.stream.Message;
+
+public class ParallelSendersTest extends SenderTestBase<ParallelSenders> {
+
+	private class SlowSender extends EchoSender {
+		private long delay;
+
+		SlowSender(String name, long delay) {
+			setName(name);
+			this.delay = delay;
+		}
+
+		@Override
+		public Message sendMessage(Message message, IPipeLineSession session) throws SenderException, TimeOutException {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				throw new SenderException(e);
+			}
+			return new Message(getName());
+		}
+	}
+
+	@Override
+	public ParallelSenders createSender() throws Exception {
+		ParallelSenders parallelSenders = new ParallelSenders();
+		parallelSenders.setName("parallelSenders");
+		parallelSenders.registerSender(new SlowSender("fast1", 0));
+		parallelSenders.registerSender(new SlowSender("fast2", 10));
+		parallelSenders.registerSender(new SlowSender("slow", 5000));
+		return parallelSenders;
+	}
+
+	@Test
+	public void testTimeout() throws Exception {
+		sender.setTimeout(1000);
+		sender.configure();
+		sender.open();
+
+		String result = sender.sendMessage(new Message("<dummy/>"), session).asString();
+		assertThat(result, containsString("senderName=\"fast1\" type=\"String\">fast1<"));
+		assertThat(result, containsString("senderName=\"fast2\" type=\"String\">fast2<"));
+		assertThat(result, containsString("senderName=\"slow\" type=\"timeout\""));
+	}
+
+	@Test
+	public void testQuorum() throws Exception {
+		sender.setQuorum(2);
+		sender.configure();
+		sender.open();
+
+		String result = sender.sendMessage(new Message("<dummy/>"), session).asString();
+		assertThat(result, containsString("senderName=\"fast1\" type=\"String\">fast1<"));
+		assertThat(result, containsString("senderName=\"fast2\" type=\"String\">fast2<"));
+		assertThat(result, containsString("senderName=\"slow\" type=\"incomplete\""));
+	}
+
+	@Test
+	public void testQueueFull() throws Exception {
+		sender = new ParallelSenders();
+		sender.setName("parallelSenders");
+		sender.registerSender(new SlowSender("slow", 5000));
+		sender.registerSender(new SlowSender("queued", 0));
+		sender.registerSender(new SlowSender("rejected", 0));
+		sender.setMaxConcurrentThreads(1);
+		sender.setQueueCapacity(1);
+		sender.setTimeout(1000);
+		sender.configure();
+		sender.open();
+
+		String result = sender.sendMessage(new Message("<dummy/>"), session).asString();
+		assertThat(result, containsString("senderName=\"slow\" type=\"timeout\""));
+		assertThat(result, containsString("senderName=\"queued\" type=\"timeout\""));
+		assertThat(result, containsString("senderName=\"rejected\" type=\"SenderException\""));
+	}
+}
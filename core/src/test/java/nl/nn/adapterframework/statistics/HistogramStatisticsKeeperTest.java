@@ -0,0 +1,115 @@
+package nl.nn.adapterframework.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class HistogramStatisticsKeeperTest {
+
+	@Test
+	public void testBucketIndexIsContinuous() {
+		int previous = HistogramStatisticsKeeper.bucketIndex(0);
+		for (long value=1; value<1000000; value++) {
+			int index = HistogramStatisticsKeeper.bucketIndex(value);
+			if (index!=previous) {
+				assertEquals("bucket index must increase by one at value ["+value+"]", previous+1, index);
+				assertEquals(value, HistogramStatisticsKeeper.lowestValueOfBucket(index));
+			}
+			previous = index;
+		}
+	}
+
+	@Test
+	public void testBasics() {
+		HistogramStatisticsKeeper sk = new HistogramStatisticsKeeper("test");
+		sk.addNanoValue(500000);
+		sk.addNanoValue(1500000);
+		sk.addValue(10);
+
+		assertEquals(3, sk.getCount());
+		assertEquals(0.5, (Double)sk.getItemValue(1), 0.0001);
+		assertEquals(10.0, (Double)sk.getItemValue(2), 0.0001);
+		assertEquals(4.0, sk.getAvg(), 0.0001);
+		assertEquals(12, sk.getTotal());
+		assertEquals(0.5, (Double)sk.getItemValue(6), 0.0001);
+		assertEquals(10.0, (Double)sk.getItemValue(7), 0.0001);
+	}
+
+	@Test
+	public void testEmpty() {
+		HistogramStatisticsKeeper sk = new HistogramStatisticsKeeper("test");
+		assertEquals(0L, sk.getItemValue(0));
+		for (int i=1; i<sk.getItemCount(); i++) {
+			assertNull(sk.getItemValue(i));
+		}
+	}
+
+	@Test
+	public void testPercentiles() {
+		HistogramStatisticsKeeper sk = new HistogramStatisticsKeeper("test");
+		for (int i=1; i<=1000; i++) {
+			sk.addValue(i);
+		}
+		// documented precision: at most 1/64 of the exact value
+		assertEquals(500.0, sk.getPercentile(50)/1000000, 500/64.0);
+		assertEquals(900.0, sk.getPercentile(90)/1000000, 900/64.0);
+		assertEquals(990.0, sk.getPercentile(99)/1000000, 990/64.0);
+		assertEquals(1000.0, sk.getPercentile(100)/1000000, 0.0001);
+		assertEquals(1.0, sk.getPercentile(0)/1000000, 0.02);
+	}
+
+	@Test
+	public void testIntervalAfterMark() {
+		HistogramStatisticsKeeper sk = new HistogramStatisticsKeeper("test");
+		sk.addValue(100);
+		sk.performAction(HasStatistics.STATISTICS_ACTION_MARK_FULL);
+		assertEquals(0L, sk.getIntervalItemValue(0));
+		assertNull(sk.getIntervalItemValue(1));
+
+		sk.addValue(20);
+		sk.addValue(30);
+		assertEquals(2L, sk.getIntervalItemValue(0));
+		assertEquals(20.0, (Double)sk.getIntervalItemValue(1), 0.0001);
+		assertEquals(30.0, (Double)sk.getIntervalItemValue(2), 0.0001);
+		assertEquals(25.0, (Double)sk.getIntervalItemValue(3), 0.0001);
+		assertEquals(50L, sk.getIntervalItemValue(4));
+		assertEquals(3, sk.getCount());
+
+		sk.performAction(HasStatistics.STATISTICS_ACTION_RESET);
+		assertEquals(0, sk.getCount());
+		assertEquals(0L, sk.getIntervalItemValue(0));
+	}
+
+	@Test
+	public void testConcurrentUpdates() throws Exception {
+		final HistogramStatisticsKeeper sk = new HistogramStatisticsKeeper("test");
+		final int threadCount = 8;
+		final int valuesPerThread = 10000;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t=0; t<threadCount; t++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int i=0; i<valuesPerThread; i++) {
+						sk.addNanoValue(i);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread:threads) {
+			thread.join();
+		}
+		assertEquals(threadCount*valuesPerThread, sk.getCount());
+		long classTotal = 0;
+		for (long classCount:sk.getClassCounts()) {
+			classTotal = Math.max(classTotal, classCount);
+		}
+		assertEquals(threadCount*valuesPerThread, classTotal);
+	}
+}
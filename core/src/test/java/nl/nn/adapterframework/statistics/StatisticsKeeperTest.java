@@ -0,0 +1,43 @@
+package nl.nn.adapterframework.statistics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class StatisticsKeeperTest {
+
+	@Test
+	public void testConcurrentUpdatesOfDurationStatisticsKeeper() throws Exception {
+		final StatisticsKeeper sk = StatisticsKeeper.createDurationStatisticsKeeper("test");
+		assertFalse("histograms must be opt-in", sk instanceof HistogramStatisticsKeeper);
+		final int threadCount = 8;
+		final int valuesPerThread = 10000;
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t=0; t<threadCount; t++) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					for (int i=0; i<valuesPerThread; i++) {
+						sk.addValue(i%10);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread:threads) {
+			thread.join();
+		}
+		assertEquals(threadCount*valuesPerThread, sk.getCount());
+		assertEquals(threadCount*valuesPerThread*4.5, sk.getTotal(), 0);
+		assertEquals(0, sk.getMin());
+		assertEquals(9, sk.getMax());
+		for (long classCount:sk.getClassCounts()) {
+			assertEquals(threadCount*valuesPerThread, classCount);
+		}
+	}
+}
@@ -18,6 +18,7 @@ package nl.nn.adapterframework.stream;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -33,6 +34,7 @@ import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -43,6 +45,8 @@ import org.xml.sax.SAXException;
 
 import static org.hamcrest.core.StringStartsWith.startsWith;
 
+import nl.nn.adapterframework.core.IPipeLineSession;
+import nl.nn.adapterframework.core.PipeLineSessionBase;
 import nl.nn.adapterframework.testutil.SerializationTester;
 import nl.nn.adapterframework.util.StreamUtil;
 import nl.nn.adapterframework.util.XmlUtils;
@@ -752,4 +756,190 @@ public class MessageTest {
 		Message message = null;
 		assertTrue(Message.isEmpty(message));
 	}
+
+	@Test
+	public void testPreserveInputStreamAboveSpillThreshold() throws Exception {
+		long threshold = Message.getSpillThreshold();
+		Message.setSpillThreshold(10);
+		try {
+			Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")), "UTF-8");
+			message.preserve();
+			assertNotNull(message.getSpilledContent());
+			assertTrue(message.isBinary());
+			assertTrue(message.isRepeatable());
+			assertEquals(testString.getBytes("UTF-8").length, message.size());
+			assertEquals(testString, message.asString());
+			assertEquals(testString, StreamUtil.streamToString(message.asInputStream(), null, "UTF-8"));
+			Object object = message.asObject();
+			assertTrue(object instanceof InputStream);
+			assertEquals(testString, StreamUtil.streamToString((InputStream)object, null, "UTF-8"));
+
+			Path file = message.getSpilledContent().getFile();
+			message.close();
+			assertFalse(Files.exists(file));
+		} finally {
+			Message.setSpillThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void testPreserveReaderAboveSpillThreshold() throws Exception {
+		long threshold = Message.getSpillThreshold();
+		Message.setSpillThreshold(10);
+		try {
+			Message message = new Message(new StringReader(testString));
+			message.preserve();
+			assertNotNull(message.getSpilledContent());
+			assertFalse(message.isBinary());
+			assertEquals(testString.length(), message.size());
+			assertEquals(testString, StreamUtil.readerToString(message.asReader(), null));
+			assertEquals(testString, StreamUtil.readerToString(message.asReader(), null));
+			assertEquals(testString, new String(message.asByteArray("UTF-16"), "UTF-16"));
+			Object object = message.asObject();
+			assertTrue(object instanceof Reader);
+			assertEquals(testString, StreamUtil.readerToString((Reader)object, null));
+			message.close();
+		} finally {
+			Message.setSpillThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void testPreserveBelowSpillThreshold() throws Exception {
+		long threshold = Message.getSpillThreshold();
+		Message.setSpillThreshold(testString.length());
+		try {
+			Message message = new Message(new StringReader(testString));
+			message.preserve();
+			assertEquals(testString, message.asObject());
+		} finally {
+			Message.setSpillThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void testSpilledContentKeptUntilSessionClosed() throws Exception {
+		long threshold = Message.getSpillThreshold();
+		Message.setSpillThreshold(10);
+		try {
+			Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")));
+			message.preserve();
+			Path file = message.getSpilledContent().getFile();
+			IPipeLineSession session = new PipeLineSessionBase();
+			message.closeOnCloseOf(session);
+
+			message.close();
+			assertTrue(Files.exists(file));
+			session.closeAll();
+			assertFalse(Files.exists(file));
+		} finally {
+			Message.setSpillThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void testSpilledContentDeletedWhenSessionClosed() throws Exception {
+		long threshold = Message.getSpillThreshold();
+		Message.setSpillThreshold(10);
+		try {
+			Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")));
+			message.preserve();
+			Path file = message.getSpilledContent().getFile();
+			PipeLineSessionBase session = new PipeLineSessionBase();
+			message.closeOnCloseOf(session);
+
+			assertEquals(testString, message.asString());
+			session.closeAll();
+			assertFalse(Files.exists(file));
+		} finally {
+			Message.setSpillThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void testSpilledContentRegisteredTwiceWithSameSession() throws Exception {
+		long threshold = Message.getSpillThreshold();
+		Message.setSpillThreshold(10);
+		try {
+			Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")));
+			message.preserve();
+			Path file = message.getSpilledContent().getFile();
+			PipeLineSessionBase session = new PipeLineSessionBase();
+			message.closeOnCloseOf(session);
+			message.closeOnCloseOf(session);
+
+			session.closeAll();
+			assertFalse(Files.exists(file));
+		} finally {
+			Message.setSpillThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void testWrappedSpilledContentIsNotKept() throws Exception {
+		long threshold = Message.getSpillThreshold();
+		Message.setSpillThreshold(10);
+		try {
+			Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")));
+			message.preserve();
+			Path file = message.getSpilledContent().getFile();
+			Message wrapper = Message.asMessage(message.asObject());
+			assertNull(wrapper.getSpilledContent());
+			wrapper.close();
+
+			message.close();
+			assertFalse(Files.exists(file));
+		} finally {
+			Message.setSpillThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void testSpilledContentKeptAfterSessionExit() throws Exception {
+		long threshold = Message.getSpillThreshold();
+		Message.setSpillThreshold(10);
+		try {
+			Message message = new Message(new ByteArrayInputStream(testString.getBytes("UTF-8")));
+			message.preserve();
+			Path file = message.getSpilledContent().getFile();
+			PipeLineSessionBase session = new PipeLineSessionBase();
+			message.closeOnCloseOf(session);
+
+			message.keepAfterSessionExit(); // e.g. because it is the result of the pipeline
+			session.closeAll();
+			assertTrue(Files.exists(file));
+			assertEquals(testString, message.asString());
+
+			message.close();
+			assertFalse(Files.exists(file));
+		} finally {
+			Message.setSpillThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void testSerializeSpilledContent() throws Exception {
+		long threshold = Message.getSpillThreshold();
+		Message.setSpillThreshold(10);
+		try {
+			Message in = new Message(new StringReader(testString));
+			in.preserve();
+
+			byte[] wire = serializationTester.serialize(in);
+			assertNotNull(in.getSpilledContent());
+			Message out = serializationTester.deserialize(wire);
+
+			assertNotNull(out.getSpilledContent());
+			assertFalse(out.isBinary());
+			assertEquals(testString.length(), out.size());
+			assertEquals(testString, StreamUtil.readerToString(out.asReader(), null));
+
+			Path file = out.getSpilledContent().getFile();
+			out.close();
+			assertFalse(Files.exists(file));
+			in.close();
+		} finally {
+			Message.setSpillThreshold(threshold);
+		}
+	}
 }
@@ -0,0 +1,45 @@
+package nl.nn.adapterframework.task;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TimeoutGuardTest {
+
+	@Test
+	public void testAbortIsExecutedByGuardingScheduler() throws Exception {
+		TimeoutScheduler applicationScheduler = TimeoutScheduler.getRunningInstance();
+		TimeoutScheduler scheduler = new TimeoutScheduler(10, 8);
+		CountDownLatch aborted = new CountDownLatch(1);
+		String[] abortThread = new String[1];
+		TimeoutGuard guard = new TimeoutGuard("test") {
+			@Override
+			protected void abort() {
+				abortThread[0] = Thread.currentThread().getName();
+				aborted.countDown();
+			}
+		};
+		Thread guarded = new Thread(() -> {
+			guard.activateGuard(1, scheduler);
+			try {
+				Thread.sleep(10000);
+			} catch (InterruptedException e) {
+				// interrupted by the guard
+			}
+		});
+		try {
+			guarded.start();
+			assertTrue("task was not aborted", aborted.await(5, TimeUnit.SECONDS));
+			guarded.join(5000);
+			assertTrue(guard.threadKilled());
+			assertTrue(abortThread[0], abortThread[0].startsWith("TimeoutScheduler-task-"));
+			assertSame("no application wide scheduler must be started", applicationScheduler, TimeoutScheduler.getRunningInstance());
+		} finally {
+			scheduler.stop();
+		}
+	}
+}
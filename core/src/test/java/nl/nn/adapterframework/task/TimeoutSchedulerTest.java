@@ -0,0 +1,161 @@
+package nl.nn.adapterframework.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import nl.nn.adapterframework.statistics.HasStatistics;
+import nl.nn.adapterframework.statistics.StatisticsKeeperIterationHandler;
+
+public class TimeoutSchedulerTest {
+
+	@Test
+	public void testTaskFires() throws Exception {
+		TimeoutScheduler scheduler = new TimeoutScheduler(10, 8);
+		CountDownLatch latch = new CountDownLatch(1);
+		TimeoutScheduler.Timeout timeout = scheduler.schedule(latch::countDown, 50);
+
+		assertTrue("task did not fire", latch.await(2, TimeUnit.SECONDS));
+		assertTrue(timeout.isExpired());
+		assertFalse(timeout.cancel());
+		assertEquals(1, scheduler.getArmedCount());
+		assertEquals(1, scheduler.getFiredCount());
+		assertEquals(0, scheduler.getCancelledCount());
+		assertEquals(0, scheduler.getPendingCount());
+	}
+
+	@Test
+	public void testTaskFiresAfterMultipleRounds() throws Exception {
+		TimeoutScheduler scheduler = new TimeoutScheduler(10, 4);
+		CountDownLatch latch = new CountDownLatch(1);
+		long start = System.currentTimeMillis();
+		scheduler.schedule(latch::countDown, 200);
+
+		assertTrue("task did not fire", latch.await(2, TimeUnit.SECONDS));
+		assertTrue("task fired too early", System.currentTimeMillis()-start >= 190);
+	}
+
+	@Test
+	public void testCancelledTaskDoesNotFire() throws Exception {
+		TimeoutScheduler scheduler = new TimeoutScheduler(10, 8);
+		CountDownLatch latch = new CountDownLatch(1);
+		TimeoutScheduler.Timeout timeout = scheduler.schedule(latch::countDown, 50);
+
+		assertTrue(timeout.cancel());
+		assertFalse(timeout.cancel());
+		assertFalse("cancelled task fired", latch.await(200, TimeUnit.MILLISECONDS));
+		assertTrue(timeout.isCancelled());
+		assertEquals(1, scheduler.getArmedCount());
+		assertEquals(0, scheduler.getFiredCount());
+		assertEquals(1, scheduler.getCancelledCount());
+		assertEquals(0, scheduler.getPendingCount());
+	}
+
+	@Test
+	public void testTimeoutGuardInterruptsThread() throws Exception {
+		TimeoutGuard tg = new TimeoutGuard(1, "testTimeoutGuardInterruptsThread");
+		try {
+			Thread.sleep(3000);
+		} catch (InterruptedException e) {
+			// expected
+		}
+		assertTrue(tg.cancel());
+		assertTrue(tg.threadKilled());
+	}
+
+	@Test
+	public void testTimeoutGuardCancelled() throws Exception {
+		TimeoutGuard tg = new TimeoutGuard(1, "testTimeoutGuardCancelled");
+		assertFalse(tg.cancel());
+		Thread.sleep(1500);
+		assertFalse(Thread.interrupted());
+		assertFalse(tg.threadKilled());
+	}
+
+	@Test
+	public void testStop() throws Exception {
+		TimeoutScheduler scheduler = new TimeoutScheduler(10, 8);
+		CountDownLatch latch = new CountDownLatch(1);
+		scheduler.schedule(latch::countDown, 200);
+		assertTrue(scheduler.isRunning());
+
+		scheduler.stop();
+		assertFalse(scheduler.isRunning());
+		assertFalse("task fired after stop", latch.await(400, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testShutdownApplicationWideInstance() throws Exception {
+		TimeoutScheduler scheduler = TimeoutScheduler.getInstance();
+		TimeoutScheduler.shutdown();
+		assertFalse(scheduler.isRunning());
+		assertNull(TimeoutScheduler.getRunningInstance());
+
+		TimeoutScheduler restarted = TimeoutScheduler.getInstance();
+		assertNotSame(scheduler, restarted);
+		assertTrue(restarted.isRunning());
+	}
+
+	@Test
+	public void testBlockingAbortDoesNotDelayOtherTimeouts() throws Exception {
+		CountDownLatch abortStarted = new CountDownLatch(1);
+		CountDownLatch releaseAbort = new CountDownLatch(1);
+		TimeoutGuard blocking = new TimeoutGuard("blocking") {
+			@Override
+			protected void abort() {
+				abortStarted.countDown();
+				try {
+					releaseAbort.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		try {
+			blocking.activateGuard(1);
+			assertTrue("abort not called", abortStarted.await(3, TimeUnit.SECONDS));
+			Thread.interrupted(); // clear interrupt of the guard
+
+			CountDownLatch latch = new CountDownLatch(1);
+			TimeoutScheduler.getInstance().schedule(latch::countDown, 50);
+			assertTrue("timeout delayed by blocking abort", latch.await(2, TimeUnit.SECONDS));
+		} finally {
+			releaseAbort.countDown();
+			blocking.cancel();
+		}
+	}
+
+	@Test
+	public void testStatistics() throws Exception {
+		TimeoutScheduler scheduler = new TimeoutScheduler(10, 8);
+		try {
+			scheduler.schedule(() -> {}, 10000).cancel();
+			scheduler.schedule(() -> {}, 10000);
+
+			StatisticsKeeperIterationHandler hski = mock(StatisticsKeeperIterationHandler.class);
+			Object group = new Object();
+			when(hski.openGroup(any(), anyString(), anyString())).thenReturn(group);
+			scheduler.iterateOverStatistics(hski, null, HasStatistics.STATISTICS_ACTION_FULL);
+
+			verify(hski).handleScalar(group, "armed", 2L);
+			verify(hski).handleScalar(group, "fired", 0L);
+			verify(hski).handleScalar(group, "cancelled", 1L);
+			verify(hski).handleScalar(group, "pending", 1L);
+			verify(hski).closeGroup(group);
+		} finally {
+			scheduler.stop();
+		}
+	}
+}
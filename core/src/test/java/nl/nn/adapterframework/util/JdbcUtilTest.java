@@ -1,12 +1,17 @@
 package nl.nn.adapterframework.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.util.List;
+import java.util.zip.Deflater;
 
 import org.junit.After;
 import org.junit.Before;
@@ -14,11 +19,13 @@ import org.junit.Test;
 import org.xml.sax.SAXException;
 
 import nl.nn.adapterframework.jdbc.JdbcException;
+import nl.nn.adapterframework.jdbc.MessageBlobFormat;
 import nl.nn.adapterframework.jdbc.dbms.DbmsSupportFactory;
 import nl.nn.adapterframework.jdbc.dbms.IDbmsSupport;
 import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.parameters.ParameterValueList;
 import nl.nn.adapterframework.parameters.SimpleParameter;
+import nl.nn.adapterframework.stream.Message;
 import nl.nn.adapterframework.testutil.MatchUtils;
 import nl.nn.adapterframework.testutil.TestFileUtils;
 import nl.nn.adapterframework.xml.PrettyPrintFilter;
@@ -93,6 +100,49 @@ public class JdbcUtilTest {
 		assertEquals(5, result);
 	}
 
+	private String storeAndSmartGet(MessageBlobFormat format, Object message, boolean listenerBlobsCompressed) throws Exception {
+		try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO TEMPBLOB (TKEY, TBLOB) VALUES (?, ?)")) {
+			stmt.setInt(1, 1);
+			stmt.setBytes(2, format.toByteArray(message));
+			stmt.execute();
+		}
+		try (PreparedStatement stmt = connection.prepareStatement("SELECT TBLOB FROM TEMPBLOB WHERE TKEY = 1")) {
+			try (ResultSet rs = stmt.executeQuery()) {
+				rs.next();
+				return JdbcUtil.getBlobAsString(dbmsSupport, rs, "TBLOB", null, listenerBlobsCompressed, true, false);
+			}
+		} finally {
+			JdbcUtil.executeStatement(connection, "DELETE FROM TEMPBLOB");
+		}
+	}
+
+	@Test
+	public void testSmartGetCompactBlob() throws Exception {
+		// the way MessageStoreSender stores messages with blobFormat=compact, and MessageStoreListener reads them
+		connection.createStatement().execute("CREATE TABLE TEMPBLOB(TKEY INT PRIMARY KEY, TBLOB "+dbmsSupport.getBlobFieldType()+")");
+		try {
+			String message = "<message>€ éèë</message>";
+			MessageBlobFormat compressed = new MessageBlobFormat(MessageBlobFormat.Codec.DEFLATE, Deflater.BEST_SPEED);
+			MessageBlobFormat uncompressed = new MessageBlobFormat(MessageBlobFormat.Codec.NONE, 0);
+			assertEquals(message, storeAndSmartGet(compressed, message, true));
+			assertEquals(message, storeAndSmartGet(compressed, message, false));
+			assertEquals(message, storeAndSmartGet(uncompressed, message, true));
+			assertEquals(message, storeAndSmartGet(uncompressed, message, false));
+			assertEquals(message, storeAndSmartGet(compressed, new Message(message), true));
+		} finally {
+			connection.createStatement().execute("DROP TABLE TEMPBLOB");
+		}
+	}
+
+	@Test
+	public void testSmartGetFallsBackWhenCompactBlobCannotBeRead() throws Exception {
+		// content that starts like a compact blob header, but has a payload that cannot be inflated
+		byte[] blob = { 'I', 'B', 'S', 1, 1, 1, 'p', 'l', 'a', 'i', 'n', ' ', 't', 'e', 'x', 't' };
+		String result = JdbcUtil.getBlobAsString(new ByteArrayInputStream(blob), "TBLOB", "UTF-8", true, false);
+		assertTrue(result, result.startsWith("IBS"));
+		assertTrue(result, result.endsWith("plain text"));
+	}
+
 	@Test
 	public void testWarningsToString() {
 		String expected = getExpectedWarningXml();
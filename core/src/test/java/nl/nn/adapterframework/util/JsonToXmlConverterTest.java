@@ -0,0 +1,44 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+
+import org.junit.Test;
+
+import nl.nn.adapterframework.xml.XmlWriter;
+
+public class JsonToXmlConverterTest {
+
+	private String convert(String json, boolean addRootElement, int maxBufferSize) throws Exception {
+		XmlWriter xmlWriter = new XmlWriter();
+		JsonToXmlConverter converter = new JsonToXmlConverter(xmlWriter, addRootElement);
+		converter.setMaxBufferSize(maxBufferSize);
+		converter.convert(new StringReader(json));
+		return xmlWriter.toString();
+	}
+
+	@Test
+	public void testSingleRootElementInMemory() throws Exception {
+		String json = "{\"a\":{\"b\":\"text with spaces\",\"c\":[1,2]}}";
+		assertEquals("<a><b>text with spaces</b><c>1</c><c>2</c></a>", convert(json, true, JsonToXmlConverter.DEFAULT_MAX_BUFFER_SIZE));
+	}
+
+	@Test
+	public void testSingleRootElementSpilledToFile() throws Exception {
+		String json = "{\"a\":{\"b\":\"text with spaces\",\"c\":[1,2]}}";
+		assertEquals("<a><b>text with spaces</b><c>1</c><c>2</c></a>", convert(json, true, 5));
+	}
+
+	@Test
+	public void testWrappedAfterSpillToFile() throws Exception {
+		String json = "{\"a\":{\"b\":\"text with spaces\",\"c\":[1,2]},\"d\":\"x\"}";
+		assertEquals("<root><a><b>text with spaces</b><c>1</c><c>2</c></a><d>x</d></root>", convert(json, true, 5));
+	}
+
+	@Test
+	public void testWithoutRootElementNothingIsBuffered() throws Exception {
+		String json = "{\"a\":\"1\",\"b\":\"2\"}";
+		assertEquals("<a>1</a><b>2</b>", convert(json, false, 0));
+	}
+}
@@ -0,0 +1,128 @@
+package nl.nn.adapterframework.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.transform.Templates;
+import javax.xml.transform.TransformerConfigurationException;
+
+import org.junit.Test;
+
+public class TemplatesCacheTest {
+
+	private TemplatesCache cache = new TemplatesCache(true);
+	private AtomicInteger compilations = new AtomicInteger();
+
+	private Templates compile() {
+		compilations.incrementAndGet();
+		return mock(Templates.class);
+	}
+
+	@Test
+	public void sameContentIsCompiledOnce() throws Exception {
+		Templates templates1 = cache.getTemplates("hash", 10, "sysId", 2, null, this::compile);
+		Templates templates2 = cache.getTemplates("hash", 10, "sysId", 2, null, this::compile);
+		assertSame(templates1, templates2);
+		assertEquals(1, compilations.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(10, cache.getContentSize());
+	}
+
+	@Test
+	public void keyContainsVersionSysIdAndClassLoader() throws Exception {
+		ClassLoader classLoader = new URLClassLoader(new URL[0]);
+		Templates templates = cache.getTemplates("hash", 10, null, 1, null, this::compile);
+		assertNotSame(templates, cache.getTemplates("hash", 10, null, 2, null, this::compile));
+		assertNotSame(templates, cache.getTemplates("hash", 10, "sysId", 1, null, this::compile));
+		assertNotSame(templates, cache.getTemplates("hash", 10, null, 1, classLoader, this::compile));
+		assertNotSame(templates, cache.getTemplates("otherHash", 10, null, 1, null, this::compile));
+		assertEquals(5, compilations.get());
+		assertEquals(5, cache.size());
+	}
+
+	@Test
+	public void releaseRemovesEntriesOfClassLoader() throws Exception {
+		ClassLoader classLoader = new URLClassLoader(new URL[0]);
+		cache.getTemplates("hash1", 10, null, 2, classLoader, this::compile);
+		cache.getTemplates("hash2", 10, null, 2, classLoader, this::compile);
+		cache.getTemplates("hash1", 10, null, 2, null, this::compile);
+		cache.release(classLoader);
+		assertEquals(1, cache.size());
+		cache.getTemplates("hash1", 10, null, 2, classLoader, this::compile);
+		assertEquals(4, compilations.get());
+	}
+
+	@Test
+	public void failedCompilationIsNotCached() throws Exception {
+		try {
+			cache.getTemplates("hash", 10, null, 2, null, () -> { throw new TransformerConfigurationException("invalid stylesheet"); });
+			fail("expected TransformerConfigurationException");
+		} catch (TransformerConfigurationException e) {
+			assertEquals("invalid stylesheet", e.getMessage());
+		}
+		assertEquals(0, cache.size());
+		cache.getTemplates("hash", 10, null, 2, null, this::compile);
+		assertEquals(1, compilations.get());
+	}
+
+	@Test
+	public void disabledCacheAlwaysCompiles() throws Exception {
+		cache = new TemplatesCache(false);
+		cache.getTemplates("hash", 10, null, 2, null, this::compile);
+		cache.getTemplates("hash", 10, null, 2, null, this::compile);
+		assertEquals(2, compilations.get());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void concurrentRequestsWaitForSingleCompilation() throws Exception {
+		CountDownLatch compiling = new CountDownLatch(1);
+		CountDownLatch proceed = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<Templates> first = executor.submit(() -> cache.getTemplates("hash", 10, null, 2, null, () -> {
+				compiling.countDown();
+				try {
+					proceed.await();
+				} catch (InterruptedException e) {
+					throw new TransformerConfigurationException(e);
+				}
+				return compile();
+			}));
+			compiling.await();
+			Future<Templates> second = executor.submit(() -> cache.getTemplates("hash", 10, null, 2, null, this::compile));
+			// other stylesheets are not blocked by the running compilation
+			cache.getTemplates("otherHash", 10, null, 2, null, this::compile);
+			proceed.countDown();
+			assertSame(first.get(10, TimeUnit.SECONDS), second.get(10, TimeUnit.SECONDS));
+			assertEquals(2, compilations.get());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void transformerPoolsShareTemplates() throws Exception {
+		TemplatesCache.getInstance().clear();
+		String xpathEvaluatorSource = XmlUtils.createXPathEvaluatorSource("root/message");
+		TransformerPool transformerPool1 = TransformerPool.getInstance(xpathEvaluatorSource, 2);
+		long misses = TemplatesCache.getInstance().getMisses();
+		TransformerPool transformerPool2 = TransformerPool.getInstance(xpathEvaluatorSource, 2);
+		assertNotSame(transformerPool1, transformerPool2);
+		assertEquals(misses, TemplatesCache.getInstance().getMisses());
+		assertEquals("hello", transformerPool2.transform("<root><message>hello</message></root>", null));
+	}
+}
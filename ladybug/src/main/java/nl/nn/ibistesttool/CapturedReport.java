@@ -0,0 +1,222 @@
+/*
+   Copyright 2020 WeAreFrank!
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+*/
+package nl.nn.ibistesttool;
+
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.nn.testtool.Report;
+import nl.nn.testtool.TestTool;
+
+/**
+ * State of the report for a correlationId, kept by the {@link Debugger} while the pipeline is running.
+ * <p>
+ * When the report is buffered, the checkpoints are collected here instead of being passed to the {@link TestTool} directly.
+ * After the pipeline has ended, they are {@link #replay(TestTool) replayed} on a background thread. Checkpoints of child threads
+ * are collected per thread, and replayed at the position where the thread was created.
+ * <p>
+ * The TestTool creates the report when the first checkpoint is replayed. Its start time is then set to the time the report
+ * was captured. The end time is set by the TestTool when the report is closed, so for reports that are written in the background
+ * it includes the time the report waited in the queue.
+ */
+class CapturedReport {
+
+	static final int START = 0;
+	static final int END = 1;
+	static final int ABORT = 2;
+	static final int INPUT = 3;
+	static final int OUTPUT = 4;
+	static final int INFO = 5;
+	private static final int CREATE_THREAD = 6;
+
+	private static class Checkpoint {
+		final int type;
+		final String sourceClassName;
+		final String name;
+		final Object value;
+
+		Checkpoint(int type, String sourceClassName, String name, Object value) {
+			this.type = type;
+			this.sourceClassName = sourceClassName;
+			this.name = name;
+			this.value = value;
+		}
+
+		Object getValue() {
+			// streams are captured while they are read, their contents are known only after the pipeline has ended
+			return value instanceof StringWriter ? value.toString() : value;
+		}
+	}
+
+	private final String correlationId;
+	private final boolean captured;
+	private final boolean buffered;
+	private final long startTime = System.currentTimeMillis();
+	private long endTime;
+	private int depth;
+	private boolean error;
+	private boolean closed;
+
+	private final List<Checkpoint> checkpoints = new ArrayList<Checkpoint>();
+	private final Map<String, List<Checkpoint>> threadCheckpoints = new HashMap<String, List<Checkpoint>>();
+	private final Map<Thread, String> activeThreads = new HashMap<Thread, String>();
+
+	CapturedReport(String correlationId, boolean captured, boolean buffered) {
+		this.correlationId = correlationId;
+		this.captured = captured;
+		this.buffered = buffered;
+	}
+
+	/**
+	 * Returns <code>false</code> when the report is not sampled, and no checkpoints must be reported.
+	 */
+	boolean isCaptured() {
+		return captured;
+	}
+
+	boolean isBuffered() {
+		return buffered;
+	}
+
+	synchronized void enter() {
+		depth++;
+	}
+
+	/**
+	 * Returns <code>true</code> when the outermost pipeline of the report has ended.
+	 */
+	synchronized boolean exit() {
+		return --depth<=0;
+	}
+
+	synchronized void setError() {
+		error = true;
+	}
+
+	synchronized boolean isError() {
+		return error;
+	}
+
+	/**
+	 * Stops collecting checkpoints. Checkpoints of child threads that have not finished yet are ignored.
+	 */
+	synchronized void close() {
+		closed = true;
+		endTime = System.currentTimeMillis();
+	}
+
+	long getStartTime() {
+		return startTime;
+	}
+
+	synchronized long getDuration() {
+		return endTime-startTime;
+	}
+
+	synchronized void add(int type, String sourceClassName, String name, Object value) {
+		if (closed) {
+			return;
+		}
+		if (type==ABORT) {
+			error = true;
+		}
+		String threadId = activeThreads.get(Thread.currentThread());
+		List<Checkpoint> target = threadId==null ? checkpoints : threadCheckpoints.get(threadId);
+		target.add(new Checkpoint(type, sourceClassName, name, value));
+	}
+
+	synchronized void createThread(String threadId) {
+		add(CREATE_THREAD, null, threadId, null);
+	}
+
+	synchronized void startThread(String threadId, String sourceClassName, String name, Object input) {
+		if (closed) {
+			return;
+		}
+		threadCheckpoints.put(threadId, new ArrayList<Checkpoint>());
+		activeThreads.put(Thread.currentThread(), threadId);
+		add(START, sourceClassName, name, input);
+	}
+
+	synchronized void endThread(int type, String sourceClassName, String name, Object output) {
+		add(type, sourceClassName, name, output);
+		activeThreads.remove(Thread.currentThread());
+	}
+
+	/**
+	 * Passes the collected checkpoints to the TestTool. Must only be called after the report has been {@link #close() closed}.
+	 */
+	void replay(TestTool testTool) {
+		replay(testTool, checkpoints);
+	}
+
+	private void setOriginalStartTime(TestTool testTool) {
+		Report report = testTool.getReportInProgress(correlationId);
+		if (report!=null) {
+			report.setStartTime(startTime);
+		}
+	}
+
+	private void replay(TestTool testTool, List<Checkpoint> checkpoints) {
+		Deque<Checkpoint> open = new ArrayDeque<Checkpoint>();
+		for (Checkpoint checkpoint: checkpoints) {
+			switch (checkpoint.type) {
+			case START:
+				testTool.startpoint(correlationId, checkpoint.sourceClassName, checkpoint.name, checkpoint.getValue());
+				if (checkpoint==this.checkpoints.get(0)) {
+					setOriginalStartTime(testTool);
+				}
+				open.push(checkpoint);
+				break;
+			case END:
+				testTool.endpoint(correlationId, checkpoint.sourceClassName, checkpoint.name, checkpoint.getValue());
+				open.poll();
+				break;
+			case ABORT:
+				testTool.abortpoint(correlationId, checkpoint.sourceClassName, checkpoint.name, checkpoint.getValue());
+				open.poll();
+				break;
+			case INPUT:
+				testTool.inputpoint(correlationId, checkpoint.sourceClassName, checkpoint.name, checkpoint.getValue());
+				break;
+			case OUTPUT:
+				testTool.outputpoint(correlationId, checkpoint.sourceClassName, checkpoint.name, checkpoint.getValue());
+				break;
+			case INFO:
+				testTool.infopoint(correlationId, checkpoint.sourceClassName, checkpoint.name, checkpoint.getValue());
+				break;
+			case CREATE_THREAD:
+				List<Checkpoint> childCheckpoints = threadCheckpoints.get(checkpoint.name);
+				if (childCheckpoints!=null) {
+					replay(testTool, childCheckpoints);
+				}
+				break;
+			default:
+				throw new IllegalStateException("unknown checkpoint type ["+checkpoint.type+"]");
+			}
+		}
+		// close the levels of threads that had not finished when the report was closed
+		while (!open.isEmpty()) {
+			Checkpoint checkpoint = open.pop();
+			testTool.abortpoint(correlationId, checkpoint.sourceClassName, checkpoint.name, "not finished when the report was closed");
+		}
+	}
+}
@@ -15,12 +15,26 @@
 */
 package nl.nn.ibistesttool;
 
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.context.ApplicationListener;
@@ -36,6 +50,7 @@ import nl.nn.adapterframework.core.PipeLine;
 import nl.nn.adapterframework.core.PipeLineSessionBase;
 import nl.nn.adapterframework.parameters.Parameter;
 import nl.nn.adapterframework.stream.Message;
+import nl.nn.adapterframework.util.LogUtil;
 import nl.nn.adapterframework.webcontrol.api.DebuggerStatusChangedEvent;
 import nl.nn.testtool.Checkpoint;
 import nl.nn.testtool.Report;
@@ -44,9 +59,19 @@ import nl.nn.testtool.TestTool;
 import nl.nn.testtool.run.ReportRunner;
 
 /**
+ * Reports the events of the {@link IbisDebuggerAdvice} to the {@link TestTool}.
+ * <p>
+ * To limit the overhead in production, the capture policy can be configured with the <code>ibistesttool.capture.*</code> properties:
+ * only one in <code>sampleRate</code> reports is captured, reports that are faster than <code>latencyThreshold</code> milliseconds
+ * and have no errors are discarded, and payloads larger than <code>maxPayloadSize</code> are truncated or hashed. When a latency threshold
+ * is set or <code>asynchronous</code> is enabled, the checkpoints are buffered until the pipeline has ended. Asynchronous reports are
+ * written by a background thread; when its queue of <code>queueCapacity</code> reports is full, reports are dropped and counted.
+ * When the Debugger is destroyed, the background thread writes the reports that are still queued, and stops.
+ * Reruns are always captured, and reported directly.
+ *
  * @author Jaco de Groot
  */
-public class Debugger implements IbisDebugger, nl.nn.testtool.Debugger, ApplicationListener<DebuggerStatusChangedEvent>, ApplicationEventPublisherAware {
+public class Debugger implements IbisDebugger, nl.nn.testtool.Debugger, ApplicationListener<DebuggerStatusChangedEvent>, ApplicationEventPublisherAware, DisposableBean {
 	private static final String STUB_STRATEY_STUB_ALL_SENDERS = "Stub all senders";
 	protected static final String STUB_STRATEY_NEVER = "Never";
 	private static final String STUB_STRATEY_ALWAYS = "Always";
@@ -59,6 +84,24 @@ public class Debugger implements IbisDebugger, nl.nn.testtool.Debugger, Applicat
 	protected Set<String> inRerun = new HashSet<String>();
 	private ApplicationEventPublisher applicationEventPublisher;
 
+	private static final int DEFAULT_CAPTURE_SIZE = 10000;
+	private static final long WRITER_STOP_TIMEOUT = 10000;
+	protected Logger log = LogUtil.getLogger(this);
+
+	private int sampleRate = 1;
+	private long latencyThreshold = 0;
+	private int maxPayloadSize = 0;
+	private boolean hashPayloads = false;
+	private boolean asynchronous = false;
+	private int queueCapacity = 100;
+
+	private final ConcurrentMap<String,CapturedReport> reports = new ConcurrentHashMap<String,CapturedReport>();
+	private final AtomicLong reportCounter = new AtomicLong();
+	private final AtomicLong droppedReports = new AtomicLong();
+	private BlockingQueue<CapturedReport> writeQueue;
+	private volatile Thread writer;
+	private volatile boolean stopped;
+
 	public void setTestTool(TestTool testTool) {
 		this.testTool = testTool;
 	}
@@ -75,37 +118,343 @@ public class Debugger implements IbisDebugger, nl.nn.testtool.Debugger, Applicat
 		this.rerunRoles = rerunRoles;
 	}
 
+	/** Capture only one in <code>sampleRate</code> reports. */
+	public void setSampleRate(int sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/** When larger than 0, discard reports that took less milliseconds and have no errors. */
+	public void setLatencyThreshold(long latencyThreshold) {
+		this.latencyThreshold = latencyThreshold;
+	}
+	public long getLatencyThreshold() {
+		return latencyThreshold;
+	}
+
+	/**
+	 * When larger than 0, payloads that are larger than this number of characters or bytes are truncated or hashed.
+	 * A truncated payload ends with a marker like <code>...[truncated, 12345 bytes]</code> that states its original size.
+	 */
+	public void setMaxPayloadSize(int maxPayloadSize) {
+		this.maxPayloadSize = maxPayloadSize;
+	}
+	public int getMaxPayloadSize() {
+		return maxPayloadSize;
+	}
+
+	/** When <code>true</code>, payloads larger than maxPayloadSize are replaced by their size and SHA-256 hash instead of being truncated. */
+	public void setHashPayloads(boolean hashPayloads) {
+		this.hashPayloads = hashPayloads;
+	}
+	public boolean isHashPayloads() {
+		return hashPayloads;
+	}
+
+	/**
+	 * When <code>true</code>, reports are buffered and written by a background thread after the pipeline has ended.
+	 * The start time of such a report is the time it was captured, its end time is the time it was written.
+	 */
+	public void setAsynchronous(boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+	public boolean isAsynchronous() {
+		return asynchronous;
+	}
+
+	/** Maximum number of reports waiting to be written by the background thread. */
+	public void setQueueCapacity(int queueCapacity) {
+		this.queueCapacity = queueCapacity;
+	}
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/** Number of reports that were dropped because the queue of reports to be written was full. */
+	public long getDroppedReports() {
+		return droppedReports.get();
+	}
+
+	@Override
+	public boolean startCapture(String correlationId) {
+		if (correlationId==null || !isCapturePolicyActive()) {
+			return true;
+		}
+		CapturedReport report = reports.compute(correlationId, (key, existing) -> {
+			if (existing==null) {
+				boolean rerun;
+				synchronized(inRerun) {
+					rerun = inRerun.contains(key);
+				}
+				// reruns are always captured, and reported directly to be able to stub them
+				boolean captured = rerun || getSampleRate()<=1 || reportCounter.getAndIncrement()%getSampleRate()==0;
+				boolean buffered = !rerun && (isAsynchronous() || getLatencyThreshold()>0);
+				existing = new CapturedReport(key, captured, buffered);
+			}
+			existing.enter();
+			return existing;
+		});
+		return report.isCaptured();
+	}
+
+	@Override
+	public void endCapture(String correlationId, boolean error) {
+		if (correlationId==null) {
+			return;
+		}
+		CapturedReport[] ended = new CapturedReport[1];
+		reports.computeIfPresent(correlationId, (key, report) -> {
+			if (error) {
+				report.setError();
+			}
+			if (report.exit()) {
+				ended[0] = report;
+				return null;
+			}
+			return report;
+		});
+		CapturedReport report = ended[0];
+		if (report==null || !report.isCaptured() || !report.isBuffered()) {
+			return;
+		}
+		report.close();
+		if (getLatencyThreshold()>0 && report.getDuration()<getLatencyThreshold() && !report.isError()) {
+			if (log.isDebugEnabled()) log.debug("discarding report of correlationId ["+correlationId+"], duration ["+report.getDuration()+"] ms is below latencyThreshold");
+			return;
+		}
+		if (!isAsynchronous()) {
+			report.replay(testTool);
+			return;
+		}
+		BlockingQueue<CapturedReport> queue = getWriteQueue();
+		if (queue==null) {
+			droppedReports.incrementAndGet();
+			log.warn("dropped report of correlationId ["+correlationId+"], the Debugger has been stopped");
+			return;
+		}
+		if (!queue.offer(report)) {
+			long dropped = droppedReports.incrementAndGet();
+			log.warn("dropped report of correlationId ["+correlationId+"], queue of reports to be written is full, ["+dropped+"] reports dropped so far");
+		}
+	}
+
+	@Override
+	public boolean isCapturing(String correlationId) {
+		if (correlationId==null) {
+			return true;
+		}
+		CapturedReport report = reports.get(correlationId);
+		return report==null || report.isCaptured();
+	}
+
+	private boolean isCapturePolicyActive() {
+		return getSampleRate()>1 || getLatencyThreshold()>0 || isAsynchronous();
+	}
+
+	private CapturedReport getBufferedReport(String correlationId) {
+		if (correlationId==null) {
+			return null;
+		}
+		CapturedReport report = reports.get(correlationId);
+		return report!=null && report.isBuffered() ? report : null;
+	}
+
+	private synchronized BlockingQueue<CapturedReport> getWriteQueue() {
+		if (writeQueue==null && !stopped) {
+			BlockingQueue<CapturedReport> queue = new ArrayBlockingQueue<CapturedReport>(getQueueCapacity());
+			writer = new Thread("Ladybug report writer") {
+				@Override
+				public void run() {
+					while (!stopped || !queue.isEmpty()) {
+						try {
+							CapturedReport report = queue.poll(1, TimeUnit.SECONDS);
+							if (report!=null) {
+								report.replay(testTool);
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							return;
+						} catch (Exception e) {
+							log.warn("cannot write report", e);
+						}
+					}
+				}
+			};
+			writer.setDaemon(true);
+			writer.start();
+			writeQueue = queue;
+		}
+		return writeQueue;
+	}
+
+	/**
+	 * Stops the background thread, after it has written the reports that are still queued.
+	 */
+	@Override
+	public void destroy() {
+		Thread writer;
+		synchronized (this) {
+			stopped = true;
+			writer = this.writer;
+		}
+		if (writer==null) {
+			return;
+		}
+		try {
+			writer.join(WRITER_STOP_TIMEOUT);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (writer.isAlive()) {
+			log.warn("report writer did not finish in time, interrupting it with ["+writeQueue.size()+"] reports still queued");
+			writer.interrupt();
+		}
+	}
+
+	boolean isWriterAlive() {
+		Thread writer = this.writer;
+		return writer!=null && writer.isAlive();
+	}
+
+	/**
+	 * Reports a checkpoint for a message. When the TestTool returns another value, for instance because the checkpoint is stubbed,
+	 * that value is returned as a Message, otherwise the original message is returned.
+	 */
+	private Message checkpoint(int type, String correlationId, String sourceClassName, String name, Message message) {
+		CapturedReport report = getBufferedReport(correlationId);
+		if (report!=null) {
+			report.add(type, sourceClassName, name, snapshot(message));
+			return message;
+		}
+		Object value = limit(message==null ? null : message.asObject());
+		Object result = report(type, correlationId, sourceClassName, name, value);
+		return result==value && message!=null ? message : Message.asMessage(result);
+	}
+
+	private Object checkpoint(int type, String correlationId, String sourceClassName, String name, Object value) {
+		CapturedReport report = getBufferedReport(correlationId);
+		if (report!=null) {
+			report.add(type, sourceClassName, name, snapshot(value));
+			return value;
+		}
+		Object limitedValue = limit(value);
+		Object result = report(type, correlationId, sourceClassName, name, limitedValue);
+		return result==limitedValue ? value : result;
+	}
+
+	private Object report(int type, String correlationId, String sourceClassName, String name, Object value) {
+		switch (type) {
+		case CapturedReport.START:
+			return testTool.startpoint(correlationId, sourceClassName, name, value);
+		case CapturedReport.END:
+			return testTool.endpoint(correlationId, sourceClassName, name, value);
+		case CapturedReport.ABORT:
+			return testTool.abortpoint(correlationId, sourceClassName, name, value);
+		case CapturedReport.INPUT:
+			return testTool.inputpoint(correlationId, sourceClassName, name, value);
+		case CapturedReport.OUTPUT:
+			return testTool.outputpoint(correlationId, sourceClassName, name, value);
+		case CapturedReport.INFO:
+			return testTool.infopoint(correlationId, sourceClassName, name, value);
+		default:
+			throw new IllegalArgumentException("unknown checkpoint type ["+type+"]");
+		}
+	}
+
+	/**
+	 * Returns a value that can be kept until the report is written, without keeping references to large or mutable objects.
+	 * Streams are captured while they are read by the pipeline.
+	 */
+	private Object snapshot(Message message) {
+		if (message==null) {
+			return null;
+		}
+		if (message.requiresStream()) {
+			Object request = message.asObject();
+			if (request instanceof InputStream || request instanceof Reader) {
+				return message.captureStream(getMaxPayloadSize()>0 ? getMaxPayloadSize() : DEFAULT_CAPTURE_SIZE, new StringWriter());
+			}
+		}
+		return snapshot(message.asObject());
+	}
+
+	private Object snapshot(Object value) {
+		if (value==null || value instanceof String || value instanceof byte[]) {
+			return limit(value);
+		}
+		if (value instanceof Message) {
+			return snapshot((Message)value);
+		}
+		return limit(String.valueOf(value));
+	}
+
+	/**
+	 * Truncates or hashes Strings and byte arrays that are larger than maxPayloadSize.
+	 */
+	private Object limit(Object value) {
+		int maxPayloadSize = getMaxPayloadSize();
+		if (maxPayloadSize<=0) {
+			return value;
+		}
+		if (value instanceof String) {
+			String string = (String)value;
+			if (string.length()<=maxPayloadSize) {
+				return string;
+			}
+			if (isHashPayloads()) {
+				return "["+string.length()+" characters, sha256 "+DigestUtils.sha256Hex(string)+"]";
+			}
+			return string.substring(0, maxPayloadSize)+"...[truncated, "+string.length()+" characters]";
+		}
+		if (value instanceof byte[]) {
+			byte[] bytes = (byte[])value;
+			if (bytes.length<=maxPayloadSize) {
+				return bytes;
+			}
+			if (isHashPayloads()) {
+				return "["+bytes.length+" bytes, sha256 "+DigestUtils.sha256Hex(bytes)+"]";
+			}
+			byte[] marker = ("...[truncated, "+bytes.length+" bytes]").getBytes(StandardCharsets.US_ASCII);
+			byte[] truncated = Arrays.copyOf(bytes, maxPayloadSize+marker.length);
+			System.arraycopy(marker, 0, truncated, maxPayloadSize, marker.length);
+			return truncated;
+		}
+		return value;
+	}
+
 	@Override
 	public Message pipeLineInput(PipeLine pipeLine, String correlationId, Message input) {
-		return Message.asMessage(testTool.startpoint(correlationId, pipeLine.getClass().getName(), "Pipeline " + pipeLine.getOwner().getName(), input==null?null:input.asObject()));
+		return checkpoint(CapturedReport.START, correlationId, pipeLine.getClass().getName(), "Pipeline " + pipeLine.getOwner().getName(), input);
 	}
 
 	@Override
 	public Object pipeLineSessionKey(String correlationId, String sessionKey, Object sessionValue) {
-		return testTool.inputpoint(correlationId, null, "SessionKey " + sessionKey, sessionValue);
+		return checkpoint(CapturedReport.INPUT, correlationId, null, "SessionKey " + sessionKey, sessionValue);
 	}
 
 	@Override
 	public Message pipeLineOutput(PipeLine pipeLine, String correlationId, Message output) {
-		return Message.asMessage(testTool.endpoint(correlationId, pipeLine.getClass().getName(), "Pipeline " + pipeLine.getOwner().getName(), output==null?null:output.asObject()));
+		return checkpoint(CapturedReport.END, correlationId, pipeLine.getClass().getName(), "Pipeline " + pipeLine.getOwner().getName(), output);
 	}
 
 	@Override
 	public Throwable pipeLineAbort(PipeLine pipeLine, String correlationId, Throwable throwable) {
-		testTool.abortpoint(correlationId, pipeLine.getClass().getName(), "Pipeline " + pipeLine.getOwner().getName(), throwable.getMessage());
+		checkpoint(CapturedReport.ABORT, correlationId, pipeLine.getClass().getName(), "Pipeline " + pipeLine.getOwner().getName(), throwable.getMessage());
 		return throwable;
 	}
 
 	@Override
 	public Message pipeInput(PipeLine pipeLine, IPipe pipe, String correlationId, Message input) {
 		PipeDescription pipeDescription = pipeDescriptionProvider.getPipeDescription(pipeLine, pipe);
-		Message result = Message.asMessage(testTool.startpoint(correlationId, pipe.getClass().getName(), pipeDescription.getCheckpointName(), input==null?null:input.asObject()));
+		Message result = checkpoint(CapturedReport.START, correlationId, pipe.getClass().getName(), pipeDescription.getCheckpointName(), input);
 		if (pipeDescription.getDescription() != null) {
-			testTool.infopoint(correlationId, pipe.getClass().getName(), pipeDescription.getCheckpointName(), pipeDescription.getDescription());
+			checkpoint(CapturedReport.INFO, correlationId, pipe.getClass().getName(), pipeDescription.getCheckpointName(), pipeDescription.getDescription());
 			Iterator<String> iterator = pipeDescription.getResourceNames().iterator();
 			while (iterator.hasNext()) {
 				String resourceName = (String)iterator.next();
-				testTool.infopoint(correlationId, pipe.getClass().getName(), resourceName, pipeDescriptionProvider.getResource(pipeLine, resourceName));
+				checkpoint(CapturedReport.INFO, correlationId, pipe.getClass().getName(), resourceName, pipeDescriptionProvider.getResource(pipeLine, resourceName));
 			}
 		}
 		return result;
@@ -114,100 +463,120 @@ public class Debugger implements IbisDebugger, nl.nn.testtool.Debugger, Applicat
 	@Override
 	public Message pipeOutput(PipeLine pipeLine, IPipe pipe, String correlationId, Message output) {
 		PipeDescription pipeDescription = pipeDescriptionProvider.getPipeDescription(pipeLine, pipe);
-		return Message.asMessage(testTool.endpoint(correlationId, pipe.getClass().getName(), pipeDescription.getCheckpointName(), output==null?null:output.asObject()));
+		return checkpoint(CapturedReport.END, correlationId, pipe.getClass().getName(), pipeDescription.getCheckpointName(), output);
 	}
 
 	@Override
 	public Throwable pipeAbort(PipeLine pipeLine, IPipe pipe, String correlationId, Throwable throwable) {
 		PipeDescription pipeDescription = pipeDescriptionProvider.getPipeDescription(pipeLine, pipe);
-		testTool.abortpoint(correlationId, pipe.getClass().getName(), pipeDescription.getCheckpointName(), throwable.getMessage());
+		checkpoint(CapturedReport.ABORT, correlationId, pipe.getClass().getName(), pipeDescription.getCheckpointName(), throwable.getMessage());
 		return throwable;
 	}
 
 	@Override
 	public Message senderInput(ISender sender, String correlationId, Message input) {
-		return Message.asMessage(testTool.startpoint(correlationId, sender.getClass().getName(), getCheckpointNameForINamedObject("Sender ", sender), input==null?null:input.asObject()));
+		return checkpoint(CapturedReport.START, correlationId, sender.getClass().getName(), getCheckpointNameForINamedObject("Sender ", sender), input);
 	}
 
 	@Override
 	public Message senderOutput(ISender sender, String correlationId, Message output) {
-		return Message.asMessage(testTool.endpoint(correlationId, sender.getClass().getName(), getCheckpointNameForINamedObject("Sender ", sender), output==null?null:output.asObject()));
+		return checkpoint(CapturedReport.END, correlationId, sender.getClass().getName(), getCheckpointNameForINamedObject("Sender ", sender), output);
 	}
 
 	@Override
 	public Throwable senderAbort(ISender sender, String correlationId, Throwable throwable){
-		testTool.abortpoint(correlationId, sender.getClass().getName(), getCheckpointNameForINamedObject("Sender ", sender), throwable.getMessage());
+		checkpoint(CapturedReport.ABORT, correlationId, sender.getClass().getName(), getCheckpointNameForINamedObject("Sender ", sender), throwable.getMessage());
 		return throwable;
 	}
 
 	@Override
 	public String replyListenerInput(IListener listener, String correlationId, String input) {
-		return (String)testTool.startpoint(correlationId, listener.getClass().getName(), getCheckpointNameForINamedObject("Listener ", listener), input);
+		return (String)checkpoint(CapturedReport.START, correlationId, listener.getClass().getName(), getCheckpointNameForINamedObject("Listener ", listener), input);
 	}
 
 	@Override
 	public String replyListenerOutput(IListener listener, String correlationId, String output) {
-		return (String)testTool.endpoint(correlationId, listener.getClass().getName(), getCheckpointNameForINamedObject("Listener ", listener), output);
+		return (String)checkpoint(CapturedReport.END, correlationId, listener.getClass().getName(), getCheckpointNameForINamedObject("Listener ", listener), output);
 	}
 
 	@Override
 	public Throwable replyListenerAbort(IListener listener, String correlationId, Throwable throwable){
-		testTool.abortpoint(correlationId, listener.getClass().getName(), getCheckpointNameForINamedObject("Listener ", listener), throwable.getMessage());
+		checkpoint(CapturedReport.ABORT, correlationId, listener.getClass().getName(), getCheckpointNameForINamedObject("Listener ", listener), throwable.getMessage());
 		return throwable;
 	}
 
 	@Override
 	public void createThread(Object sourceObject, String threadId, String correlationId) {
+		CapturedReport report = getBufferedReport(correlationId);
+		if (report!=null) {
+			report.createThread(threadId);
+			return;
+		}
 		testTool.threadCreatepoint(correlationId, threadId); 
 	}
 
 	@Override
 	public Object startThread(Object sourceObject, String threadId, String correlationId, Object input) {
+		CapturedReport report = getBufferedReport(correlationId);
+		if (report!=null) {
+			report.startThread(threadId, sourceObject.getClass().getName(), getCheckpointNameForThread(), snapshot(input));
+			return input;
+		}
 		return testTool.threadStartpoint(correlationId, threadId, sourceObject.getClass().getName(), getCheckpointNameForThread(), input);
 	}
 
 	@Override
 	public Object endThread(Object sourceObject, String correlationId, Object output) {
+		CapturedReport report = getBufferedReport(correlationId);
+		if (report!=null) {
+			report.endThread(CapturedReport.END, sourceObject.getClass().getName(), getCheckpointNameForThread(), snapshot(output));
+			return output;
+		}
 		return testTool.threadEndpoint(correlationId, sourceObject.getClass().getName(), getCheckpointNameForThread(), output);
 	}
 
 	@Override
 	public Throwable abortThread(Object sourceObject, String correlationId, Throwable throwable) {
+		CapturedReport report = getBufferedReport(correlationId);
+		if (report!=null) {
+			report.endThread(CapturedReport.ABORT, null, getCheckpointNameForThread(), throwable.getMessage());
+			return throwable;
+		}
 		testTool.abortpoint(correlationId, null, getCheckpointNameForThread(), throwable.getMessage());
 		return throwable;
 	}
 
 	@Override
 	public Object getInputFromSessionKey(String correlationId, String sessionKey, Object sessionValue) {
-		return testTool.inputpoint(correlationId, null, "GetInputFromSessionKey " + sessionKey, sessionValue);
+		return checkpoint(CapturedReport.INPUT, correlationId, null, "GetInputFromSessionKey " + sessionKey, sessionValue);
 	}
 
 	@Override
 	public Object getInputFromFixedValue(String correlationId, Object fixedValue) {
-		return testTool.inputpoint(correlationId, null, "GetInputFromFixedValue", fixedValue);
+		return checkpoint(CapturedReport.INPUT, correlationId, null, "GetInputFromFixedValue", fixedValue);
 	}
 
 	@Override
 	public Object getEmptyInputReplacement(String correlationId, Object replacementValue) {
-		return testTool.inputpoint(correlationId, null, "getEmptyInputReplacement", replacementValue);
+		return checkpoint(CapturedReport.INPUT, correlationId, null, "getEmptyInputReplacement", replacementValue);
 	}
 
 	public Object capturedInput(String correlationId, String value) {
-		return testTool.inputpoint(correlationId, null, "Captured input ", value);
+		return checkpoint(CapturedReport.INPUT, correlationId, null, "Captured input ", value);
 	}
 
 	@Override
 	public Object parameterResolvedTo(Parameter parameter, String correlationId, Object value) {
-		return testTool.inputpoint(correlationId, null, "Parameter " + parameter.getName(), value);
+		return checkpoint(CapturedReport.INPUT, correlationId, null, "Parameter " + parameter.getName(), value);
 	}
 	@Override
 	public Object storeInSessionKey(String correlationId, Object sessionKey, Object result) {
-		return testTool.outputpoint(correlationId, null, "SessionKey " + sessionKey.toString(), result);
+		return checkpoint(CapturedReport.OUTPUT, correlationId, null, "SessionKey " + sessionKey.toString(), result);
 	}
 
 	@Override
 	public Message preserveInput(String correlationId, Message input) {
-		return Message.asMessage(testTool.outputpoint(correlationId, null, "PreserveInput", input==null?null:input.asObject()));
+		return checkpoint(CapturedReport.OUTPUT, correlationId, null, "PreserveInput", input);
 	}
 	
 	@Override
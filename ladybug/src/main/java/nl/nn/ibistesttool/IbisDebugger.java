@@ -30,6 +30,20 @@ import nl.nn.adapterframework.stream.Message;
  */
 public interface IbisDebugger {
 
+	/**
+	 * Called before each pipeline is started. Returns <code>false</code> when no report must be captured for the correlationId.
+	 * Each call must be followed by a call to {@link #endCapture(String, boolean)}.
+	 */
+	public boolean startCapture(String correlationId);
+	/**
+	 * Called after each pipeline has ended, with <code>error</code> set when the pipeline did not end successfully.
+	 */
+	public void endCapture(String correlationId, boolean error);
+	/**
+	 * Returns <code>false</code> when events for the correlationId must not be reported, because the report is not captured.
+	 */
+	public boolean isCapturing(String correlationId);
+
 	public Message pipeLineInput(PipeLine pipeLine, String correlationId, Message input);
 	public Message pipeLineOutput(PipeLine pipeLine, String correlationId, Message output);
 	public Throwable pipeLineAbort(PipeLine pipeLine, String correlationId, Throwable throwable);
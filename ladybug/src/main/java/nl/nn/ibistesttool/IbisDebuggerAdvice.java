@@ -87,42 +87,54 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 		if (!isEnabled()) {
 			return (PipeLineResult)proceedingJoinPoint.proceed();
 		}
-		message = ibisDebugger.pipeLineInput(pipeLine, correlationId, message);
-		StringWriter capture = message.captureStream();
-		TreeSet<String> keys = new TreeSet<String>(pipeLineSession.keySet());
-		Iterator<String> iterator = keys.iterator();
-		while (iterator.hasNext()) {
-			String sessionKey = iterator.next();
-			Object sessionValue = pipeLineSession.get(sessionKey);
-			sessionValue = ibisDebugger.pipeLineSessionKey(correlationId, sessionKey, sessionValue);
-			pipeLineSession.put(sessionKey, sessionValue);
-		}
-		PipeLineResult pipeLineResult = null;
+		boolean error = true;
+		boolean capturing = ibisDebugger.startCapture(correlationId);
 		try {
-			PipeLineSessionDebugger pipeLineSessionDebugger = new PipeLineSessionDebugger(pipeLineSession);
-			pipeLineSessionDebugger.setIbisDebugger(ibisDebugger);
-			Object[] args = proceedingJoinPoint.getArgs();
-			args[3] = pipeLineSessionDebugger;
-			pipeLineResult = (PipeLineResult)proceedingJoinPoint.proceed(args);
-		} catch(Throwable throwable) {
-			throw ibisDebugger.pipeLineAbort(pipeLine, correlationId, throwable);
-		} finally {
-			if (capture!=null && ibisDebugger instanceof Debugger) {
-				((Debugger)ibisDebugger).capturedInput(correlationId, capture.toString());
+			if (!capturing) {
+				PipeLineResult pipeLineResult = (PipeLineResult)proceedingJoinPoint.proceed();
+				error = pipeLineResult==null || !pipeLineResult.isSuccessful();
+				return pipeLineResult;
 			}
+			message = ibisDebugger.pipeLineInput(pipeLine, correlationId, message);
+			StringWriter capture = message.captureStream();
+			TreeSet<String> keys = new TreeSet<String>(pipeLineSession.keySet());
+			Iterator<String> iterator = keys.iterator();
+			while (iterator.hasNext()) {
+				String sessionKey = iterator.next();
+				Object sessionValue = pipeLineSession.get(sessionKey);
+				sessionValue = ibisDebugger.pipeLineSessionKey(correlationId, sessionKey, sessionValue);
+				pipeLineSession.put(sessionKey, sessionValue);
+			}
+			PipeLineResult pipeLineResult = null;
+			try {
+				PipeLineSessionDebugger pipeLineSessionDebugger = new PipeLineSessionDebugger(pipeLineSession);
+				pipeLineSessionDebugger.setIbisDebugger(ibisDebugger);
+				Object[] args = proceedingJoinPoint.getArgs();
+				args[3] = pipeLineSessionDebugger;
+				pipeLineResult = (PipeLineResult)proceedingJoinPoint.proceed(args);
+			} catch(Throwable throwable) {
+				throw ibisDebugger.pipeLineAbort(pipeLine, correlationId, throwable);
+			} finally {
+				if (capture!=null && ibisDebugger instanceof Debugger) {
+					((Debugger)ibisDebugger).capturedInput(correlationId, capture.toString());
+				}
+			}
+			pipeLineResult.setResult(ibisDebugger.pipeLineOutput(pipeLine, correlationId, pipeLineResult.getResult()));
+			error = !pipeLineResult.isSuccessful();
+			return pipeLineResult;
+		} finally {
+			ibisDebugger.endCapture(correlationId, error);
 		}
-		pipeLineResult.setResult(ibisDebugger.pipeLineOutput(pipeLine, correlationId, pipeLineResult.getResult()));
-		return pipeLineResult;
 	}
 
 	/**
 	 * Provides advice for {@link InputOutputPipeProcessor#processPipe(PipeLine pipeLine, IPipe pipe, Message message, IPipeLineSession pipeLineSession)}
 	 */
 	public PipeRunResult debugPipeInputOutputAbort(ProceedingJoinPoint proceedingJoinPoint, PipeLine pipeLine, IPipe pipe, Message message, IPipeLineSession pipeLineSession) throws Throwable {
-		if (!isEnabled()) {
+		String messageId = pipeLineSession.getMessageId();
+		if (!isEnabled(messageId)) {
 			return (PipeRunResult)proceedingJoinPoint.proceed();
 		}
-		String messageId = pipeLineSession.getMessageId();
 		message = ibisDebugger.pipeInput(pipeLine, pipe, messageId, message);
 		StringWriter capture = message.captureStream();
 		PipeRunResult pipeRunResult = null;
@@ -150,12 +162,12 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 	 * CheckSemaphorePipeProcessor is just after InputOutputPipeProcessor, so it sees the effect of the replacements made by the latter.
 	 */
 	public PipeRunResult debugPipeGetInputFrom(ProceedingJoinPoint proceedingJoinPoint, PipeLine pipeLine, IPipe pipe, Message message, IPipeLineSession pipeLineSession) throws Throwable {
-		if (!isEnabled()) {
+		String messageId = pipeLineSession.getMessageId();
+		if (!isEnabled(messageId)) {
 			return (PipeRunResult)proceedingJoinPoint.proceed();
 		}
 		if (pipe instanceof IExtendedPipe) {
 			IExtendedPipe pe = (IExtendedPipe)pipe;
-			String messageId = pipeLineSession.getMessageId();
 			message = debugGetInputFrom(pipeLineSession, messageId, message,
 					pe.getGetInputFromSessionKey(),
 					pe.getGetInputFromFixedValue(),
@@ -167,7 +179,8 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 	}
 
 	private <M> M debugSenderInputOutputAbort(ProceedingJoinPoint proceedingJoinPoint, Message message, IPipeLineSession session, int messageParamIndex) throws Throwable {
-		if (!isEnabled()) {
+		String messageId = session == null ? null : session.getMessageId();
+		if (!isEnabled(messageId)) {
 			return (M)proceedingJoinPoint.proceed();
 		}
 		ISender sender = (ISender)proceedingJoinPoint.getTarget();
@@ -176,7 +189,6 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 			return (M)proceedingJoinPoint.proceed();
 		} 
 
-		String messageId = session == null ? null : session.getMessageId();
 		message = ibisDebugger.senderInput(sender, messageId, message); 
 		StringWriter capture = message.captureStream();
 
@@ -248,10 +260,10 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 	 * Provides advice for {@link StreamingPipe#provideOutputStream(IPipeLineSession session)}
 	 */
 	public MessageOutputStream debugProvideOutputStream(ProceedingJoinPoint proceedingJoinPoint, IPipeLineSession session) throws Throwable {
-		if (!isEnabled()) {
+		String correlationId = session == null ? null : session.getMessageId();
+		if (!isEnabled(correlationId)) {
 			return (MessageOutputStream)proceedingJoinPoint.proceed();
 		}
-		String correlationId = session == null ? null : session.getMessageId();
 		if (log.isDebugEnabled()) log.debug("debugProvideOutputStream thread id ["+Thread.currentThread().getId()+"] thread name ["+Thread.currentThread().getName()+"] correlationId ["+correlationId+"]");
 		// TODO: provide proper debug entry in Debugger interface.
 		if (proceedingJoinPoint.getTarget() instanceof ISender) {
@@ -282,10 +294,10 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 	 * Provides advice for {@link CacheSenderWrapperProcessor#sendMessage(SenderWrapperBase senderWrapperBase, Message message, IPipeLineSession session)}
 	 */
 	public Message debugSenderGetInputFrom(ProceedingJoinPoint proceedingJoinPoint, SenderWrapperBase senderWrapperBase, Message message, IPipeLineSession session) throws Throwable {
-		if (!isEnabled()) {
+		String messageId = session == null ? null : session.getMessageId();
+		if (!isEnabled(messageId)) {
 			return (Message)proceedingJoinPoint.proceed();
 		}
-		String messageId = session == null ? null : session.getMessageId();
 		message = debugGetInputFrom(session, messageId, message, 
 				senderWrapperBase.getGetInputFromSessionKey(), 
 				senderWrapperBase.getGetInputFromFixedValue(), 
@@ -300,7 +312,7 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 	}
 
 	public Object debugReplyListenerInputOutputAbort(ProceedingJoinPoint proceedingJoinPoint, ICorrelatedPullingListener<?> listener, String correlationId, IPipeLineSession pipeLineSession) throws Throwable {
-		if (!isEnabled()) {
+		if (!isEnabled(pipeLineSession.getMessageId())) {
 			return proceedingJoinPoint.proceed();
 		}
 		correlationId = ibisDebugger.replyListenerInput(listener, pipeLineSession.getMessageId(), correlationId);
@@ -323,7 +335,7 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 		if (!isEnabled()) {
 			return proceedingJoinPoint.proceed();
 		}
-		if (runnable instanceof ParallelSenderExecutor || runnable instanceof IsolatedServiceExecutor) {
+		if ((runnable instanceof ParallelSenderExecutor || runnable instanceof IsolatedServiceExecutor) && isEnabled(((RequestReplyExecutor)runnable).getCorrelationID())) {
 			Executor executor = new Executor((RequestReplyExecutor)runnable,(ThreadLifeCycleEventListener<Object>)this);
 			Object[] args = proceedingJoinPoint.getArgs();
 			args[0] = executor;
@@ -335,7 +347,7 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 
 	@Override
 	public ThreadDebugInfo announceChildThread(Object owner, String correlationId) {
-		if (!isEnabled()) {
+		if (!isEnabled(correlationId)) {
 			return null;
 		}
 		ThreadDebugInfo threadInfo = new ThreadDebugInfo();
@@ -352,6 +364,10 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 
 	@Override
 	public Object threadCreated(Object handle, Object request) {
+		if (handle==null) {
+			// child thread was not announced, because the report is not captured
+			return request;
+		}
 		if (!isEnabled()) {
 			return null;
 		}
@@ -365,6 +381,9 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 
 	@Override
 	public Object threadEnded(Object handle, Object result) {
+		if (handle==null) {
+			return result;
+		}
 		if (!isEnabled()) {
 			return null;
 		}
@@ -378,6 +397,9 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 
 	@Override
 	public Throwable threadAborted(Object handle, Throwable t) {
+		if (handle==null) {
+			return t;
+		}
 		if (!isEnabled()) {
 			return null;
 		}
@@ -393,12 +415,13 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 	 * Provides advice for {@link Parameter#getValue(ParameterValueList alreadyResolvedParameters, Message message, IPipeLineSession session, boolean namespaceAware)}
 	 */
 	public Object debugParameterResolvedTo(ProceedingJoinPoint proceedingJoinPoint, ParameterValueList alreadyResolvedParameters, Message message, IPipeLineSession session, boolean namespaceAware) throws Throwable {
-		if (!isEnabled()) {
+		String correlationId = session==null?null:session.getMessageId(); // session is null in afterMessageProcessed()
+		if (!isEnabled(correlationId)) {
 			return proceedingJoinPoint.proceed();
 		}
 		Object result = proceedingJoinPoint.proceed();
 		Parameter parameter = (Parameter)proceedingJoinPoint.getTarget();
-		return ibisDebugger.parameterResolvedTo(parameter, session==null?null:session.getMessageId(), result); // session is null in afterMessageProcessed()
+		return ibisDebugger.parameterResolvedTo(parameter, correlationId, result);
 	}
 
 	private Message debugGetInputFrom(IPipeLineSession pipeLineSession, String correlationId, Message input, String inputFromSessionKey, String inputFromFixedValue, String emptyInputReplacement) {
@@ -455,6 +478,10 @@ public class IbisDebuggerAdvice implements ThreadLifeCycleEventListener<Object>,
 		return enabled;
 	}
 
+	private boolean isEnabled(String correlationId) {
+		return isEnabled() && ibisDebugger.isCapturing(correlationId);
+	}
+
 	@Override
 	public void onApplicationEvent(DebuggerStatusChangedEvent event) {
 		setEnabled(event.isEnabled());
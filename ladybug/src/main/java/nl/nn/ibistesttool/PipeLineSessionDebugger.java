@@ -70,6 +70,14 @@ public class PipeLineSessionDebugger implements IPipeLineSession {
 		return pipeLineSession.getPrincipal();
 	}
 
+	public void scheduleCloseOnSessionExit(AutoCloseable resource) {
+		pipeLineSession.scheduleCloseOnSessionExit(resource);
+	}
+
+	public void closeAll() {
+		pipeLineSession.closeAll();
+	}
+
 	// Methods implementing Map
 
 	public void clear() {
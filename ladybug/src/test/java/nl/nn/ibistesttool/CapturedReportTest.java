@@ -0,0 +1,88 @@
+package nl.nn.ibistesttool;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import nl.nn.testtool.Report;
+import nl.nn.testtool.TestTool;
+
+public class CapturedReportTest {
+
+	private TestTool testTool = mock(TestTool.class);
+
+	private void runInThread(Runnable runnable) throws InterruptedException {
+		Thread thread = new Thread(runnable);
+		thread.start();
+		thread.join();
+	}
+
+	@Test
+	public void testChildThreadIsReplayedWhereItWasCreated() throws Exception {
+		CapturedReport report = new CapturedReport("cid", true, true);
+		report.add(CapturedReport.START, "Pipeline", "Pipeline adapter", "input");
+		report.createThread("t1");
+		report.add(CapturedReport.INFO, "Pipe", "Pipe after thread", "info");
+		runInThread(() -> {
+			report.startThread("t1", "Sender", "Thread", "thread input");
+			report.add(CapturedReport.INPUT, null, "Parameter p", "value");
+			report.endThread(CapturedReport.END, "Sender", "Thread", "thread output");
+		});
+		report.add(CapturedReport.END, "Pipeline", "Pipeline adapter", "output");
+		report.close();
+
+		report.replay(testTool);
+
+		InOrder inOrder = inOrder(testTool);
+		inOrder.verify(testTool).startpoint("cid", "Pipeline", "Pipeline adapter", "input");
+		inOrder.verify(testTool).startpoint("cid", "Sender", "Thread", "thread input");
+		inOrder.verify(testTool).inputpoint("cid", null, "Parameter p", "value");
+		inOrder.verify(testTool).endpoint("cid", "Sender", "Thread", "thread output");
+		inOrder.verify(testTool).infopoint("cid", "Pipe", "Pipe after thread", "info");
+		inOrder.verify(testTool).endpoint("cid", "Pipeline", "Pipeline adapter", "output");
+	}
+
+	@Test
+	public void testOriginalStartTimeIsPassedOnReplay() throws Exception {
+		Report reportInProgress = mock(Report.class);
+		when(testTool.getReportInProgress("cid")).thenReturn(reportInProgress);
+		CapturedReport report = new CapturedReport("cid", true, true);
+		report.add(CapturedReport.START, "Pipeline", "Pipeline adapter", "input");
+		Thread.sleep(100);
+		report.add(CapturedReport.END, "Pipeline", "Pipeline adapter", "output");
+		report.close();
+		assertTrue("duration ["+report.getDuration()+"]", report.getDuration()>=100);
+		Thread.sleep(100);
+
+		report.replay(testTool);
+
+		verify(reportInProgress).setStartTime(report.getStartTime());
+	}
+
+	@Test
+	public void testUnfinishedThreadIsAborted() throws Exception {
+		CapturedReport report = new CapturedReport("cid", true, true);
+		report.add(CapturedReport.START, "Pipeline", "Pipeline adapter", "input");
+		report.createThread("t1");
+		runInThread(() -> report.startThread("t1", "Sender", "Thread", "thread input"));
+		report.add(CapturedReport.END, "Pipeline", "Pipeline adapter", "output");
+		report.close();
+		// checkpoints after the report was closed are ignored
+		runInThread(() -> report.endThread(CapturedReport.END, "Sender", "Thread", "thread output"));
+
+		report.replay(testTool);
+
+		verify(testTool).abortpoint("cid", "Sender", "Thread", "not finished when the report was closed");
+		verify(testTool, never()).endpoint(anyString(), eq("Sender"), anyString(), any());
+		verify(testTool).endpoint("cid", "Pipeline", "Pipeline adapter", "output");
+	}
+}
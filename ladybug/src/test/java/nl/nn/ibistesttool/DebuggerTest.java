@@ -0,0 +1,89 @@
+package nl.nn.ibistesttool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import nl.nn.testtool.TestTool;
+
+public class DebuggerTest {
+
+	private TestTool testTool;
+	private Debugger debugger;
+
+	@Before
+	public void setUp() {
+		testTool = mock(TestTool.class);
+		debugger = new Debugger();
+		debugger.setTestTool(testTool);
+	}
+
+	@After
+	public void tearDown() {
+		debugger.destroy();
+	}
+
+	@Test
+	public void testTruncatedBytesHaveMarker() {
+		debugger.setMaxPayloadSize(4);
+		debugger.getInputFromFixedValue("cid", "0123456789".getBytes(StandardCharsets.US_ASCII));
+
+		ArgumentCaptor<Object> value = ArgumentCaptor.forClass(Object.class);
+		verify(testTool).inputpoint(eq("cid"), isNull(), eq("GetInputFromFixedValue"), value.capture());
+		assertArrayEquals("0123...[truncated, 10 bytes]".getBytes(StandardCharsets.US_ASCII), (byte[])value.getValue());
+	}
+
+	@Test
+	public void testTruncatedStringHasMarker() {
+		debugger.setMaxPayloadSize(4);
+		debugger.getInputFromFixedValue("cid", "0123456789");
+
+		verify(testTool).inputpoint("cid", null, "GetInputFromFixedValue", "0123...[truncated, 10 characters]");
+	}
+
+	@Test
+	public void testAsynchronousReportIsWrittenBeforeWriterStops() {
+		debugger.setAsynchronous(true);
+		assertTrue(debugger.startCapture("cid"));
+		debugger.getInputFromFixedValue("cid", "value");
+		verify(testTool, never()).inputpoint(any(), any(), any(), any());
+		debugger.endCapture("cid", false);
+
+		debugger.destroy();
+
+		verify(testTool).inputpoint("cid", null, "GetInputFromFixedValue", "value");
+		assertFalse(debugger.isWriterAlive());
+		assertEquals(0, debugger.getDroppedReports());
+	}
+
+	@Test
+	public void testReportIsDroppedAfterDestroy() {
+		debugger.setAsynchronous(true);
+		assertTrue(debugger.startCapture("cid1"));
+		debugger.endCapture("cid1", false);
+		assertTrue(debugger.isWriterAlive());
+
+		debugger.destroy();
+		assertTrue(debugger.startCapture("cid2"));
+		debugger.getInputFromFixedValue("cid2", "value");
+		debugger.endCapture("cid2", false);
+
+		assertFalse(debugger.isWriterAlive());
+		assertEquals(1, debugger.getDroppedReports());
+		verify(testTool, never()).inputpoint(any(), any(), any(), any());
+	}
+}
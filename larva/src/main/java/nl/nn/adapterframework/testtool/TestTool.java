@@ -33,6 +33,18 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
 import java.util.zip.ZipInputStream;
 
@@ -94,8 +106,10 @@ import nl.nn.adapterframework.util.XmlUtils;
  */
 public class TestTool {
 	private static Logger logger = LogUtil.getLogger(TestTool.class);
+	public static final String PARALLEL_THREADS_KEY = "larva.parallel.threads";
 	public static final String LOG_LEVEL_ORDER = "[debug], [pipeline messages prepared for diff], [pipeline messages], [wrong pipeline messages prepared for diff], [wrong pipeline messages], [step passed/failed], [scenario passed/failed], [scenario failed], [totals], [error]";
-	private static final String STEP_SYNCHRONIZER = "Step synchronizer";
+	private static final ReadWriteLock STEP_SYNCHRONIZER = new ReentrantReadWriteLock();
+	private static final ConcurrentMap<String, Lock> SHARED_RESOURCE_LOCKS = new ConcurrentHashMap<String, Lock>();
 	protected static final int DEFAULT_TIMEOUT = 30000;
 	protected static final String TESTTOOL_CORRELATIONID = "Test Tool correlation id";
 	protected static final String TESTTOOL_BIFNAME = "Test Tool bif name";
@@ -105,8 +119,8 @@ public class TestTool {
 	private static final int RESULT_OK = 1;
 	private static final int RESULT_AUTOSAVED = 2;
 	// dirty solution by Marco de Reus:
-	private static String zeefVijlNeem = "";
-	private static Writer silentOut = null;
+	private static ThreadLocal<String> zeefVijlNeem = ThreadLocal.withInitial(() -> "");
+	private static ThreadLocal<Writer> silentOut = new ThreadLocal<Writer>();
 	private static boolean autoSaveDiffs = false;
 	
 	/*
@@ -150,13 +164,72 @@ public class TestTool {
 		String paramScenariosRootDirectory = request.getParameter("scenariosrootdirectory");
 		IbisContext ibisContext = getIbisContext(application);
 		AppConstants appConstants = getAppConstants(ibisContext);
+		int threads = appConstants.getInt(PARALLEL_THREADS_KEY, 1);
+		String paramThreads = request.getParameter("threads");
+		if (paramThreads != null) {
+			try {
+				threads = Integer.parseInt(paramThreads);
+			} catch(NumberFormatException e) {
+			}
+		}
 		runScenarios(ibisContext, appConstants, paramLogLevel,
 				paramAutoScroll, paramExecute, paramWaitBeforeCleanUp,
-				realPath, paramScenariosRootDirectory, out, silent);
+				realPath, paramScenariosRootDirectory, out, silent, threads);
+	}
+
+	/**
+	 * Runs the scenarios in a directory, or a single scenario file, from the command line. The configurations are
+	 * loaded like they are in the webapp. Arguments: the scenarios directory or file, optionally followed by the number
+	 * of threads and the log level. The exit code is the number of scenarios that failed, or 255 on other errors.
+	 */
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.err.println("usage: TestTool <scenarios directory or file> [<threads> [<log level>]]");
+			System.exit(255);
+		}
+		File execute = new File(args[0]).getAbsoluteFile();
+		File scenariosRootDirectory = execute.isDirectory() ? execute : execute.getParentFile();
+		String logLevel = args.length > 2 ? args[2] : "scenario passed/failed";
+		Writer out = new Writer() {
+			@Override
+			public void write(String str) {
+				System.out.println(str);
+			}
+
+			@Override
+			public void write(char[] cbuf, int off, int len) {
+				System.out.print(new String(cbuf, off, len));
+			}
+
+			@Override
+			public void flush() {
+				System.out.flush();
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		int scenariosFailed;
+		IbisContext ibisContext = new IbisContext();
+		try {
+			ibisContext.init(false);
+			AppConstants appConstants = getAppConstants(ibisContext);
+			int threads = args.length > 1 ? Integer.parseInt(args[1]) : appConstants.getInt(PARALLEL_THREADS_KEY, 1);
+			scenariosFailed = runScenarios(ibisContext, appConstants, logLevel, null, execute.getPath(), null,
+					new File("").getAbsolutePath(), scenariosRootDirectory.getPath() + File.separator, out, true, threads);
+		} catch (Exception e) {
+			logger.error("could not run scenarios", e);
+			scenariosFailed = -1;
+		} finally {
+			ibisContext.destroy();
+		}
+		System.exit(scenariosFailed < 0 ? 255 : Math.min(scenariosFailed, 254));
 	}
 
 	public static final int ERROR_NO_SCENARIO_DIRECTORIES_FOUND=-1;
 	/**
+	 * Runs the scenarios using the number of threads configured by property <code>larva.parallel.threads</code>.
 	 * 
 	 * @return negative: error condition
 	 * 		   0: all scenarios passed
@@ -166,6 +239,26 @@ public class TestTool {
 			String paramAutoScroll, String paramExecute, String paramWaitBeforeCleanUp,
 			String realPath, String paramScenariosRootDirectory,
 			Writer out, boolean silent) {
+		return runScenarios(ibisContext, appConstants, paramLogLevel,
+				paramAutoScroll, paramExecute, paramWaitBeforeCleanUp,
+				realPath, paramScenariosRootDirectory, out, silent,
+				appConstants.getInt(PARALLEL_THREADS_KEY, 1));
+	}
+
+	/**
+	 * When <code>threads</code> is larger than 1, the scenarios are executed in parallel, each with its own queues.
+	 * Scenarios that use the same shared resource, see {@link #getSharedResources(Properties)}, are not executed
+	 * at the same time. The output of each scenario is written in the order of the scenarios, as soon as the scenario and
+	 * the scenarios before it have finished.
+	 * 
+	 * @return negative: error condition
+	 * 		   0: all scenarios passed
+	 * 		   positive: number of scenarios that failed
+	 */
+	public static int runScenarios(IbisContext ibisContext, AppConstants appConstants, String paramLogLevel,
+			String paramAutoScroll, String paramExecute, String paramWaitBeforeCleanUp,
+			String realPath, String paramScenariosRootDirectory,
+			Writer out, boolean silent, int threads) {
 		String logLevel = "wrong pipeline messages";
 		String autoScroll = "true";
 		if (paramLogLevel != null && LOG_LEVEL_ORDER.indexOf("[" + paramLogLevel + "]") > -1) {
@@ -185,10 +278,11 @@ public class TestTool {
 			writers.put("autoscroll", autoScroll);
 			writers.put("usehtmlbuffer", "false");
 			writers.put("uselogbuffer", "true");
-			writers.put("messagecounter", new Integer(0));
-			writers.put("scenariocounter", new Integer(1));
+			writers.put("messagecounter", new AtomicInteger(0));
+			writers.put("scenariocounter", new AtomicInteger(1));
+			silentOut.remove();
 		} else {
-			silentOut = out;
+			silentOut.set(out);
 		}
 
 		TestTool.debugMessage("Start logging to logbuffer until form is written", writers);
@@ -205,7 +299,9 @@ public class TestTool {
 				scenariosRootDescriptions, writers);
 		if (scenariosRootDirectories.size() == 0) {
 			debugMessage("Stop logging to logbuffer", writers);
-			writers.put("uselogbuffer", "stop");
+			if (writers!=null) {
+				writers.put("uselogbuffer", "stop");
+			}
 			errorMessage("No scenarios root directories found", writers);
 			return ERROR_NO_SCENARIO_DIRECTORIES_FOUND;
 		}
@@ -255,120 +351,81 @@ public class TestTool {
 					debugMessage("Read all scenarios from directory '" + paramExecute + "'", writers);
 					scenarioFiles = readScenarioFiles(appConstants, paramExecute, writers);
 				}
-				boolean evenStep = false;
 				debugMessage("Initialize statistics variables", writers);
 				int scenariosPassed = 0;
 				int scenariosAutosaved = 0;
 				long startTime = System.currentTimeMillis();
 				debugMessage("Execute scenario('s)", writers);
-				Iterator<File> scenarioFilesIterator = scenarioFiles.iterator();
-				while (scenarioFilesIterator.hasNext()) {
-					int scenarioPassed = RESULT_ERROR;
-					File scenarioFile = (File)scenarioFilesIterator.next();
-			
-					String scenarioDirectory = scenarioFile.getParentFile().getAbsolutePath() + File.separator;
-					String longName = scenarioFile.getAbsolutePath();
-					String shortName = longName.substring(currentScenariosRootDirectory.length() - 1, longName.length() - ".properties".length());
-
-					if (writers!=null) {
-						if (LOG_LEVEL_ORDER.indexOf("[" + (String)writers.get("loglevel") + "]") < LOG_LEVEL_ORDER.indexOf("[scenario passed/failed]")) {
-							writeHtml("<br/>", writers, false);
-							writeHtml("<br/>", writers, false);
-							writeHtml("<div class='scenario'>", writers, false);
+				ExecutorService executor = null;
+				List<Future<ScenarioResult>> parallelResults = null;
+				if (threads > 1 && scenarioFiles.size() > 1) {
+					debugMessage("Execute scenarios in parallel using " + threads + " threads", writers);
+					executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+						private AtomicInteger threadCounter = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable runnable) {
+							Thread thread = new Thread(runnable, "Larva scenario runner " + threadCounter.incrementAndGet());
+							thread.setDaemon(true);
+							return thread;
 						}
+					});
+					parallelResults = new ArrayList<Future<ScenarioResult>>();
+					for (File scenarioFile : scenarioFiles) {
+						String shortName = getScenarioShortName(scenarioFile, currentScenariosRootDirectory);
+						Map<String, Object> scenarioWriters = createScenarioWriters(writers);
+						int scenarioWaitBeforeCleanUp = waitBeforeCleanUp;
+						parallelResults.add(executor.submit(() -> runScenarioInParallel(scenarioFile, shortName, ibisContext, appConstants, scenarioWaitBeforeCleanUp, scenarioWriters)));
 					}
-					debugMessage("Read property file " + scenarioFile.getName(), writers);
-					Properties properties = readProperties(appConstants, scenarioFile, writers);
-					List<String> steps = null;
-
-					if (properties != null) {
-						debugMessage("Read steps from property file", writers);
-						steps = getSteps(properties, writers);
-						if (steps != null) {
-							synchronized(STEP_SYNCHRONIZER) {
-								debugMessage("Open queues", writers);
-								Map<String, Map<String, Object>> queues = openQueues(scenarioDirectory, steps, properties, ibisContext, appConstants, writers);
-								if (queues != null) {
-									debugMessage("Execute steps", writers);
-									boolean allStepsPassed = true;
-									boolean autoSaved = false;
-									Iterator<String> iterator = steps.iterator();
-									while (allStepsPassed && iterator.hasNext()) {
-										if (evenStep) {
-											writeHtml("<div class='even'>", writers, false);
-											evenStep = false;
-										} else {
-											writeHtml("<div class='odd'>", writers, false);
-											evenStep = true;
-										}
-										String step = (String)iterator.next();
-										String stepDisplayName = shortName + " - " + step + " - " + properties.get(step);
-										debugMessage("Execute step '" + stepDisplayName + "'", writers);
-										int stepPassed = executeStep(step, properties, stepDisplayName, queues, writers);
-										if (stepPassed==RESULT_OK) {
-											stepPassedMessage("Step '" + stepDisplayName + "' passed", writers);
-										} else if (stepPassed==RESULT_AUTOSAVED) {
-											stepAutosavedMessage("Step '" + stepDisplayName + "' passed after autosave", writers);
-											autoSaved = true;
-										} else {
-											stepFailedMessage("Step '" + stepDisplayName + "' failed", writers);
-											allStepsPassed = false;
-										}
-										writeHtml("</div>", writers, false);
-									}
-									if (allStepsPassed) {
-										if (autoSaved) {
-											scenarioPassed = RESULT_AUTOSAVED;
-										} else {
-											scenarioPassed = RESULT_OK;
-										}
-									}
-									debugMessage("Wait " + waitBeforeCleanUp + " ms before clean up", writers);
-									try {
-										Thread.sleep(waitBeforeCleanUp);
-									} catch(InterruptedException e) {
-									}
-									debugMessage("Close queues", writers);
-									boolean remainingMessagesFound = closeQueues(queues, properties, writers);
-									if (remainingMessagesFound) {
-										stepFailedMessage("Found one or more messages on queues or in database after scenario executed", writers);
-										scenarioPassed = RESULT_ERROR;
-									}
-								}
-							}
+				}
+				try {
+					for (int scenarioIndex = 0; scenarioIndex < scenarioFiles.size(); scenarioIndex++) {
+						File scenarioFile = scenarioFiles.get(scenarioIndex);
+						String shortName = getScenarioShortName(scenarioFile, currentScenariosRootDirectory);
+						ScenarioResult scenarioResult;
+						if (parallelResults == null) {
+							scenarioResult = runScenario(scenarioFile, shortName, ibisContext, appConstants, waitBeforeCleanUp, writers);
+						} else {
+							scenarioResult = getParallelResult(parallelResults.get(scenarioIndex), shortName, out, writers);
 						}
-					}
+						int scenarioPassed = scenarioResult.result;
+						Properties properties = scenarioResult.properties;
 
-					if (scenarioPassed==RESULT_OK) {
-						scenariosPassed++;
-						scenarioPassedMessage("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' passed (" + scenariosFailed + "/" + scenariosPassed + "/" + scenarioFiles.size() + ")", writers);
-						if (silent && LOG_LEVEL_ORDER.indexOf("[" + logLevel + "]") <= LOG_LEVEL_ORDER.indexOf("[scenario passed/failed]")) {
-							try {
-								out.write("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' passed");
-							} catch (IOException e) {
+						if (scenarioPassed==RESULT_OK) {
+							scenariosPassed++;
+							scenarioPassedMessage("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' passed (" + scenariosFailed + "/" + scenariosPassed + "/" + scenarioFiles.size() + ")", writers);
+							if (silent && LOG_LEVEL_ORDER.indexOf("[" + logLevel + "]") <= LOG_LEVEL_ORDER.indexOf("[scenario passed/failed]")) {
+								try {
+									out.write("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' passed");
+								} catch (IOException e) {
+								}
 							}
-						}
-					} else if (scenarioPassed==RESULT_AUTOSAVED) {
-						scenariosAutosaved++;
-						scenarioAutosavedMessage("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' passed after autosave", writers);
-						if (silent) {
-							try {
-								out.write("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' passed after autosave");
-							} catch (IOException e) {
+						} else if (scenarioPassed==RESULT_AUTOSAVED) {
+							scenariosAutosaved++;
+							scenarioAutosavedMessage("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' passed after autosave", writers);
+							if (silent) {
+								try {
+									out.write("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' passed after autosave");
+								} catch (IOException e) {
+								}
 							}
-						}
-					} else {
-						scenariosFailed++;
-						scenarioFailedMessage("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' failed (" + scenariosFailed + "/" + scenariosPassed + "/" + scenarioFiles.size() + ")", writers);
-						if (silent) {
-							try {
-								out.write("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' failed");
-							} catch (IOException e) {
+						} else {
+							scenariosFailed++;
+							scenarioFailedMessage("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' failed (" + scenariosFailed + "/" + scenariosPassed + "/" + scenarioFiles.size() + ")", writers);
+							if (silent) {
+								try {
+									out.write("Scenario '" + shortName + " - " + properties.getProperty("scenario.description") + "' failed");
+								} catch (IOException e) {
+								}
 							}
 						}
+
+						writeHtml("</div>", writers, false);
+					}
+				} finally {
+					if (executor != null) {
+						executor.shutdownNow();
 					}
-					
-					writeHtml("</div>", writers, false);
 				}
 				long executeTime = System.currentTimeMillis() - startTime;
 				debugMessage("Print statistics information", writers);
@@ -437,6 +494,257 @@ public class TestTool {
 		return scenariosFailed;
 	}
 
+	private static String getScenarioShortName(File scenarioFile, String scenariosRootDirectory) {
+		String longName = scenarioFile.getAbsolutePath();
+		return longName.substring(scenariosRootDirectory.length() - 1, longName.length() - ".properties".length());
+	}
+
+	private static class ScenarioResult {
+		int result = RESULT_ERROR;
+		Properties properties;
+		List<String> output;
+	}
+
+	/**
+	 * Collects the output of a scenario that is executed in parallel, keeping each write separate like it would have been
+	 * written to the output of the run.
+	 */
+	private static class ScenarioOutput extends Writer {
+		private List<String> writes = new ArrayList<String>();
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			writes.add(new String(cbuf, off, len));
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		public List<String> getWrites() {
+			return writes;
+		}
+	}
+
+	/**
+	 * Executes the steps of a single scenario, using its own queues. The output is written to the writers.
+	 */
+	private static ScenarioResult runScenario(File scenarioFile, String shortName, IbisContext ibisContext, AppConstants appConstants, int waitBeforeCleanUp, Map<String, Object> writers) {
+		return runScenario(scenarioFile, shortName, ibisContext, appConstants, waitBeforeCleanUp, writers, false);
+	}
+
+	private static ScenarioResult runScenario(File scenarioFile, String shortName, IbisContext ibisContext, AppConstants appConstants, int waitBeforeCleanUp, Map<String, Object> writers, boolean parallel) {
+		ScenarioResult scenarioResult = new ScenarioResult();
+		String scenarioDirectory = scenarioFile.getParentFile().getAbsolutePath() + File.separator;
+
+		if (writers!=null) {
+			if (LOG_LEVEL_ORDER.indexOf("[" + (String)writers.get("loglevel") + "]") < LOG_LEVEL_ORDER.indexOf("[scenario passed/failed]")) {
+				writeHtml("<br/>", writers, false);
+				writeHtml("<br/>", writers, false);
+				writeHtml("<div class='scenario'>", writers, false);
+			}
+		}
+		debugMessage("Read property file " + scenarioFile.getName(), writers);
+		Properties properties = readProperties(appConstants, scenarioFile, writers);
+		scenarioResult.properties = properties;
+		List<String> steps = null;
+
+		if (properties != null) {
+			debugMessage("Read steps from property file", writers);
+			steps = getSteps(properties, writers);
+			if (steps != null) {
+				// scenarios executed one after another are executed exclusively, scenarios executed in parallel
+				// only exclude each other when they use the same shared resource
+				Lock stepLock = parallel ? STEP_SYNCHRONIZER.readLock() : STEP_SYNCHRONIZER.writeLock();
+				List<Lock> resourceLocks = new ArrayList<Lock>();
+				if (parallel) {
+					for (String resource : getSharedResources(properties)) {
+						resourceLocks.add(SHARED_RESOURCE_LOCKS.computeIfAbsent(resource, r -> new ReentrantLock()));
+					}
+				}
+				stepLock.lock();
+				try {
+					for (Lock resourceLock : resourceLocks) {
+						resourceLock.lock();
+					}
+					try {
+						debugMessage("Open queues", writers);
+						Map<String, Map<String, Object>> queues = openQueues(scenarioDirectory, steps, properties, ibisContext, appConstants, writers);
+						if (queues != null) {
+							debugMessage("Execute steps", writers);
+							boolean allStepsPassed = true;
+							boolean autoSaved = false;
+							boolean evenStep = false;
+							Iterator<String> iterator = steps.iterator();
+							while (allStepsPassed && iterator.hasNext()) {
+								if (evenStep) {
+									writeHtml("<div class='even'>", writers, false);
+									evenStep = false;
+								} else {
+									writeHtml("<div class='odd'>", writers, false);
+									evenStep = true;
+								}
+								String step = (String)iterator.next();
+								String stepDisplayName = shortName + " - " + step + " - " + properties.get(step);
+								debugMessage("Execute step '" + stepDisplayName + "'", writers);
+								int stepPassed = executeStep(step, properties, stepDisplayName, queues, writers);
+								if (stepPassed==RESULT_OK) {
+									stepPassedMessage("Step '" + stepDisplayName + "' passed", writers);
+								} else if (stepPassed==RESULT_AUTOSAVED) {
+									stepAutosavedMessage("Step '" + stepDisplayName + "' passed after autosave", writers);
+									autoSaved = true;
+								} else {
+									stepFailedMessage("Step '" + stepDisplayName + "' failed", writers);
+									allStepsPassed = false;
+								}
+								writeHtml("</div>", writers, false);
+							}
+							if (allStepsPassed) {
+								if (autoSaved) {
+									scenarioResult.result = RESULT_AUTOSAVED;
+								} else {
+									scenarioResult.result = RESULT_OK;
+								}
+							}
+							debugMessage("Wait " + waitBeforeCleanUp + " ms before clean up", writers);
+							try {
+								Thread.sleep(waitBeforeCleanUp);
+							} catch(InterruptedException e) {
+							}
+							debugMessage("Close queues", writers);
+							boolean remainingMessagesFound = closeQueues(queues, properties, writers);
+							if (remainingMessagesFound) {
+								stepFailedMessage("Found one or more messages on queues or in database after scenario executed", writers);
+								scenarioResult.result = RESULT_ERROR;
+							}
+						}
+					} finally {
+						for (Lock resourceLock : resourceLocks) {
+							resourceLock.unlock();
+						}
+					}
+				} finally {
+					stepLock.unlock();
+				}
+			}
+		}
+		return scenarioResult;
+	}
+
+	/**
+	 * Executes a scenario on a thread of the parallel runner. The output of the scenario is collected, to be written
+	 * after the output of the scenarios before it.
+	 */
+	private static ScenarioResult runScenarioInParallel(File scenarioFile, String shortName, IbisContext ibisContext, AppConstants appConstants, int waitBeforeCleanUp, Map<String, Object> scenarioWriters) {
+		ScenarioOutput scenarioOut = new ScenarioOutput();
+		if (scenarioWriters!=null) {
+			scenarioWriters.put("out", scenarioOut);
+		} else {
+			silentOut.set(scenarioOut);
+		}
+		try {
+			ScenarioResult scenarioResult = runScenario(scenarioFile, shortName, ibisContext, appConstants, waitBeforeCleanUp, scenarioWriters, true);
+			scenarioResult.output = scenarioOut.getWrites();
+			return scenarioResult;
+		} finally {
+			silentOut.remove();
+			zeefVijlNeem.remove();
+		}
+	}
+
+	private static ScenarioResult getParallelResult(Future<ScenarioResult> future, String shortName, Writer out, Map<String, Object> writers) {
+		ScenarioResult scenarioResult;
+		try {
+			scenarioResult = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			scenarioResult = new ScenarioResult();
+			errorMessage("Interrupted while waiting for scenario '" + shortName + "'", writers);
+		} catch (ExecutionException e) {
+			scenarioResult = new ScenarioResult();
+			errorMessage("Exception executing scenario '" + shortName + "': " + e.getCause().getMessage(), e, writers);
+		}
+		if (scenarioResult.output != null) {
+			try {
+				for (String write : scenarioResult.output) {
+					out.write(write);
+				}
+				out.flush();
+			} catch (IOException e) {
+			}
+		}
+		if (scenarioResult.properties == null) {
+			scenarioResult.properties = new Properties();
+		}
+		return scenarioResult;
+	}
+
+	/**
+	 * Creates the writers for a scenario that is executed in parallel. The output is written to a buffer of the
+	 * scenario itself, the counters used to create unique element ids are shared with the other scenarios.
+	 */
+	private static Map<String, Object> createScenarioWriters(Map<String, Object> writers) {
+		if (writers == null) {
+			return null;
+		}
+		Map<String, Object> scenarioWriters = new HashMap<String, Object>(writers);
+		scenarioWriters.put("usehtmlbuffer", "false");
+		scenarioWriters.put("uselogbuffer", "false");
+		return scenarioWriters;
+	}
+
+	/**
+	 * Returns the resources that a scenario cannot share with scenarios executed at the same time, sorted to have them
+	 * locked in the same order by all scenarios. Scenarios that return the same resource are not executed in parallel.
+	 * <p>
+	 * Resources that are registered or read by the queues of the scenario are derived from its properties: the service
+	 * of a JavaListener or WebServiceListener, the queue of a JmsListener, the datasource of a FixedQuerySender and the
+	 * file or directory of a FileSender or FileListener. Other resources, like the tables used by the adapters under test,
+	 * can be declared in the comma separated property <code>scenario.sharedResources</code>.
+	 */
+	public static Set<String> getSharedResources(Properties properties) {
+		Set<String> resources = new TreeSet<String>();
+		String sharedResources = properties.getProperty("scenario.sharedResources");
+		if (StringUtils.isNotEmpty(sharedResources)) {
+			for (String resource : sharedResources.split(",")) {
+				if (StringUtils.isNotBlank(resource)) {
+					resources.add(resource.trim());
+				}
+			}
+		}
+		for (String key : properties.stringPropertyNames()) {
+			if (key.endsWith(".className")) {
+				String queueName = key.substring(0, key.length() - ".className".length());
+				String resource = getQueueResource(queueName, properties.getProperty(key), properties);
+				if (resource != null) {
+					resources.add(resource);
+				}
+			}
+		}
+		return resources;
+	}
+
+	private static String getQueueResource(String queueName, String className, Properties properties) {
+		if ("nl.nn.adapterframework.jms.JmsListener".equals(className)) {
+			return "jms:" + properties.getProperty(queueName + ".jmsRealm", "default") + ":" + properties.getProperty(queueName + ".queue");
+		} else if ("nl.nn.adapterframework.receivers.JavaListener".equals(className)) {
+			return "javaListener:" + properties.getProperty(queueName + ".serviceName");
+		} else if ("nl.nn.adapterframework.http.WebServiceListener".equals(className)) {
+			return "webServiceListener:" + properties.getProperty(queueName + ".serviceNamespaceURI");
+		} else if ("nl.nn.adapterframework.jdbc.FixedQuerySender".equals(className)) {
+			return "jdbc:" + properties.getProperty(queueName + ".datasourceName");
+		} else if ("nl.nn.adapterframework.testtool.FileSender".equals(className)) {
+			return "file:" + properties.getProperty(queueName + ".filename");
+		} else if ("nl.nn.adapterframework.testtool.FileListener".equals(className)) {
+			return "file:" + properties.getProperty(queueName + ".filename", properties.getProperty(queueName + ".directory"));
+		}
+		return null;
+	}
+
 	public static void printHtmlForm(List<String> scenariosRootDirectories, List<String> scenariosRootDescriptions, String scenariosRootDirectory, AppConstants appConstants, List<File> scenarioFiles, int waitBeforeCleanUp, String paramExecute, String autoScroll, Map<String, Object> writers) {
 		if (writers!=null) {
 			writeHtml("<form action=\"index.jsp\" method=\"post\">", writers, false);
@@ -649,8 +957,7 @@ public class TestTool {
 	public static void debugPipelineMessage(String stepDisplayName, String message, String pipelineMessage, Map<String, Object> writers) {
 		if (writers!=null) {
 			String method = "pipeline messages";
-			int messageCounter = ((Integer)writers.get("messagecounter")).intValue();
-			messageCounter ++;
+			int messageCounter = ((AtomicInteger)writers.get("messagecounter")).incrementAndGet();
 			
 			writeLog("<div class='message container'>", method, writers, false);
 			writeLog("<h4>Step '" + stepDisplayName + "'</h4>", method, writers, false);
@@ -658,16 +965,13 @@ public class TestTool {
 			writeLog("<h5>" + XmlUtils.encodeChars(message) + "</h5>", method, writers, false);
 			writeLog("<textarea cols='100' rows='10' id='messagebox" + messageCounter + "'>" + XmlUtils.encodeChars(XmlUtils.replaceNonValidXmlCharacters(pipelineMessage)) + "</textarea>", method, writers, false);
 			writeLog("</div>", method, writers, false);
-			
-			writers.put("messagecounter", new Integer(messageCounter));
 		}
 	}
 
 	public static void debugPipelineMessagePreparedForDiff(String stepDisplayName, String message, String pipelineMessage, Map<String, Object> writers) {
 		if (writers!=null) {
 			String method = "pipeline messages prepared for diff";
-			int messageCounter = ((Integer)writers.get("messagecounter")).intValue();
-			messageCounter ++;
+			int messageCounter = ((AtomicInteger)writers.get("messagecounter")).incrementAndGet();
 
 			writeLog("<div class='message container'>", method, writers, false);
 			writeLog("<h4>Step '" + stepDisplayName + "'</h4>", method, writers, false);
@@ -675,31 +979,28 @@ public class TestTool {
 			writeLog("<h5>" + XmlUtils.encodeChars(message) + "</h5>", method, writers, false);
 			writeLog("<textarea cols='100' rows='10' id='messagebox" + messageCounter + "'>" + XmlUtils.encodeChars(pipelineMessage) + "</textarea>", method, writers, false);
 			writeLog("</div>", method, writers, false);
-
-			writers.put("messagecounter", new Integer(messageCounter));
 		}
 	}
 
 	public static void wrongPipelineMessage(String message, String pipelineMessage, Map<String, Object> writers) {
 		if (writers!=null) {
 			String method = "wrong pipeline messages";
-			int messageCounter = ((Integer)writers.get("messagecounter")).intValue();
-			messageCounter ++;
+			int messageCounter = ((AtomicInteger)writers.get("messagecounter")).incrementAndGet();
 			
 			writeLog("<div class='message container'>", method, writers, false);
 			writeLog(writeCommands("messagebox" + messageCounter, true, null), method, writers, false);
 			writeLog("<h5>" + XmlUtils.encodeChars(message) + "</h5>", method, writers, false);
 			writeLog("<textarea cols='100' rows='10' id='messagebox" + messageCounter + "'>" + XmlUtils.encodeChars(XmlUtils.replaceNonValidXmlCharacters(pipelineMessage)) + "</textarea>", method, writers, false);
 			writeLog("</div>", method, writers, false);
-
-			writers.put("messagecounter", new Integer(messageCounter));
 		}
 	}
 
 	public static void wrongPipelineMessage(String stepDisplayName, String message, String pipelineMessage, String pipelineMessageExpected, Map<String, Object> writers) {
 		if (writers!=null) {
 			String method = "wrong pipeline messages";
-			int scenarioCounter = ((Integer)writers.get("scenariocounter")).intValue();
+			int scenarioCounter = ((AtomicInteger)writers.get("scenariocounter")).getAndIncrement();
+			// the form of the prepared for diff message of this step uses the same number
+			writers.put("wrongpipelinemessagecounter", scenarioCounter);
 			String formName = "scenario" + scenarioCounter + "Wpm";
 			String resultBoxId = formName + "ResultBox";
 			String expectedBoxId = formName + "ExpectedBox";
@@ -720,7 +1021,7 @@ public class TestTool {
 
 			writeLog("<div class='expectedContainer'>", method, writers, false);
 			writeLog(writeCommands(expectedBoxId, true, null), method, writers, true);
-			writeLog("<input type='hidden' name='expectedFileName' value='"+zeefVijlNeem+"' />", method, writers, false);
+			writeLog("<input type='hidden' name='expectedFileName' value='"+zeefVijlNeem.get()+"' />", method, writers, false);
 			writeLog("<input type='hidden' name='cmd' />", method, writers, false);
 			writeLog("<h5>Expected (raw):</h5>", method, writers, false);
 			writeLog("<textarea name='expectedBox' id='"+expectedBoxId+"'>" + XmlUtils.encodeChars(pipelineMessageExpected) + "</textarea>", method, writers, false);
@@ -754,13 +1055,10 @@ public class TestTool {
 				writeLog("</form>", method, writers, false);
 				writeLog("</div>", method, writers, false);
 			}
-			
-			scenarioCounter++;
-			writers.put("scenariocounter", new Integer(scenarioCounter));
 		} else {
-			if (silentOut!=null) {
+			if (silentOut.get()!=null) {
 				try {
-					silentOut.write(message);
+					silentOut.get().write(message);
 				} catch (IOException e) {
 				}
 			}
@@ -770,8 +1068,10 @@ public class TestTool {
 	public static void wrongPipelineMessagePreparedForDiff(String stepDisplayName, String pipelineMessagePreparedForDiff, String pipelineMessageExpectedPreparedForDiff, Map<String, Object> writers) {
 		if (writers!=null) {
 			String method = "wrong pipeline messages prepared for diff";
-			int scenarioCounter = ((Integer)writers.get("scenariocounter")).intValue();
-			int messageCounter = ((Integer)writers.get("messagecounter")).intValue();
+			Integer scenarioCounter = (Integer)writers.remove("wrongpipelinemessagecounter");
+			if (scenarioCounter == null) {
+				scenarioCounter = ((AtomicInteger)writers.get("scenariocounter")).getAndIncrement();
+			}
 			String formName = "scenario" + scenarioCounter + "Wpmpfd";
 			String resultBoxId = formName + "ResultBox";
 			String expectedBoxId = formName + "ExpectedBox";
@@ -781,7 +1081,6 @@ public class TestTool {
 			writeLog("<form name='"+formName+"' action='saveResultToFile.jsp' method='post' target='saveResultWindow' accept-charset='UTF-8'>", method, writers, false);
 			writeLog("<input type='hidden' name='iehack' value='&#9760;' />", method, writers, false); // http://stackoverflow.com/questions/153527/setting-the-character-encoding-in-form-submit-for-internet-explorer
 			writeLog("<h4>Step '" + stepDisplayName + "'</h4>", method, writers, false);
-			messageCounter ++;
 			
 			writeLog("<hr/>", method, writers, false);
 			
@@ -791,10 +1090,9 @@ public class TestTool {
 			writeLog("<textarea name='resultBox' id='"+resultBoxId+"'>" + XmlUtils.encodeChars(pipelineMessagePreparedForDiff) + "</textarea>", method, writers, false);
 			writeLog("</div>", method, writers, false);		
 			
-			messageCounter++;
 			writeLog("<div class='expectedContainer'>", method, writers, false);
 			writeLog(writeCommands(expectedBoxId, true, null), method, writers, false);
-			writeLog("<input type='hidden' name='expectedFileName' value='"+zeefVijlNeem+"' />", method, writers, false);
+			writeLog("<input type='hidden' name='expectedFileName' value='"+zeefVijlNeem.get()+"' />", method, writers, false);
 			writeLog("<input type='hidden' name='cmd' />", method, writers, false);
 			writeLog("<h5>Expected (prepared for diff):</h5>", method, writers, false);
 			writeLog("<textarea name='expectedBox' id='" + expectedBoxId + "'>" + XmlUtils.encodeChars(pipelineMessageExpectedPreparedForDiff) + "</textarea>", method, writers, false);
@@ -802,7 +1100,6 @@ public class TestTool {
 			
 			writeLog("<hr/>", method, writers, false);
 
-			messageCounter++;
 			writeLog("<div class='differenceContainer'>", method, writers, false);
 
 			String btn1 = "<a class=\"['"+resultBoxId+"','"+expectedBoxId+"']|indentCompare|"+diffBoxId+"\" href=\"javascript:void(0)\">compare</a>";
@@ -814,8 +1111,6 @@ public class TestTool {
 			
 			writeLog("</form>", method, writers, false);
 			writeLog("</div>", method, writers, false);
-
-			writers.put("messagecounter", new Integer(messageCounter));
 		}
 	}
 	
@@ -919,9 +1214,9 @@ public class TestTool {
 	public static void errorMessage(String message, Map<String, Object> writers) {
 		String method = "error";
 		writeLog("<h1 class='error'>" + XmlUtils.encodeChars(message) + "</h1>", method, writers, true);
-		if (silentOut!=null) {
+		if (silentOut.get()!=null) {
 			try {
-				silentOut.write(message);
+				silentOut.get().write(message);
 			} catch (IOException e) {
 			}
 		}
@@ -937,14 +1232,12 @@ public class TestTool {
 				PrintWriter printWriter = new PrintWriter(stringWriter);
 				throwable.printStackTrace(printWriter);
 				printWriter.close();
-				int messageCounter = ((Integer)writers.get("messagecounter")).intValue();
-				messageCounter++;
+				int messageCounter = ((AtomicInteger)writers.get("messagecounter")).incrementAndGet();
 				writeLog("<div class='container'>", method, writers, false);
 				writeLog(writeCommands("messagebox" + messageCounter, true, null), method, writers, false);
 				writeLog("<h5>Stack trace:</h5>", method, writers, false);
 				writeLog("<textarea cols='100' rows='10' id='messagebox" + messageCounter + "'>" + XmlUtils.encodeChars(XmlUtils.replaceNonValidXmlCharacters(stringWriter.toString())) + "</textarea>", method, writers, false);
 				writeLog("</div>", method, writers, false);
-				writers.put("messagecounter", new Integer(messageCounter));
 				throwable = throwable.getCause();
 			}
 		}
@@ -2856,7 +3149,7 @@ public class TestTool {
 		String queueName;
 		String fileContent;
 		// vul globale var
-		zeefVijlNeem = fileNameAbsolutePath;
+		zeefVijlNeem.set(fileNameAbsolutePath);
 		
 		//inlezen file voor deze stap
 		if ("".equals(fileName)) {
@@ -2,14 +2,33 @@ package nl.nn.adapterframework.testtool;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nl.nn.adapterframework.util.AppConstants;
 
 public class TestToolTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
 	public void decodeUnzipContentBetweenKeysFromIgnoreMap() {
         String propertyName = "decodeUnzipContentBetweenKeys";
@@ -447,5 +466,102 @@ public class TestToolTest {
 
         assertEquals(identifier.get("value"), value);
     }
-    
-}
\ No newline at end of file
+
+    @Test
+    public void sharedResourcesAreSortedAndTrimmed() {
+        Properties scenario = new Properties();
+        scenario.setProperty("scenario.sharedResources", "queue.B, database ,queue.A,,");
+
+        Set<String> resources = TestTool.getSharedResources(scenario);
+        assertEquals("[database, queue.A, queue.B]", resources.toString());
+    }
+
+    @Test
+    public void noSharedResources() {
+        assertTrue(TestTool.getSharedResources(new Properties()).isEmpty());
+    }
+
+    @Test
+    public void sharedResourcesAreDerivedFromQueues() {
+        Properties scenario = new Properties();
+        scenario.setProperty("java.Service.className", "nl.nn.adapterframework.receivers.JavaListener");
+        scenario.setProperty("java.Service.serviceName", "ibis4test-Service");
+        scenario.setProperty("jms.Out.className", "nl.nn.adapterframework.jms.JmsListener");
+        scenario.setProperty("jms.Out.queue", "Q.OUT");
+        scenario.setProperty("delay.className", "nl.nn.adapterframework.senders.DelaySender");
+
+        Set<String> resources = TestTool.getSharedResources(scenario);
+        assertEquals("[javaListener:ibis4test-Service, jms:default:Q.OUT]", resources.toString());
+    }
+
+    @Test
+    public void scenariosAreExecutedInParallel() throws Exception {
+        File root = folder.newFolder("scenarios");
+        writeFile(new File(root, "message.txt"), "hello");
+        for (int i = 1; i <= 2; i++) {
+            writeFile(new File(root, "scenario0" + i + ".properties"),
+                    "scenario.description=parallel scenario " + i + "\n"
+                    + "delay.className=nl.nn.adapterframework.senders.DelaySender\n"
+                    + "delay.delayTime=1000\n"
+                    + "step1.delay.write=message.txt\n");
+        }
+        String rootDirectory = root.getAbsolutePath() + File.separator;
+        StringWriter out = new StringWriter();
+
+        long start = System.currentTimeMillis();
+        int scenariosFailed = TestTool.runScenarios(null, AppConstants.getInstance(), "scenario passed/failed", null,
+                root.getAbsolutePath(), "0", folder.getRoot().getAbsolutePath(), rootDirectory, out, true, 2);
+        long duration = System.currentTimeMillis() - start;
+
+        assertEquals(out.toString(), 0, scenariosFailed);
+        assertTrue("scenarios were not executed in parallel, took [" + duration + "] ms", duration < 1900);
+        String result = out.toString();
+        assertTrue(result, result.indexOf("parallel scenario 1' passed") >= 0);
+        assertTrue("output not written in scenario order: " + result, result.indexOf("parallel scenario 1' passed") < result.indexOf("parallel scenario 2' passed"));
+    }
+
+    @Test
+    public void wrongPipelineMessageFormNamesAreUniqueOverScenarios() {
+        AtomicInteger scenarioCounter = new AtomicInteger(1);
+        AtomicInteger messageCounter = new AtomicInteger(0);
+        StringWriter out = new StringWriter();
+        // two scenarios executed in parallel, each with its own writers that share the counters
+        Map<String, Object> writers1 = createWriters(out, scenarioCounter, messageCounter);
+        Map<String, Object> writers2 = createWriters(out, scenarioCounter, messageCounter);
+
+        TestTool.wrongPipelineMessage("step 1", "wrong", "actual", "expected", writers1);
+        TestTool.wrongPipelineMessage("step 1", "wrong", "actual", "expected", writers2);
+        TestTool.wrongPipelineMessagePreparedForDiff("step 1", "actual", "expected", writers1);
+        TestTool.wrongPipelineMessagePreparedForDiff("step 1", "actual", "expected", writers2);
+
+        Set<String> formNames = new HashSet<String>();
+        Matcher matcher = Pattern.compile("<form name='([^']*)'").matcher(out.toString());
+        int forms = 0;
+        while (matcher.find()) {
+            forms++;
+            assertTrue("duplicate form name [" + matcher.group(1) + "]", formNames.add(matcher.group(1)));
+        }
+        assertEquals(4, forms);
+        // the prepared for diff form of a step has the number of the other form of that step
+        assertTrue(formNames.toString(), formNames.contains("scenario1Wpmpfd"));
+        assertTrue(formNames.toString(), formNames.contains("scenario2Wpmpfd"));
+    }
+
+    private Map<String, Object> createWriters(Writer out, AtomicInteger scenarioCounter, AtomicInteger messageCounter) {
+        Map<String, Object> writers = new HashMap<String, Object>();
+        writers.put("out", out);
+        writers.put("loglevel", "debug");
+        writers.put("autoscroll", "false");
+        writers.put("usehtmlbuffer", "false");
+        writers.put("uselogbuffer", "false");
+        writers.put("scenariocounter", scenarioCounter);
+        writers.put("messagecounter", messageCounter);
+        return writers;
+    }
+
+    private void writeFile(File file, String content) throws IOException {
+        try (Writer writer = new FileWriter(file)) {
+            writer.write(content);
+        }
+    }
+}